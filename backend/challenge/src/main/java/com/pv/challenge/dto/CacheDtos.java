@@ -0,0 +1,15 @@
+package com.pv.challenge.dto;
+
+public class CacheDtos {
+
+    // GET /api/cache/metricas: una por región del cache de segundo nivel
+    public static class RegionCache {
+        public String region;
+        public String tipo;          // ENTIDAD o CONSULTA
+        public long maxEntradas;
+        public long aciertos;
+        public long fallos;
+        public long escrituras;      // entradas guardadas tras leer de la base
+        public double tasaAciertos;
+    }
+}
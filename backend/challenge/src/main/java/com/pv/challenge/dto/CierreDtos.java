@@ -0,0 +1,42 @@
+package com.pv.challenge.dto;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CierreDtos {
+
+    // POST /api/reportes/cierres
+    public static class CierreRequest {
+        public String periodo;   // yyyy-MM
+        public boolean zip;      // además de los PDFs sueltos, un .zip con todos
+    }
+
+    public static class CierreResponse {
+        public String periodo;
+        public String estado;            // EN_PROCESO | LISTO | ERROR
+        public String directorio;
+        public String zip;
+        public long generados;
+        public long omitidos;            // ya estaban generados (reanudación)
+        public long errores;
+        public Long ultimoClienteId;     // checkpoint: todo lo anterior está hecho
+        public double estadosPorMinuto;  // de esta ejecución
+        public OffsetDateTime inicio;
+        public OffsetDateTime fin;
+        public List<Chunk> chunks = new ArrayList<>(); // los últimos
+    }
+
+    public static class Chunk {
+        public Long desdeClienteId;
+        public Long hastaClienteId;
+        public int estados;
+        public int errores;
+        public long ms;
+        public double estadosPorMinuto;
+        public long msPromedioPorEstado;
+        // Carga en la base: uso del pool de conexiones durante el chunk
+        public int conexionesActivasMax;
+        public int esperandoConexionMax;
+    }
+}
@@ -1,5 +1,8 @@
 package com.pv.challenge.dto;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class ClienteDtos {
 
     // Crear/Actualizar cliente junto con persona
@@ -30,4 +33,28 @@ public class ClienteDtos {
         public String clienteId;
         public Boolean estado;
     }
+
+    // Página del listado, por id ascendente
+    public static class PaginaClientes {
+        public List<ClienteResponse> items = new ArrayList<>();
+        public String siguiente;         // cursor de la página siguiente; null si no hay más
+    }
+
+    // Resultado de POST /api/clientes/importaciones
+    public static class ImportacionResponse {
+        public long leidas;
+        public long importadas;
+        public long rechazadas;
+        public double segundos;
+        public double filasPorSegundo;   // filas leídas por segundo, de punta a punta
+        public List<ErrorImportacion> errores = new ArrayList<>();   // por línea del archivo
+        public long erroresOmitidos;     // rechazos que no entran en el reporte
+    }
+
+    public static class ErrorImportacion {
+        public long linea;
+        public String identificacion;
+        public String clienteId;
+        public String error;
+    }
 }
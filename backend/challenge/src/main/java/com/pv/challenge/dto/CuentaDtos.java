@@ -1,6 +1,9 @@
 package com.pv.challenge.dto;
 
 import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
 public class CuentaDtos {
 
@@ -21,4 +24,38 @@ public class CuentaDtos {
         public Long clienteId;
         public String clienteNombre;
     }
+
+    // Saldo de una cuenta en un instante (GET /api/cuentas/{id}/saldo?at=)
+    public static class SaldoResponse {
+        public Long cuentaId;
+        public OffsetDateTime at;
+        public BigDecimal saldo;
+    }
+
+    // Página del listado, por id ascendente
+    public static class PaginaCuentas {
+        public List<CuentaResponse> items = new ArrayList<>();
+        public String siguiente;         // cursor de la página siguiente; null si no hay más
+    }
+
+    // Índice en memoria de cuentas (GET /api/cuentas/indice)
+    public static class MetricasIndice {
+        public boolean activo;
+        public int cuentas;
+        public int capacidad;            // celdas de la tabla
+        public long bytes;               // memoria de la tabla
+        public long cargadasHasta;       // mayor id de la carga inicial
+        public long rechazos;            // asientos rechazados sin ir a la base
+        public long desconocidas;        // consultas de cuentas que el índice no tenía
+    }
+
+    // Saldo repartido de una cuenta (GET/PUT /api/cuentas/{id}/subsaldos)
+    public static class EstadoSubsaldos {
+        public Long cuentaId;
+        public int subsaldos;            // 0 = sin repartir
+        public BigDecimal saldo;         // principal + subsaldos
+        public BigDecimal saldoPrincipal;
+        public List<BigDecimal> saldos = new ArrayList<>();  // por subsaldo
+        public long pendientes;          // créditos todavía no consolidados en movimientos
+    }
 }
@@ -0,0 +1,35 @@
+package com.pv.challenge.dto;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ExportacionDtos {
+
+    // POST /api/movimientos/exportaciones
+    public static class ExportacionResponse {
+        public String id;
+        public String formato;           // csv | ndjson (gzip)
+        public String estado;            // EN_PROCESO | LISTO | ERROR
+        public Long desdeId;
+        public Long hastaId;
+        public long filas;
+        public double filasPorSegundo;
+        public String directorio;
+        public String error;
+        public OffsetDateTime inicio;
+        public OffsetDateTime fin;
+        public List<Parte> partes = new ArrayList<>();
+    }
+
+    // Un rango de ids, un archivo
+    public static class Parte {
+        public int numero;
+        public long desdeId;
+        public long hastaId;
+        public String estado;            // PENDIENTE | EN_PROCESO | LISTO | ERROR
+        public long filas;
+        public long ms;
+        public String descarga;          // URL cuando estado = LISTO
+    }
+}
@@ -1,9 +1,13 @@
 package com.pv.challenge.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.pv.challenge.entity.Movimiento;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
 public class MovimientoDtos {
 
@@ -26,6 +30,17 @@ public class MovimientoDtos {
             this.referencia = m.getReferencia();
         }
 
+        public MovimientoResponse(Long id, Long cuentaId, String tipo, BigDecimal valor, BigDecimal saldo,
+                                  OffsetDateTime fecha, String referencia) {
+            this.id = id;
+            this.cuentaId = cuentaId;
+            this.tipo = tipo;
+            this.valor = valor;
+            this.saldo = saldo;
+            this.fecha = fecha;
+            this.referencia = referencia;
+        }
+
         // Getters
         public Long getId() { return id; }
         public Long getCuentaId() { return cuentaId; }
@@ -35,4 +50,72 @@ public class MovimientoDtos {
         public OffsetDateTime getFecha() { return fecha; }
         public String getReferencia() { return referencia; }
     }
-}
\ No newline at end of file
+
+    // Filtros de GET /api/movimientos (todos opcionales)
+    public static class FiltroMovimientos {
+        public Long cuentaId;
+        public String tipo;
+        public LocalDate desde;          // días UTC, como los reportes
+        public LocalDate hasta;
+        public BigDecimal montoMin;
+        public BigDecimal montoMax;
+    }
+
+    // Página de movimientos, del más reciente al más antiguo
+    public static class PaginaMovimientos {
+        public List<MovimientoResponse> items = new ArrayList<>();
+        public String siguiente;         // cursor de la página siguiente; null si no hay más
+    }
+
+    // Operación de un lote (POST /api/movimientos/lote)
+    public static class OperacionLote {
+        public Long cuentaId;
+        public String tipo;      // DEPOSITO | RETIRO
+        public BigDecimal monto;
+        public String ref;
+    }
+
+    // Resultado por operación, en el mismo orden del request
+    public static class ResultadoLote {
+        public int indice;
+        public boolean ok;
+        public Long movimientoId;
+        public BigDecimal saldo;
+        public OffsetDateTime fecha;
+        public String error;
+        // Falla de infraestructura (no un rechazo de negocio) que tiró abajo el chunk
+        @JsonIgnore
+        public RuntimeException falla;
+    }
+
+    public static class LoteResponse {
+        public int total;
+        public int aplicados;
+        public int rechazados;
+        public List<ResultadoLote> resultados = new ArrayList<>();
+    }
+
+    // Acuse de un depósito diferido: anotado en el diario, todavía no aplicado a la base
+    public static class AcuseDiario {
+        public long secuencia;
+        public Long cuentaId;
+        public BigDecimal valor;
+        public OffsetDateTime fecha;
+        public String referencia;
+        public boolean durable;  // con fsync al momento del acuse
+    }
+
+    // Cuánto va el diario de asientos por delante de la base
+    public static class EstadoDiario {
+        public boolean activo;
+        public String nodo;
+        public String fsync;
+        public long escrita;     // última secuencia anotada
+        public long durable;     // última secuencia con fsync
+        public long aplicada;    // última secuencia confirmada en la base
+        public long pendientes;  // escrita - aplicada
+        public long atrasoMs;    // antigüedad del asiento pendiente más viejo (0 si no hay)
+        public long rechazados;  // asientos del diario que la base rechazó (p. ej. cuenta inexistente)
+        public int segmentos;
+    }
+}
@@ -0,0 +1,17 @@
+package com.pv.challenge.dto;
+
+public class ReporteCacheDtos {
+
+    // GET /api/reportes/cache/metricas
+    public static class Metricas {
+        public int entradas;
+        public long pesoBytes;
+        public long maxBytes;
+        public long aciertos;
+        public long fallos;
+        public double tasaAciertos;
+        public long desalojos;       // por tope de tamaño
+        public long invalidaciones;  // por asientos o cambios de cuentas
+        public long descartados;     // invalidados mientras se generaban, o demasiado grandes
+    }
+}
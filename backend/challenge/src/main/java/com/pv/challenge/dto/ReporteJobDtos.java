@@ -0,0 +1,24 @@
+package com.pv.challenge.dto;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+
+public class ReporteJobDtos {
+
+    // POST /api/reportes/jobs
+    public static class JobRequest {
+        public Long clienteId;
+        public LocalDate desde;
+        public LocalDate hasta;
+    }
+
+    public static class JobResponse {
+        public String id;
+        public String estado;        // PENDIENTE | EN_PROCESO | LISTO | ERROR
+        public boolean desdeCache;   // servido desde el cache en disco, sin volver a generar
+        public String error;
+        public OffsetDateTime creado;
+        public OffsetDateTime terminado;
+        public String descarga;      // URL del PDF cuando estado = LISTO
+    }
+}
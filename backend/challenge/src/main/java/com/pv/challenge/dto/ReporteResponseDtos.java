@@ -12,6 +12,8 @@ public class ReporteResponseDtos {
   private LocalDate hasta;
 
   private List<ReporteLineaDtos> items = new ArrayList<>();
+  // Solo en modo resumen (rollups diarios): una entrada por cuenta
+  private List<ReporteResumenCuentaDtos> resumen = new ArrayList<>();
   private BigDecimal totalDebitos = BigDecimal.ZERO;
   private BigDecimal totalCreditos = BigDecimal.ZERO;
 
@@ -33,6 +35,9 @@ public class ReporteResponseDtos {
   public List<ReporteLineaDtos> getItems() { return items; }
   public void setItems(List<ReporteLineaDtos> items) { this.items = items; }
 
+  public List<ReporteResumenCuentaDtos> getResumen() { return resumen; }
+  public void setResumen(List<ReporteResumenCuentaDtos> resumen) { this.resumen = resumen; }
+
   public BigDecimal getTotalDebitos() { return totalDebitos; }
   public void setTotalDebitos(BigDecimal totalDebitos) { this.totalDebitos = totalDebitos; }
 
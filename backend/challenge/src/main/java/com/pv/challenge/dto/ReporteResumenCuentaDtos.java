@@ -0,0 +1,39 @@
+package com.pv.challenge.dto;
+
+import java.math.BigDecimal;
+
+// Línea del reporte resumen: una por cuenta, calculada solo desde los rollups diarios.
+public class ReporteResumenCuentaDtos {
+  private String numeroCuenta;
+  private String tipoCuenta;
+  private boolean estado;
+  private BigDecimal saldoInicial;
+  private BigDecimal totalCreditos;
+  private BigDecimal totalDebitos;
+  private long movimientos;
+  private BigDecimal saldoFinal;
+
+  public String getNumeroCuenta() { return numeroCuenta; }
+  public void setNumeroCuenta(String numeroCuenta) { this.numeroCuenta = numeroCuenta; }
+
+  public String getTipoCuenta() { return tipoCuenta; }
+  public void setTipoCuenta(String tipoCuenta) { this.tipoCuenta = tipoCuenta; }
+
+  public boolean isEstado() { return estado; }
+  public void setEstado(boolean estado) { this.estado = estado; }
+
+  public BigDecimal getSaldoInicial() { return saldoInicial; }
+  public void setSaldoInicial(BigDecimal saldoInicial) { this.saldoInicial = saldoInicial; }
+
+  public BigDecimal getTotalCreditos() { return totalCreditos; }
+  public void setTotalCreditos(BigDecimal totalCreditos) { this.totalCreditos = totalCreditos; }
+
+  public BigDecimal getTotalDebitos() { return totalDebitos; }
+  public void setTotalDebitos(BigDecimal totalDebitos) { this.totalDebitos = totalDebitos; }
+
+  public long getMovimientos() { return movimientos; }
+  public void setMovimientos(long movimientos) { this.movimientos = movimientos; }
+
+  public BigDecimal getSaldoFinal() { return saldoFinal; }
+  public void setSaldoFinal(BigDecimal saldoFinal) { this.saldoFinal = saldoFinal; }
+}
@@ -0,0 +1,44 @@
+package com.pv.challenge.entity;
+
+import javax.persistence.*;
+import java.time.OffsetDateTime;
+
+// Idempotency-Key de un asiento: se guarda en la misma transacción que el movimiento.
+// La escriben y leen las consultas nativas de ClaveIdempotenciaRepository.
+@Entity
+@Table(name = "claves_idempotencia")
+public class ClaveIdempotencia {
+
+    @Id
+    @Column(length = 100)
+    private String clave;
+
+    @Column(nullable = false, length = 20)
+    private String operacion;
+
+    @Column(nullable = false, length = 64)
+    private String huella;
+
+    @Column(name = "movimiento_id")
+    private Long movimientoId;
+
+    @Column(name = "creado_en", nullable = false)
+    private OffsetDateTime creadoEn;
+
+    @Column(name = "expira_en", nullable = false)
+    private OffsetDateTime expiraEn;
+
+    // Getters & Setters
+    public String getClave() { return clave; }
+    public void setClave(String clave) { this.clave = clave; }
+    public String getOperacion() { return operacion; }
+    public void setOperacion(String operacion) { this.operacion = operacion; }
+    public String getHuella() { return huella; }
+    public void setHuella(String huella) { this.huella = huella; }
+    public Long getMovimientoId() { return movimientoId; }
+    public void setMovimientoId(Long movimientoId) { this.movimientoId = movimientoId; }
+    public OffsetDateTime getCreadoEn() { return creadoEn; }
+    public void setCreadoEn(OffsetDateTime creadoEn) { this.creadoEn = creadoEn; }
+    public OffsetDateTime getExpiraEn() { return expiraEn; }
+    public void setExpiraEn(OffsetDateTime expiraEn) { this.expiraEn = expiraEn; }
+}
@@ -1,11 +1,19 @@
 package com.pv.challenge.entity;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+
 import javax.persistence.*;
 import java.math.BigDecimal;
 import java.time.OffsetDateTime;
 
 @Entity
 @Table(name = "cuentas")
+// Solo las columnas cambiadas: actualizar la cuenta no reescribe el saldo que mueven
+// los asientos (leído quizá del cache o antes de un asiento concurrente).
+@DynamicUpdate
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "cuentas")
 public class Cuenta {
 
     @Id
@@ -31,6 +39,14 @@ public class Cuenta {
     @Column(name = "creado_en", nullable = false)
     private OffsetDateTime creadoEn = OffsetDateTime.now();
 
+    // Sube en cada cambio de la fila: Hibernate al actualizar la entidad (y la usa en el
+    // WHERE del UPDATE: un cambio concurrente lo hace fallar) y los asientos nativos en
+    // su UPDATE. El índice en memoria descarta con ella los estados viejos que llegan
+    // tarde. Null hasta persistir: Spring Data decide con ella si la entidad es nueva.
+    @Version
+    @Column(nullable = false)
+    private Long version;
+
     public Cuenta() {}
     // Getters & Setters
     public Long getId() { return id; }
@@ -47,4 +63,6 @@ public class Cuenta {
     public void setCliente(Cliente cliente) { this.cliente = cliente; }
     public OffsetDateTime getCreadoEn() { return creadoEn; }
     public void setCreadoEn(OffsetDateTime creadoEn) { this.creadoEn = creadoEn; }
+    public Long getVersion() { return version; }
+    public void setVersion(Long version) { this.version = version; }
 }
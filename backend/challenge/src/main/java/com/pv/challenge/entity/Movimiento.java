@@ -8,8 +8,11 @@ import java.time.OffsetDateTime;
 @Table(name = "movimientos")
 public class Movimiento {
 
+    // Secuencia con pool de 50 (INCREMENT BY 50 en la DB): permite a Hibernate
+    // agrupar los INSERT en batches JDBC, cosa que IDENTITY impide.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "movimientos_seq")
+    @SequenceGenerator(name = "movimientos_seq", sequenceName = "movimientos_id_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(optional = false, fetch = FetchType.LAZY)
@@ -31,6 +34,11 @@ public class Movimiento {
     @Column(nullable = false)
     private OffsetDateTime fecha = OffsetDateTime.now();
 
+    // Confirmación al cliente anterior al asiento (acuse del diario, crédito repartido);
+    // null si coinciden
+    @Column(name = "fecha_origen")
+    private OffsetDateTime fechaOrigen;
+
     // Getters & Setters
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -46,4 +54,6 @@ public class Movimiento {
     public void setReferencia(String referencia) { this.referencia = referencia; }
     public OffsetDateTime getFecha() { return fecha; }
     public void setFecha(OffsetDateTime fecha) { this.fecha = fecha; }
+    public OffsetDateTime getFechaOrigen() { return fechaOrigen; }
+    public void setFechaOrigen(OffsetDateTime fechaOrigen) { this.fechaOrigen = fechaOrigen; }
 }
@@ -1,14 +1,19 @@
 package com.pv.challenge.entity;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import javax.persistence.*;
 import java.time.OffsetDateTime;
 
 @Entity
 @Table(name = "personas")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "personas")
 public class Persona {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "personas_seq")
+    @SequenceGenerator(name = "personas_seq", sequenceName = "personas_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, length = 150)
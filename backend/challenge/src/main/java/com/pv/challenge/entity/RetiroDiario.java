@@ -0,0 +1,28 @@
+package com.pv.challenge.entity;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+
+// Retiros de una cuenta en un día local (banco.retiros.zona), para el cupo diario.
+// Lo mantienen los retiros de MovimientoService y los lotes; se reconstruye desde movimientos.
+@Entity
+@Table(name = "retiros_diarios")
+public class RetiroDiario {
+
+    @EmbeddedId
+    private RetiroDiarioId id;
+
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal total = BigDecimal.ZERO;
+
+    @Column(nullable = false)
+    private Integer cantidad = 0;
+
+    // Getters & Setters
+    public RetiroDiarioId getId() { return id; }
+    public void setId(RetiroDiarioId id) { this.id = id; }
+    public BigDecimal getTotal() { return total; }
+    public void setTotal(BigDecimal total) { this.total = total; }
+    public Integer getCantidad() { return cantidad; }
+    public void setCantidad(Integer cantidad) { this.cantidad = cantidad; }
+}
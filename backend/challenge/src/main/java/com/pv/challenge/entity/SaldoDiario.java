@@ -0,0 +1,43 @@
+package com.pv.challenge.entity;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+
+// Rollup diario por cuenta (día UTC, igual que los rangos del reporte).
+// Lo mantienen los asientos de MovimientoService; se reconstruye desde movimientos.
+@Entity
+@Table(name = "saldos_diarios")
+public class SaldoDiario {
+
+    @EmbeddedId
+    private SaldoDiarioId id;
+
+    @Column(name = "saldo_apertura", nullable = false, precision = 19, scale = 2)
+    private BigDecimal saldoApertura;
+
+    @Column(name = "saldo_cierre", nullable = false, precision = 19, scale = 2)
+    private BigDecimal saldoCierre;
+
+    @Column(name = "total_creditos", nullable = false, precision = 19, scale = 2)
+    private BigDecimal totalCreditos = BigDecimal.ZERO;
+
+    @Column(name = "total_debitos", nullable = false, precision = 19, scale = 2)
+    private BigDecimal totalDebitos = BigDecimal.ZERO;
+
+    @Column(nullable = false)
+    private Integer cantidad = 0;
+
+    // Getters & Setters
+    public SaldoDiarioId getId() { return id; }
+    public void setId(SaldoDiarioId id) { this.id = id; }
+    public BigDecimal getSaldoApertura() { return saldoApertura; }
+    public void setSaldoApertura(BigDecimal saldoApertura) { this.saldoApertura = saldoApertura; }
+    public BigDecimal getSaldoCierre() { return saldoCierre; }
+    public void setSaldoCierre(BigDecimal saldoCierre) { this.saldoCierre = saldoCierre; }
+    public BigDecimal getTotalCreditos() { return totalCreditos; }
+    public void setTotalCreditos(BigDecimal totalCreditos) { this.totalCreditos = totalCreditos; }
+    public BigDecimal getTotalDebitos() { return totalDebitos; }
+    public void setTotalDebitos(BigDecimal totalDebitos) { this.totalDebitos = totalDebitos; }
+    public Integer getCantidad() { return cantidad; }
+    public void setCantidad(Integer cantidad) { this.cantidad = cantidad; }
+}
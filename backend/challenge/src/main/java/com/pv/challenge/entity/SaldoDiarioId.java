@@ -0,0 +1,41 @@
+package com.pv.challenge.entity;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Objects;
+
+@Embeddable
+public class SaldoDiarioId implements Serializable {
+
+    @Column(name = "cuenta_id", nullable = false)
+    private Long cuentaId;
+
+    @Column(nullable = false)
+    private LocalDate dia;
+
+    public SaldoDiarioId() {}
+
+    public SaldoDiarioId(Long cuentaId, LocalDate dia) {
+        this.cuentaId = cuentaId;
+        this.dia = dia;
+    }
+
+    // Getters & Setters
+    public Long getCuentaId() { return cuentaId; }
+    public void setCuentaId(Long cuentaId) { this.cuentaId = cuentaId; }
+    public LocalDate getDia() { return dia; }
+    public void setDia(LocalDate dia) { this.dia = dia; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SaldoDiarioId)) return false;
+        SaldoDiarioId that = (SaldoDiarioId) o;
+        return Objects.equals(cuentaId, that.cuentaId) && Objects.equals(dia, that.dia);
+    }
+
+    @Override
+    public int hashCode() { return Objects.hash(cuentaId, dia); }
+}
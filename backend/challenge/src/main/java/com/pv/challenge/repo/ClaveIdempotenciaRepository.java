@@ -0,0 +1,50 @@
+package com.pv.challenge.repo;
+
+import com.pv.challenge.entity.ClaveIdempotencia;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.QueryHint;
+import java.time.OffsetDateTime;
+import java.util.Optional;
+
+import static org.hibernate.annotations.QueryHints.NATIVE_SPACES;
+
+public interface ClaveIdempotenciaRepository extends JpaRepository<ClaveIdempotencia, String> {
+
+    // Toma la clave si es nueva o ya venció; vacío si otra transacción la tiene. Una
+    // transacción concurrente con la misma clave espera aquí hasta que la primera
+    // confirme (y entonces recibe vacío) o se deshaga (y entonces la toma).
+    @Query(value =
+        "INSERT INTO claves_idempotencia (clave, operacion, huella, movimiento_id, creado_en, expira_en) " +
+        "VALUES (:clave, :operacion, :huella, NULL, CAST(:ahora AS TIMESTAMPTZ), CAST(:expira AS TIMESTAMPTZ)) " +
+        "ON CONFLICT (clave) DO UPDATE SET " +
+        "  operacion = EXCLUDED.operacion, huella = EXCLUDED.huella, movimiento_id = NULL, " +
+        "  creado_en = EXCLUDED.creado_en, expira_en = EXCLUDED.expira_en " +
+        "WHERE claves_idempotencia.expira_en <= EXCLUDED.creado_en " +
+        "RETURNING clave",
+        nativeQuery = true)
+    Optional<String> reservar(@Param("clave") String clave,
+                              @Param("operacion") String operacion,
+                              @Param("huella") String huella,
+                              @Param("ahora") OffsetDateTime ahora,
+                              @Param("expira") OffsetDateTime expira);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "claves_idempotencia"))
+    @Query(value = "UPDATE claves_idempotencia SET movimiento_id = :movimientoId WHERE clave = :clave",
+           nativeQuery = true)
+    int completar(@Param("clave") String clave, @Param("movimientoId") Long movimientoId);
+
+    // Borra de a "limite" claves vencidas, para no bloquear la tabla con un DELETE enorme
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "claves_idempotencia"))
+    @Query(value =
+        "DELETE FROM claves_idempotencia WHERE clave IN (" +
+        "  SELECT clave FROM claves_idempotencia WHERE expira_en <= :ahora LIMIT :limite)",
+        nativeQuery = true)
+    int purgarVencidas(@Param("ahora") OffsetDateTime ahora, @Param("limite") int limite);
+}
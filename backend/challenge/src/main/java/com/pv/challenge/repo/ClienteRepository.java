@@ -1,10 +1,93 @@
 package com.pv.challenge.repo;
 
 import com.pv.challenge.entity.Cliente;
+import com.pv.challenge.service.RegionesCache;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_CACHE_REGION;
+
 public interface ClienteRepository extends JpaRepository<Cliente, Long> {
+    @QueryHints({
+        @QueryHint(name = HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HINT_CACHE_REGION, value = RegionesCache.CLIENTE_POR_CLIENTE_ID)
+    })
     Optional<Cliente> findByClienteId(String clienteId);
+
+    // Cuáles de estos clienteId ya están tomados (importación: una consulta por chunk)
+    @Query("select c.clienteId from Cliente c where c.clienteId in :clienteIds")
+    List<String> clienteIdsExistentes(@Param("clienteIds") Collection<String> clienteIds);
+
+    // Columnas del listado: se leen en una sola consulta con la persona, sin hidratar entidades
+    interface FilaCliente {
+        Long getId();
+        String getNombre();
+        String getGenero();
+        Integer getEdad();
+        String getIdentificacion();
+        String getDireccion();
+        String getTelefono();
+        String getClienteId();
+        Boolean getEstado();
+    }
+
+    // Página del listado por id (keyset): el costo no crece con el número de página
+    @Query("select c.id as id, p.nombre as nombre, p.genero as genero, p.edad as edad, " +
+           "p.identificacion as identificacion, p.direccion as direccion, p.telefono as telefono, " +
+           "c.clienteId as clienteId, c.estado as estado " +
+           "from Cliente c join c.persona p where c.id > :despuesDe order by c.id")
+    List<FilaCliente> paginaDespuesDe(@Param("despuesDe") Long despuesDe, Pageable pagina);
+
+    // Búsqueda por rango: 0 identificación o clienteId exactos, 1 prefijo de alguno de
+    // los dos, 2 prefijo del nombre, 3 palabra del nombre que empieza con q, 4 subcadena.
+    // Cada rama toma a lo sumo "limite" filas por su índice (ver BaseDatos.sql); la de
+    // subcadena (trigramas, solo si q tiene 3+ letras) trae "candidatos" sin orden y se
+    // ordenan por similitud afuera. Los patrones llegan con % y _ ya escapados.
+    @Query(value =
+        "SELECT c.id AS id, p.nombre AS nombre, p.genero AS genero, p.edad AS edad, " +
+        "  p.identificacion AS identificacion, p.direccion AS direccion, p.telefono AS telefono, " +
+        "  c.clienteid AS clienteId, c.estado AS estado " +
+        "FROM (SELECT id, MIN(rango) AS rango FROM (" +
+        "  (SELECT p.id, CASE WHEN p.identificacion = :q THEN 0 ELSE 1 END AS rango FROM personas p" +
+        "   WHERE (p.identificacion COLLATE \"C\") LIKE :prefijo" +
+        "   ORDER BY (p.identificacion COLLATE \"C\") LIMIT :limite)" +
+        "  UNION ALL" +
+        "  (SELECT c.id, CASE WHEN lower(c.clienteid) = :ql THEN 0 ELSE 1 END FROM clientes c" +
+        "   WHERE (lower(c.clienteid) COLLATE \"C\") LIKE :prefijoMin" +
+        "   ORDER BY (lower(c.clienteid) COLLATE \"C\") LIMIT :limite)" +
+        "  UNION ALL" +
+        "  (SELECT p.id, 2 FROM personas p" +
+        "   WHERE (lower(p.nombre) COLLATE \"C\") LIKE :prefijoMin" +
+        "   ORDER BY (lower(p.nombre) COLLATE \"C\") LIMIT :limite)" +
+        "  UNION ALL" +
+        "  (SELECT p.id, CASE WHEN lower(p.nombre) LIKE :palabra THEN 3 ELSE 4 END FROM personas p" +
+        "   WHERE CAST(:subcadena AS BOOLEAN) AND lower(p.nombre) LIKE :contiene LIMIT :candidatos)" +
+        ") x GROUP BY id) r " +
+        "JOIN clientes c ON c.id = r.id " +
+        "JOIN personas p ON p.id = c.id " +
+        "ORDER BY r.rango, similarity(lower(p.nombre), :ql) DESC, lower(p.nombre), c.id " +
+        "LIMIT :limite",
+        nativeQuery = true)
+    List<FilaCliente> buscar(@Param("q") String q,
+                             @Param("ql") String qMinusculas,
+                             @Param("prefijo") String prefijo,
+                             @Param("prefijoMin") String prefijoMinusculas,
+                             @Param("palabra") String palabra,
+                             @Param("contiene") String contiene,
+                             @Param("subcadena") boolean subcadena,
+                             @Param("limite") int limite,
+                             @Param("candidatos") int candidatos);
+
+    // Recorrido de ids por páginas (keyset) para jobs sobre todos los clientes.
+    @Query("select c.id from Cliente c where c.id > :despuesDe order by c.id")
+    List<Long> idsDespuesDe(@Param("despuesDe") Long despuesDe, Pageable pagina);
 }
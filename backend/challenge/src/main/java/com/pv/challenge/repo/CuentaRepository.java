@@ -1,12 +1,72 @@
 package com.pv.challenge.repo;
 
 import com.pv.challenge.entity.Cuenta;
+import com.pv.challenge.service.RegionesCache;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_CACHE_REGION;
+
 public interface CuentaRepository extends JpaRepository<Cuenta, Long> {
+    // Query cache: guarda el id; la cuenta sale de su región (ver RegionesCache)
+    @QueryHints({
+        @QueryHint(name = HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HINT_CACHE_REGION, value = RegionesCache.CUENTA_POR_NUMERO)
+    })
     Optional<Cuenta> findByNumero(String numero);
+
     List<Cuenta> findByCliente_Id(Long clienteId);
+
+    // Columnas del listado con el nombre del titular, sin cargar Cliente ni Persona
+    interface FilaCuenta {
+        Long getId();
+        String getNumero();
+        String getTipo();
+        BigDecimal getSaldo();
+        Boolean getEstado();
+        Long getClienteId();
+        String getClienteNombre();
+    }
+
+    // Página del listado por id (keyset), una sola consulta con los joins
+    @Query("select c.id as id, c.numero as numero, c.tipo as tipo, c.saldo as saldo, c.estado as estado, " +
+           "cl.id as clienteId, p.nombre as clienteNombre " +
+           "from Cuenta c join c.cliente cl join cl.persona p where c.id > :despuesDe order by c.id")
+    List<FilaCuenta> paginaDespuesDe(@Param("despuesDe") Long despuesDe, Pageable pagina);
+
+    // Ids de las cuentas de un cliente (la base las borra en cascada con él)
+    @Query("select c.id from Cuenta c where c.cliente.id = :clienteId")
+    List<Long> idsPorCliente(@Param("clienteId") Long clienteId);
+
+    @Query("select c.id from Cuenta c where c.cliente.id in :clienteIds")
+    List<Long> idsPorClientes(@Param("clienteIds") Collection<Long> clienteIds);
+
+    @Query("select c.cliente.id from Cuenta c where c.id = :id")
+    Optional<Long> clienteIdDe(@Param("id") Long id);
+
+    // Activa o no; vacío si la cuenta no existe
+    @Query("select c.estado from Cuenta c where c.id = :id")
+    Optional<Boolean> estadoDe(@Param("id") Long id);
+
+    // SELECT ... FOR UPDATE siempre en orden de id: dos transacciones que bloquean
+    // conjuntos solapados toman los locks en el mismo orden y no se interbloquean.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from Cuenta c where c.id in :ids order by c.id")
+    List<Cuenta> bloquearPorIds(@Param("ids") Collection<Long> ids);
+
+    // Recorrido de ids por páginas (keyset) para jobs sobre todas las cuentas.
+    @Query("select c.id from Cuenta c where c.id > :despuesDe order by c.id")
+    List<Long> idsDespuesDe(@Param("despuesDe") Long despuesDe, Pageable pagina);
 }
@@ -0,0 +1,15 @@
+package com.pv.challenge.repo;
+
+import com.pv.challenge.dto.MovimientoDtos.FiltroMovimientos;
+import com.pv.challenge.entity.Movimiento;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+// Listado paginado por keyset sobre (fecha, id) descendente, con filtros opcionales
+public interface MovimientoPaginaRepository {
+
+    // Hasta "limite" movimientos posteriores (en orden descendente) al cursor
+    // (despuesDeFecha, despuesDeId); sin cursor, desde el más reciente.
+    List<Movimiento> pagina(FiltroMovimientos filtro, OffsetDateTime despuesDeFecha, Long despuesDeId, int limite);
+}
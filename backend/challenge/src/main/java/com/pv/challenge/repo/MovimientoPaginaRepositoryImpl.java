@@ -0,0 +1,71 @@
+package com.pv.challenge.repo;
+
+import com.pv.challenge.dto.MovimientoDtos.FiltroMovimientos;
+import com.pv.challenge.entity.Movimiento;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+/**
+ * Arma la consulta solo con los filtros presentes, para que cada combinación use su
+ * índice: (cuenta_id, fecha, id) con cuenta, (tipo, fecha, id) con tipo y (fecha, id)
+ * sin ninguno. El cursor es una condición de rango sobre ese mismo orden, así una
+ * página profunda cuesta lo mismo que la primera (sin OFFSET). Los montos se filtran
+ * sobre las filas que recorre el índice.
+ */
+public class MovimientoPaginaRepositoryImpl implements MovimientoPaginaRepository {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Override
+    public List<Movimiento> pagina(FiltroMovimientos f, OffsetDateTime despuesDeFecha, Long despuesDeId, int limite) {
+        StringBuilder jpql = new StringBuilder("select m from Movimiento m where 1 = 1");
+        Map<String, Object> params = new HashMap<>();
+
+        if (f.cuentaId != null) {
+            jpql.append(" and m.cuenta.id = :cuentaId");
+            params.put("cuentaId", f.cuentaId);
+        }
+        if (f.tipo != null) {
+            jpql.append(" and m.tipo = :tipo");
+            params.put("tipo", f.tipo);
+        }
+        if (f.desde != null) {
+            jpql.append(" and m.fecha >= :desde");
+            params.put("desde", f.desde.atStartOfDay().atOffset(ZoneOffset.UTC));
+        }
+        if (f.hasta != null) {
+            jpql.append(" and m.fecha < :hasta");
+            params.put("hasta", f.hasta.plusDays(1).atStartOfDay().atOffset(ZoneOffset.UTC));
+        }
+        if (f.montoMin != null) {
+            jpql.append(" and m.valor >= :montoMin");
+            params.put("montoMin", f.montoMin);
+        }
+        if (f.montoMax != null) {
+            jpql.append(" and m.valor <= :montoMax");
+            params.put("montoMax", f.montoMax);
+        }
+        if (despuesDeFecha != null) {
+            jpql.append(" and (m.fecha < :cFecha or (m.fecha = :cFecha and m.id < :cId))");
+            params.put("cFecha", despuesDeFecha);
+            params.put("cId", despuesDeId);
+        }
+        jpql.append(" order by m.fecha desc, m.id desc");
+
+        TypedQuery<Movimiento> q = em.createQuery(jpql.toString(), Movimiento.class);
+        params.forEach(q::setParameter);
+        q.setMaxResults(limite);
+        q.setHint(HINT_READONLY, true);
+        return q.getResultList();
+    }
+}
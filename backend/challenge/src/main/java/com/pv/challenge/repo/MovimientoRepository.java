@@ -2,18 +2,178 @@ package com.pv.challenge.repo;
 
 import com.pv.challenge.entity.Movimiento;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.math.BigDecimal;
+import java.time.Instant;
 import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface MovimientoRepository extends JpaRepository<Movimiento, Long> {
+import javax.persistence.QueryHint;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+public interface MovimientoRepository extends JpaRepository<Movimiento, Long>, MovimientoPaginaRepository {
+
+    // Día UTC del asiento (mismo corte de día que los rangos del reporte), sobre la
+    // fecha que devuelve el UPDATE de la cuenta
+    String DIA_UTC = "CAST(fecha AT TIME ZONE 'UTC' AS DATE)";
+
+    // Fecha de un asiento atómico: se toma con la fila de la cuenta ya bloqueada, así el
+    // orden (fecha, id) de sus movimientos es el orden en que tomaron el lock. Una fecha
+    // tomada antes de la sentencia podría quedar detrás de la de un asiento que esperó
+    // menos y dejaría como "último movimiento" uno cuyo saldo ya no es el de la cuenta.
+    String FECHA_BLOQUEADA = "clock_timestamp() AS fecha";
+
+    // Resultado de un asiento atómico: id del movimiento insertado, saldo resultante,
+    // cliente dueño de la cuenta (para invalidar sus reportes cacheados), versión
+    // nueva de la cuenta y fecha del movimiento.
+    interface Asiento {
+        Long getId();
+        BigDecimal getSaldo();
+        Long getClienteId();
+        Long getVersion();
+        Instant getFecha();
+    }
+
+    // Saldo de una cuenta en un instante (null si no tenía movimientos)
+    interface SaldoCuenta {
+        Long getCuentaId();
+        BigDecimal getSaldo();
+    }
+
+    // Columnas de un movimiento para recorridos largos: no pasa por el contexto de persistencia
+    interface LineaMovimiento {
+        Long getId();
+        Long getCuentaId();
+        String getTipo();
+        BigDecimal getValor();
+        OffsetDateTime getFecha();
+    }
 
-    List<Movimiento> findByCuenta_Id(Long cuentaId);
-    
     List<Movimiento> findByCuenta_IdAndFechaBetweenOrderByFechaAsc(Long cuentaId,
                                                                    OffsetDateTime desde,
                                                                    OffsetDateTime hasta);
 
-    List<Movimiento> findByCuenta_IdAndFechaBeforeOrderByFechaAsc(Long cuentaId,
-                                                                  OffsetDateTime antesDe);
+    // Movimientos en [desde, hastaExclusivo) de varias cuentas ordenados por (cuenta, fecha, id):
+    // una sola consulta por reporte, cada cuenta es un tramo contiguo de idx_movs_cuenta_fecha.
+    @Query("select m from Movimiento m " +
+           "where m.cuenta.id in :cuentaIds and m.fecha >= :desde and m.fecha < :hastaExclusivo " +
+           "order by m.cuenta.id, m.fecha, m.id")
+    List<Movimiento> findEnRangoPorCuentas(@Param("cuentaIds") Collection<Long> cuentaIds,
+                                           @Param("desde") OffsetDateTime desde,
+                                           @Param("hastaExclusivo") OffsetDateTime hastaExclusivo);
+
+    // Igual que findEnRangoPorCuentas pero ya en orden de fecha y como cursor del servidor
+    // (fetch size): para escribir reportes mientras se leen. Requiere transacción abierta.
+    @QueryHints({
+        @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query("select m.id as id, m.cuenta.id as cuentaId, m.tipo as tipo, m.valor as valor, m.fecha as fecha " +
+           "from Movimiento m " +
+           "where m.cuenta.id in :cuentaIds and m.fecha >= :desde and m.fecha < :hastaExclusivo " +
+           "order by m.fecha, m.cuenta.id, m.id")
+    Stream<LineaMovimiento> streamEnRangoPorFecha(@Param("cuentaIds") Collection<Long> cuentaIds,
+                                                  @Param("desde") OffsetDateTime desde,
+                                                  @Param("hastaExclusivo") OffsetDateTime hastaExclusivo);
+
+    // Saldo de varias cuentas antes de un instante en una sola consulta: una búsqueda
+    // del último movimiento previo por cuenta.
+    @Query(value =
+        "SELECT c.id AS cuentaId, " +
+        "  (SELECT m.saldo FROM movimientos m " +
+        "   WHERE m.cuenta_id = c.id AND m.fecha < CAST(:antesDe AS TIMESTAMPTZ) " +
+        "   ORDER BY m.fecha DESC, m.id DESC LIMIT 1) AS saldo " +
+        "FROM cuentas c WHERE c.id IN (:cuentaIds)",
+        nativeQuery = true)
+    List<SaldoCuenta> saldosAntesDe(@Param("cuentaIds") Collection<Long> cuentaIds,
+                                    @Param("antesDe") OffsetDateTime antesDe);
+
+    // Último movimiento antes de un instante: su saldo es el saldo de la cuenta en ese
+    // momento. Una sola búsqueda en idx_movs_cuenta_fecha, sin recorrer el historial.
+    Optional<Movimiento> findFirstByCuenta_IdAndFechaBeforeOrderByFechaDescIdDesc(Long cuentaId,
+                                                                                  OffsetDateTime antesDe);
+
+    // Crédito + rollup diario + movimiento en una sola sentencia: vacío si la cuenta no
+    // existe o está inactiva.
+    @Query(value =
+        "WITH upd AS (" +
+        "  UPDATE cuentas SET saldo = saldo + CAST(:monto AS NUMERIC), version = version + 1" +
+        "  WHERE id = :cuentaId AND estado" +
+        "  RETURNING id, saldo, cliente_id, version, " + FECHA_BLOQUEADA + "), " +
+        "rollup AS (" +
+        "  INSERT INTO saldos_diarios (cuenta_id, dia, saldo_apertura, saldo_cierre, total_creditos, total_debitos, cantidad)" +
+        "  SELECT id, " + DIA_UTC + ", saldo - CAST(:monto AS NUMERIC), saldo, CAST(:monto AS NUMERIC), 0, 1 FROM upd " +
+        SaldoDiarioRepository.ACUMULAR_EN_CONFLICTO + "), " +
+        "ins AS (" +
+        "  INSERT INTO movimientos (cuenta_id, tipo, valor, saldo, referencia, fecha)" +
+        "  SELECT id, CAST(:tipo AS VARCHAR), CAST(:monto AS NUMERIC), saldo, CAST(:ref AS VARCHAR), fecha" +
+        "  FROM upd" +
+        "  RETURNING id, saldo) " +
+        "SELECT ins.id AS id, ins.saldo AS saldo, upd.cliente_id AS clienteId, upd.version AS version, upd.fecha AS fecha " +
+        "FROM ins, upd",
+        nativeQuery = true)
+    Optional<Asiento> acreditar(@Param("cuentaId") Long cuentaId,
+                                @Param("tipo") String tipo,
+                                @Param("monto") BigDecimal monto,
+                                @Param("ref") String ref);
+
+    // Crédito a una cuenta con el saldo repartido: suma al subsaldo "azar" módulo N y
+    // deja el movimiento pendiente de consolidar, sin tocar la fila de cuentas. Vacío si
+    // la cuenta no existe, está inactiva o no está repartida. El saldo devuelto es el
+    // total visible al asentar (sin los créditos concurrentes todavía no confirmados) y
+    // la versión es null: la fila de cuentas no cambia.
+    @Query(value =
+        "WITH c AS (" +
+        "  SELECT id, saldo, cliente_id, subsaldos FROM cuentas" +
+        "  WHERE id = :cuentaId AND estado AND subsaldos > 0), " +
+        "upd AS (" +
+        "  UPDATE subsaldos s SET saldo = s.saldo + CAST(:monto AS NUMERIC) FROM c" +
+        "  WHERE s.cuenta_id = c.id AND s.slot = MOD(:azar, c.subsaldos)" +
+        "  RETURNING s.cuenta_id), " +
+        "ins AS (" +
+        "  INSERT INTO creditos_repartidos (cuenta_id, valor, referencia, fecha)" +
+        "  SELECT cuenta_id, CAST(:monto AS NUMERIC), CAST(:ref AS VARCHAR), CAST(:fecha AS TIMESTAMPTZ) FROM upd" +
+        "  RETURNING id) " +
+        "SELECT ins.id AS id, " +
+        "  c.saldo + CAST(:monto AS NUMERIC) + (SELECT COALESCE(SUM(s.saldo), 0) FROM subsaldos s WHERE s.cuenta_id = c.id) AS saldo, " +
+        "  c.cliente_id AS clienteId, CAST(NULL AS BIGINT) AS version, CAST(:fecha AS TIMESTAMPTZ) AS fecha " +
+        "FROM ins, c",
+        nativeQuery = true)
+    Optional<Asiento> acreditarEnSubsaldo(@Param("cuentaId") Long cuentaId,
+                                          @Param("azar") int azar,
+                                          @Param("monto") BigDecimal monto,
+                                          @Param("ref") String ref,
+                                          @Param("fecha") OffsetDateTime fecha);
+
+    // Débito condicionado al saldo + rollup diario + movimiento en una sola sentencia:
+    // vacío si la cuenta no existe, está inactiva o no tiene fondos suficientes.
+    @Query(value =
+        "WITH upd AS (" +
+        "  UPDATE cuentas SET saldo = saldo - CAST(:monto AS NUMERIC), version = version + 1" +
+        "  WHERE id = :cuentaId AND estado AND saldo >= CAST(:monto AS NUMERIC)" +
+        "  RETURNING id, saldo, cliente_id, version, " + FECHA_BLOQUEADA + "), " +
+        "rollup AS (" +
+        "  INSERT INTO saldos_diarios (cuenta_id, dia, saldo_apertura, saldo_cierre, total_creditos, total_debitos, cantidad)" +
+        "  SELECT id, " + DIA_UTC + ", saldo + CAST(:monto AS NUMERIC), saldo, 0, CAST(:monto AS NUMERIC), 1 FROM upd " +
+        SaldoDiarioRepository.ACUMULAR_EN_CONFLICTO + "), " +
+        "ins AS (" +
+        "  INSERT INTO movimientos (cuenta_id, tipo, valor, saldo, referencia, fecha)" +
+        "  SELECT id, CAST(:tipo AS VARCHAR), CAST(:monto AS NUMERIC), saldo, CAST(:ref AS VARCHAR), fecha" +
+        "  FROM upd" +
+        "  RETURNING id, saldo) " +
+        "SELECT ins.id AS id, ins.saldo AS saldo, upd.cliente_id AS clienteId, upd.version AS version, upd.fecha AS fecha " +
+        "FROM ins, upd",
+        nativeQuery = true)
+    Optional<Asiento> debitar(@Param("cuentaId") Long cuentaId,
+                              @Param("tipo") String tipo,
+                              @Param("monto") BigDecimal monto,
+                              @Param("ref") String ref);
 }
@@ -1,10 +1,28 @@
 package com.pv.challenge.repo;
 
 import com.pv.challenge.entity.Persona;
+import com.pv.challenge.service.RegionesCache;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_CACHE_REGION;
+
 public interface PersonaRepository extends JpaRepository<Persona, Long> {
+    @QueryHints({
+        @QueryHint(name = HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HINT_CACHE_REGION, value = RegionesCache.PERSONA_POR_IDENTIFICACION)
+    })
     Optional<Persona> findByIdentificacion(String identificacion);
+
+    // Cuáles de estas identificaciones ya existen (importación: una consulta por chunk)
+    @Query("select p.identificacion from Persona p where p.identificacion in :identificaciones")
+    List<String> identificacionesExistentes(@Param("identificaciones") Collection<String> identificaciones);
 }
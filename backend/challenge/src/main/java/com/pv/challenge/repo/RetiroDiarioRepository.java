@@ -0,0 +1,143 @@
+package com.pv.challenge.repo;
+
+import com.pv.challenge.entity.RetiroDiario;
+import com.pv.challenge.entity.RetiroDiarioId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.QueryHint;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import static org.hibernate.annotations.QueryHints.NATIVE_SPACES;
+
+// Contadores del cupo diario: retiros_diarios (por cuenta) y retiros_diarios_cliente.
+public interface RetiroDiarioRepository extends JpaRepository<RetiroDiario, RetiroDiarioId> {
+
+    // Retiros agrupados por (cuenta, día local); falta completar el WHERE.
+    String RETIROS_POR_CUENTA =
+        "SELECT m.cuenta_id, CAST(m.fecha AT TIME ZONE CAST(:zona AS TEXT) AS DATE), SUM(m.valor), COUNT(*) " +
+        "FROM movimientos m WHERE m.tipo = 'RETIRO' AND ";
+
+    interface Total {
+        Long getId();
+        BigDecimal getTotal();
+    }
+
+    // Suma el retiro al contador del día solo si el total no pasa del límite; vacío si
+    // lo pasa. El upsert deja bloqueada la fila hasta el fin de la transacción.
+    @Query(value =
+        "INSERT INTO retiros_diarios (cuenta_id, dia, total, cantidad) " +
+        "SELECT CAST(:cuentaId AS BIGINT), CAST(:dia AS DATE), CAST(:monto AS NUMERIC), 1 " +
+        "WHERE CAST(:monto AS NUMERIC) <= CAST(:limite AS NUMERIC) " +
+        "ON CONFLICT (cuenta_id, dia) DO UPDATE SET " +
+        "  total = retiros_diarios.total + EXCLUDED.total, cantidad = retiros_diarios.cantidad + 1 " +
+        "WHERE retiros_diarios.total + EXCLUDED.total <= CAST(:limite AS NUMERIC) " +
+        "RETURNING total",
+        nativeQuery = true)
+    Optional<BigDecimal> sumarCuenta(@Param("cuentaId") Long cuentaId,
+                                     @Param("dia") LocalDate dia,
+                                     @Param("monto") BigDecimal monto,
+                                     @Param("limite") BigDecimal limite);
+
+    @Query(value =
+        "INSERT INTO retiros_diarios_cliente (cliente_id, dia, total, cantidad) " +
+        "SELECT CAST(:clienteId AS BIGINT), CAST(:dia AS DATE), CAST(:monto AS NUMERIC), 1 " +
+        "WHERE CAST(:monto AS NUMERIC) <= CAST(:limite AS NUMERIC) " +
+        "ON CONFLICT (cliente_id, dia) DO UPDATE SET " +
+        "  total = retiros_diarios_cliente.total + EXCLUDED.total, cantidad = retiros_diarios_cliente.cantidad + 1 " +
+        "WHERE retiros_diarios_cliente.total + EXCLUDED.total <= CAST(:limite AS NUMERIC) " +
+        "RETURNING total",
+        nativeQuery = true)
+    Optional<BigDecimal> sumarCliente(@Param("clienteId") Long clienteId,
+                                      @Param("dia") LocalDate dia,
+                                      @Param("monto") BigDecimal monto,
+                                      @Param("limite") BigDecimal limite);
+
+    // Lotes: lo retirado hoy por cuentas ya bloqueadas (sus contadores no cambian mientras tanto)
+    @Query(value = "SELECT cuenta_id AS id, total FROM retiros_diarios WHERE cuenta_id IN (:ids) AND dia = :dia",
+           nativeQuery = true)
+    List<Total> totalesCuentas(@Param("ids") Collection<Long> cuentaIds, @Param("dia") LocalDate dia);
+
+    // Crea en cero los contadores de cliente que falten, para poder bloquearlos
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "retiros_diarios_cliente"))
+    @Query(value =
+        "INSERT INTO retiros_diarios_cliente (cliente_id, dia, total, cantidad) " +
+        "SELECT id, CAST(:dia AS DATE), 0, 0 FROM clientes WHERE id IN (:ids) ORDER BY id " +
+        "ON CONFLICT (cliente_id, dia) DO NOTHING",
+        nativeQuery = true)
+    int crearClientes(@Param("ids") Collection<Long> clienteIds, @Param("dia") LocalDate dia);
+
+    // Otras cuentas del mismo cliente no comparten el lock de la cuenta: el contador
+    // del cliente se bloquea, siempre en orden de id
+    @Query(value =
+        "SELECT cliente_id AS id, total FROM retiros_diarios_cliente " +
+        "WHERE cliente_id IN (:ids) AND dia = :dia ORDER BY cliente_id FOR UPDATE",
+        nativeQuery = true)
+    List<Total> bloquearClientes(@Param("ids") Collection<Long> clienteIds, @Param("dia") LocalDate dia);
+
+    // Suma a los contadores los retiros recién insertados (una sentencia por tabla y chunk)
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "retiros_diarios"))
+    @Query(value =
+        "INSERT INTO retiros_diarios (cuenta_id, dia, total, cantidad) " + RETIROS_POR_CUENTA +
+        "m.id IN (:ids) GROUP BY 1, 2 " +
+        "ON CONFLICT (cuenta_id, dia) DO UPDATE SET " +
+        "  total = retiros_diarios.total + EXCLUDED.total, cantidad = retiros_diarios.cantidad + EXCLUDED.cantidad",
+        nativeQuery = true)
+    int acumularCuentas(@Param("ids") Collection<Long> movimientoIds, @Param("zona") String zona);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "retiros_diarios_cliente"))
+    @Query(value =
+        "INSERT INTO retiros_diarios_cliente (cliente_id, dia, total, cantidad) " +
+        "SELECT c.cliente_id, CAST(m.fecha AT TIME ZONE CAST(:zona AS TEXT) AS DATE), SUM(m.valor), COUNT(*) " +
+        "FROM movimientos m JOIN cuentas c ON c.id = m.cuenta_id " +
+        "WHERE m.tipo = 'RETIRO' AND m.id IN (:ids) GROUP BY 1, 2 " +
+        "ON CONFLICT (cliente_id, dia) DO UPDATE SET " +
+        "  total = retiros_diarios_cliente.total + EXCLUDED.total, " +
+        "  cantidad = retiros_diarios_cliente.cantidad + EXCLUDED.cantidad",
+        nativeQuery = true)
+    int acumularClientes(@Param("ids") Collection<Long> movimientoIds, @Param("zona") String zona);
+
+    // Reconstrucción de un día: contadores de cuentas desde movimientos y de clientes
+    // desde los de sus cuentas
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "retiros_diarios"))
+    @Query(value = "DELETE FROM retiros_diarios WHERE cuenta_id IN (:ids) AND dia = :dia", nativeQuery = true)
+    int borrarCuentas(@Param("ids") Collection<Long> cuentaIds, @Param("dia") LocalDate dia);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "retiros_diarios"))
+    @Query(value =
+        "INSERT INTO retiros_diarios (cuenta_id, dia, total, cantidad) " + RETIROS_POR_CUENTA +
+        "m.cuenta_id IN (:ids) AND m.fecha >= :desde AND m.fecha < :hasta GROUP BY 1, 2",
+        nativeQuery = true)
+    int reconstruirCuentas(@Param("ids") Collection<Long> cuentaIds,
+                           @Param("desde") OffsetDateTime desde,
+                           @Param("hasta") OffsetDateTime hasta,
+                           @Param("zona") String zona);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "retiros_diarios_cliente"))
+    @Query(value = "DELETE FROM retiros_diarios_cliente WHERE cliente_id IN (:ids) AND dia = :dia", nativeQuery = true)
+    int borrarClientes(@Param("ids") Collection<Long> clienteIds, @Param("dia") LocalDate dia);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "retiros_diarios_cliente"))
+    @Query(value =
+        "INSERT INTO retiros_diarios_cliente (cliente_id, dia, total, cantidad) " +
+        "SELECT c.cliente_id, r.dia, SUM(r.total), SUM(r.cantidad) " +
+        "FROM retiros_diarios r JOIN cuentas c ON c.id = r.cuenta_id " +
+        "WHERE c.cliente_id IN (:ids) AND r.dia = :dia GROUP BY c.cliente_id, r.dia",
+        nativeQuery = true)
+    int reconstruirClientes(@Param("ids") Collection<Long> clienteIds, @Param("dia") LocalDate dia);
+}
@@ -0,0 +1,106 @@
+package com.pv.challenge.repo;
+
+import com.pv.challenge.entity.SaldoDiario;
+import com.pv.challenge.entity.SaldoDiarioId;
+import com.pv.challenge.repo.MovimientoRepository.SaldoCuenta;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.QueryHint;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+import static org.hibernate.annotations.QueryHints.NATIVE_SPACES;
+
+public interface SaldoDiarioRepository extends JpaRepository<SaldoDiario, SaldoDiarioId> {
+
+    // Al chocar con el rollup existente del día: el cierre pasa a ser el del último
+    // asiento (los asientos de una cuenta se serializan por el lock de su fila) y los
+    // totales se acumulan. Lo reutilizan los asientos atómicos de MovimientoRepository.
+    String ACUMULAR_EN_CONFLICTO =
+        "ON CONFLICT (cuenta_id, dia) DO UPDATE SET " +
+        "  saldo_cierre = EXCLUDED.saldo_cierre, " +
+        "  total_creditos = saldos_diarios.total_creditos + EXCLUDED.total_creditos, " +
+        "  total_debitos = saldos_diarios.total_debitos + EXCLUDED.total_debitos, " +
+        "  cantidad = saldos_diarios.cantidad + EXCLUDED.cantidad";
+
+    // Agrega movimientos por (cuenta, día UTC). La apertura se deduce del primer
+    // movimiento del día (su saldo menos/más su valor) y el cierre del último.
+    String AGREGAR_MOVIMIENTOS =
+        "INSERT INTO saldos_diarios (cuenta_id, dia, saldo_apertura, saldo_cierre, total_creditos, total_debitos, cantidad) " +
+        "SELECT cuenta_id, dia, " +
+        "  (ARRAY_AGG(saldo_previo ORDER BY fecha, id))[1], " +
+        "  (ARRAY_AGG(saldo ORDER BY fecha DESC, id DESC))[1], " +
+        "  SUM(CASE WHEN tipo = 'RETIRO' THEN 0 ELSE valor END), " +
+        "  SUM(CASE WHEN tipo = 'RETIRO' THEN valor ELSE 0 END), " +
+        "  COUNT(*) " +
+        "FROM (SELECT m.id, m.cuenta_id, m.tipo, m.valor, m.saldo, m.fecha, " +
+        "        CAST(m.fecha AT TIME ZONE 'UTC' AS DATE) AS dia, " +
+        "        CASE WHEN m.tipo = 'RETIRO' THEN m.saldo + m.valor ELSE m.saldo - m.valor END AS saldo_previo " +
+        "      FROM movimientos m ";
+
+    // Totales de una cuenta en un rango de días
+    interface TotalesCuenta {
+        Long getCuentaId();
+        BigDecimal getCreditos();
+        BigDecimal getDebitos();
+        Long getCantidad();
+    }
+
+    // Suma al rollup los movimientos recién insertados (una sentencia por chunk).
+    // Los UPDATE/DELETE nativos declaran su tabla: sin eso Hibernate vacía todas las
+    // regiones del cache de segundo nivel en cada ejecución.
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "saldos_diarios"))
+    @Query(value = AGREGAR_MOVIMIENTOS +
+        "WHERE m.id IN (:ids)) x " +
+        "GROUP BY cuenta_id, dia " +
+        ACUMULAR_EN_CONFLICTO,
+        nativeQuery = true)
+    int acumular(@Param("ids") Collection<Long> movimientoIds);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "saldos_diarios"))
+    @Query(value = "DELETE FROM saldos_diarios WHERE cuenta_id = :cuentaId", nativeQuery = true)
+    int borrarCuenta(@Param("cuentaId") Long cuentaId);
+
+    // Backfill: reconstruye todos los días de una cuenta desde su historial.
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "saldos_diarios"))
+    @Query(value = AGREGAR_MOVIMIENTOS +
+        "WHERE m.cuenta_id = :cuentaId) x " +
+        "GROUP BY cuenta_id, dia",
+        nativeQuery = true)
+    int reconstruirCuenta(@Param("cuentaId") Long cuentaId);
+
+    @Query("select s.id.cuentaId as cuentaId, sum(s.totalCreditos) as creditos, " +
+           "sum(s.totalDebitos) as debitos, sum(s.cantidad) as cantidad " +
+           "from SaldoDiario s " +
+           "where s.id.cuentaId in :cuentaIds and s.id.dia between :desde and :hasta " +
+           "group by s.id.cuentaId")
+    List<TotalesCuenta> totalesPorCuenta(@Param("cuentaIds") Collection<Long> cuentaIds,
+                                         @Param("desde") LocalDate desde,
+                                         @Param("hasta") LocalDate hasta);
+
+    // Movimientos de todas las cuentas de un cliente hasta un día (incluido), desde los rollups
+    @Query(value = "SELECT COALESCE(SUM(s.cantidad), 0) FROM saldos_diarios s " +
+                   "JOIN cuentas c ON c.id = s.cuenta_id " +
+                   "WHERE c.cliente_id = :clienteId AND s.dia <= :hasta",
+           nativeQuery = true)
+    long movimientosHasta(@Param("clienteId") Long clienteId, @Param("hasta") LocalDate hasta);
+
+    // Cierre del último día con movimientos antes de "dia" = saldo al inicio de "dia",
+    // para varias cuentas en una sola consulta (saldo null = sin días previos).
+    @Query(value = "SELECT c.id AS cuentaId, " +
+                   "  (SELECT s.saldo_cierre FROM saldos_diarios s " +
+                   "   WHERE s.cuenta_id = c.id AND s.dia < :dia " +
+                   "   ORDER BY s.dia DESC LIMIT 1) AS saldo " +
+                   "FROM cuentas c WHERE c.id IN (:cuentaIds)",
+           nativeQuery = true)
+    List<SaldoCuenta> cierresAntesDe(@Param("cuentaIds") Collection<Long> cuentaIds, @Param("dia") LocalDate dia);
+}
@@ -0,0 +1,67 @@
+package com.pv.challenge.service;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Buffer circular acotado sin locks, de varios productores y un solo consumidor.
+ *
+ * Un productor reserva su posición con un CAS sobre la cola y después publica el
+ * elemento en la celda; el consumidor avanza la cabeza solo sobre celdas ya publicadas,
+ * así que los elementos salen en el orden en que se reservaron las posiciones.
+ */
+final class Anillo<T> {
+
+  private final AtomicReferenceArray<T> celdas;
+  private final int mascara;
+  private final AtomicLong cola = new AtomicLong();   // próxima posición a reservar
+  private final AtomicLong cabeza = new AtomicLong(); // próxima posición a consumir
+
+  // capacidad se redondea a la potencia de 2 siguiente
+  Anillo(int capacidad) {
+    int n = capacidad <= 2 ? 2 : Integer.highestOneBit(capacidad - 1) << 1;
+    this.celdas = new AtomicReferenceArray<>(n);
+    this.mascara = n - 1;
+  }
+
+  // false si está lleno
+  boolean ofrecer(T e) {
+    long t;
+    do {
+      t = cola.get();
+      if (t - cabeza.get() >= celdas.length()) return false;
+    } while (!cola.compareAndSet(t, t + 1));
+    celdas.set((int) t & mascara, e);
+    return true;
+  }
+
+  // Solo el consumidor: pasa a destino hasta max elementos publicados, en orden
+  int drenar(List<T> destino, int max) {
+    long h = cabeza.get();
+    int n = 0;
+    while (n < max) {
+      int i = (int) h & mascara;
+      T e = celdas.get(i);
+      if (e == null) break; // vacío, o reservado y todavía sin publicar
+      celdas.lazySet(i, null);
+      destino.add(e);
+      h++;
+      n++;
+    }
+    if (n > 0) cabeza.lazySet(h);
+    return n;
+  }
+
+  boolean vacio() {
+    return cola.get() == cabeza.get();
+  }
+
+  int tamano() {
+    return (int) (cola.get() - cabeza.get());
+  }
+
+  int capacidad() {
+    return celdas.length();
+  }
+}
@@ -0,0 +1,202 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.MovimientoDtos.LoteResponse;
+import com.pv.challenge.dto.MovimientoDtos.MovimientoResponse;
+import com.pv.challenge.dto.MovimientoDtos.OperacionLote;
+import com.pv.challenge.dto.MovimientoDtos.ResultadoLote;
+import com.pv.challenge.exception.BusinessException;
+import com.pv.challenge.exception.NotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Depósitos y retiros con commit agrupado (banco.asientos.agrupados=true).
+ *
+ * Cada asiento entra a un anillo acotado de su partición (cuentaId módulo particiones)
+ * y un escritor por partición los aplica de a lotes con MovimientoLoteService: un
+ * lote es una transacción con sus cuentas bloqueadas en orden de id. Mientras un lote
+ * confirma se acumulan los siguientes, así que bajo carga cada commit lleva muchos
+ * asientos y el pool de conexiones ve a lo sumo una transacción por escritor.
+ *
+ * Una cuenta siempre cae en la misma partición y el escritor respeta el orden del
+ * anillo, así que los asientos de una cuenta se aplican en el orden en que llegaron.
+ * El futuro de cada asiento se completa después del commit. Con el anillo lleno, o si
+ * el servicio se cerró antes de que el escritor lo tomara, el asiento se rechaza con
+ * RejectedExecutionException (503).
+ */
+@Service
+public class AsientosAgrupadosService {
+
+  private static final Logger log = LoggerFactory.getLogger(AsientosAgrupadosService.class);
+  private static final long ESPERA_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  static final class Pendiente {
+    final OperacionLote op;
+    final CompletableFuture<MovimientoResponse> futuro = new CompletableFuture<>();
+
+    Pendiente(OperacionLote op) {
+      this.op = op;
+    }
+  }
+
+  private final class Particion implements Runnable {
+    final Anillo<Pendiente> anillo;
+    final Thread hilo;
+    volatile boolean esperando;
+    volatile boolean terminado;
+
+    Particion(int numero, int capacidad) {
+      this.anillo = new Anillo<>(capacidad);
+      this.hilo = new Thread(this, "asientos-" + numero);
+      this.hilo.setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      List<Pendiente> lote = new ArrayList<>(maxLote);
+      while (corriendo || !anillo.vacio()) {
+        if (anillo.drenar(lote, maxLote) == 0) {
+          esperando = true;
+          if (anillo.vacio() && corriendo) LockSupport.parkNanos(ESPERA_NS);
+          esperando = false;
+          continue;
+        }
+        aplicar(lote);
+        lote.clear();
+      }
+      terminado = true;
+      descartarHuerfanos();
+    }
+
+    // Con el escritor terminado nadie más drena el anillo: lo que quede se rechaza.
+    // Lo llaman el escritor al salir y el productor que encoló después de cerrar().
+    synchronized void descartarHuerfanos() {
+      List<Pendiente> quedan = new ArrayList<>();
+      anillo.drenar(quedan, Integer.MAX_VALUE);
+      for (Pendiente p : quedan) {
+        p.futuro.completeExceptionally(new RejectedExecutionException("Asientos agrupados detenidos"));
+      }
+    }
+  }
+
+  private final MovimientoLoteService loteService;
+  private final boolean activo;
+  private final int maxLote;
+  private final long esperaMaximaMs;
+  private final Particion[] particiones;
+  private volatile boolean corriendo = true;
+
+  public AsientosAgrupadosService(MovimientoLoteService loteService,
+                                  @Value("${banco.asientos.agrupados:false}") boolean activo,
+                                  @Value("${banco.asientos.escritores:4}") int escritores,
+                                  @Value("${banco.asientos.capacidad:4096}") int capacidad,
+                                  @Value("${banco.asientos.lote-maximo:500}") int maxLote,
+                                  @Value("${banco.asientos.espera-maxima-ms:30000}") long esperaMaximaMs) {
+    this.loteService = loteService;
+    this.activo = activo;
+    this.maxLote = maxLote;
+    this.esperaMaximaMs = esperaMaximaMs;
+    this.particiones = new Particion[activo ? escritores : 0];
+    for (int i = 0; i < particiones.length; i++) {
+      particiones[i] = new Particion(i, capacidad);
+      particiones[i].hilo.start();
+    }
+  }
+
+  public boolean activo() {
+    return activo;
+  }
+
+  // Encola el asiento; el futuro se completa tras el commit de su lote
+  public CompletableFuture<MovimientoResponse> encolar(Long cuentaId, String tipo, BigDecimal monto, String ref) {
+    if (!activo || !corriendo) throw new IllegalStateException("Asientos agrupados desactivados");
+    OperacionLote op = new OperacionLote();
+    op.cuentaId = cuentaId;
+    op.tipo = tipo;
+    op.monto = monto;
+    op.ref = ref;
+    Pendiente p = new Pendiente(op);
+    Particion part = particiones[(int) Math.floorMod(cuentaId, (long) particiones.length)];
+    if (!part.anillo.ofrecer(p)) throw new RejectedExecutionException("Cola de asientos llena");
+    if (part.esperando) LockSupport.unpark(part.hilo);
+    // cerrar() pudo pasar entre el chequeo de arriba y ofrecer: si el escritor ya salió
+    // el asiento no lo va a aplicar nadie
+    if (!corriendo && part.terminado) part.descartarHuerfanos();
+    return p.futuro;
+  }
+
+  // Encola y espera el commit; los rechazos llegan con la misma excepción que el camino síncrono
+  public MovimientoResponse registrar(Long cuentaId, String tipo, BigDecimal monto, String ref) {
+    CompletableFuture<MovimientoResponse> futuro = encolar(cuentaId, tipo, monto, ref);
+    try {
+      return futuro.get(esperaMaximaMs, TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+      throw new IllegalStateException(e.getCause());
+    } catch (TimeoutException e) {
+      // Sigue en el anillo o confirmando y todavía puede aplicarse: no es un rechazo
+      throw new IllegalStateException("El asiento de la cuenta " + cuentaId + " no confirmó en "
+          + esperaMaximaMs + " ms");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrumpido esperando el asiento de la cuenta " + cuentaId, e);
+    }
+  }
+
+  public int pendientes() {
+    int n = 0;
+    for (Particion p : particiones) n += p.anillo.tamano();
+    return n;
+  }
+
+  // Deja de aceptar asientos y espera a que los escritores vacíen sus anillos
+  @PreDestroy
+  void cerrar() throws InterruptedException {
+    corriendo = false;
+    for (Particion p : particiones) {
+      LockSupport.unpark(p.hilo);
+      p.hilo.join(TimeUnit.SECONDS.toMillis(30));
+    }
+  }
+
+  void aplicar(List<Pendiente> lote) {
+    List<OperacionLote> ops = new ArrayList<>(lote.size());
+    for (Pendiente p : lote) ops.add(p.op);
+    LoteResponse r;
+    try {
+      r = loteService.registrar(ops);
+    } catch (RuntimeException e) {
+      log.error("Error aplicando {} asientos agrupados: {}", lote.size(), e.getMessage(), e);
+      for (Pendiente p : lote) p.futuro.completeExceptionally(e);
+      return;
+    }
+    for (ResultadoLote res : r.resultados) {
+      Pendiente p = lote.get(res.indice);
+      OperacionLote op = p.op;
+      if (res.ok) {
+        p.futuro.complete(new MovimientoResponse(res.movimientoId, op.cuentaId, op.tipo, op.monto, res.saldo,
+            res.fecha, op.ref));
+      } else if (res.falla != null) {
+        // Falla de base o de conexión: sale con la excepción original (5xx), no como rechazo
+        p.futuro.completeExceptionally(res.falla);
+      } else if (MovimientoLoteService.cuentaInexistente(op.cuentaId).equals(res.error)) {
+        p.futuro.completeExceptionally(new NotFoundException(res.error));
+      } else {
+        p.futuro.completeExceptionally(new BusinessException(res.error));
+      }
+    }
+  }
+}
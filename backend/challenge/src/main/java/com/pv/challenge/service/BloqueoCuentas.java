@@ -0,0 +1,111 @@
+package com.pv.challenge.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Cómo se serializan las escrituras sobre una cuenta (banco.cuentas.bloqueo):
+ *
+ * - ATOMICA: depósitos y retiros en un UPDATE condicional nativo (MovimientoRepository);
+ *   lo demás con la fila bloqueada. Es el comportamiento por defecto.
+ * - PESIMISTA: SELECT ... FOR UPDATE, cambio en la entidad y commit.
+ * - OPTIMISTA: lectura sin bloquear (quizá del cache de segundo nivel) y UPDATE
+ *   condicionado a la versión de la fila (@Version en Cuenta). Si otra transacción la
+ *   cambió antes, se reintenta entera con espera exponencial con jitter completo, hasta
+ *   banco.cuentas.reintentos intentos. Conviene con poca contención por cuenta.
+ *
+ * Las cuentas con saldo repartido siempre debitan con la fila bloqueada (hay que
+ * consolidar sus subsaldos) y los lotes siempre bloquean sus cuentas en orden de id.
+ */
+@Component
+public class BloqueoCuentas {
+
+  private static final Logger log = LoggerFactory.getLogger(BloqueoCuentas.class);
+
+  public enum Estrategia { PESIMISTA, OPTIMISTA, ATOMICA }
+
+  private final CacheSegundoNivel cache;
+  private final int intentos;
+  private final long baseNs;
+  private final long topeNs;
+  private volatile Estrategia estrategia;
+
+  private final LongAdder conflictos = new LongAdder();
+  private final LongAdder agotados = new LongAdder();
+
+  public BloqueoCuentas(CacheSegundoNivel cache,
+                        @Value("${banco.cuentas.bloqueo:atomica}") String estrategia,
+                        @Value("${banco.cuentas.reintentos:5}") int intentos,
+                        @Value("${banco.cuentas.reintento-base-ms:2}") long baseMs,
+                        @Value("${banco.cuentas.reintento-tope-ms:100}") long topeMs) {
+    this.cache = cache;
+    this.estrategia = Estrategia.valueOf(estrategia.trim().toUpperCase(Locale.ROOT));
+    this.intentos = Math.max(1, intentos);
+    this.baseNs = TimeUnit.MILLISECONDS.toNanos(baseMs);
+    this.topeNs = TimeUnit.MILLISECONDS.toNanos(topeMs);
+  }
+
+  public Estrategia estrategia() {
+    return estrategia;
+  }
+
+  // Para comparar estrategias en un mismo proceso (benchmarks); en producción la fija
+  // banco.cuentas.bloqueo
+  public void usar(Estrategia e) {
+    this.estrategia = e;
+  }
+
+  /**
+   * Corre el intento (una transacción completa) y lo repite si falla por un conflicto
+   * de versión. Antes de reintentar se sacan las cuentas del cache de segundo nivel,
+   * así el intento siguiente lee la versión vigente de la base. Agotados los intentos
+   * se propaga el último conflicto (409).
+   *
+   * Dentro de una transacción ya abierta (la reserva de una Idempotency-Key) el intento
+   * corre una sola vez: el conflicto la deja rollback-only y con la entidad vieja en el
+   * contexto de persistencia, así que reintenta quien la abrió, desde afuera.
+   */
+  public <T> T reintentar(Collection<Long> cuentaIds, Supplier<T> intento) {
+    if (TransactionSynchronizationManager.isActualTransactionActive()) return intento.get();
+    for (int n = 1; ; n++) {
+      try {
+        return intento.get();
+      } catch (OptimisticLockingFailureException e) {
+        conflictos.increment();
+        if (n >= intentos) {
+          agotados.increment();
+          log.debug("Cuentas {}: conflicto de versión después de {} intentos", cuentaIds, n);
+          throw e;
+        }
+        for (Long id : cuentaIds) cache.cuentaModificada(id);
+        LockSupport.parkNanos(espera(n));
+      }
+    }
+  }
+
+  // Jitter completo: al azar entre 0 y min(tope, base * 2^(n-1))
+  long espera(int n) {
+    long techo = Math.min(topeNs, baseNs << Math.min(n - 1, 20));
+    return techo <= 0 ? 0 : ThreadLocalRandom.current().nextLong(techo + 1);
+  }
+
+  public long conflictos() {
+    return conflictos.sum();
+  }
+
+  public long agotados() {
+    return agotados.sum();
+  }
+}
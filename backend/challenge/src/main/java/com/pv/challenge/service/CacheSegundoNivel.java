@@ -0,0 +1,113 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.CacheDtos.RegionCache;
+import com.pv.challenge.entity.Cuenta;
+import org.hibernate.cache.spi.TimestampsCache;
+import org.hibernate.cache.spi.access.EntityDataAccess;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coherencia del cache de segundo nivel ante escrituras que Hibernate no ve, y métricas
+ * por región. Los asientos nativos (UPDATE de saldo en un CTE) y el borrado en cascada
+ * de cuentas al eliminar un cliente cambian filas de "cuentas" sin pasar por la entidad.
+ *
+ * Para esas filas se toma el mismo soft lock que Hibernate toma al actualizar una
+ * entidad READ_WRITE: mientras dura la transacción nadie lee la cuenta del cache ni la
+ * vuelve a guardar, y al terminar solo puede guardarla una transacción que empezó
+ * después. Así una lectura que vio el saldo anterior al commit no lo deja cacheado.
+ */
+@Component
+public class CacheSegundoNivel {
+
+  private final EntityManager em;
+  private final EntityManagerFactory emf;
+  private final RegionesCache regiones;
+
+  public CacheSegundoNivel(EntityManager em, EntityManagerFactory emf, RegionesCache regiones) {
+    this.em = em;
+    this.emf = emf;
+    this.regiones = regiones;
+  }
+
+  // Asiento nativo sobre la cuenta (saldo): llamar dentro de la transacción del asiento.
+  public void cuentaModificada(Long cuentaId) {
+    bloquearCuentas(Collections.singletonList(cuentaId), false);
+  }
+
+  // Cuentas que la base borra en cascada: además se invalidan las búsquedas por número.
+  public void cuentasEliminadas(Collection<Long> cuentaIds) {
+    if (!cuentaIds.isEmpty()) bloquearCuentas(cuentaIds, true);
+  }
+
+  public List<RegionCache> metricas() {
+    Statistics st = emf.unwrap(SessionFactoryImplementor.class).getStatistics();
+    List<RegionCache> out = new ArrayList<>();
+    for (Map.Entry<String, Long> r : regiones.maxEntradas().entrySet()) {
+      boolean consulta = regiones.esConsulta(r.getKey());
+      CacheRegionStatistics e = consulta
+          ? st.getQueryRegionStatistics(r.getKey())
+          : st.getDomainDataRegionStatistics(r.getKey());
+      RegionCache m = new RegionCache();
+      m.region = r.getKey();
+      m.tipo = consulta ? "CONSULTA" : "ENTIDAD";
+      m.maxEntradas = r.getValue();
+      if (e != null) {
+        m.aciertos = e.getHitCount();
+        m.fallos = e.getMissCount();
+        m.escrituras = e.getPutCount();
+      }
+      long total = m.aciertos + m.fallos;
+      m.tasaAciertos = total == 0 ? 0 : (double) m.aciertos / total;
+      out.add(m);
+    }
+    return out;
+  }
+
+  private void bloquearCuentas(Collection<Long> cuentaIds, boolean invalidarConsultas) {
+    SessionImplementor s = em.unwrap(SessionImplementor.class);
+    SessionFactoryImplementor f = s.getFactory();
+    EntityPersister p = f.getMetamodel().entityPersister(Cuenta.class);
+    if (!p.canWriteToCache()) return;
+    EntityDataAccess acceso = p.getCacheAccessStrategy();
+    TimestampsCache marcas = invalidarConsultas ? f.getCache().getTimestampsCache() : null;
+    Serializable[] tablas = p.getQuerySpaces();
+
+    List<Object> claves = new ArrayList<>(cuentaIds.size());
+    for (Long id : cuentaIds) claves.add(acceso.generateCacheKey(id, p, f, s.getTenantIdentifier()));
+
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      for (Object k : claves) acceso.evict(k);
+      if (marcas != null) marcas.invalidate(tablas, s);
+      return;
+    }
+
+    List<SoftLock> locks = new ArrayList<>(claves.size());
+    for (Object k : claves) locks.add(acceso.lockItem(s, k, null));
+    if (marcas != null) marcas.preInvalidate(tablas, s);
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCompletion(int status) {
+        // Con commit o rollback: el lock se libera con marca de tiempo posterior al fin
+        for (int i = 0; i < claves.size(); i++) acceso.unlockItem(s, claves.get(i), locks.get(i));
+        if (marcas != null) marcas.invalidate(tablas, s);
+      }
+    });
+  }
+}
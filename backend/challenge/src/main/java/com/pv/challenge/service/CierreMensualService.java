@@ -0,0 +1,467 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.CierreDtos.Chunk;
+import com.pv.challenge.dto.CierreDtos.CierreResponse;
+import com.pv.challenge.exception.BusinessException;
+import com.pv.challenge.exception.NotFoundException;
+import com.pv.challenge.repo.ClienteRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Cierre de mes: estado de cuenta PDF de todos los clientes para un mes terminado.
+ *
+ * Recorre los clientes por chunks de ids (keyset) y genera los PDFs de cada chunk en
+ * paralelo en un pool del tamaño de los núcleos. Al terminar cada chunk guarda un
+ * checkpoint (último cliente hecho y contadores); si el proceso se reinicia, la
+ * corrida sigue desde ahí. Cada chunk registra estados por minuto y el uso del pool
+ * de conexiones mientras corrió.
+ */
+@Service
+public class CierreMensualService {
+
+  private static final Logger log = LoggerFactory.getLogger(CierreMensualService.class);
+  private static final String CHECKPOINT = "checkpoint.properties";
+  private static final String TEMPORAL = "tmp-";
+  private static final int CHUNKS_EN_RESPUESTA = 20;
+
+  public enum Estado { EN_PROCESO, LISTO, ERROR }
+
+  private enum Resultado { GENERADO, OMITIDO, ERROR }
+
+  private static final class Corrida {
+    final YearMonth periodo;
+    volatile boolean zip;
+    final Path dir;
+    volatile Estado estado = Estado.EN_PROCESO;
+    volatile Long ultimoClienteId;
+    final AtomicLong generados = new AtomicLong();
+    final AtomicLong omitidos = new AtomicLong();
+    final AtomicLong errores = new AtomicLong();
+    final AtomicLong generadosEstaEjecucion = new AtomicLong();
+    volatile long inicioNanos = System.nanoTime();
+    volatile OffsetDateTime inicio = OffsetDateTime.now();
+    volatile OffsetDateTime fin;
+    volatile Path archivoZip;
+    final Deque<Chunk> chunks = new ArrayDeque<>();
+
+    Corrida(YearMonth periodo, boolean zip, Path dir) {
+      this.periodo = periodo;
+      this.zip = zip;
+      this.dir = dir;
+    }
+  }
+
+  // Máximos del pool de conexiones vistos mientras corre un chunk
+  private static final class Carga {
+    final AtomicInteger activas = new AtomicInteger();
+    final AtomicInteger esperando = new AtomicInteger();
+  }
+
+  private final ClienteRepository clienteRepo;
+  private final ReporteService reporteService;
+  private final HikariDataSource hikari;
+  private final Path dirBase;
+  private final int tamanoChunk;
+  private final ThreadPoolExecutor pool;
+  private final ExecutorService coordinador;
+  private final Map<YearMonth, Corrida> corridas = new ConcurrentHashMap<>();
+  private Corrida actual;
+
+  public CierreMensualService(ClienteRepository clienteRepo,
+                              ReporteService reporteService,
+                              DataSource dataSource,
+                              @Value("${banco.reportes.dir:${java.io.tmpdir}/banco-reportes}") String dir,
+                              @Value("${banco.cierre.tamano-chunk:500}") int tamanoChunk,
+                              @Value("${banco.cierre.hilos:0}") int hilos) {
+    this.clienteRepo = clienteRepo;
+    this.reporteService = reporteService;
+    this.hikari = hikari(dataSource);
+    this.dirBase = Paths.get(dir, "cierres");
+    this.tamanoChunk = tamanoChunk;
+    try {
+      Files.createDirectories(dirBase);
+    } catch (IOException e) {
+      throw new UncheckedIOException("No se pudo crear " + dirBase, e);
+    }
+    int n = hilos > 0 ? hilos : Runtime.getRuntime().availableProcessors();
+    AtomicInteger cont = new AtomicInteger();
+    // La cola no necesita tope: el coordinador encola de a un chunk y espera
+    this.pool = new ThreadPoolExecutor(n, n, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+        r -> {
+          Thread t = new Thread(r, "cierre-" + cont.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        });
+    this.coordinador = Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "cierre-coordinador");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  public synchronized CierreResponse iniciar(String periodo, boolean zip) {
+    YearMonth ym = parsear(periodo);
+    if (!ym.isBefore(YearMonth.now(ZoneOffset.UTC))) {
+      throw new BusinessException("Solo se generan cierres de meses terminados.");
+    }
+    if (actual != null && actual.estado == Estado.EN_PROCESO) {
+      throw new BusinessException("Ya hay un cierre en curso (" + actual.periodo + ").");
+    }
+    Corrida c = cargarCheckpoint(ym);
+    if (c == null) {
+      c = new Corrida(ym, zip, dirBase.resolve(ym.toString()));
+    } else if (c.estado == Estado.LISTO && (c.archivoZip != null || !zip)) {
+      return respuesta(c);
+    }
+    c.zip = c.zip || zip;
+    Corrida corrida = c;
+    corrida.estado = Estado.EN_PROCESO;
+    corrida.fin = null;
+    corrida.inicio = OffsetDateTime.now();
+    corrida.inicioNanos = System.nanoTime();
+    corridas.put(ym, corrida);
+    actual = corrida;
+    coordinador.execute(() -> correr(corrida));
+    return respuesta(corrida);
+  }
+
+  public CierreResponse estado(String periodo) {
+    YearMonth ym = parsear(periodo);
+    Corrida c = corridas.get(ym);
+    if (c == null) c = cargarCheckpoint(ym);
+    if (c == null) throw new NotFoundException("No hay cierre para " + ym);
+    return respuesta(c);
+  }
+
+  // Después de un reinicio retoma la corrida que quedó a medias
+  @EventListener(ApplicationReadyEvent.class)
+  public void reanudarPendientes() {
+    try (Stream<Path> dirs = Files.list(dirBase)) {
+      for (Path d : dirs.filter(Files::isDirectory).collect(Collectors.toList())) {
+        // Una entrada ajena o un checkpoint dañado no frena la revisión de los demás meses
+        Corrida c;
+        try {
+          c = cargarCheckpoint(YearMonth.parse(d.getFileName().toString()));
+        } catch (RuntimeException e) {
+          log.warn("Se omite {} al buscar cierres pendientes: {}", d, e.getMessage());
+          continue;
+        }
+        if (c != null && c.estado == Estado.EN_PROCESO) {
+          log.info("Reanudando cierre {} después del cliente {}", c.periodo, c.ultimoClienteId);
+          iniciar(c.periodo.toString(), c.zip);
+          return;
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      log.warn("No se pudieron revisar cierres pendientes: {}", e.getMessage());
+    }
+  }
+
+  // Espera a que el coordinador deje escrito el último checkpoint antes de salir
+  @PreDestroy
+  void cerrar() {
+    coordinador.shutdownNow();
+    pool.shutdownNow();
+    try {
+      coordinador.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void correr(Corrida c) {
+    try {
+      Files.createDirectories(c.dir);
+      borrarTemporales(c.dir);
+      long ultimo = c.ultimoClienteId == null ? 0L : c.ultimoClienteId;
+      List<Long> ids;
+      while (!(ids = clienteRepo.idsDespuesDe(ultimo, PageRequest.of(0, tamanoChunk))).isEmpty()) {
+        Chunk ch = procesarChunk(c, ids);
+        ultimo = ids.get(ids.size() - 1);
+        c.ultimoClienteId = ultimo;
+        synchronized (c.chunks) {
+          c.chunks.addLast(ch);
+          if (c.chunks.size() > CHUNKS_EN_RESPUESTA) c.chunks.removeFirst();
+        }
+        guardarCheckpoint(c);
+        log.info("Cierre {}: clientes {}-{}, {} estados en {} ms ({} por minuto), conexiones activas máx {}, esperando máx {}",
+            c.periodo, ch.desdeClienteId, ch.hastaClienteId, ch.estados, ch.ms,
+            Math.round(ch.estadosPorMinuto), ch.conexionesActivasMax, ch.esperandoConexionMax);
+      }
+      if (c.zip) c.archivoZip = comprimir(c);
+      c.fin = OffsetDateTime.now();
+      c.estado = Estado.LISTO;
+      guardarCheckpoint(c);
+      log.info("Cierre {} terminado: {} generados, {} omitidos, {} errores",
+          c.periodo, c.generados.get(), c.omitidos.get(), c.errores.get());
+    } catch (InterruptedException e) {
+      // Apagado: el checkpoint queda EN_PROCESO y se retoma al arrancar
+      Thread.currentThread().interrupt();
+      log.info("Cierre {} interrumpido después del cliente {}", c.periodo, c.ultimoClienteId);
+    } catch (Exception e) {
+      log.error("Error en el cierre {}: {}", c.periodo, e.getMessage(), e);
+      c.fin = OffsetDateTime.now();
+      c.estado = Estado.ERROR;
+      try {
+        guardarCheckpoint(c);
+      } catch (IOException ex) {
+        log.warn("No se pudo guardar el checkpoint de {}: {}", c.periodo, ex.getMessage());
+      }
+    }
+  }
+
+  private Chunk procesarChunk(Corrida c, List<Long> ids) throws InterruptedException {
+    long t0 = System.nanoTime();
+    Carga carga = new Carga();
+    List<Future<Resultado>> fs = new ArrayList<>(ids.size());
+    for (Long id : ids) fs.add(pool.submit(() -> generarUno(c, id, carga)));
+
+    Chunk ch = new Chunk();
+    ch.desdeClienteId = ids.get(0);
+    ch.hastaClienteId = ids.get(ids.size() - 1);
+    try {
+      for (Future<Resultado> f : fs) {
+        Resultado r = f.get();
+        if (r == Resultado.GENERADO) {
+          ch.estados++;
+          c.generados.incrementAndGet();
+          c.generadosEstaEjecucion.incrementAndGet();
+        } else if (r == Resultado.OMITIDO) {
+          c.omitidos.incrementAndGet();
+        } else {
+          ch.errores++;
+          c.errores.incrementAndGet();
+        }
+      }
+    } catch (InterruptedException e) {
+      for (Future<Resultado> f : fs) f.cancel(true);
+      throw e;
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+    ch.ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+    ch.estadosPorMinuto = porMinuto(ch.estados, ch.ms);
+    ch.msPromedioPorEstado = ch.estados == 0 ? 0 : ch.ms * pool.getCorePoolSize() / ch.estados;
+    ch.conexionesActivasMax = carga.activas.get();
+    ch.esperandoConexionMax = carga.esperando.get();
+    return ch;
+  }
+
+  private Resultado generarUno(Corrida c, Long clienteId, Carga carga) {
+    Path destino = c.dir.resolve("c" + clienteId + ".pdf");
+    if (Files.exists(destino)) return Resultado.OMITIDO; // hecho antes de un reinicio
+    Path tmp = null;
+    try {
+      tmp = Files.createTempFile(c.dir, TEMPORAL, ".pdf");
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+        muestrear(carga);
+        reporteService.escribirPdf(clienteId, c.periodo.atDay(1), c.periodo.atEndOfMonth(), out);
+        muestrear(carga);
+      }
+      Files.move(tmp, destino, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      return Resultado.GENERADO;
+    } catch (Exception e) {
+      log.warn("Cierre {}: no se pudo generar el estado del cliente {}: {}", c.periodo, clienteId, e.getMessage());
+      borrar(tmp);
+      registrarError(c, clienteId, e);
+      return Resultado.ERROR;
+    }
+  }
+
+  private void muestrear(Carga carga) {
+    // El pool de Hikari arranca con la primera conexión: se busca al usar
+    HikariPoolMXBean poolConexiones = hikari == null ? null : hikari.getHikariPoolMXBean();
+    if (poolConexiones == null) return;
+    carga.activas.accumulateAndGet(poolConexiones.getActiveConnections(), Math::max);
+    carga.esperando.accumulateAndGet(poolConexiones.getThreadsAwaitingConnection(), Math::max);
+  }
+
+  private Path comprimir(Corrida c) throws IOException {
+    Path destino = c.dir.resolve("estados-" + c.periodo + ".zip");
+    Path tmp = Files.createTempFile(c.dir, TEMPORAL, ".zip");
+    List<Path> pdfs;
+    try (Stream<Path> s = Files.list(c.dir)) {
+      pdfs = s.filter(p -> p.getFileName().toString().endsWith(".pdf")
+              && !p.getFileName().toString().startsWith(TEMPORAL))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+    try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      zip.setLevel(Deflater.BEST_SPEED); // los PDF ya van comprimidos
+      for (Path p : pdfs) {
+        zip.putNextEntry(new ZipEntry(p.getFileName().toString()));
+        Files.copy(p, zip);
+        zip.closeEntry();
+      }
+    }
+    Files.move(tmp, destino, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    return destino;
+  }
+
+  private void registrarError(Corrida c, Long clienteId, Exception e) {
+    String linea = clienteId + "\t" + e.getClass().getSimpleName() + "\t" + e.getMessage() + "\n";
+    synchronized (c) {
+      try {
+        Files.write(c.dir.resolve("errores.log"), linea.getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+      } catch (IOException ex) {
+        log.warn("No se pudo registrar el error del cliente {}: {}", clienteId, ex.getMessage());
+      }
+    }
+  }
+
+  private void guardarCheckpoint(Corrida c) throws IOException {
+    Properties p = new Properties();
+    p.setProperty("periodo", c.periodo.toString());
+    p.setProperty("zip", String.valueOf(c.zip));
+    p.setProperty("estado", c.estado.name());
+    if (c.ultimoClienteId != null) p.setProperty("ultimoClienteId", c.ultimoClienteId.toString());
+    p.setProperty("generados", String.valueOf(c.generados.get()));
+    p.setProperty("omitidos", String.valueOf(c.omitidos.get()));
+    p.setProperty("errores", String.valueOf(c.errores.get()));
+    p.setProperty("inicio", c.inicio.toString());
+    if (c.fin != null) p.setProperty("fin", c.fin.toString());
+    if (c.archivoZip != null) p.setProperty("zip.archivo", c.archivoZip.getFileName().toString());
+
+    // Escritura atómica: un corte a mitad no deja un checkpoint ilegible
+    Path tmp = Files.createTempFile(c.dir, TEMPORAL, ".properties");
+    try (OutputStream out = Files.newOutputStream(tmp)) {
+      p.store(out, "Cierre " + c.periodo);
+    }
+    Files.move(tmp, c.dir.resolve(CHECKPOINT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private Corrida cargarCheckpoint(YearMonth ym) {
+    Path dir = dirBase.resolve(ym.toString());
+    Path archivo = dir.resolve(CHECKPOINT);
+    if (!Files.exists(archivo)) return null;
+    Properties p = new Properties();
+    try (InputStream in = Files.newInputStream(archivo)) {
+      p.load(in);
+    } catch (IOException e) {
+      throw new UncheckedIOException("No se pudo leer " + archivo, e);
+    }
+    Corrida c = new Corrida(ym, Boolean.parseBoolean(p.getProperty("zip")), dir);
+    c.estado = Estado.valueOf(p.getProperty("estado"));
+    String ultimo = p.getProperty("ultimoClienteId");
+    c.ultimoClienteId = ultimo == null ? null : Long.valueOf(ultimo);
+    c.generados.set(Long.parseLong(p.getProperty("generados", "0")));
+    c.omitidos.set(Long.parseLong(p.getProperty("omitidos", "0")));
+    c.errores.set(Long.parseLong(p.getProperty("errores", "0")));
+    c.inicio = OffsetDateTime.parse(p.getProperty("inicio"));
+    String fin = p.getProperty("fin");
+    c.fin = fin == null ? null : OffsetDateTime.parse(fin);
+    String zip = p.getProperty("zip.archivo");
+    c.archivoZip = zip == null ? null : dir.resolve(zip);
+    return c;
+  }
+
+  private CierreResponse respuesta(Corrida c) {
+    CierreResponse r = new CierreResponse();
+    r.periodo = c.periodo.toString();
+    r.estado = c.estado.name();
+    r.directorio = c.dir.toString();
+    r.zip = c.archivoZip == null ? null : c.archivoZip.toString();
+    r.generados = c.generados.get();
+    r.omitidos = c.omitidos.get();
+    r.errores = c.errores.get();
+    r.ultimoClienteId = c.ultimoClienteId;
+    r.estadosPorMinuto = porMinuto(c.generadosEstaEjecucion.get(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - c.inicioNanos));
+    r.inicio = c.inicio;
+    r.fin = c.fin;
+    synchronized (c.chunks) {
+      r.chunks.addAll(c.chunks);
+    }
+    return r;
+  }
+
+  private static double porMinuto(long estados, long ms) {
+    return ms == 0 ? 0 : estados * 60_000.0 / ms;
+  }
+
+  private static YearMonth parsear(String periodo) {
+    if (periodo == null) throw new BusinessException("periodo es requerido (yyyy-MM).");
+    try {
+      return YearMonth.parse(periodo);
+    } catch (DateTimeParseException e) {
+      throw new BusinessException("periodo debe tener el formato yyyy-MM.");
+    }
+  }
+
+  private static HikariDataSource hikari(DataSource ds) {
+    try {
+      if (ds != null && ds.isWrapperFor(HikariDataSource.class)) {
+        return ds.unwrap(HikariDataSource.class);
+      }
+    } catch (SQLException e) {
+      log.debug("DataSource sin métricas de pool: {}", e.getMessage());
+    }
+    return null;
+  }
+
+  private void borrarTemporales(Path dir) throws IOException {
+    try (Stream<Path> s = Files.list(dir)) {
+      for (Path p : s.filter(x -> x.getFileName().toString().startsWith(TEMPORAL)).collect(Collectors.toList())) {
+        Files.deleteIfExists(p);
+      }
+    }
+  }
+
+  private void borrar(Path p) {
+    if (p == null) return;
+    try {
+      Files.deleteIfExists(p);
+    } catch (IOException e) {
+      log.warn("No se pudo borrar {}: {}", p, e.getMessage());
+    }
+  }
+}
@@ -1,30 +1,57 @@
 package com.pv.challenge.service;
 
+import com.pv.challenge.dto.ClienteDtos.ClienteResponse;
+import com.pv.challenge.dto.ClienteDtos.PaginaClientes;
 import com.pv.challenge.dto.ClienteDtos.SaveClienteRequest;
 import com.pv.challenge.entity.Cliente;
 import com.pv.challenge.entity.Persona;
 import com.pv.challenge.exception.BusinessException;
 import com.pv.challenge.exception.NotFoundException;
 import com.pv.challenge.repo.ClienteRepository;
+import com.pv.challenge.repo.ClienteRepository.FilaCliente;
+import com.pv.challenge.repo.CuentaRepository;
 import com.pv.challenge.repo.PersonaRepository;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 @Service
 public class ClienteService {
 
+  static final int LIMITE_PAGINA = 500;
+  static final int LIMITE_BUSQUEDA = 100;
+  static final int LARGO_MAX_BUSQUEDA = 100;
+  // Con menos de 3 letras no hay trigramas: solo se buscan prefijos
+  private static final int MIN_SUBCADENA = 3;
+  // Subcadenas candidatas por resultado pedido, que luego se ordenan por similitud
+  private static final int CANDIDATOS = 10;
+
   private final PersonaRepository personaRepo;
   private final ClienteRepository clienteRepo;
+  private final CuentaRepository cuentaRepo;
+  private final CacheSegundoNivel cache;
+  private final IndiceCuentas indice;
+  private final ReporteCacheMemoria reporteCache;
 
   public ClienteService(
     PersonaRepository personaRepo,
-    ClienteRepository clienteRepo
+    ClienteRepository clienteRepo,
+    CuentaRepository cuentaRepo,
+    CacheSegundoNivel cache,
+    IndiceCuentas indice,
+    ReporteCacheMemoria reporteCache
   ) {
     this.personaRepo = personaRepo;
     this.clienteRepo = clienteRepo;
+    this.cuentaRepo = cuentaRepo;
+    this.cache = cache;
+    this.indice = indice;
+    this.reporteCache = reporteCache;
   }
 
   @Transactional
@@ -95,6 +122,8 @@ public class ClienteService {
     c.setContrasena(req.contrasena);
     if (req.estado != null) c.setEstado(req.estado);
 
+    // Los reportes cacheados llevan el nombre del cliente
+    reporteCache.invalidarCliente(id);
     return clienteRepo.save(c);
   }
 
@@ -103,13 +132,83 @@ public class ClienteService {
     if (!clienteRepo.existsById(id)) throw new NotFoundException(
       "Cliente " + id + " no existe"
     );
+    // Sus cuentas las borra la base en cascada, sin pasar por Hibernate
+    List<Long> cuentaIds = cuentaRepo.idsPorCliente(id);
     clienteRepo.deleteById(id);
+    cache.cuentasEliminadas(cuentaIds);
+    indice.eliminadas(cuentaIds);
+    reporteCache.invalidarCliente(id);
+  }
+
+  /**
+   * Clientes por id ascendente, de a "limite" por página, leídos con una proyección
+   * (cliente + persona en una consulta). El cursor es el id del último entregado.
+   */
+  @Transactional(readOnly = true)
+  public PaginaClientes listar(String cursor, int limite) {
+    if (limite < 1 || limite > LIMITE_PAGINA) {
+      throw new BusinessException("limite debe estar entre 1 y " + LIMITE_PAGINA + ".");
+    }
+    long despuesDe = 0;
+    if (cursor != null && !cursor.isEmpty()) {
+      try {
+        despuesDe = Long.parseLong(cursor);
+      } catch (NumberFormatException e) {
+        throw new BusinessException("cursor inválido.");
+      }
+    }
+
+    // Uno de más para saber si hay página siguiente
+    List<FilaCliente> filas = clienteRepo.paginaDespuesDe(despuesDe, PageRequest.of(0, limite + 1));
+    PaginaClientes p = new PaginaClientes();
+    for (int i = 0; i < Math.min(limite, filas.size()); i++) p.items.add(respuesta(filas.get(i)));
+    if (filas.size() > limite) p.siguiente = Long.toString(filas.get(limite - 1).getId());
+    return p;
   }
 
+  /**
+   * Clientes que coinciden con q, los mejores primero: identificación o clienteId
+   * exactos, luego por prefijo, prefijo del nombre, palabra del nombre y subcadena.
+   * Sin distinguir mayúsculas; cada criterio se resuelve con su índice.
+   */
   @Transactional(readOnly = true)
-    public List<Cliente> listar() {
-        return clienteRepo.findAll();
+  public List<ClienteResponse> buscar(String q, int limite) {
+    if (limite < 1 || limite > LIMITE_BUSQUEDA) {
+      throw new BusinessException("limite debe estar entre 1 y " + LIMITE_BUSQUEDA + ".");
     }
+    String t = q == null ? "" : q.trim().replaceAll("\\s+", " ");
+    if (t.isEmpty()) throw new BusinessException("q no puede estar vacío.");
+    if (t.length() > LARGO_MAX_BUSQUEDA) {
+      throw new BusinessException("q admite hasta " + LARGO_MAX_BUSQUEDA + " caracteres.");
+    }
+    String min = t.toLowerCase(Locale.ROOT);
+    String patron = escaparLike(min);
+
+    List<FilaCliente> filas = clienteRepo.buscar(t, min, escaparLike(t) + "%", patron + "%",
+        "% " + patron + "%", "%" + patron + "%", min.length() >= MIN_SUBCADENA, limite, limite * CANDIDATOS);
+    List<ClienteResponse> out = new ArrayList<>(filas.size());
+    for (FilaCliente f : filas) out.add(respuesta(f));
+    return out;
+  }
+
+  // Lo que el usuario escribe se busca literal: % y _ no son comodines
+  static String escaparLike(String s) {
+    return s.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+  }
+
+  private static ClienteResponse respuesta(FilaCliente f) {
+    ClienteResponse r = new ClienteResponse();
+    r.id = f.getId();
+    r.nombre = f.getNombre();
+    r.genero = f.getGenero();
+    r.edad = f.getEdad();
+    r.identificacion = f.getIdentificacion();
+    r.direccion = f.getDireccion();
+    r.telefono = f.getTelefono();
+    r.clienteId = f.getClienteId();
+    r.estado = f.getEstado();
+    return r;
+  }
 
   public Cliente obtener(Long id) {
     return clienteRepo
@@ -7,26 +7,51 @@ import com.pv.challenge.exception.BusinessException;
 import com.pv.challenge.exception.NotFoundException;
 import com.pv.challenge.repo.ClienteRepository;
 import com.pv.challenge.repo.CuentaRepository;
+import com.pv.challenge.repo.CuentaRepository.FilaCuenta;
 import com.pv.challenge.repo.MovimientoRepository;
+import com.pv.challenge.dto.CuentaDtos.CuentaResponse;
+import com.pv.challenge.dto.CuentaDtos.PaginaCuentas;
 import com.pv.challenge.dto.CuentaDtos.SaveCuentaRequest;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.OffsetDateTime;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 
 @Service
 public class CuentaService {
 
+    static final int LIMITE_PAGINA = 500;
+
     private final CuentaRepository cuentaRepo;
     private final ClienteRepository clienteRepo;
     private final MovimientoRepository movRepo;
+    private final SaldoDiarioService saldoDiarioService;
+    private final ReporteCacheMemoria reporteCache;
+    private final IndiceCuentas indice;
+    private final SubsaldosService subsaldos;
+    private final BloqueoCuentas bloqueo;
+    private final TransactionTemplate tx;
 
-    public CuentaService(CuentaRepository cuentaRepo, ClienteRepository clienteRepo, MovimientoRepository movRepo) {
+    public CuentaService(CuentaRepository cuentaRepo, ClienteRepository clienteRepo, MovimientoRepository movRepo,
+                         SaldoDiarioService saldoDiarioService, ReporteCacheMemoria reporteCache,
+                         IndiceCuentas indice, SubsaldosService subsaldos,
+                         BloqueoCuentas bloqueo, PlatformTransactionManager txManager) {
         this.cuentaRepo = cuentaRepo;
         this.clienteRepo = clienteRepo;
         this.movRepo = movRepo;
+        this.saldoDiarioService = saldoDiarioService;
+        this.reporteCache = reporteCache;
+        this.indice = indice;
+        this.subsaldos = subsaldos;
+        this.bloqueo = bloqueo;
+        this.tx = new TransactionTemplate(txManager);
     }
 
     @Transactional
@@ -55,37 +80,99 @@ public class CuentaService {
             m.setSaldo(ini);
             m.setReferencia("apertura");
             m.setFecha(OffsetDateTime.now());
-            movRepo.save(m);
+            saldoDiarioService.acumular(Collections.singletonList(movRepo.save(m)));
         }
+        reporteCache.invalidarCliente(cli.getId());
+        indice.confirmar(ct);
         return ct;
     }
 
-    @Transactional
+    // Con la fila bloqueada: la versión leída es la última y el índice de cuentas recibe
+    // el saldo vigente junto con el estado nuevo. Con la estrategia optimista se lee sin
+    // bloquear y se reintenta si la cuenta cambió entre la lectura y el UPDATE.
     public Cuenta actualizar(Long id, SaveCuentaRequest req) {
-        Cuenta ct = cuentaRepo.findById(id).orElseThrow(() -> new NotFoundException("Cuenta " + id + " no existe"));
+        if (bloqueo.estrategia() == BloqueoCuentas.Estrategia.OPTIMISTA && !subsaldos.repartida(id)) {
+            return bloqueo.reintentar(Collections.singletonList(id),
+                    () -> tx.execute(s -> actualizar(cuentaRepo.findById(id), id, req)));
+        }
+        return tx.execute(s -> actualizar(cuentaRepo.bloquearPorIds(Collections.singletonList(id)).stream().findFirst(), id, req));
+    }
+
+    private Cuenta actualizar(Optional<Cuenta> leida, Long id, SaveCuentaRequest req) {
+        Cuenta ct = leida.orElseThrow(() -> new NotFoundException("Cuenta " + id + " no existe"));
         if (!ct.getNumero().equals(req.numero)) {
             cuentaRepo.findByNumero(req.numero).ifPresent(x -> { throw new BusinessException("Número de cuenta ya existe"); });
             ct.setNumero(req.numero);
         }
         ct.setTipo(req.tipo);
         if (req.estado != null) ct.setEstado(req.estado);
+        reporteCache.invalidarCliente(ct.getCliente().getId());
+        indice.confirmar(ct);
         return cuentaRepo.save(ct);
     }
 
+    /**
+     * Cuentas por id ascendente con el nombre del titular, en una sola consulta de
+     * proyección (sin cargar Cliente ni Persona por fila). El cursor es el último id.
+     */
     @Transactional(readOnly = true)
-    public List<Cuenta> listar() { return cuentaRepo.findAll(); }
+    public PaginaCuentas listar(String cursor, int limite) {
+        if (limite < 1 || limite > LIMITE_PAGINA) {
+            throw new BusinessException("limite debe estar entre 1 y " + LIMITE_PAGINA + ".");
+        }
+        long despuesDe = 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                despuesDe = Long.parseLong(cursor);
+            } catch (NumberFormatException e) {
+                throw new BusinessException("cursor inválido.");
+            }
+        }
+
+        // Uno de más para saber si hay página siguiente
+        List<FilaCuenta> filas = cuentaRepo.paginaDespuesDe(despuesDe, PageRequest.of(0, limite + 1));
+        PaginaCuentas p = new PaginaCuentas();
+        for (int i = 0; i < Math.min(limite, filas.size()); i++) {
+            FilaCuenta f = filas.get(i);
+            CuentaResponse r = new CuentaResponse();
+            r.id = f.getId();
+            r.numero = f.getNumero();
+            r.tipo = f.getTipo();
+            // Las pocas cuentas con saldo repartido suman sus subsaldos
+            r.saldo = subsaldos.repartida(f.getId()) ? subsaldos.saldoTotal(f.getId()) : f.getSaldo();
+            r.estado = f.getEstado();
+            r.clienteId = f.getClienteId();
+            r.clienteNombre = f.getClienteNombre();
+            p.items.add(r);
+        }
+        if (filas.size() > limite) p.siguiente = Long.toString(filas.get(limite - 1).getId());
+        return p;
+    }
 
     @Transactional(readOnly = true)
     public List<Cuenta> listarPorCliente(Long clienteId) { return cuentaRepo.findByCliente_Id(clienteId); }
 
     @Transactional
     public void eliminar(Long id) {
-        if (!cuentaRepo.existsById(id)) throw new NotFoundException("Cuenta " + id + " no existe");
+        Long clienteId = cuentaRepo.clienteIdDe(id)
+                .orElseThrow(() -> new NotFoundException("Cuenta " + id + " no existe"));
         cuentaRepo.deleteById(id);
+        reporteCache.invalidarCliente(clienteId);
+        indice.eliminadas(Collections.singletonList(id));
     }
 
     @Transactional(readOnly = true)
     public Cuenta obtener(Long id) {
         return cuentaRepo.findById(id).orElseThrow(() -> new NotFoundException("Cuenta " + id + " no existe"));
     }
+
+    // Saldo justo antes del instante "at": el saldo del último movimiento anterior.
+    // Es la misma búsqueda que usa el reporte para el saldo inicial.
+    @Transactional(readOnly = true)
+    public BigDecimal saldoAl(Long id, OffsetDateTime at) {
+        Optional<Movimiento> ultimo = movRepo.findFirstByCuenta_IdAndFechaBeforeOrderByFechaDescIdDesc(id, at);
+        if (ultimo.isPresent()) return ultimo.get().getSaldo();
+        if (!cuentaRepo.existsById(id)) throw new NotFoundException("Cuenta " + id + " no existe");
+        return BigDecimal.ZERO;
+    }
 }
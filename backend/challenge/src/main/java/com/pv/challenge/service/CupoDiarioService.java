@@ -0,0 +1,193 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.entity.Cuenta;
+import com.pv.challenge.entity.Movimiento;
+import com.pv.challenge.exception.BusinessException;
+import com.pv.challenge.repo.ClienteRepository;
+import com.pv.challenge.repo.CuentaRepository;
+import com.pv.challenge.repo.MovimientoRepository;
+import com.pv.challenge.repo.RetiroDiarioRepository;
+import com.pv.challenge.repo.RetiroDiarioRepository.Total;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Cupo diario de retiros por cuenta y por cliente.
+ *
+ * Lo retirado en el día local (banco.retiros.zona) se lleva en contadores por cuenta y
+ * por cliente que se suman en la misma transacción que el retiro: verificar el cupo es
+ * actualizar una fila, sin sumar los movimientos del día. Al cambiar el día local los
+ * retiros caen en filas nuevas. Cuentan todos los asientos RETIRO (retiros, débito de
+ * transferencias y lotes), igual que la reconstrucción desde movimientos.
+ *
+ * Orden de locks: primero la cuenta (el UPDATE del saldo o FOR UPDATE) y después los
+ * contadores, en todos los caminos; así un retiro y una transferencia sobre la misma
+ * cuenta no se interbloquean.
+ */
+@Service
+public class CupoDiarioService {
+
+  private static final Logger log = LoggerFactory.getLogger(CupoDiarioService.class);
+  private static final int PAGINA_RECONSTRUCCION = 500;
+  // Límite en 0 = sin límite: el contador se mantiene igual, para poder activarlo después
+  private static final BigDecimal SIN_LIMITE = new BigDecimal("99999999999999999.99");
+
+  static final String CUPO_CUENTA = "Cupo diario excedido";
+  static final String CUPO_CLIENTE = "Cupo diario del cliente excedido";
+
+  private final RetiroDiarioRepository repo;
+  private final MovimientoRepository movRepo;
+  private final CuentaRepository cuentaRepo;
+  private final ClienteRepository clienteRepo;
+  private final TransactionTemplate tx;
+  private final ZoneId zona;
+  private final BigDecimal limiteCuenta;
+  private final BigDecimal limiteCliente;
+
+  public CupoDiarioService(RetiroDiarioRepository repo,
+                           MovimientoRepository movRepo,
+                           CuentaRepository cuentaRepo,
+                           ClienteRepository clienteRepo,
+                           PlatformTransactionManager txManager,
+                           @Value("${banco.retiros.zona:America/Guayaquil}") String zona,
+                           @Value("${banco.retiros.limite-diario-cuenta:0}") BigDecimal limiteCuenta,
+                           @Value("${banco.retiros.limite-diario-cliente:0}") BigDecimal limiteCliente) {
+    this.repo = repo;
+    this.movRepo = movRepo;
+    this.cuentaRepo = cuentaRepo;
+    this.clienteRepo = clienteRepo;
+    this.tx = new TransactionTemplate(txManager);
+    this.zona = ZoneId.of(zona);
+    this.limiteCuenta = limiteCuenta.signum() > 0 ? limiteCuenta : SIN_LIMITE;
+    this.limiteCliente = limiteCliente.signum() > 0 ? limiteCliente : SIN_LIMITE;
+  }
+
+  public LocalDate dia(OffsetDateTime fecha) {
+    return fecha.atZoneSameInstant(zona).toLocalDate();
+  }
+
+  public LocalDate hoy() {
+    return LocalDate.now(zona);
+  }
+
+  /**
+   * Suma un retiro a los contadores de su día, con la cuenta ya bloqueada por el
+   * asiento. Si pasa un cupo lanza BusinessException y la transacción se deshace
+   * junto con el asiento.
+   */
+  public void registrarRetiro(Long cuentaId, Long clienteId, BigDecimal monto, OffsetDateTime fecha) {
+    LocalDate d = dia(fecha);
+    if (!repo.sumarCuenta(cuentaId, d, monto, limiteCuenta).isPresent()) {
+      throw new BusinessException(CUPO_CUENTA);
+    }
+    if (!repo.sumarCliente(clienteId, d, monto, limiteCliente).isPresent()) {
+      throw new BusinessException(CUPO_CLIENTE);
+    }
+  }
+
+  /**
+   * Lotes: lee lo retirado hoy por cuentas ya bloqueadas y bloquea los contadores de
+   * sus clientes, para verificar los retiros del chunk en memoria. Los contadores se
+   * actualizan después con acumular().
+   */
+  public Cupos bloquear(Collection<Cuenta> cuentas, OffsetDateTime fecha) {
+    Cupos cupos = new Cupos(limiteCuenta, limiteCliente);
+    if (cuentas.isEmpty()) return cupos;
+    LocalDate d = dia(fecha);
+    List<Long> cuentaIds = new ArrayList<>(cuentas.size());
+    TreeSet<Long> clienteIds = new TreeSet<>();
+    for (Cuenta c : cuentas) {
+      cuentaIds.add(c.getId());
+      clienteIds.add(c.getCliente().getId());
+    }
+    for (Total t : repo.totalesCuentas(cuentaIds, d)) cupos.porCuenta.put(t.getId(), t.getTotal());
+    repo.crearClientes(clienteIds, d);
+    for (Total t : repo.bloquearClientes(clienteIds, d)) cupos.porCliente.put(t.getId(), t.getTotal());
+    return cupos;
+  }
+
+  // Debe llamarse dentro de la transacción que insertó los movimientos.
+  public void acumular(Collection<Movimiento> movimientos) {
+    List<Long> ids = new ArrayList<>(movimientos.size());
+    for (Movimiento m : movimientos) {
+      if ("RETIRO".equals(m.getTipo())) ids.add(m.getId());
+    }
+    if (ids.isEmpty()) return;
+    movRepo.flush(); // los INSERT pendientes deben existir antes de agregarlos
+    repo.acumularCuentas(ids, zona.getId());
+    repo.acumularClientes(ids, zona.getId());
+  }
+
+  /**
+   * Reconstruye los contadores de un día desde movimientos. De a una página de
+   * clientes por transacción, con sus cuentas bloqueadas para que ningún retiro
+   * concurrente quede a medias entre el borrado y la reconstrucción.
+   */
+  public int reconstruir(LocalDate dia) {
+    OffsetDateTime desde = dia.atStartOfDay(zona).toOffsetDateTime();
+    OffsetDateTime hasta = dia.plusDays(1).atStartOfDay(zona).toOffsetDateTime();
+    int clientes = 0;
+    long ultimo = 0L;
+    List<Long> pagina;
+    do {
+      pagina = clienteRepo.idsDespuesDe(ultimo, PageRequest.of(0, PAGINA_RECONSTRUCCION));
+      if (pagina.isEmpty()) break;
+      List<Long> ids = pagina;
+      tx.executeWithoutResult(s -> {
+        List<Long> cuentas = cuentaRepo.idsPorClientes(ids);
+        if (!cuentas.isEmpty()) {
+          cuentaRepo.bloquearPorIds(cuentas);
+          repo.borrarCuentas(cuentas, dia);
+          repo.reconstruirCuentas(cuentas, desde, hasta, zona.getId());
+        }
+        repo.borrarClientes(ids, dia);
+        repo.reconstruirClientes(ids, dia);
+      });
+      clientes += pagina.size();
+      ultimo = pagina.get(pagina.size() - 1);
+    } while (pagina.size() == PAGINA_RECONSTRUCCION);
+    log.info("Cupos diarios del {} reconstruidos para {} clientes", dia, clientes);
+    return clientes;
+  }
+
+  // Cupos de un chunk de lote: lo retirado en el día por cuenta y por cliente
+  public static final class Cupos {
+    final Map<Long, BigDecimal> porCuenta = new HashMap<>();
+    final Map<Long, BigDecimal> porCliente = new HashMap<>();
+    private final BigDecimal limiteCuenta;
+    private final BigDecimal limiteCliente;
+
+    Cupos(BigDecimal limiteCuenta, BigDecimal limiteCliente) {
+      this.limiteCuenta = limiteCuenta;
+      this.limiteCliente = limiteCliente;
+    }
+
+    // Descuenta el retiro de ambos cupos si entra; si no, devuelve el motivo del rechazo
+    public String reservar(Cuenta c, BigDecimal monto) {
+      Long clienteId = c.getCliente().getId();
+      BigDecimal cuenta = porCuenta.getOrDefault(c.getId(), BigDecimal.ZERO).add(monto);
+      if (cuenta.compareTo(limiteCuenta) > 0) return CUPO_CUENTA;
+      BigDecimal cliente = porCliente.getOrDefault(clienteId, BigDecimal.ZERO).add(monto);
+      if (cliente.compareTo(limiteCliente) > 0) return CUPO_CLIENTE;
+      porCuenta.put(c.getId(), cuenta);
+      porCliente.put(clienteId, cliente);
+      return null;
+    }
+  }
+}
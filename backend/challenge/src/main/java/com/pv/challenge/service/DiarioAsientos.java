@@ -0,0 +1,279 @@
+package com.pv.challenge.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Diario de asientos de solo agregado sobre archivos mapeados en memoria.
+ *
+ * Se divide en segmentos de tamaño fijo (diario-{primera secuencia}.log). Cada entrada
+ * es [largo][crc32][secuencia][cuentaId][fecha][monto][ref]; un largo -1 cierra un
+ * segmento lleno. Al abrir se recorren los segmentos y se corta en la primera entrada
+ * que no es la secuencia esperada o no pasa el crc: lo que quedó a medias en un corte
+ * nunca se confirmó al cliente con fsync.
+ *
+ * Varios hilos anotan; uno solo lee (leer()), en orden, hasta lo publicado.
+ */
+final class DiarioAsientos implements AutoCloseable {
+
+  private static final String PREFIJO = "diario-";
+  private static final int CABECERA = 8;      // largo + crc
+  private static final int FIN_SEGMENTO = -1;
+
+  static final class Entrada {
+    final long secuencia;
+    final long cuentaId;
+    final OffsetDateTime fecha;
+    final BigDecimal monto;
+    final String ref;
+
+    Entrada(long secuencia, long cuentaId, OffsetDateTime fecha, BigDecimal monto, String ref) {
+      this.secuencia = secuencia;
+      this.cuentaId = cuentaId;
+      this.fecha = fecha;
+      this.monto = monto;
+      this.ref = ref;
+    }
+  }
+
+  private static final class Segmento {
+    final long primera;
+    final Path archivo;
+    final MappedByteBuffer buffer;
+
+    Segmento(long primera, Path archivo, MappedByteBuffer buffer) {
+      this.primera = primera;
+      this.archivo = archivo;
+      this.buffer = buffer;
+    }
+  }
+
+  private final Path dir;
+  private final int tamanoSegmento;
+  private final List<Segmento> segmentos = new CopyOnWriteArrayList<>();
+  private final Object fsync = new Object();
+
+  // Escritura, bajo el lock del diario
+  private int posicion;
+  private volatile long publicada;   // última secuencia escrita completa
+  private volatile long durable;     // última secuencia con fsync
+
+  // Lectura, de un solo hilo
+  private int segmentoLectura;
+  private int posicionLectura;
+  private long leida;
+
+  /**
+   * Abre el diario en dir. aplicada es la última secuencia ya aplicada a la base: la
+   * lectura sigue después de ella y las secuencias nuevas no la repiten, aunque el
+   * directorio se haya vaciado.
+   */
+  DiarioAsientos(Path dir, int tamanoSegmento, long aplicada) {
+    this.dir = dir;
+    this.tamanoSegmento = tamanoSegmento;
+    try {
+      Files.createDirectories(dir);
+      List<Path> archivos;
+      try (Stream<Path> s = Files.list(dir)) {
+        archivos = s.filter(p -> p.getFileName().toString().startsWith(PREFIJO))
+            .sorted((a, b) -> Long.compare(primera(a), primera(b)))
+            .collect(Collectors.toList());
+      }
+      long esperada = archivos.isEmpty() ? 0 : primera(archivos.get(0));
+      for (Path p : archivos) {
+        if (primera(p) != esperada) break; // hueco: lo que sigue no es continuación
+        Segmento seg = new Segmento(esperada, p, mapear(p));
+        segmentos.add(seg);
+        int pos = 0;
+        Entrada e;
+        while ((e = leerEn(seg.buffer, pos)) != null && e.secuencia == esperada) {
+          pos += CABECERA + seg.buffer.getInt(pos);
+          esperada++;
+        }
+        posicion = pos;
+        if (pos + 4 > tamanoSegmento || seg.buffer.getInt(pos) != FIN_SEGMENTO) break;
+      }
+      for (Path p : archivos) {
+        if (segmentos.stream().noneMatch(s -> s.archivo.equals(p))) Files.delete(p);
+      }
+
+      long ultima = esperada - 1;
+      if (segmentos.isEmpty() || ultima <= aplicada) {
+        // Todo lo que hay ya está en la base: se empieza de nuevo después de lo aplicado
+        for (Segmento s : segmentos) Files.deleteIfExists(s.archivo);
+        segmentos.clear();
+        ultima = aplicada;
+        nuevoSegmento(ultima + 1);
+      }
+      publicada = ultima;
+      durable = ultima;
+      leida = segmentos.get(0).primera - 1;
+      while (leida < aplicada) leer();
+    } catch (IOException e) {
+      throw new UncheckedIOException("No se pudo abrir el diario de asientos en " + dir, e);
+    }
+  }
+
+  // Agrega una entrada y devuelve su secuencia; queda legible pero no necesariamente durable
+  synchronized long anotar(long cuentaId, OffsetDateTime fecha, BigDecimal monto, String ref) {
+    byte[] m = monto.toPlainString().getBytes(StandardCharsets.UTF_8);
+    byte[] r = ref == null ? null : ref.getBytes(StandardCharsets.UTF_8);
+    int largo = 8 + 8 + 8 + 4 + 2 + m.length + 2 + (r == null ? 0 : r.length);
+    if (CABECERA + largo + 4 > tamanoSegmento) throw new IllegalArgumentException("Entrada más grande que un segmento");
+    long sec = publicada + 1;
+    if (posicion + CABECERA + largo + 4 > tamanoSegmento) {
+      segmentos.get(segmentos.size() - 1).buffer.putInt(posicion, FIN_SEGMENTO);
+      nuevoSegmento(sec);
+    }
+    MappedByteBuffer seg = segmentos.get(segmentos.size() - 1).buffer;
+    ByteBuffer b = vista(seg, posicion + CABECERA, posicion + CABECERA + largo);
+    Instant i = fecha.toInstant();
+    b.putLong(sec).putLong(cuentaId).putLong(i.getEpochSecond()).putInt(i.getNano());
+    b.putShort((short) m.length).put(m);
+    b.putShort((short) (r == null ? -1 : r.length));
+    if (r != null) b.put(r);
+    seg.putInt(posicion + 4, crc(seg, posicion + CABECERA, largo));
+    seg.putInt(posicion, largo); // el largo al final; igual la valida el crc al releer
+    posicion += CABECERA + largo;
+    publicada = sec;
+    return sec;
+  }
+
+  // fsync hasta al menos la secuencia dada; los que llegan mientras otro fuerza lo aprovechan
+  void sincronizar(long secuencia) {
+    if (durable >= secuencia) return;
+    synchronized (fsync) {
+      if (durable >= secuencia) return;
+      long hasta = publicada;
+      for (Segmento s : segmentos) {
+        if (s.primera <= hasta) s.buffer.force();
+      }
+      durable = hasta;
+    }
+  }
+
+  // Siguiente entrada publicada, o null si el lector está al día
+  Entrada leer() {
+    if (leida >= publicada) return null;
+    while (true) {
+      Segmento seg = segmentos.get(segmentoLectura);
+      int largo = posicionLectura + 4 <= tamanoSegmento ? seg.buffer.getInt(posicionLectura) : FIN_SEGMENTO;
+      if (largo == FIN_SEGMENTO) {
+        segmentoLectura++;
+        posicionLectura = 0;
+        continue;
+      }
+      Entrada e = leerEn(seg.buffer, posicionLectura);
+      if (e == null || e.secuencia != leida + 1) {
+        throw new IllegalStateException("Diario inconsistente después de la secuencia " + leida);
+      }
+      posicionLectura += CABECERA + largo;
+      leida = e.secuencia;
+      return e;
+    }
+  }
+
+  // Borra los segmentos ya leídos enteros cuyas entradas están aplicadas
+  void liberarHasta(long aplicada) throws IOException {
+    while (segmentoLectura > 0 && segmentos.get(1).primera - 1 <= aplicada) {
+      Files.deleteIfExists(segmentos.remove(0).archivo);
+      segmentoLectura--;
+    }
+  }
+
+  long publicada() {
+    return publicada;
+  }
+
+  long durable() {
+    return durable;
+  }
+
+  long leida() {
+    return leida;
+  }
+
+  int segmentos() {
+    return segmentos.size();
+  }
+
+  @Override
+  public void close() {
+    sincronizar(publicada);
+  }
+
+  private void nuevoSegmento(long primera) {
+    Path p = dir.resolve(String.format("%s%020d.log", PREFIJO, primera));
+    try {
+      segmentos.add(new Segmento(primera, p, mapear(p)));
+    } catch (IOException e) {
+      throw new UncheckedIOException("No se pudo crear el segmento " + p, e);
+    }
+    posicion = 0;
+  }
+
+  private MappedByteBuffer mapear(Path p) throws IOException {
+    try (FileChannel ch = FileChannel.open(p, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      return ch.map(FileChannel.MapMode.READ_WRITE, 0, tamanoSegmento);
+    }
+  }
+
+  // Entrada en pos, o null si no hay una completa (largo fuera de rango o crc distinto)
+  private Entrada leerEn(MappedByteBuffer seg, int pos) {
+    if (pos + CABECERA > tamanoSegmento) return null;
+    int largo = seg.getInt(pos);
+    if (largo <= 0 || pos + CABECERA + largo > tamanoSegmento) return null;
+    if (crc(seg, pos + CABECERA, largo) != seg.getInt(pos + 4)) return null;
+    ByteBuffer b = vista(seg, pos + CABECERA, pos + CABECERA + largo);
+    long sec = b.getLong();
+    long cuentaId = b.getLong();
+    OffsetDateTime fecha = Instant.ofEpochSecond(b.getLong(), b.getInt()).atOffset(ZoneOffset.UTC);
+    byte[] m = new byte[b.getShort()];
+    b.get(m);
+    short largoRef = b.getShort();
+    String ref = null;
+    if (largoRef >= 0) {
+      byte[] r = new byte[largoRef];
+      b.get(r);
+      ref = new String(r, StandardCharsets.UTF_8);
+    }
+    return new Entrada(sec, cuentaId, fecha, new BigDecimal(new String(m, StandardCharsets.UTF_8)), ref);
+  }
+
+  private static int crc(MappedByteBuffer seg, int desde, int largo) {
+    CRC32 c = new CRC32();
+    c.update(vista(seg, desde, desde + largo));
+    return (int) c.getValue();
+  }
+
+  // Vista independiente de [desde, hasta) del segmento: cada hilo con su propia posición.
+  // Por Buffer para no depender de los overrides covariantes de Java 9+.
+  private static ByteBuffer vista(MappedByteBuffer seg, int desde, int hasta) {
+    Buffer b = seg.duplicate();
+    b.limit(hasta).position(desde);
+    return (ByteBuffer) b;
+  }
+
+  private static long primera(Path p) {
+    String n = p.getFileName().toString();
+    return Long.parseLong(n.substring(PREFIJO.length(), n.length() - ".log".length()));
+  }
+}
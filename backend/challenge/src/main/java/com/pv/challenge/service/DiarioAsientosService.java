@@ -0,0 +1,266 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.MovimientoDtos.AcuseDiario;
+import com.pv.challenge.dto.MovimientoDtos.EstadoDiario;
+import com.pv.challenge.dto.MovimientoDtos.LoteResponse;
+import com.pv.challenge.dto.MovimientoDtos.OperacionLote;
+import com.pv.challenge.dto.MovimientoDtos.ResultadoLote;
+import com.pv.challenge.exception.BusinessException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Depósitos diferidos (banco.diario.activo=true): el asiento se anota en un diario local
+ * de solo agregado (DiarioAsientos), se fuerza a disco según banco.diario.fsync y se
+ * confirma al cliente; un hilo aplicador lo pasa después a cuentas y movimientos.
+ *
+ * El aplicador lee el diario en orden y aplica de a lotes con MovimientoLoteService,
+ * en la misma transacción que avanza diarios_aplicados (última secuencia aplicada de
+ * este nodo). Al arrancar se relee el diario desde esa secuencia: lo ya aplicado no se
+ * repite y lo pendiente se aplica, aunque el corte haya sido a mitad de un lote.
+ *
+ * Solo depósitos: un retiro necesita el saldo de la base para confirmarse. Un depósito
+ * anotado que la base rechaza (cuenta inexistente o eliminada entre el acuse y la
+ * aplicación) se cuenta en rechazados y queda en el log.
+ *
+ * El movimiento lleva la fecha de aplicación y la del acuse en fecha_origen: con la del
+ * acuse quedaría detrás de movimientos posteriores con saldos que no la incluyen, y un
+ * lote reaplicado pasada la medianoche reescribiría el cierre de un día ya cerrado.
+ */
+@Service
+public class DiarioAsientosService {
+
+  private static final Logger log = LoggerFactory.getLogger(DiarioAsientosService.class);
+  private static final long ESPERA_NS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final long REINTENTO_MAX_MS = 5_000;
+  private static final int REF_MAXIMA = 150;
+
+  enum Fsync { SIEMPRE, PERIODICO, NUNCA }
+
+  private final MovimientoLoteService loteService;
+  private final JdbcTemplate jdbc;
+  private final TransactionTemplate tx;
+  private final boolean activo;
+  private final Path dir;
+  private final Fsync fsync;
+  private final long fsyncMs;
+  private final int tamanoSegmento;
+  private final int maxLote;
+  private final String nodo;
+
+  private volatile DiarioAsientos diario;
+  private volatile Thread aplicador;
+  private volatile boolean corriendo;
+  private volatile boolean esperando;
+  private volatile long aplicada;
+  private volatile long pendienteDesdeMs;
+  private final AtomicLong rechazados = new AtomicLong();
+  private ScheduledExecutorService sincronizador;
+
+  public DiarioAsientosService(MovimientoLoteService loteService,
+                               JdbcTemplate jdbc,
+                               PlatformTransactionManager txManager,
+                               @Value("${banco.diario.activo:false}") boolean activo,
+                               @Value("${banco.diario.dir:${java.io.tmpdir}/banco-diario}") String dir,
+                               @Value("${banco.diario.fsync:siempre}") String fsync,
+                               @Value("${banco.diario.fsync-ms:10}") long fsyncMs,
+                               @Value("${banco.diario.segmento-bytes:67108864}") int tamanoSegmento,
+                               @Value("${banco.diario.lote-maximo:500}") int maxLote,
+                               @Value("${banco.diario.nodo:${HOSTNAME:local}}") String nodo) {
+    this.loteService = loteService;
+    this.jdbc = jdbc;
+    this.tx = new TransactionTemplate(txManager);
+    this.activo = activo;
+    this.dir = Paths.get(dir);
+    this.fsync = Fsync.valueOf(fsync.trim().toUpperCase(Locale.ROOT));
+    this.fsyncMs = fsyncMs;
+    this.tamanoSegmento = tamanoSegmento;
+    this.maxLote = maxLote;
+    this.nodo = nodo;
+  }
+
+  public boolean activo() {
+    return activo;
+  }
+
+  // Abre el diario desde lo ya aplicado y arranca el aplicador, que repasa lo pendiente
+  @EventListener(ApplicationReadyEvent.class)
+  public synchronized void iniciar() {
+    if (!activo || diario != null) return;
+    jdbc.update("INSERT INTO diarios_aplicados (nodo, secuencia) VALUES (?, 0) ON CONFLICT (nodo) DO NOTHING", nodo);
+    Long desde = jdbc.queryForObject("SELECT secuencia FROM diarios_aplicados WHERE nodo = ?", Long.class, nodo);
+    aplicada = desde == null ? 0 : desde;
+    diario = new DiarioAsientos(dir, tamanoSegmento, aplicada);
+    if (diario.publicada() > aplicada) {
+      log.info("Diario de asientos: {} asientos pendientes después de la secuencia {}",
+          diario.publicada() - aplicada, aplicada);
+    }
+    corriendo = true;
+    aplicador = new Thread(this::aplicarPendientes, "diario-aplicador");
+    aplicador.setDaemon(true);
+    aplicador.start();
+    if (fsync == Fsync.PERIODICO) {
+      sincronizador = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "diario-fsync");
+        t.setDaemon(true);
+        return t;
+      });
+      sincronizador.scheduleWithFixedDelay(() -> diario.sincronizar(diario.publicada()),
+          fsyncMs, fsyncMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Anota el depósito y lo confirma sin esperar a la base. Con fsync=siempre vuelve
+   * después del fsync (los que llegan juntos comparten uno); con periodico o nunca,
+   * un corte puede perder los últimos acuses.
+   */
+  public AcuseDiario depositar(Long cuentaId, BigDecimal monto, String ref) {
+    if (!activo) throw new BusinessException("El diario de asientos no está activo.");
+    if (cuentaId == null) throw new BusinessException("cuentaId es requerido.");
+    if (monto == null || monto.signum() <= 0) throw new BusinessException("El monto debe ser mayor a 0.");
+    if (ref != null && ref.length() > REF_MAXIMA) {
+      throw new BusinessException("La referencia admite hasta " + REF_MAXIMA + " caracteres.");
+    }
+    DiarioAsientos d = diario;
+    if (d == null || !corriendo) throw new RejectedExecutionException("Diario de asientos no disponible");
+
+    OffsetDateTime fecha = OffsetDateTime.now();
+    long secuencia = d.anotar(cuentaId, fecha, monto, ref);
+    if (fsync == Fsync.SIEMPRE) d.sincronizar(secuencia);
+    if (esperando) LockSupport.unpark(aplicador);
+
+    AcuseDiario a = new AcuseDiario();
+    a.secuencia = secuencia;
+    a.cuentaId = cuentaId;
+    a.valor = monto;
+    a.fecha = fecha;
+    a.referencia = ref;
+    a.durable = d.durable() >= secuencia;
+    return a;
+  }
+
+  public EstadoDiario estado() {
+    EstadoDiario e = new EstadoDiario();
+    e.activo = activo;
+    e.nodo = nodo;
+    e.fsync = fsync.name();
+    DiarioAsientos d = diario;
+    if (d == null) return e;
+    e.escrita = d.publicada();
+    e.durable = d.durable();
+    e.aplicada = aplicada;
+    e.pendientes = Math.max(0, e.escrita - e.aplicada);
+    long desde = pendienteDesdeMs;
+    e.atrasoMs = e.pendientes > 0 && desde > 0 ? Math.max(0, System.currentTimeMillis() - desde) : 0;
+    e.rechazados = rechazados.get();
+    e.segmentos = d.segmentos();
+    return e;
+  }
+
+  // Deja de aceptar, aplica lo que quedó anotado y fuerza el diario a disco
+  @PreDestroy
+  synchronized void cerrar() throws InterruptedException {
+    if (diario == null) return;
+    corriendo = false;
+    if (sincronizador != null) sincronizador.shutdownNow();
+    LockSupport.unpark(aplicador);
+    aplicador.join(TimeUnit.SECONDS.toMillis(30));
+    diario.close();
+  }
+
+  private void aplicarPendientes() {
+    List<DiarioAsientos.Entrada> lote = new ArrayList<>(maxLote);
+    while (true) {
+      DiarioAsientos.Entrada e;
+      while (lote.size() < maxLote && (e = diario.leer()) != null) lote.add(e);
+      if (lote.isEmpty()) {
+        if (!corriendo) return;
+        esperando = true;
+        if (diario.leida() >= diario.publicada() && corriendo) LockSupport.parkNanos(ESPERA_NS);
+        esperando = false;
+        continue;
+      }
+      pendienteDesdeMs = lote.get(0).fecha.toInstant().toEpochMilli();
+      if (!aplicarConReintentos(lote)) return;
+      lote.clear();
+      if (diario.leida() >= diario.publicada()) pendienteDesdeMs = 0;
+    }
+  }
+
+  // Reintenta el mismo lote hasta que confirme; false si se cerró sin lograrlo
+  private boolean aplicarConReintentos(List<DiarioAsientos.Entrada> lote) {
+    long esperaMs = 50;
+    while (true) {
+      try {
+        aplicar(lote);
+        return true;
+      } catch (RuntimeException ex) {
+        log.error("Error aplicando {} asientos del diario desde la secuencia {}; se reintenta en {} ms: {}",
+            lote.size(), lote.get(0).secuencia, esperaMs, ex.getMessage(), ex);
+        if (!corriendo) return false; // al reiniciar se retoma desde diarios_aplicados
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(esperaMs));
+        esperaMs = Math.min(esperaMs * 2, REINTENTO_MAX_MS);
+      }
+    }
+  }
+
+  void aplicar(List<DiarioAsientos.Entrada> lote) {
+    List<OperacionLote> ops = new ArrayList<>(lote.size());
+    List<OffsetDateTime> acuses = new ArrayList<>(lote.size());
+    for (DiarioAsientos.Entrada e : lote) {
+      OperacionLote op = new OperacionLote();
+      op.cuentaId = e.cuentaId;
+      op.tipo = "DEPOSITO";
+      op.monto = e.monto;
+      op.ref = e.ref;
+      ops.add(op);
+      acuses.add(e.fecha);
+    }
+    long hasta = lote.get(lote.size() - 1).secuencia;
+
+    // Un error de un chunk deja la transacción en rollback-only: el commit falla y el
+    // lote entero se reintenta, sin que avance diarios_aplicados
+    LoteResponse r = tx.execute(s -> {
+      LoteResponse res = loteService.registrar(ops, acuses);
+      jdbc.update("UPDATE diarios_aplicados SET secuencia = ? WHERE nodo = ? AND secuencia < ?", hasta, nodo, hasta);
+      return res;
+    });
+
+    for (ResultadoLote res : r.resultados) {
+      if (res.ok) continue;
+      rechazados.incrementAndGet();
+      DiarioAsientos.Entrada e = lote.get(res.indice);
+      log.warn("Asiento {} del diario rechazado (cuenta {}, monto {}): {}", e.secuencia, e.cuentaId, e.monto, res.error);
+    }
+    try {
+      diario.liberarHasta(hasta);
+    } catch (IOException ex) {
+      log.warn("No se pudieron borrar segmentos aplicados del diario: {}", ex.getMessage());
+    }
+    aplicada = hasta;
+  }
+}
@@ -0,0 +1,76 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.ReporteLineaDtos;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Estado de cuenta en CSV (RFC 4180, UTF-8 con BOM para que las planillas reconozcan
+ * la codificación). Una fila por línea con las mismas columnas que el PDF; los totales
+ * no se agregan para que el archivo quede tabular. Solo retiene el buffer del writer.
+ * Los textos que una planilla tomaría como fórmula (empiezan con =, +, -, @, tab o
+ * retorno de carro) se escriben precedidos de un apóstrofo.
+ */
+final class EstadoCuentaCsv implements SalidaEstadoCuenta {
+
+  static final String ENCABEZADO =
+      "fecha,cliente,numeroCuenta,tipoCuenta,saldoInicial,estado,movimiento,saldoDisponible";
+
+  private final Writer w;
+
+  EstadoCuentaCsv(OutputStream out) throws IOException {
+    w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 16 * 1024);
+    w.write('\uFEFF');
+    w.write(ENCABEZADO);
+    w.write("\r\n");
+  }
+
+  @Override
+  public void agregar(ReporteLineaDtos it) throws IOException {
+    w.write(it.getFecha().toString());
+    w.write(',');
+    campo(it.getCliente());
+    w.write(',');
+    campo(it.getNumeroCuenta());
+    w.write(',');
+    campo(it.getTipoCuenta());
+    w.write(',');
+    w.write(it.getSaldoInicial().toPlainString());
+    w.write(',');
+    w.write(Boolean.toString(it.isEstado()));
+    w.write(',');
+    w.write(it.getMovimiento().toPlainString());
+    w.write(',');
+    w.write(it.getSaldoDisponible().toPlainString());
+    w.write("\r\n");
+  }
+
+  @Override
+  public void totales(BigDecimal totalCreditos, BigDecimal totalDebitos) {
+  }
+
+  // Vacía el buffer; el stream es del llamador
+  @Override
+  public void close() throws IOException {
+    w.flush();
+  }
+
+  private void campo(String s) throws IOException {
+    if (s == null) return;
+    if (!s.isEmpty() && "=+-@\t\r".indexOf(s.charAt(0)) >= 0) s = "'" + s;
+    boolean comillas = s.indexOf(',') >= 0 || s.indexOf('"') >= 0 || s.indexOf('\n') >= 0 || s.indexOf('\r') >= 0;
+    if (!comillas) {
+      w.write(s);
+      return;
+    }
+    w.write('"');
+    w.write(s.replace("\"", "\"\""));
+    w.write('"');
+  }
+}
@@ -0,0 +1,123 @@
+package com.pv.challenge.service;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Element;
+import com.lowagie.text.Font;
+import com.lowagie.text.PageSize;
+import com.lowagie.text.Paragraph;
+import com.lowagie.text.Phrase;
+import com.lowagie.text.pdf.PdfPCell;
+import com.lowagie.text.pdf.PdfPTable;
+import com.lowagie.text.pdf.PdfWriter;
+import com.pv.challenge.dto.ReporteLineaDtos;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Escribe el estado de cuenta en PDF línea por línea sobre un OutputStream.
+ * La tabla se marca incompleta y se vuelca al documento cada FILAS_POR_BLOQUE filas:
+ * las páginas terminadas se escriben al stream y solo queda en memoria el bloque
+ * actual, sin importar cuántas líneas tenga el reporte.
+ */
+final class EstadoCuentaPdf implements SalidaEstadoCuenta {
+
+  private static final int FILAS_POR_BLOQUE = 200;
+
+  private final Font h1 = new Font(Font.HELVETICA, 16, Font.BOLD);
+  private final Font normal = new Font(Font.HELVETICA, 10);
+  private final Font bold = new Font(Font.HELVETICA, 10, Font.BOLD);
+
+  private final Document doc;
+  private final PdfPTable table;
+  private int pendientes;
+  private boolean cerrado;
+
+  EstadoCuentaPdf(OutputStream out, String clienteNombre, Long clienteId,
+                  LocalDate desde, LocalDate hasta) throws DocumentException {
+    doc = new Document(PageSize.A4.rotate(), 36, 36, 36, 36);
+    PdfWriter writer = PdfWriter.getInstance(doc, out);
+    writer.setCloseStream(false); // el stream es del llamador (respuesta HTTP, archivo...)
+    doc.open();
+
+    Paragraph titulo = new Paragraph("Estado de Cuenta", h1);
+    titulo.setAlignment(Paragraph.ALIGN_CENTER);
+    doc.add(titulo);
+
+    doc.add(new Paragraph(
+        String.format("Cliente: %s (ID: %d)  |  Rango: %s a %s",
+            clienteNombre, clienteId, desde, hasta), normal));
+    doc.add(new Paragraph(" ", normal));
+
+    table = new PdfPTable(8);
+    table.setWidthPercentage(100);
+    table.setWidths(new float[]{16, 18, 12, 12, 12, 10, 12, 12});
+    table.setHeaderRows(1);   // encabezado repetido en cada página
+    table.setComplete(false); // se completa en cerrar()
+
+    addHeader("Fecha");
+    addHeader("Cliente");
+    addHeader("Nro. Cuenta");
+    addHeader("Tipo");
+    addHeader("Saldo Inicial");
+    addHeader("Estado");
+    addHeader("Movimiento");
+    addHeader("Saldo Disp.");
+  }
+
+  @Override
+  public void agregar(ReporteLineaDtos it) throws IOException {
+    table.addCell(new PdfPCell(new Phrase(it.getFecha().toString(), normal)));
+    table.addCell(new PdfPCell(new Phrase(it.getCliente(), normal)));
+    table.addCell(new PdfPCell(new Phrase(it.getNumeroCuenta(), normal)));
+    table.addCell(new PdfPCell(new Phrase(it.getTipoCuenta(), normal)));
+    table.addCell(new PdfPCell(new Phrase(it.getSaldoInicial().toPlainString(), normal)));
+    table.addCell(new PdfPCell(new Phrase(Boolean.toString(it.isEstado()), normal)));
+    table.addCell(new PdfPCell(new Phrase(it.getMovimiento().toPlainString(), normal)));
+    table.addCell(new PdfPCell(new Phrase(it.getSaldoDisponible().toPlainString(), normal)));
+
+    // Con la tabla incompleta, doc.add escribe las filas y las descarta de memoria
+    if (++pendientes >= FILAS_POR_BLOQUE) {
+      agregarAlDocumento(table);
+      pendientes = 0;
+    }
+  }
+
+  @Override
+  public void totales(BigDecimal totalCreditos, BigDecimal totalDebitos) throws IOException {
+    terminarTabla();
+    agregarAlDocumento(new Paragraph(" ", normal));
+    agregarAlDocumento(new Paragraph("Totales:", h1));
+    agregarAlDocumento(new Paragraph("Créditos: " + totalCreditos.toPlainString(), normal));
+    agregarAlDocumento(new Paragraph("Débitos: " + totalDebitos.toPlainString(), normal));
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (cerrado) return;
+    terminarTabla();
+    cerrado = true;
+    doc.close();
+  }
+
+  private void terminarTabla() throws IOException {
+    if (table.isComplete()) return;
+    table.setComplete(true);
+    agregarAlDocumento(table);
+  }
+
+  private void agregarAlDocumento(Element e) throws IOException {
+    try {
+      doc.add(e);
+    } catch (DocumentException ex) {
+      throw new IOException("No se pudo generar el PDF", ex);
+    }
+  }
+
+  private void addHeader(String txt) {
+    table.addCell(new PdfPCell(new Phrase(txt, bold)));
+  }
+}
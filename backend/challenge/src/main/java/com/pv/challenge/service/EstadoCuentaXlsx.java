@@ -0,0 +1,201 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.ReporteLineaDtos;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Estado de cuenta en XLSX escrito como zip en streaming: cada fila va directo a la
+ * entrada de la hoja (celdas inline, sin tabla de strings compartidos) y el workbook
+ * con la lista de hojas se escribe al final, cuando ya se sabe cuántas hay. Al llegar
+ * al límite de filas de Excel sigue en una hoja nueva. Solo retiene el buffer del
+ * writer y el del compresor, sin importar cuántas líneas tenga el reporte.
+ */
+final class EstadoCuentaXlsx implements SalidaEstadoCuenta {
+
+  static final int MAX_FILAS = 1_048_576;
+
+  private static final String NS_MAIN = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+  private static final String NS_REL = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+  private static final String NS_PKG = "http://schemas.openxmlformats.org/package/2006/relationships";
+  private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+  private static final LocalDateTime ORIGEN_EXCEL = LocalDateTime.of(1899, 12, 30, 0, 0);
+
+  // Índices de cellXfs en styles.xml
+  private static final int ESTILO_FECHA = 1;
+  private static final int ESTILO_MONTO = 2;
+  private static final int ESTILO_TITULO = 3;
+
+  private static final String[] ENCABEZADO = {
+      "Fecha", "Cliente", "Nro. Cuenta", "Tipo", "Saldo Inicial", "Estado", "Movimiento", "Saldo Disp."};
+
+  private final ZipOutputStream zip;
+  private final Writer w;
+  private int hojas;
+  private int fila;
+  private boolean cerrado;
+
+  EstadoCuentaXlsx(OutputStream out) throws IOException {
+    zip = new ZipOutputStream(out);
+    w = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8), 16 * 1024);
+    nuevaHoja();
+  }
+
+  @Override
+  public void agregar(ReporteLineaDtos it) throws IOException {
+    if (fila >= MAX_FILAS) nuevaHoja();
+    abrirFila(++fila);
+    fecha(it.getFecha());
+    texto(it.getCliente(), 0);
+    texto(it.getNumeroCuenta(), 0);
+    texto(it.getTipoCuenta(), 0);
+    monto(it.getSaldoInicial());
+    w.write("<c t=\"b\"><v>");
+    w.write(it.isEstado() ? '1' : '0');
+    w.write("</v></c>");
+    monto(it.getMovimiento());
+    monto(it.getSaldoDisponible());
+    w.write("</row>");
+  }
+
+  // Deja una fila vacía y agrega los totales al pie de la última hoja
+  @Override
+  public void totales(BigDecimal totalCreditos, BigDecimal totalDebitos) throws IOException {
+    if (fila + 3 > MAX_FILAS) nuevaHoja();
+    fila++;
+    abrirFila(++fila);
+    texto("Créditos", ESTILO_TITULO);
+    monto(totalCreditos);
+    w.write("</row>");
+    abrirFila(++fila);
+    texto("Débitos", ESTILO_TITULO);
+    monto(totalDebitos);
+    w.write("</row>");
+  }
+
+  // Termina el zip sin cerrar el stream del llamador
+  @Override
+  public void close() throws IOException {
+    if (cerrado) return;
+    cerrado = true;
+    cerrarHoja();
+
+    StringBuilder tipos = new StringBuilder(XML)
+        .append("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">")
+        .append("<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>")
+        .append("<Default Extension=\"xml\" ContentType=\"application/xml\"/>")
+        .append("<Override PartName=\"/xl/workbook.xml\" ")
+        .append("ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>")
+        .append("<Override PartName=\"/xl/styles.xml\" ")
+        .append("ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>");
+    StringBuilder libro = new StringBuilder(XML)
+        .append("<workbook xmlns=\"").append(NS_MAIN).append("\" xmlns:r=\"").append(NS_REL).append("\"><sheets>");
+    StringBuilder relaciones = new StringBuilder(XML)
+        .append("<Relationships xmlns=\"").append(NS_PKG).append("\">")
+        .append("<Relationship Id=\"rId0\" Type=\"").append(NS_REL).append("/styles\" Target=\"styles.xml\"/>");
+    for (int i = 1; i <= hojas; i++) {
+      tipos.append("<Override PartName=\"/xl/worksheets/sheet").append(i).append(".xml\" ")
+          .append("ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+      libro.append("<sheet name=\"Estado de cuenta").append(i == 1 ? "" : " " + i)
+          .append("\" sheetId=\"").append(i).append("\" r:id=\"rId").append(i).append("\"/>");
+      relaciones.append("<Relationship Id=\"rId").append(i).append("\" Type=\"").append(NS_REL)
+          .append("/worksheet\" Target=\"worksheets/sheet").append(i).append(".xml\"/>");
+    }
+
+    entrada("[Content_Types].xml", tipos.append("</Types>").toString());
+    entrada("_rels/.rels", XML + "<Relationships xmlns=\"" + NS_PKG + "\">"
+        + "<Relationship Id=\"rId1\" Type=\"" + NS_REL + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+        + "</Relationships>");
+    entrada("xl/workbook.xml", libro.append("</sheets></workbook>").toString());
+    entrada("xl/_rels/workbook.xml.rels", relaciones.append("</Relationships>").toString());
+    // Formatos 22 (fecha y hora) y 4 (#,##0.00) son predefinidos de Excel
+    entrada("xl/styles.xml", XML + "<styleSheet xmlns=\"" + NS_MAIN + "\">"
+        + "<fonts count=\"2\"><font><sz val=\"11\"/><name val=\"Calibri\"/></font>"
+        + "<font><b/><sz val=\"11\"/><name val=\"Calibri\"/></font></fonts>"
+        + "<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill>"
+        + "<fill><patternFill patternType=\"gray125\"/></fill></fills>"
+        + "<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>"
+        + "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>"
+        + "<cellXfs count=\"4\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>"
+        + "<xf numFmtId=\"22\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyNumberFormat=\"1\"/>"
+        + "<xf numFmtId=\"4\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyNumberFormat=\"1\"/>"
+        + "<xf numFmtId=\"0\" fontId=\"1\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyFont=\"1\"/></cellXfs>"
+        + "</styleSheet>");
+    zip.finish();
+  }
+
+  private void nuevaHoja() throws IOException {
+    if (hojas > 0) cerrarHoja();
+    hojas++;
+    zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + hojas + ".xml"));
+    w.write(XML);
+    w.write("<worksheet xmlns=\"" + NS_MAIN + "\"><sheetData>");
+    fila = 0;
+    abrirFila(++fila);
+    for (String titulo : ENCABEZADO) texto(titulo, ESTILO_TITULO);
+    w.write("</row>");
+  }
+
+  private void cerrarHoja() throws IOException {
+    w.write("</sheetData></worksheet>");
+    w.flush();
+    zip.closeEntry();
+  }
+
+  private void entrada(String nombre, String contenido) throws IOException {
+    zip.putNextEntry(new ZipEntry(nombre));
+    w.write(contenido);
+    w.flush();
+    zip.closeEntry();
+  }
+
+  private void abrirFila(int numero) throws IOException {
+    w.write("<row r=\"");
+    w.write(Integer.toString(numero));
+    w.write("\">");
+  }
+
+  // xml:space="preserve": Excel recorta los espacios de los extremos y colapsa los saltos sin él
+  private void texto(String s, int estilo) throws IOException {
+    w.write(estilo == 0 ? "<c t=\"inlineStr\"><is><t xml:space=\"preserve\">"
+        : "<c s=\"" + estilo + "\" t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+    if (s != null) {
+      for (int i = 0; i < s.length(); i++) {
+        char c = s.charAt(i);
+        switch (c) {
+          case '&': w.write("&amp;"); break;
+          case '<': w.write("&lt;"); break;
+          case '>': w.write("&gt;"); break;
+          default:
+            // XML 1.0 no admite controles salvo tab y saltos de línea
+            if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') w.write(c);
+        }
+      }
+    }
+    w.write("</t></is></c>");
+  }
+
+  private void monto(BigDecimal v) throws IOException {
+    w.write("<c s=\"" + ESTILO_MONTO + "\"><v>");
+    w.write(v.toPlainString());
+    w.write("</v></c>");
+  }
+
+  // Excel guarda fechas como días (con fracción) desde 1899-12-30
+  private void fecha(LocalDateTime f) throws IOException {
+    long segundos = ChronoUnit.SECONDS.between(ORIGEN_EXCEL, f);
+    w.write("<c s=\"" + ESTILO_FECHA + "\"><v>");
+    w.write(Double.toString(segundos / 86_400d));
+    w.write("</v></c>");
+  }
+}
@@ -0,0 +1,532 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.ExportacionDtos.ExportacionResponse;
+import com.pv.challenge.dto.ExportacionDtos.Parte;
+import com.pv.challenge.exception.BusinessException;
+import com.pv.challenge.exception.NotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exportación completa de movimientos (auditoría) a CSV o NDJSON comprimidos.
+ *
+ * La tabla se parte en rangos de id del mismo ancho y cada rango se lee en su propia
+ * transacción de solo lectura con un cursor del servidor (fetch size), en un pool de
+ * hilos y cola acotados (cola llena: RejectedExecutionException, 503). Cada fila se
+ * escribe desde el ResultSet al archivo gzip de su rango sin armar entidades: en
+ * memoria solo está el bloque del fetch y los buffers de escritura de las partes en curso.
+ *
+ * Todas las partes leen la misma foto de la tabla: iniciar abre una transacción
+ * REPEATABLE READ que calcula el rango de ids y publica su snapshot con
+ * pg_export_snapshot(), y cada parte lo adopta con SET TRANSACTION SNAPSHOT antes de
+ * leer. La transacción de origen se cierra cuando la última parte lo importó. Las
+ * exportaciones terminadas y sus archivos se borran pasada la retención.
+ */
+@Service
+public class ExportacionService {
+
+  private static final Logger log = LoggerFactory.getLogger(ExportacionService.class);
+  private static final String TEMPORAL = "tmp-";
+  private static final int BUFFER = 64 * 1024;
+  private static final int AVANCE_CADA = 10_000;
+
+  static final String CONSULTA =
+      "SELECT id, cuenta_id, tipo, valor, saldo, referencia, fecha FROM movimientos " +
+      "WHERE id BETWEEN ? AND ? ORDER BY id";
+  static final String INSTANTANEA = "SELECT pg_export_snapshot(), min(id), max(id) FROM movimientos";
+
+  public enum Formato {
+    CSV("csv"), NDJSON("ndjson");
+
+    final String extension;
+
+    Formato(String extension) {
+      this.extension = extension;
+    }
+  }
+
+  public enum Estado { PENDIENTE, EN_PROCESO, LISTO, ERROR }
+
+  private static final class ParteExportacion {
+    final int numero;
+    final long desdeId;
+    final long hastaId;
+    volatile Estado estado = Estado.PENDIENTE;
+    volatile long filas;
+    volatile long ms;
+    volatile Path archivo;
+
+    ParteExportacion(int numero, long desdeId, long hastaId) {
+      this.numero = numero;
+      this.desdeId = desdeId;
+      this.hastaId = hastaId;
+    }
+  }
+
+  private static final class Exportacion {
+    final String id = UUID.randomUUID().toString();
+    final Formato formato;
+    final Path dir;
+    final Long desdeId;
+    final Long hastaId;
+    final List<ParteExportacion> partes = new ArrayList<>();
+    final AtomicInteger pendientes = new AtomicInteger();
+    final AtomicInteger porImportar = new AtomicInteger();
+    final AtomicReference<Connection> origen = new AtomicReference<>();
+    volatile String instantanea;
+    final long inicioNanos = System.nanoTime();
+    final OffsetDateTime inicio = OffsetDateTime.now();
+    volatile long finNanos;
+    volatile OffsetDateTime fin;
+    volatile Estado estado = Estado.EN_PROCESO;
+    volatile String error;
+
+    Exportacion(Formato formato, Path base, Long desdeId, Long hastaId) {
+      this.formato = formato;
+      this.dir = base.resolve(id);
+      this.desdeId = desdeId;
+      this.hastaId = hastaId;
+    }
+  }
+
+  private final JdbcTemplate jdbc;
+  private final TransactionTemplate lectura;
+  private final Path dirBase;
+  private final int partesPorHilo;
+  private final int tamanoFetch;
+  private final long retencionMinutos;
+  private final ThreadPoolExecutor pool;
+  private final Map<String, Exportacion> exportaciones = new ConcurrentHashMap<>();
+
+  public ExportacionService(JdbcTemplate jdbc,
+                            PlatformTransactionManager txManager,
+                            @Value("${banco.reportes.dir:${java.io.tmpdir}/banco-reportes}") String dir,
+                            @Value("${banco.exportacion.hilos:4}") int hilos,
+                            @Value("${banco.exportacion.partes-por-hilo:4}") int partesPorHilo,
+                            @Value("${banco.exportacion.fetch-size:10000}") int tamanoFetch,
+                            @Value("${banco.exportacion.cola:64}") int cola,
+                            @Value("${banco.exportacion.retencion-minutos:60}") long retencionMinutos) {
+    this.jdbc = jdbc;
+    // El cursor del servidor de PostgreSQL necesita una transacción abierta (sin autocommit);
+    // SET TRANSACTION SNAPSHOT exige REPEATABLE READ o SERIALIZABLE
+    this.lectura = new TransactionTemplate(txManager);
+    this.lectura.setReadOnly(true);
+    this.lectura.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    this.dirBase = Paths.get(dir, "exportaciones");
+    this.partesPorHilo = partesPorHilo;
+    this.tamanoFetch = tamanoFetch;
+    this.retencionMinutos = retencionMinutos;
+    try {
+      Files.createDirectories(dirBase);
+    } catch (IOException e) {
+      throw new UncheckedIOException("No se pudo crear " + dirBase, e);
+    }
+    AtomicInteger n = new AtomicInteger();
+    this.pool = new ThreadPoolExecutor(hilos, hilos, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(cola),
+        r -> {
+          Thread t = new Thread(r, "exportacion-" + n.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        });
+  }
+
+  public ExportacionResponse iniciar(String formato) {
+    Formato f = formato(formato);
+    purgarVencidos();
+    Connection origen = abrirOrigen();
+    long[] rango;
+    Exportacion e;
+    try {
+      String instantanea;
+      try (PreparedStatement ps = origen.prepareStatement(INSTANTANEA); ResultSet rs = ps.executeQuery()) {
+        rs.next();
+        instantanea = rs.getString(1);
+        long min = rs.getLong(2);
+        rango = rs.wasNull() ? null : new long[] {min, rs.getLong(3)};
+      }
+      e = rango == null
+          ? new Exportacion(f, dirBase, null, null)
+          : new Exportacion(f, dirBase, rango[0], rango[1]);
+      e.instantanea = instantanea;
+      Files.createDirectories(e.dir);
+    } catch (SQLException ex) {
+      cerrarOrigen(origen);
+      throw new IllegalStateException("No se pudo leer el rango de la exportación: " + ex.getMessage(), ex);
+    } catch (IOException ex) {
+      cerrarOrigen(origen);
+      throw new UncheckedIOException("No se pudo crear el directorio de la exportación", ex);
+    } catch (RuntimeException ex) {
+      cerrarOrigen(origen);
+      throw ex;
+    }
+    exportaciones.put(e.id, e);
+
+    if (rango == null) {
+      cerrarOrigen(origen);
+      terminar(e);
+      return respuesta(e);
+    }
+    // Varias partes por hilo: un rango con más filas no deja a los demás hilos sin trabajo
+    long total = rango[1] - rango[0] + 1;
+    int partes = (int) Math.max(1, Math.min(total, (long) pool.getCorePoolSize() * partesPorHilo));
+    long ancho = (total + partes - 1) / partes;
+    for (int i = 0; i < partes; i++) {
+      long desde = rango[0] + i * ancho;
+      if (desde > rango[1]) break;
+      e.partes.add(new ParteExportacion(i, desde, Math.min(rango[1], desde + ancho - 1)));
+    }
+    e.pendientes.set(e.partes.size());
+    e.porImportar.set(e.partes.size());
+    e.origen.set(origen);
+    for (int i = 0; i < e.partes.size(); i++) {
+      ParteExportacion p = e.partes.get(i);
+      try {
+        pool.execute(() -> exportarParte(e, p));
+      } catch (RejectedExecutionException ex) {
+        // Cola llena: las partes ya encoladas ven el ERROR y no leen; el resto se da por terminado
+        e.error = "Cola de exportaciones llena";
+        e.estado = Estado.ERROR;
+        for (ParteExportacion q : e.partes.subList(i, e.partes.size())) {
+          q.estado = Estado.ERROR;
+          importada(e);
+          parteTerminada(e);
+        }
+        throw ex; // el handler global responde 503
+      }
+    }
+    return respuesta(e);
+  }
+
+  public ExportacionResponse estado(String id) {
+    return respuesta(buscar(id));
+  }
+
+  public Path archivo(String id, int numero) {
+    Exportacion e = buscar(id);
+    if (numero < 0 || numero >= e.partes.size()) {
+      throw new NotFoundException("La exportación " + id + " no tiene la parte " + numero);
+    }
+    ParteExportacion p = e.partes.get(numero);
+    if (p.estado != Estado.LISTO) {
+      throw new BusinessException("La parte " + numero + " no está lista (" + p.estado + ").");
+    }
+    return p.archivo;
+  }
+
+  @PreDestroy
+  void cerrar() {
+    pool.shutdownNow();
+  }
+
+  private void exportarParte(Exportacion e, ParteExportacion p) {
+    if (e.estado == Estado.ERROR) {
+      p.estado = Estado.ERROR;
+      importada(e);
+      parteTerminada(e);
+      return;
+    }
+    p.estado = Estado.EN_PROCESO;
+    long t0 = System.nanoTime();
+    Path tmp = null;
+    try {
+      tmp = Files.createTempFile(e.dir, TEMPORAL, ".gz");
+      try (Writer w = new BufferedWriter(new OutputStreamWriter(
+          new GZIPOutputStream(Files.newOutputStream(tmp), BUFFER), StandardCharsets.UTF_8), BUFFER)) {
+        if (e.formato == Formato.CSV) w.write("id,cuentaId,tipo,valor,saldo,referencia,fecha\n");
+        long[] filas = new long[1];
+        lectura.execute(st -> {
+          try {
+            jdbc.execute("SET TRANSACTION SNAPSHOT '" + e.instantanea + "'");
+          } finally {
+            importada(e);
+          }
+          jdbc.query(con -> {
+            PreparedStatement ps = con.prepareStatement(CONSULTA);
+            ps.setFetchSize(tamanoFetch);
+            ps.setLong(1, p.desdeId);
+            ps.setLong(2, p.hastaId);
+            return ps;
+          }, (ResultSet rs) -> {
+            try {
+              escribirFila(e.formato, rs, w);
+            } catch (IOException ex) {
+              throw new UncheckedIOException(ex);
+            }
+            if (++filas[0] % AVANCE_CADA == 0) {
+              p.filas = filas[0];
+              if (e.estado == Estado.ERROR) throw new IllegalStateException("Exportación cancelada");
+            }
+          });
+          return null;
+        });
+        p.filas = filas[0];
+      }
+      Path destino = e.dir.resolve(String.format("movimientos-%03d.%s.gz", p.numero, e.formato.extension));
+      Files.move(tmp, destino, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      p.archivo = destino;
+      p.ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+      p.estado = Estado.LISTO;
+    } catch (Exception ex) {
+      log.error("Exportación {}: falló la parte {} (ids {}-{}): {}",
+          e.id, p.numero, p.desdeId, p.hastaId, ex.getMessage(), ex);
+      borrar(tmp);
+      p.estado = Estado.ERROR;
+      e.error = "Falló la parte " + p.numero + ": " + ex.getMessage();
+      e.estado = Estado.ERROR;
+      // Si falló antes de importar el snapshot, la transacción de origen no debe quedar abierta
+      cerrarOrigen(e.origen.getAndSet(null));
+    } finally {
+      parteTerminada(e);
+    }
+  }
+
+  // Transacción que fija la foto de la tabla para todas las partes
+  private Connection abrirOrigen() {
+    try {
+      Connection con = jdbc.getDataSource().getConnection();
+      try {
+        con.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        con.setReadOnly(true);
+        con.setAutoCommit(false);
+      } catch (SQLException ex) {
+        con.close();
+        throw ex;
+      }
+      return con;
+    } catch (SQLException ex) {
+      throw new IllegalStateException("No se pudo abrir la transacción de la exportación: " + ex.getMessage(), ex);
+    }
+  }
+
+  private void importada(Exportacion e) {
+    if (e.porImportar.decrementAndGet() == 0) cerrarOrigen(e.origen.getAndSet(null));
+  }
+
+  private void cerrarOrigen(Connection con) {
+    if (con == null) return;
+    try {
+      con.rollback();
+    } catch (SQLException ex) {
+      log.warn("No se pudo cerrar la transacción de origen de la exportación: {}", ex.getMessage());
+    } finally {
+      try {
+        con.setAutoCommit(true);
+        con.close();
+      } catch (SQLException ex) {
+        log.warn("No se pudo devolver la conexión de la exportación: {}", ex.getMessage());
+      }
+    }
+  }
+
+  private void parteTerminada(Exportacion e) {
+    if (e.pendientes.decrementAndGet() == 0) terminar(e);
+  }
+
+  private void terminar(Exportacion e) {
+    cerrarOrigen(e.origen.getAndSet(null));
+    e.finNanos = System.nanoTime();
+    e.fin = OffsetDateTime.now();
+    if (e.estado != Estado.ERROR) e.estado = Estado.LISTO;
+    ExportacionResponse r = respuesta(e);
+    log.info("Exportación {} {}: {} filas en {} partes, {} filas/s",
+        e.id, e.estado, r.filas, e.partes.size(), Math.round(r.filasPorSegundo));
+  }
+
+  // Columnas en el orden de CONSULTA; la fecha sale en ISO-8601 con offset
+  static void escribirFila(Formato formato, ResultSet rs, Writer w) throws SQLException, IOException {
+    long id = rs.getLong(1);
+    long cuentaId = rs.getLong(2);
+    String tipo = rs.getString(3);
+    String valor = rs.getString(4);
+    String saldo = rs.getString(5);
+    String referencia = rs.getString(6);
+    OffsetDateTime fecha = rs.getObject(7, OffsetDateTime.class);
+
+    if (formato == Formato.CSV) {
+      w.write(Long.toString(id));
+      w.write(',');
+      w.write(Long.toString(cuentaId));
+      w.write(',');
+      w.write(tipo);
+      w.write(',');
+      w.write(valor);
+      w.write(',');
+      w.write(saldo);
+      w.write(',');
+      if (referencia != null) csv(referencia, w);
+      w.write(',');
+      w.write(fecha.toString());
+      w.write('\n');
+    } else {
+      w.write("{\"id\":");
+      w.write(Long.toString(id));
+      w.write(",\"cuentaId\":");
+      w.write(Long.toString(cuentaId));
+      w.write(",\"tipo\":\"");
+      w.write(tipo);
+      w.write("\",\"valor\":");
+      w.write(valor);
+      w.write(",\"saldo\":");
+      w.write(saldo);
+      w.write(",\"referencia\":");
+      if (referencia == null) {
+        w.write("null");
+      } else {
+        json(referencia, w);
+      }
+      w.write(",\"fecha\":\"");
+      w.write(fecha.toString());
+      w.write("\"}\n");
+    }
+  }
+
+  private static void csv(String s, Writer w) throws IOException {
+    boolean comillas = s.indexOf(',') >= 0 || s.indexOf('"') >= 0 || s.indexOf('\n') >= 0 || s.indexOf('\r') >= 0;
+    if (!comillas) {
+      w.write(s);
+      return;
+    }
+    w.write('"');
+    w.write(s.replace("\"", "\"\""));
+    w.write('"');
+  }
+
+  private static void json(String s, Writer w) throws IOException {
+    w.write('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '"': w.write("\\\""); break;
+        case '\\': w.write("\\\\"); break;
+        case '\n': w.write("\\n"); break;
+        case '\r': w.write("\\r"); break;
+        case '\t': w.write("\\t"); break;
+        default:
+          if (c < 0x20) {
+            w.write(String.format("\\u%04x", (int) c));
+          } else {
+            w.write(c);
+          }
+      }
+    }
+    w.write('"');
+  }
+
+  private static Formato formato(String formato) {
+    if (formato == null) return Formato.CSV;
+    for (Formato f : Formato.values()) {
+      if (f.extension.equalsIgnoreCase(formato)) return f;
+    }
+    throw new BusinessException("formato debe ser csv o ndjson.");
+  }
+
+  private Exportacion buscar(String id) {
+    Exportacion e = exportaciones.get(id);
+    if (e == null) throw new NotFoundException("Exportación " + id + " no existe");
+    return e;
+  }
+
+  private ExportacionResponse respuesta(Exportacion e) {
+    ExportacionResponse r = new ExportacionResponse();
+    r.id = e.id;
+    r.formato = e.formato.extension;
+    r.estado = e.estado.name();
+    r.desdeId = e.desdeId;
+    r.hastaId = e.hastaId;
+    r.directorio = e.dir.toString();
+    r.error = e.error;
+    r.inicio = e.inicio;
+    r.fin = e.fin;
+    for (ParteExportacion p : e.partes) {
+      Parte x = new Parte();
+      x.numero = p.numero;
+      x.desdeId = p.desdeId;
+      x.hastaId = p.hastaId;
+      x.estado = p.estado.name();
+      x.filas = p.filas;
+      x.ms = p.ms;
+      if (p.estado == Estado.LISTO) x.descarga = "/api/movimientos/exportaciones/" + e.id + "/partes/" + p.numero;
+      r.partes.add(x);
+      r.filas += p.filas;
+    }
+    long fin = e.fin == null ? System.nanoTime() : e.finNanos;
+    double segundos = (fin - e.inicioNanos) / 1e9;
+    r.filasPorSegundo = segundos <= 0 ? 0 : r.filas / segundos;
+    return r;
+  }
+
+  // Exportaciones terminadas hace más de la retención, y directorios que quedaron de otra
+  // ejecución de la aplicación (fuera del mapa) con la misma antigüedad
+  private void purgarVencidos() {
+    OffsetDateTime limite = OffsetDateTime.now().minusMinutes(retencionMinutos);
+    exportaciones.values().removeIf(e -> {
+      if (e.fin == null || e.fin.isAfter(limite)) return false;
+      borrarDirectorio(e.dir);
+      return true;
+    });
+    try (DirectoryStream<Path> dirs = Files.newDirectoryStream(dirBase)) {
+      for (Path d : dirs) {
+        if (exportaciones.containsKey(d.getFileName().toString())) continue;
+        if (Files.getLastModifiedTime(d).toInstant().isBefore(limite.toInstant())) borrarDirectorio(d);
+      }
+    } catch (IOException e) {
+      log.warn("No se pudo revisar {}: {}", dirBase, e.getMessage());
+    }
+  }
+
+  private void borrarDirectorio(Path dir) {
+    if (!Files.exists(dir)) return;
+    try (Stream<Path> archivos = Files.walk(dir)) {
+      archivos.sorted(Comparator.reverseOrder()).forEach(this::borrar);
+    } catch (IOException e) {
+      log.warn("No se pudo borrar {}: {}", dir, e.getMessage());
+    }
+  }
+
+  private void borrar(Path p) {
+    if (p == null) return;
+    try {
+      Files.deleteIfExists(p);
+    } catch (IOException e) {
+      log.warn("No se pudo borrar {}: {}", p, e.getMessage());
+    }
+  }
+}
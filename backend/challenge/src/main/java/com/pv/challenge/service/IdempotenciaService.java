@@ -0,0 +1,217 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.MovimientoDtos.MovimientoResponse;
+import com.pv.challenge.entity.ClaveIdempotencia;
+import com.pv.challenge.entity.Movimiento;
+import com.pv.challenge.exception.BusinessException;
+import com.pv.challenge.repo.ClaveIdempotenciaRepository;
+import com.pv.challenge.repo.MovimientoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Idempotency-Key de depósitos, retiros y transferencias.
+ *
+ * La clave se reserva en claves_idempotencia dentro de la misma transacción que el
+ * asiento: si el asiento falla la reserva se deshace y el reintento vuelve a intentarlo;
+ * si confirma, un reintento encuentra la clave y devuelve el resultado original sin
+ * volver a bloquear la cuenta. Dos pedidos concurrentes con la misma clave se
+ * serializan en el INSERT de la reserva, nunca en la cuenta.
+ *
+ * Con banco.cuentas.bloqueo=optimista el conflicto de versión aparece al confirmar la
+ * transacción de la reserva, así que el reintento (BloqueoCuentas) envuelve reserva y
+ * asiento juntos: cada intento es una transacción nueva que vuelve a reservar.
+ *
+ * Delante de la tabla va un LRU en memoria acotado por cantidad de claves, que solo
+ * recibe claves ya confirmadas: un reintento que cae en él no va a la base.
+ */
+@Service
+public class IdempotenciaService {
+
+  private static final Logger log = LoggerFactory.getLogger(IdempotenciaService.class);
+  public static final int LARGO_MAXIMO = 100;
+  private static final int PURGA_LOTE = 1_000;
+
+  // Resultado de una clave confirmada (respuesta null en transferencias)
+  private static final class Registro {
+    final String operacion;
+    final String huella;
+    final long expiraMs;
+    final MovimientoResponse respuesta;
+
+    Registro(String operacion, String huella, OffsetDateTime expira, MovimientoResponse respuesta) {
+      this.operacion = operacion;
+      this.huella = huella;
+      this.expiraMs = expira.toInstant().toEpochMilli();
+      this.respuesta = respuesta;
+    }
+  }
+
+  private final ClaveIdempotenciaRepository repo;
+  private final MovimientoRepository movRepo;
+  private final BloqueoCuentas bloqueo;
+  private final TransactionTemplate tx;
+  private final Duration ttl;
+  private final Map<String, Registro> memoria;
+  private final ScheduledExecutorService purga;
+
+  public IdempotenciaService(ClaveIdempotenciaRepository repo,
+                             MovimientoRepository movRepo,
+                             BloqueoCuentas bloqueo,
+                             PlatformTransactionManager txManager,
+                             @Value("${banco.idempotencia.ttl-horas:24}") long ttlHoras,
+                             @Value("${banco.idempotencia.memoria.max-entradas:100000}") int maxEntradas,
+                             @Value("${banco.idempotencia.purga-minutos:10}") long purgaMinutos) {
+    this.repo = repo;
+    this.movRepo = movRepo;
+    this.bloqueo = bloqueo;
+    this.tx = new TransactionTemplate(txManager);
+    this.ttl = Duration.ofHours(ttlHoras);
+    this.memoria = new LinkedHashMap<String, Registro>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Registro> eldest) {
+        return size() > maxEntradas;
+      }
+    };
+    if (purgaMinutos > 0) {
+      this.purga = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "idempotencia-purga");
+        t.setDaemon(true);
+        return t;
+      });
+      this.purga.scheduleWithFixedDelay(this::purgarProgramado, purgaMinutos, purgaMinutos, TimeUnit.MINUTES);
+    } else {
+      this.purga = null;
+    }
+  }
+
+  /**
+   * Huella de los parámetros de un pedido, para rechazar una clave reutilizada con
+   * otros datos. Los montos se normalizan: 10 y 10.00 dan la misma huella.
+   */
+  public static String huella(Object... partes) {
+    StringBuilder sb = new StringBuilder();
+    for (Object p : partes) {
+      if (p instanceof BigDecimal) p = ((BigDecimal) p).stripTrailingZeros().toPlainString();
+      sb.append(p).append('\u001f');
+    }
+    try {
+      byte[] h = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+      StringBuilder hex = new StringBuilder(64);
+      for (byte b : h) hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Ejecuta el asiento una sola vez por clave. El asiento corre dentro de la
+   * transacción de la reserva (los servicios @Transactional se unen a ella) y devuelve
+   * el movimiento a responder, o null si no hay respuesta (transferencias). cuentaIds
+   * son las cuentas que toca, para sacarlas del cache si hay que reintentar.
+   */
+  public MovimientoResponse ejecutar(String clave, String operacion, String huella, Collection<Long> cuentaIds,
+                                     Supplier<Movimiento> asiento) {
+    if (clave.isEmpty() || clave.length() > LARGO_MAXIMO) {
+      throw new BusinessException("Idempotency-Key debe tener entre 1 y " + LARGO_MAXIMO + " caracteres.");
+    }
+    Registro r = buscar(clave);
+    if (r != null) return repetir(r, operacion, huella);
+
+    OffsetDateTime ahora = OffsetDateTime.now();
+    OffsetDateTime expira = ahora.plus(ttl);
+    boolean[] nueva = new boolean[1];
+    r = bloqueo.reintentar(cuentaIds, () -> tx.execute(s -> {
+      nueva[0] = false;
+      if (repo.reservar(clave, operacion, huella, ahora, expira).isPresent()) {
+        nueva[0] = true;
+        Movimiento m = asiento.get();
+        if (m == null) return new Registro(operacion, huella, expira, null);
+        repo.completar(clave, m.getId());
+        return new Registro(operacion, huella, expira, new MovimientoResponse(m));
+      }
+      // Confirmada por otro pedido (antes o mientras esperábamos la reserva)
+      ClaveIdempotencia c = repo.findById(clave)
+          .orElseThrow(() -> new IllegalStateException("Clave " + clave + " reservada sin registro"));
+      MovimientoResponse respuesta = c.getMovimientoId() == null ? null
+          : movRepo.findById(c.getMovimientoId()).map(MovimientoResponse::new).orElse(null);
+      return new Registro(c.getOperacion(), c.getHuella(), c.getExpiraEn(), respuesta);
+    }));
+    guardar(clave, r);
+    return nueva[0] ? r.respuesta : repetir(r, operacion, huella);
+  }
+
+  // Borra las claves vencidas de la tabla, por lotes; devuelve cuántas borró
+  public int purgar() {
+    OffsetDateTime ahora = OffsetDateTime.now();
+    int total = 0;
+    int n;
+    do {
+      n = tx.execute(s -> repo.purgarVencidas(ahora, PURGA_LOTE));
+      total += n;
+    } while (n == PURGA_LOTE);
+    synchronized (this) {
+      long ms = ahora.toInstant().toEpochMilli();
+      memoria.values().removeIf(r -> r.expiraMs <= ms);
+    }
+    return total;
+  }
+
+  public synchronized int enMemoria() {
+    return memoria.size();
+  }
+
+  @PreDestroy
+  void cerrar() {
+    if (purga != null) purga.shutdownNow();
+  }
+
+  private void purgarProgramado() {
+    try {
+      int n = purgar();
+      if (n > 0) log.info("Purgadas {} claves de idempotencia vencidas", n);
+    } catch (RuntimeException e) {
+      log.warn("No se pudo purgar claves de idempotencia: {}", e.getMessage());
+    }
+  }
+
+  private synchronized Registro buscar(String clave) {
+    Registro r = memoria.get(clave);
+    if (r != null && r.expiraMs <= System.currentTimeMillis()) {
+      memoria.remove(clave);
+      return null;
+    }
+    return r;
+  }
+
+  private synchronized void guardar(String clave, Registro r) {
+    memoria.put(clave, r);
+  }
+
+  private static MovimientoResponse repetir(Registro r, String operacion, String huella) {
+    if (!r.operacion.equals(operacion) || !r.huella.equals(huella)) {
+      throw new BusinessException("La Idempotency-Key ya se usó con otros parámetros.");
+    }
+    return r.respuesta;
+  }
+}
@@ -0,0 +1,334 @@
+package com.pv.challenge.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pv.challenge.dto.ClienteDtos.ErrorImportacion;
+import com.pv.challenge.dto.ClienteDtos.ImportacionResponse;
+import com.pv.challenge.dto.ClienteDtos.SaveClienteRequest;
+import com.pv.challenge.entity.Cliente;
+import com.pv.challenge.entity.Persona;
+import com.pv.challenge.exception.BusinessException;
+import com.pv.challenge.repo.ClienteRepository;
+import com.pv.challenge.repo.PersonaRepository;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Importación masiva de clientes desde CSV (con encabezado) o NDJSON, un
+ * SaveClienteRequest por fila, leída en streaming desde el cuerpo del pedido.
+ *
+ * Las filas válidas se agrupan en chunks y cada chunk corre en una transacción: la
+ * unicidad de identificación y clienteId se verifica con una consulta por clave para
+ * todo el chunk, y personas y clientes se insertan en batch (ids de la secuencia en
+ * bloques, como movimientos). No es todo o nada: los chunks confirmados quedan, y
+ * volver a importar el mismo archivo rechaza esas filas como existentes.
+ */
+@Service
+public class ImportacionClientesService {
+
+  private static final Logger log = LoggerFactory.getLogger(ImportacionClientesService.class);
+  private static final int BUFFER = 64 * 1024;
+  static final int MAX_ERRORES = 10_000;
+
+  // Columnas del CSV: los campos de SaveClienteRequest; estado es opcional
+  static final List<String> COLUMNAS = Arrays.asList(
+      "nombre", "genero", "edad", "identificacion", "direccion", "telefono", "clienteId", "contrasena", "estado");
+
+  public enum Formato { CSV, NDJSON }
+
+  // Una fila del archivo: la solicitud leída o el motivo por el que no se pudo leer
+  static final class Fila {
+    final long linea;
+    final SaveClienteRequest req;
+    final String error;
+
+    Fila(long linea, SaveClienteRequest req, String error) {
+      this.linea = linea;
+      this.req = req;
+      this.error = error;
+    }
+  }
+
+  private interface Fuente {
+    Fila siguiente() throws IOException;
+  }
+
+  private final PersonaRepository personaRepo;
+  private final ClienteRepository clienteRepo;
+  private final EntityManager em;
+  private final ObjectMapper mapper;
+  private final TransactionTemplate tx;
+  private final int tamanoChunk;
+
+  public ImportacionClientesService(PersonaRepository personaRepo,
+                                    ClienteRepository clienteRepo,
+                                    EntityManager em,
+                                    ObjectMapper mapper,
+                                    PlatformTransactionManager txManager,
+                                    @Value("${banco.clientes.importacion.tamano-chunk:1000}") int tamanoChunk) {
+    this.personaRepo = personaRepo;
+    this.clienteRepo = clienteRepo;
+    this.em = em;
+    this.mapper = mapper;
+    this.tx = new TransactionTemplate(txManager);
+    this.tamanoChunk = tamanoChunk;
+  }
+
+  public ImportacionResponse importar(InputStream cuerpo, Formato formato) {
+    long t0 = System.nanoTime();
+    ImportacionResponse resp = new ImportacionResponse();
+    BufferedReader in = new BufferedReader(new InputStreamReader(cuerpo, StandardCharsets.UTF_8), BUFFER);
+    try {
+      Fuente fuente = formato == Formato.CSV ? csv(in) : ndjson(in);
+      List<Fila> chunk = new ArrayList<>(tamanoChunk);
+      for (Fila f = fuente.siguiente(); f != null; f = fuente.siguiente()) {
+        resp.leidas++;
+        String error = f.error != null ? f.error : validar(f.req);
+        if (error != null) {
+          rechazar(resp, f, error);
+          continue;
+        }
+        chunk.add(f);
+        if (chunk.size() == tamanoChunk) {
+          importarChunk(chunk, resp);
+          chunk.clear();
+        }
+      }
+      if (!chunk.isEmpty()) importarChunk(chunk, resp);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    // Los rechazos de un chunk se conocen al cerrarlo, después de los de validación
+    resp.errores.sort(Comparator.comparingLong(e -> e.linea));
+    resp.segundos = (System.nanoTime() - t0) / 1e9;
+    resp.filasPorSegundo = resp.segundos > 0 ? resp.leidas / resp.segundos : 0;
+    log.info("Importación de clientes ({}): {} filas, {} importadas, {} rechazadas en {}s ({} filas/s)",
+        formato, resp.leidas, resp.importadas, resp.rechazadas,
+        String.format(Locale.ROOT, "%.1f", resp.segundos), Math.round(resp.filasPorSegundo));
+    return resp;
+  }
+
+  private void importarChunk(List<Fila> filas, ImportacionResponse resp) {
+    String[] errores;
+    try {
+      errores = insertarEnTransaccion(filas);
+    } catch (DataIntegrityViolationException ex) {
+      // Otro pedido creó una de estas claves entre la verificación y el insert: al
+      // repetir el chunk, la verificación ya la encuentra
+      log.warn("Clave duplicada al importar un chunk de {} clientes; se repite: {}", filas.size(), ex.getMessage());
+      try {
+        errores = insertarEnTransaccion(filas);
+      } catch (RuntimeException otra) {
+        errores = fallido(filas, otra);
+      }
+    } catch (RuntimeException ex) {
+      errores = fallido(filas, ex);
+    }
+    for (int i = 0; i < filas.size(); i++) {
+      if (errores[i] == null) resp.importadas++;
+      else rechazar(resp, filas.get(i), errores[i]);
+    }
+  }
+
+  private String[] insertarEnTransaccion(List<Fila> filas) {
+    return tx.execute(s -> insertar(filas));
+  }
+
+  private String[] fallido(List<Fila> filas, RuntimeException ex) {
+    log.error("Error importando chunk de {} clientes: {}", filas.size(), ex.getMessage(), ex);
+    String[] errores = new String[filas.size()];
+    Arrays.fill(errores, "Error al importar el chunk; reintentar.");
+    return errores;
+  }
+
+  // Dentro de la transacción del chunk: motivo de rechazo por fila (null = insertada)
+  private String[] insertar(List<Fila> filas) {
+    // Los clientes recién importados no desplazan del cache de segundo nivel a los
+    // que se están usando
+    em.unwrap(Session.class).setCacheMode(CacheMode.IGNORE);
+
+    Set<String> identificaciones = new HashSet<>();
+    Set<String> clienteIds = new HashSet<>();
+    for (Fila f : filas) {
+      identificaciones.add(f.req.identificacion);
+      clienteIds.add(f.req.clienteId);
+    }
+    Set<String> identExistentes = new HashSet<>(personaRepo.identificacionesExistentes(identificaciones));
+    Set<String> clienteIdExistentes = new HashSet<>(clienteRepo.clienteIdsExistentes(clienteIds));
+
+    // Clave -> línea de la primera fila del chunk que la usa
+    Map<String, Long> identVistas = new HashMap<>();
+    Map<String, Long> clienteIdVistos = new HashMap<>();
+    String[] errores = new String[filas.size()];
+    for (int i = 0; i < filas.size(); i++) {
+      Fila f = filas.get(i);
+      SaveClienteRequest r = f.req;
+      Long previa = identVistas.get(r.identificacion);
+      Long previo = clienteIdVistos.get(r.clienteId);
+      if (identExistentes.contains(r.identificacion)) {
+        errores[i] = "La identificación ya existe";
+      } else if (clienteIdExistentes.contains(r.clienteId)) {
+        errores[i] = "El clienteId ya existe";
+      } else if (previa != null) {
+        errores[i] = "La identificación se repite en la línea " + previa + ".";
+      } else if (previo != null) {
+        errores[i] = "El clienteId se repite en la línea " + previo + ".";
+      } else {
+        identVistas.put(r.identificacion, f.linea);
+        clienteIdVistos.put(r.clienteId, f.linea);
+        persistir(r);
+      }
+    }
+    return errores;
+  }
+
+  // persist y no save: el id del cliente viene asignado y save haría un SELECT por fila
+  private void persistir(SaveClienteRequest req) {
+    Persona p = new Persona();
+    p.setNombre(req.nombre);
+    p.setGenero(req.genero);
+    p.setEdad(req.edad);
+    p.setIdentificacion(req.identificacion);
+    p.setDireccion(req.direccion);
+    p.setTelefono(req.telefono);
+    em.persist(p);
+
+    Cliente c = new Cliente();
+    c.setId(p.getId());
+    c.setPersona(p);
+    c.setClienteId(req.clienteId);
+    c.setContrasena(req.contrasena);
+    c.setEstado(req.estado != null ? req.estado : Boolean.TRUE);
+    em.persist(c);
+  }
+
+  private void rechazar(ImportacionResponse resp, Fila f, String error) {
+    resp.rechazadas++;
+    if (resp.errores.size() >= MAX_ERRORES) {
+      resp.erroresOmitidos++;
+      return;
+    }
+    ErrorImportacion e = new ErrorImportacion();
+    e.linea = f.linea;
+    if (f.req != null) {
+      e.identificacion = f.req.identificacion;
+      e.clienteId = f.req.clienteId;
+    }
+    e.error = error;
+    resp.errores.add(e);
+  }
+
+  // Mismas restricciones que las columnas de personas y clientes
+  static String validar(SaveClienteRequest r) {
+    String e;
+    if ((e = texto(r.nombre, "nombre", 150)) != null) return e;
+    if ((e = texto(r.genero, "genero", 10)) != null) return e;
+    if (r.edad == null) return "edad es requerido.";
+    if (r.edad < 0) return "edad no puede ser negativa.";
+    if ((e = texto(r.identificacion, "identificacion", 50)) != null) return e;
+    if ((e = texto(r.direccion, "direccion", 200)) != null) return e;
+    if ((e = texto(r.telefono, "telefono", 32)) != null) return e;
+    if ((e = texto(r.clienteId, "clienteId", 50)) != null) return e;
+    return texto(r.contrasena, "contrasena", 120);
+  }
+
+  private static String texto(String valor, String campo, int max) {
+    if (valor == null || valor.trim().isEmpty()) return campo + " es requerido.";
+    if (valor.length() > max) return campo + " admite hasta " + max + " caracteres.";
+    return null;
+  }
+
+  private Fuente ndjson(BufferedReader in) {
+    long[] linea = {0};
+    return () -> {
+      String l;
+      do {
+        l = in.readLine();
+        if (l == null) return null;
+        linea[0]++;
+      } while (l.trim().isEmpty());
+      try {
+        SaveClienteRequest req = mapper.readValue(l, SaveClienteRequest.class);
+        return req == null ? new Fila(linea[0], null, "JSON inválido.") : new Fila(linea[0], req, null);
+      } catch (IOException e) {
+        return new Fila(linea[0], null, "JSON inválido.");
+      }
+    };
+  }
+
+  private static Fuente csv(BufferedReader in) throws IOException {
+    LectorCsv lector = new LectorCsv(in);
+    List<String> encabezado = lector.siguiente();
+    if (encabezado == null) return () -> null;
+
+    // Posición de cada columna conocida; el orden y las mayúsculas no importan
+    Map<String, Integer> porNombre = new HashMap<>();
+    for (int i = 0; i < encabezado.size(); i++) {
+      porNombre.put(encabezado.get(i).trim().toLowerCase(Locale.ROOT), i);
+    }
+    int[] pos = new int[COLUMNAS.size()];
+    for (int c = 0; c < COLUMNAS.size(); c++) {
+      Integer i = porNombre.get(COLUMNAS.get(c).toLowerCase(Locale.ROOT));
+      if (i == null && !"estado".equals(COLUMNAS.get(c))) {
+        throw new BusinessException("Falta la columna " + COLUMNAS.get(c) + " en el encabezado.");
+      }
+      pos[c] = i == null ? -1 : i;
+    }
+    int columnas = encabezado.size();
+
+    return () -> {
+      List<String> campos = lector.siguiente();
+      if (campos == null) return null;
+      long linea = lector.linea();
+      if (lector.sinCerrar()) return new Fila(linea, null, "Comillas sin cerrar.");
+      if (campos.size() != columnas) {
+        return new Fila(linea, null, "Se esperaban " + columnas + " columnas y hay " + campos.size() + ".");
+      }
+      SaveClienteRequest r = new SaveClienteRequest();
+      r.nombre = campos.get(pos[0]);
+      r.genero = campos.get(pos[1]);
+      r.identificacion = campos.get(pos[3]);
+      r.direccion = campos.get(pos[4]);
+      r.telefono = campos.get(pos[5]);
+      r.clienteId = campos.get(pos[6]);
+      r.contrasena = campos.get(pos[7]);
+      String edad = campos.get(pos[2]).trim();
+      if (!edad.isEmpty()) {
+        try {
+          r.edad = Integer.valueOf(edad);
+        } catch (NumberFormatException e) {
+          return new Fila(linea, r, "edad debe ser un número entero.");
+        }
+      }
+      String estado = pos[8] < 0 ? "" : campos.get(pos[8]).trim();
+      if ("true".equalsIgnoreCase(estado)) r.estado = Boolean.TRUE;
+      else if ("false".equalsIgnoreCase(estado)) r.estado = Boolean.FALSE;
+      else if (!estado.isEmpty()) return new Fila(linea, r, "estado debe ser true o false.");
+      return new Fila(linea, r, null);
+    };
+  }
+}
@@ -0,0 +1,203 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.CuentaDtos.MetricasIndice;
+import com.pv.challenge.entity.Cuenta;
+import com.pv.challenge.exception.BusinessException;
+import com.pv.challenge.exception.NotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Estado en memoria de las cuentas (activa/inactiva/eliminada, saldo aproximado y
+ * versión) para rechazar antes de abrir una transacción los asientos que la base
+ * rechazaría seguro: cuenta inexistente, inactiva o, en débitos, sin fondos.
+ *
+ * Cada commit que cambia una cuenta deja su estado con la versión de la fila
+ * (cuentas.version sube en cada cambio); una versión vieja que llega tarde no pisa a
+ * una más nueva. Al arrancar se cargan todas las cuentas: un id hasta el mayor
+ * cargado que no está en el índice no existe (los ids no se reutilizan). Lo que el
+ * índice no conoce pasa a la base, que sigue siendo la que decide.
+ *
+ * Como el cache de segundo nivel, supone que los cambios a cuentas pasan por esta
+ * instancia: con varias instancias contra la misma base, banco.indice-cuentas.activo=false.
+ */
+@Component
+public class IndiceCuentas {
+
+  private static final Logger log = LoggerFactory.getLogger(IndiceCuentas.class);
+  private static final long VERSION_ELIMINADA = Long.MAX_VALUE;
+
+  private final JdbcTemplate jdbc;
+  private final TransactionTemplate lectura;
+  private final boolean activo;
+  private final MapaCuentas mapa;
+  private final int fetchSize;
+  // Ids hasta este que no están en el mapa no existen; 0 mientras no se cargó
+  private volatile long cargadasHasta;
+  private final LongAdder rechazos = new LongAdder();
+  private final LongAdder desconocidas = new LongAdder();
+
+  public IndiceCuentas(JdbcTemplate jdbc,
+                       PlatformTransactionManager txManager,
+                       @Value("${banco.indice-cuentas.activo:true}") boolean activo,
+                       @Value("${banco.indice-cuentas.capacidad-inicial:1024}") int capacidad,
+                       @Value("${banco.indice-cuentas.fetch-size:10000}") int fetchSize) {
+    this.jdbc = jdbc;
+    this.lectura = new TransactionTemplate(txManager);
+    this.lectura.setReadOnly(true);
+    this.activo = activo;
+    this.mapa = new MapaCuentas(capacidad);
+    this.fetchSize = fetchSize;
+  }
+
+  // Carga inicial en una pasada sobre cuentas; los commits que llegan mientras tanto
+  // conviven con ella por versión
+  @EventListener(ApplicationReadyEvent.class)
+  public void cargar() {
+    if (!activo) return;
+    long inicio = System.nanoTime();
+    AtomicLong maximo = new AtomicLong();
+    try {
+      // Dentro de una transacción para que el fetch size lea con cursor del servidor
+      lectura.execute(st -> {
+        jdbc.query(con -> {
+          PreparedStatement ps = con.prepareStatement("SELECT id, estado, saldo, version FROM cuentas");
+          ps.setFetchSize(fetchSize);
+          return ps;
+        }, (ResultSet rs) -> {
+          long id = rs.getLong(1);
+          poner(id, rs.getBoolean(2), rs.getBigDecimal(3), rs.getLong(4));
+          if (id > maximo.get()) maximo.set(id);
+        });
+        return null;
+      });
+    } catch (RuntimeException e) {
+      log.warn("No se pudo cargar el índice de cuentas; los asientos van directo a la base: {}", e.getMessage());
+      return;
+    }
+    cargadasHasta = maximo.get();
+    log.info("Índice de cuentas: {} cuentas en {} ms ({} KB)", mapa.tamano(),
+        (System.nanoTime() - inicio) / 1_000_000, mapa.bytes() / 1024);
+  }
+
+  // Lanza si el crédito a la cuenta seguro se rechaza; si no, la base decide
+  public void verificarCredito(Long cuentaId) {
+    verificar(cuentaId, 0);
+  }
+
+  public void verificarDebito(Long cuentaId, BigDecimal monto) {
+    verificar(cuentaId, centavos(monto));
+  }
+
+  /**
+   * Estado confirmado de la cuenta: se aplica al índice después del commit de la
+   * transacción en curso (o ya, sin transacción). Los valores se toman al llamar.
+   */
+  public void confirmar(Long cuentaId, Boolean estado, BigDecimal saldo, Long version) {
+    if (!activo || cuentaId == null || version == null) return;
+    long id = cuentaId;
+    boolean activa = !Boolean.FALSE.equals(estado);
+    long v = version;
+    despuesDelCommit(() -> poner(id, activa, saldo, v));
+  }
+
+  // De una entidad se toman los valores al commit: la versión la sube Hibernate al
+  // hacer flush
+  public void confirmar(Cuenta c) {
+    if (!activo) return;
+    despuesDelCommit(() -> {
+      if (c.getId() == null || c.getVersion() == null) return;
+      poner(c.getId(), !Boolean.FALSE.equals(c.getEstado()), c.getSaldo(), c.getVersion());
+    });
+  }
+
+  // Cuentas borradas (también las que la base borra en cascada con su cliente)
+  public void eliminadas(Collection<Long> cuentaIds) {
+    if (!activo || cuentaIds.isEmpty()) return;
+    long[] ids = new long[cuentaIds.size()];
+    int n = 0;
+    for (Long id : cuentaIds) ids[n++] = id;
+    despuesDelCommit(() -> {
+      for (long id : ids) mapa.poner(id, MapaCuentas.ELIMINADA, 0, VERSION_ELIMINADA);
+    });
+  }
+
+  public MetricasIndice metricas() {
+    MetricasIndice m = new MetricasIndice();
+    m.activo = activo;
+    m.cuentas = mapa.tamano();
+    m.capacidad = mapa.capacidad();
+    m.bytes = mapa.bytes();
+    m.cargadasHasta = cargadasHasta;
+    m.rechazos = rechazos.sum();
+    m.desconocidas = desconocidas.sum();
+    return m;
+  }
+
+  private void verificar(Long cuentaId, long debito) {
+    if (!activo || cuentaId == null) return;
+    byte e = mapa.verificar(cuentaId, debito);
+    switch (e) {
+      case MapaCuentas.ACTIVA:
+        return;
+      case MapaCuentas.INACTIVA:
+        rechazos.increment();
+        throw new BusinessException(MovimientoLoteService.cuentaInactiva(cuentaId));
+      case MapaCuentas.SIN_FONDOS:
+        rechazos.increment();
+        throw new BusinessException("Saldo no disponible.");
+      case MapaCuentas.ELIMINADA:
+        rechazos.increment();
+        throw new NotFoundException(MovimientoLoteService.cuentaInexistente(cuentaId));
+      default:
+        if (cuentaId > 0 && cuentaId <= cargadasHasta) {
+          rechazos.increment();
+          throw new NotFoundException(MovimientoLoteService.cuentaInexistente(cuentaId));
+        }
+        desconocidas.increment();
+    }
+  }
+
+  private void poner(long id, boolean activa, BigDecimal saldo, long version) {
+    mapa.poner(id, activa ? MapaCuentas.ACTIVA : MapaCuentas.INACTIVA, centavos(saldo), version);
+  }
+
+  private static void despuesDelCommit(Runnable r) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          r.run();
+        }
+      });
+    } else {
+      r.run();
+    }
+  }
+
+  // Saldo en centavos; hacia arriba para que un saldo de más de 2 decimales nunca se
+  // vea menor, y el tope si no entra en un long (nunca "sin fondos")
+  static long centavos(BigDecimal monto) {
+    if (monto == null) return 0;
+    BigInteger c = monto.movePointRight(2).setScale(0, RoundingMode.CEILING).toBigInteger();
+    return c.bitLength() < 64 ? c.longValue() : (c.signum() > 0 ? Long.MAX_VALUE : Long.MIN_VALUE);
+  }
+}
@@ -0,0 +1,83 @@
+package com.pv.challenge.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lee registros CSV (RFC 4180) de a uno: separador coma, campos entre comillas con ""
+ * como comilla literal y saltos de línea dentro de las comillas. Las líneas vacías se
+ * saltan.
+ */
+final class LectorCsv {
+
+  private final BufferedReader in;
+  private long leidas;
+  private long linea;
+  private boolean sinCerrar;
+
+  LectorCsv(BufferedReader in) {
+    this.in = in;
+  }
+
+  // Campos del próximo registro, o null al final del archivo
+  List<String> siguiente() throws IOException {
+    String l;
+    do {
+      l = in.readLine();
+      if (l == null) return null;
+      leidas++;
+    } while (l.isEmpty());
+    if (leidas == 1 && l.charAt(0) == '\uFEFF') l = l.substring(1); // BOM de Excel
+    linea = leidas;
+    sinCerrar = false;
+
+    List<String> campos = new ArrayList<>();
+    StringBuilder campo = new StringBuilder();
+    boolean comillas = false;
+    int i = 0;
+    while (true) {
+      if (i == l.length()) {
+        if (!comillas) break;
+        String otra = in.readLine();
+        if (otra == null) {
+          sinCerrar = true;
+          break;
+        }
+        leidas++;
+        campo.append('\n');
+        l = otra;
+        i = 0;
+        continue;
+      }
+      char c = l.charAt(i++);
+      if (comillas) {
+        if (c != '"') campo.append(c);
+        else if (i < l.length() && l.charAt(i) == '"') {
+          campo.append('"');
+          i++;
+        } else comillas = false;
+      } else if (c == '"') {
+        comillas = true;
+      } else if (c == ',') {
+        campos.add(campo.toString());
+        campo.setLength(0);
+      } else {
+        campo.append(c);
+      }
+    }
+    campos.add(campo.toString());
+    return campos;
+  }
+
+  // Línea del archivo donde empieza el último registro leído
+  long linea() {
+    return linea;
+  }
+
+  // El último registro llegó al final del archivo con comillas abiertas
+  boolean sinCerrar() {
+    return sinCerrar;
+  }
+}
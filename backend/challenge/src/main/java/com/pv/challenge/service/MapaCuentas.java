@@ -0,0 +1,156 @@
+package com.pv.challenge.service;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Mapa de cuentaId (long) a estado, saldo en centavos y versión, sin objetos por
+ * entrada: direccionamiento abierto con sondeo lineal sobre arreglos paralelos. Una
+ * entrada ocupa 25 bytes por celda (clave, saldo y versión long, estado byte).
+ *
+ * Las entradas no se borran (una cuenta eliminada queda marcada), así el sondeo no
+ * necesita lápidas. Escrituras bajo el lock de escritura; lecturas optimistas sin
+ * bloquear, repetidas con el lock de lectura si una escritura las cruzó.
+ */
+final class MapaCuentas {
+
+  static final byte DESCONOCIDA = 0;
+  static final byte ACTIVA = 1;
+  static final byte INACTIVA = 2;
+  static final byte ELIMINADA = 3;
+  static final byte SIN_FONDOS = 4;   // solo como resultado de verificar()
+
+  static final int BYTES_POR_CELDA = 8 + 8 + 8 + 1;
+  private static final float CARGA_MAXIMA = 0.7f;
+
+  // Arreglos del mismo largo, reemplazados juntos al crecer
+  private static final class Tabla {
+    final long[] claves;
+    final long[] saldos;
+    final long[] versiones;
+    final byte[] estados;
+    final int mascara;
+
+    Tabla(int capacidad) {
+      claves = new long[capacidad];
+      saldos = new long[capacidad];
+      versiones = new long[capacidad];
+      estados = new byte[capacidad];
+      mascara = capacidad - 1;
+    }
+  }
+
+  private final StampedLock lock = new StampedLock();
+  private volatile Tabla tabla;
+  private int tamano;
+
+  MapaCuentas(int capacidad) {
+    int n = capacidad <= 16 ? 16 : Integer.highestOneBit(capacidad - 1) << 1;
+    this.tabla = new Tabla(n);
+  }
+
+  /**
+   * Guarda el estado de la cuenta si la versión es más nueva que la guardada: los
+   * commits de una misma cuenta pueden llegar acá en otro orden que el de la base.
+   * id debe ser positivo (0 marca celda libre).
+   */
+  boolean poner(long id, byte estado, long saldo, long version) {
+    long s = lock.writeLock();
+    try {
+      Tabla t = tabla;
+      int i = celda(t, id);
+      if (t.claves[i] == id) {
+        if (version <= t.versiones[i]) return false;
+      } else {
+        if (tamano + 1 > t.claves.length * CARGA_MAXIMA) {
+          t = crecer(t);
+          i = celda(t, id);
+        }
+        t.claves[i] = id;
+        tamano++;
+      }
+      t.saldos[i] = saldo;
+      t.versiones[i] = version;
+      t.estados[i] = estado;
+      return true;
+    } finally {
+      lock.unlockWrite(s);
+    }
+  }
+
+  /**
+   * Estado de la cuenta para un asiento que debita debito centavos (0 en créditos):
+   * ACTIVA, INACTIVA, ELIMINADA, SIN_FONDOS o DESCONOCIDA si no está.
+   */
+  byte verificar(long id, long debito) {
+    long s = lock.tryOptimisticRead();
+    byte r = verificar(tabla, id, debito);
+    if (lock.validate(s)) return r;
+    s = lock.readLock();
+    try {
+      return verificar(tabla, id, debito);
+    } finally {
+      lock.unlockRead(s);
+    }
+  }
+
+  int tamano() {
+    long s = lock.readLock();
+    try {
+      return tamano;
+    } finally {
+      lock.unlockRead(s);
+    }
+  }
+
+  int capacidad() {
+    return tabla.claves.length;
+  }
+
+  long bytes() {
+    return (long) capacidad() * BYTES_POR_CELDA;
+  }
+
+  private static byte verificar(Tabla t, long id, long debito) {
+    int i = mezcla(id) & t.mascara;
+    // Con una escritura en curso el sondeo puede ver una tabla a medias; validate() lo
+    // descarta, y el tope de vueltas evita quedar girando mientras tanto
+    for (int n = 0; n <= t.mascara; n++) {
+      long k = t.claves[i];
+      if (k == id) {
+        byte e = t.estados[i];
+        return e == ACTIVA && t.saldos[i] < debito ? SIN_FONDOS : e;
+      }
+      if (k == 0) return DESCONOCIDA;
+      i = (i + 1) & t.mascara;
+    }
+    return DESCONOCIDA;
+  }
+
+  // Celda de id, o la libre donde iría
+  private static int celda(Tabla t, long id) {
+    int i = mezcla(id) & t.mascara;
+    while (t.claves[i] != id && t.claves[i] != 0) i = (i + 1) & t.mascara;
+    return i;
+  }
+
+  private Tabla crecer(Tabla vieja) {
+    Tabla t = new Tabla(vieja.claves.length << 1);
+    for (int j = 0; j < vieja.claves.length; j++) {
+      long k = vieja.claves[j];
+      if (k == 0) continue;
+      int i = celda(t, k);
+      t.claves[i] = k;
+      t.saldos[i] = vieja.saldos[j];
+      t.versiones[i] = vieja.versiones[j];
+      t.estados[i] = vieja.estados[j];
+    }
+    tabla = t;
+    return t;
+  }
+
+  // Ids consecutivos repartidos por toda la tabla (hash multiplicativo de Fibonacci)
+  private static int mezcla(long id) {
+    long h = id * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+}
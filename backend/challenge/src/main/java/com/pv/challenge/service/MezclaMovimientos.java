@@ -0,0 +1,113 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.ReporteLineaDtos;
+import com.pv.challenge.entity.Cuenta;
+import com.pv.challenge.entity.Movimiento;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Mezcla k-way por fecha de los movimientos de varias cuentas.
+ * Recibe los movimientos ordenados por (cuenta, fecha, id), tal como vienen de una sola
+ * consulta, y emite las líneas del estado de cuenta en orden (fecha, cuenta, id), el mismo
+ * que streamEnRangoPorFecha, llevando el saldo corrido de cada cuenta. Cada cuenta es un cursor sobre su tramo de la lista; el heap
+ * solo guarda un cursor por cuenta, así que no hay que reordenar todas las líneas.
+ */
+final class MezclaMovimientos implements Iterator<ReporteLineaDtos> {
+
+  private static final class Cursor {
+    final Cuenta cuenta;
+    final int fin;
+    int pos;
+    BigDecimal saldo;
+
+    Cursor(Cuenta cuenta, int inicio, int fin, BigDecimal saldo) {
+      this.cuenta = cuenta;
+      this.pos = inicio;
+      this.fin = fin;
+      this.saldo = saldo;
+    }
+  }
+
+  private final String cliente;
+  private final List<Movimiento> movimientos;
+  private final PriorityQueue<Cursor> heap;
+
+  MezclaMovimientos(String cliente, List<Cuenta> cuentas, Map<Long, BigDecimal> saldosIniciales,
+                    List<Movimiento> ordenadosPorCuenta) {
+    this.cliente = cliente;
+    this.movimientos = ordenadosPorCuenta;
+    this.heap = new PriorityQueue<>(Math.max(1, cuentas.size()),
+        Comparator.<Cursor, OffsetDateTime>comparing(c -> actual(c).getFecha())
+            .thenComparing(c -> c.cuenta.getId())
+            .thenComparing(c -> actual(c).getId(), Comparator.nullsFirst(Comparator.naturalOrder())));
+
+    // Cada cuenta ocupa un tramo contiguo de la lista
+    Map<Long, Cuenta> porId = new HashMap<>();
+    for (Cuenta c : cuentas) porId.put(c.getId(), c);
+
+    int inicio = 0;
+    while (inicio < ordenadosPorCuenta.size()) {
+      Long cuentaId = cuentaId(ordenadosPorCuenta.get(inicio));
+      int fin = inicio + 1;
+      while (fin < ordenadosPorCuenta.size() && cuentaId.equals(cuentaId(ordenadosPorCuenta.get(fin)))) fin++;
+
+      Cuenta cuenta = porId.get(cuentaId);
+      if (cuenta != null) {
+        BigDecimal saldo = saldosIniciales.get(cuentaId);
+        heap.add(new Cursor(cuenta, inicio, fin, saldo == null ? BigDecimal.ZERO : saldo));
+      }
+      inicio = fin;
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    return !heap.isEmpty();
+  }
+
+  @Override
+  public ReporteLineaDtos next() {
+    Cursor c = heap.poll();
+    if (c == null) throw new NoSuchElementException();
+
+    Movimiento m = actual(c);
+    ReporteLineaDtos r = linea(cliente, c.cuenta, c.saldo, m.getTipo(), m.getValor(), m.getFecha());
+    c.saldo = r.getSaldoDisponible();
+    if (++c.pos < c.fin) heap.add(c);
+    return r;
+  }
+
+  // Línea del estado de cuenta para un movimiento, partiendo del saldo previo de su cuenta
+  static ReporteLineaDtos linea(String cliente, Cuenta cuenta, BigDecimal saldoPrevio,
+                                String tipo, BigDecimal valor, OffsetDateTime fecha) {
+    BigDecimal signed = "RETIRO".equalsIgnoreCase(tipo) ? valor.negate() : valor;
+
+    ReporteLineaDtos r = new ReporteLineaDtos();
+    r.setFecha(fecha.toLocalDateTime());
+    r.setCliente(cliente);
+    r.setNumeroCuenta(cuenta.getNumero());
+    r.setTipoCuenta(cuenta.getTipo());
+    r.setSaldoInicial(saldoPrevio);
+    r.setEstado(Boolean.TRUE.equals(cuenta.getEstado()));
+    r.setMovimiento(signed);
+    r.setSaldoDisponible(saldoPrevio.add(signed));
+    return r;
+  }
+
+  private Movimiento actual(Cursor c) {
+    return movimientos.get(c.pos);
+  }
+
+  private static Long cuentaId(Movimiento m) {
+    return m.getCuenta().getId();
+  }
+}
@@ -0,0 +1,245 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.MovimientoDtos.LoteResponse;
+import com.pv.challenge.dto.MovimientoDtos.OperacionLote;
+import com.pv.challenge.dto.MovimientoDtos.ResultadoLote;
+import com.pv.challenge.entity.Cuenta;
+import com.pv.challenge.entity.Movimiento;
+import com.pv.challenge.repo.CuentaRepository;
+import com.pv.challenge.repo.MovimientoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Aplica lotes grandes de depósitos/retiros agrupando por cuenta.
+ * Cada chunk de cuentas corre en una transacción: bloquea sus cuentas en orden de id,
+ * aplica las operaciones en memoria (respetando el orden del request por cuenta) y
+ * persiste saldos y movimientos con batches JDBC. Los retiros se verifican en memoria
+ * contra el cupo diario, con los contadores del chunk leídos y bloqueados al empezar.
+ */
+@Service
+public class MovimientoLoteService {
+
+  private static final Logger log = LoggerFactory.getLogger(MovimientoLoteService.class);
+
+  private final CuentaRepository cuentaRepo;
+  private final MovimientoRepository movRepo;
+  private final SaldoDiarioService saldoDiarioService;
+  private final ReporteCacheMemoria reporteCache;
+  private final CupoDiarioService cupoDiario;
+  private final IndiceCuentas indice;
+  private final SubsaldosService subsaldos;
+  private final TransactionTemplate tx;
+  private final int tamanoChunk;
+
+  public MovimientoLoteService(CuentaRepository cuentaRepo,
+                               MovimientoRepository movRepo,
+                               SaldoDiarioService saldoDiarioService,
+                               ReporteCacheMemoria reporteCache,
+                               CupoDiarioService cupoDiario,
+                               IndiceCuentas indice,
+                               SubsaldosService subsaldos,
+                               PlatformTransactionManager txManager,
+                               @Value("${banco.lote.tamano-chunk:1000}") int tamanoChunk) {
+    this.cuentaRepo = cuentaRepo;
+    this.movRepo = movRepo;
+    this.saldoDiarioService = saldoDiarioService;
+    this.reporteCache = reporteCache;
+    this.cupoDiario = cupoDiario;
+    this.indice = indice;
+    this.subsaldos = subsaldos;
+    this.tx = new TransactionTemplate(txManager);
+    this.tamanoChunk = tamanoChunk;
+  }
+
+  public LoteResponse registrar(List<OperacionLote> ops) {
+    return registrar(ops, null);
+  }
+
+  // origenes: cuándo se confirmó cada operación al cliente, en el orden de ops (el
+  // acuse del diario). Queda en fecha_origen; la fecha del movimiento es siempre la
+  // de aplicación, para que el saldo corrido siga el orden (fecha, id).
+  LoteResponse registrar(List<OperacionLote> ops, List<OffsetDateTime> origenes) {
+    ResultadoLote[] resultados = new ResultadoLote[ops.size()];
+
+    // cuentaId -> índices de sus operaciones, en orden de llegada
+    Map<Long, List<Integer>> porCuenta = new LinkedHashMap<>();
+    for (int i = 0; i < ops.size(); i++) {
+      String error = validar(ops.get(i));
+      if (error != null) {
+        resultados[i] = rechazo(i, error);
+      } else {
+        porCuenta.computeIfAbsent(ops.get(i).cuentaId, k -> new ArrayList<>()).add(i);
+      }
+    }
+
+    List<Long> chunk = new ArrayList<>();
+    int opsEnChunk = 0;
+    for (Map.Entry<Long, List<Integer>> e : porCuenta.entrySet()) {
+      chunk.add(e.getKey());
+      opsEnChunk += e.getValue().size();
+      if (opsEnChunk >= tamanoChunk) {
+        aplicarChunk(chunk, porCuenta, ops, origenes, resultados);
+        chunk = new ArrayList<>();
+        opsEnChunk = 0;
+      }
+    }
+    if (!chunk.isEmpty()) aplicarChunk(chunk, porCuenta, ops, origenes, resultados);
+
+    LoteResponse resp = new LoteResponse();
+    resp.total = ops.size();
+    for (ResultadoLote r : resultados) {
+      if (r.ok) resp.aplicados++;
+      else resp.rechazados++;
+      resp.resultados.add(r);
+    }
+    return resp;
+  }
+
+  private void aplicarChunk(List<Long> cuentaIds, Map<Long, List<Integer>> porCuenta,
+                            List<OperacionLote> ops, List<OffsetDateTime> origenes, ResultadoLote[] resultados) {
+    Map<Integer, ResultadoLote> parciales = new HashMap<>();
+    try {
+      tx.executeWithoutResult(s -> {
+        Map<Long, Cuenta> cuentas = new HashMap<>();
+        for (Cuenta c : cuentaRepo.bloquearPorIds(cuentaIds)) {
+          cuentas.put(c.getId(), c);
+          // Con el saldo repartido, consolidado antes de leerlo o moverlo
+          if (subsaldos.repartida(c.getId())) subsaldos.consolidarBloqueada(c);
+        }
+
+        OffsetDateTime fecha = OffsetDateTime.now();
+        // Cupo diario de las cuentas con retiros en el chunk, verificado en memoria
+        List<Cuenta> conRetiros = new ArrayList<>();
+        for (Long cuentaId : cuentaIds) {
+          Cuenta c = cuentas.get(cuentaId);
+          if (c == null) continue;
+          for (Integer i : porCuenta.get(cuentaId)) {
+            if ("RETIRO".equals(ops.get(i).tipo)) {
+              conRetiros.add(c);
+              break;
+            }
+          }
+        }
+        CupoDiarioService.Cupos cupos = cupoDiario.bloquear(conRetiros, fecha);
+
+        List<Movimiento> nuevos = new ArrayList<>();
+        List<Integer> indices = new ArrayList<>();
+        Set<Cuenta> modificadas = new LinkedHashSet<>();
+
+        for (Long cuentaId : cuentaIds) {
+          Cuenta c = cuentas.get(cuentaId);
+          for (Integer i : porCuenta.get(cuentaId)) {
+            OperacionLote op = ops.get(i);
+            if (c == null) {
+              parciales.put(i, rechazo(i, cuentaInexistente(cuentaId)));
+              continue;
+            }
+            if (!Boolean.TRUE.equals(c.getEstado())) {
+              parciales.put(i, rechazo(i, cuentaInactiva(cuentaId)));
+              continue;
+            }
+            boolean retiro = "RETIRO".equals(op.tipo);
+            if (retiro && c.getSaldo().compareTo(op.monto) < 0) {
+              parciales.put(i, rechazo(i, "Saldo no disponible."));
+              continue;
+            }
+            String cupo = retiro ? cupos.reservar(c, op.monto) : null;
+            if (cupo != null) {
+              parciales.put(i, rechazo(i, cupo));
+              continue;
+            }
+            c.setSaldo(retiro ? c.getSaldo().subtract(op.monto) : c.getSaldo().add(op.monto));
+            modificadas.add(c);
+
+            Movimiento m = new Movimiento();
+            m.setCuenta(c);
+            m.setTipo(op.tipo);
+            m.setValor(op.monto);
+            m.setSaldo(c.getSaldo());
+            m.setReferencia(op.ref);
+            m.setFecha(fecha);
+            if (origenes != null) m.setFechaOrigen(origenes.get(i));
+            nuevos.add(m);
+            indices.add(i);
+          }
+        }
+
+        // Los ids salen del pool de la secuencia al persistir; los INSERT y los
+        // UPDATE de saldos se envían en batch al hacer flush, y el rollup diario
+        // del chunk se acumula con una sola sentencia.
+        for (Cuenta c : modificadas) indice.confirmar(c);
+        movRepo.saveAll(nuevos);
+        saldoDiarioService.acumular(nuevos);
+        cupoDiario.acumular(nuevos);
+        List<Long> clientes = new ArrayList<>();
+        for (Movimiento m : nuevos) clientes.add(m.getCuenta().getCliente().getId());
+        reporteCache.invalidarClientes(clientes);
+        for (int k = 0; k < nuevos.size(); k++) {
+          Movimiento m = nuevos.get(k);
+          parciales.put(indices.get(k), aplicado(indices.get(k), m.getId(), m.getSaldo(), m.getFecha()));
+        }
+      });
+    } catch (RuntimeException ex) {
+      log.error("Error aplicando chunk de {} cuentas: {}", cuentaIds.size(), ex.getMessage(), ex);
+      parciales.clear();
+      for (Long cuentaId : cuentaIds) {
+        for (Integer i : porCuenta.get(cuentaId)) {
+          ResultadoLote r = rechazo(i, "Error al aplicar el lote; reintentar.");
+          r.falla = ex;
+          parciales.put(i, r);
+        }
+      }
+    }
+    for (Map.Entry<Integer, ResultadoLote> e : parciales.entrySet()) {
+      resultados[e.getKey()] = e.getValue();
+    }
+  }
+
+  private String validar(OperacionLote op) {
+    if (op == null || op.cuentaId == null) return "cuentaId es requerido.";
+    if (!"DEPOSITO".equals(op.tipo) && !"RETIRO".equals(op.tipo)) return "tipo debe ser DEPOSITO o RETIRO.";
+    if (op.monto == null || op.monto.signum() <= 0) return "El monto debe ser mayor a 0.";
+    return null;
+  }
+
+  static String cuentaInexistente(Long cuentaId) {
+    return "Cuenta " + cuentaId + " no existe";
+  }
+
+  static String cuentaInactiva(Long cuentaId) {
+    return "Cuenta " + cuentaId + " inactiva.";
+  }
+
+  private ResultadoLote aplicado(int indice, Long movimientoId, BigDecimal saldo, OffsetDateTime fecha) {
+    ResultadoLote r = new ResultadoLote();
+    r.indice = indice;
+    r.ok = true;
+    r.movimientoId = movimientoId;
+    r.saldo = saldo;
+    r.fecha = fecha;
+    return r;
+  }
+
+  private ResultadoLote rechazo(int indice, String error) {
+    ResultadoLote r = new ResultadoLote();
+    r.indice = indice;
+    r.ok = false;
+    r.error = error;
+    return r;
+  }
+}
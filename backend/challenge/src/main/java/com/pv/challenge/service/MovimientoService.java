@@ -1,25 +1,97 @@
 package com.pv.challenge.service;
 
+import com.pv.challenge.dto.MovimientoDtos.FiltroMovimientos;
+import com.pv.challenge.dto.MovimientoDtos.MovimientoResponse;
+import com.pv.challenge.dto.MovimientoDtos.PaginaMovimientos;
 import com.pv.challenge.entity.Cuenta;
 import com.pv.challenge.entity.Movimiento;
 import com.pv.challenge.exception.BusinessException;
 import com.pv.challenge.exception.NotFoundException;
 import com.pv.challenge.repo.CuentaRepository;
 import com.pv.challenge.repo.MovimientoRepository;
+import com.pv.challenge.repo.MovimientoRepository.Asiento;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Service
 public class MovimientoService {
+  public static final int LIMITE_PAGINA = 500;
+
   private final CuentaRepository cuentaRepo;
   private final MovimientoRepository movRepo;
+  private final SaldoDiarioService saldoDiarioService;
+  private final ReporteCacheMemoria reporteCache;
+  private final CacheSegundoNivel cache;
+  private final CupoDiarioService cupoDiario;
+  private final IndiceCuentas indice;
+  private final SubsaldosService subsaldos;
+  private final BloqueoCuentas bloqueo;
+  private final TransactionTemplate tx;
 
-  public MovimientoService(CuentaRepository cuentaRepo, MovimientoRepository movRepo) {
+  public MovimientoService(CuentaRepository cuentaRepo, MovimientoRepository movRepo,
+                           SaldoDiarioService saldoDiarioService, ReporteCacheMemoria reporteCache,
+                           CacheSegundoNivel cache, CupoDiarioService cupoDiario,
+                           IndiceCuentas indice, SubsaldosService subsaldos,
+                           BloqueoCuentas bloqueo, PlatformTransactionManager txManager) {
     this.cuentaRepo = cuentaRepo;
     this.movRepo = movRepo;
+    this.saldoDiarioService = saldoDiarioService;
+    this.reporteCache = reporteCache;
+    this.cache = cache;
+    this.cupoDiario = cupoDiario;
+    this.indice = indice;
+    this.subsaldos = subsaldos;
+    this.bloqueo = bloqueo;
+    this.tx = new TransactionTemplate(txManager);
+  }
+
+  /**
+   * Movimientos del más reciente al más antiguo, de a "limite" por página. El cursor
+   * es opaco para el cliente: codifica (fecha, id) del último movimiento entregado.
+   */
+  @Transactional(readOnly = true)
+  public PaginaMovimientos listar(FiltroMovimientos filtro, String cursor, int limite) {
+    if (limite < 1 || limite > LIMITE_PAGINA) {
+      throw new BusinessException("limite debe estar entre 1 y " + LIMITE_PAGINA + ".");
+    }
+    OffsetDateTime despuesDeFecha = null;
+    Long despuesDeId = null;
+    if (cursor != null && !cursor.isEmpty()) {
+      try {
+        String[] partes = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("_", 2);
+        despuesDeFecha = Instant.parse(partes[0]).atOffset(ZoneOffset.UTC);
+        despuesDeId = Long.valueOf(partes[1]);
+      } catch (IllegalArgumentException | DateTimeParseException | ArrayIndexOutOfBoundsException e) {
+        throw new BusinessException("cursor inválido.");
+      }
+    }
+
+    // Uno de más para saber si hay página siguiente
+    List<Movimiento> ms = movRepo.pagina(filtro, despuesDeFecha, despuesDeId, limite + 1);
+    PaginaMovimientos p = new PaginaMovimientos();
+    for (int i = 0; i < Math.min(limite, ms.size()); i++) p.items.add(new MovimientoResponse(ms.get(i)));
+    if (ms.size() > limite) {
+      Movimiento ultimo = ms.get(limite - 1);
+      String c = ultimo.getFecha().toInstant() + "_" + ultimo.getId();
+      p.siguiente = Base64.getUrlEncoder().withoutPadding().encodeToString(c.getBytes(StandardCharsets.UTF_8));
+    }
+    return p;
   }
 
   private void assertMontoPositivo(BigDecimal monto) {
@@ -28,52 +100,199 @@ public class MovimientoService {
     }
   }
 
-  @Transactional
+  // Con la estrategia atómica (por defecto) el saldo se actualiza en la base (UPDATE
+  // condicional + rollup diario + INSERT en la misma sentencia), sin leer la cuenta
+  // antes: un solo round trip y sin lost updates. Hibernate no ve ese UPDATE, así que
+  // la cuenta se bloquea en el cache de segundo nivel. Pesimista y optimista cambian la
+  // entidad (ver BloqueoCuentas).
+  // Lo que el índice de cuentas rechaza seguro no llega a abrir la transacción.
+  // En una cuenta con el saldo repartido el depósito suma a un subsaldo al azar y no
+  // toca la fila de la cuenta; si no encuentra el subsaldo (se acaba de dejar de
+  // repartir) acredita directo.
   public Movimiento depositar(Long cuentaId, BigDecimal monto, String ref) {
     assertMontoPositivo(monto);
-    Cuenta c = cuentaRepo.findById(cuentaId)
-        .orElseThrow(() -> new NotFoundException("Cuenta " + cuentaId + " no existe"));
+    indice.verificarCredito(cuentaId);
+    if (subsaldos.repartida(cuentaId)) {
+      Movimiento m = tx.execute(s -> {
+        OffsetDateTime fecha = OffsetDateTime.now();
+        return movRepo.acreditarEnSubsaldo(cuentaId, ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE), monto, ref, fecha)
+            .map(a -> movimiento(cuentaId, "DEPOSITO", monto, ref, fecha, a))
+            .orElse(null);
+      });
+      if (m != null) return m;
+    }
+    switch (bloqueo.estrategia()) {
+      case PESIMISTA:
+        return tx.execute(s -> asentar(bloquear(cuentaId), "DEPOSITO", monto, ref));
+      case OPTIMISTA:
+        return bloqueo.reintentar(Collections.singletonList(cuentaId),
+            () -> tx.execute(s -> asentar(leer(cuentaId), "DEPOSITO", monto, ref)));
+      default:
+        return tx.execute(s -> {
+          Asiento a = movRepo.acreditar(cuentaId, "DEPOSITO", monto, ref)
+              .orElseThrow(() -> rechazo(cuentaId, false));
+          asentado(cuentaId, a);
+          return movimiento(cuentaId, "DEPOSITO", monto, ref, fecha(a), a);
+        });
+    }
+  }
 
-    BigDecimal nuevoSaldo = c.getSaldo().add(monto);
-    c.setSaldo(nuevoSaldo);
-    cuentaRepo.save(c);
+  public Movimiento retirar(Long cuentaId, BigDecimal monto, String ref) {
+    assertMontoPositivo(monto);
+    if (subsaldos.repartida(cuentaId)) {
+      // El índice no ve los subsaldos: solo descarta cuentas inexistentes o inactivas.
+      // Con la fila bloqueada se consolidan los subsaldos: el retiro ve el saldo completo
+      // y su movimiento queda después de los créditos que ya estaban confirmados.
+      indice.verificarCredito(cuentaId);
+      return tx.execute(s -> {
+        Cuenta c = bloquear(cuentaId);
+        if (Boolean.TRUE.equals(c.getEstado())) subsaldos.consolidarBloqueada(c);
+        return asentar(c, "RETIRO", monto, ref);
+      });
+    }
+    indice.verificarDebito(cuentaId, monto);
+    switch (bloqueo.estrategia()) {
+      case PESIMISTA:
+        return tx.execute(s -> asentar(bloquear(cuentaId), "RETIRO", monto, ref));
+      case OPTIMISTA:
+        return bloqueo.reintentar(Collections.singletonList(cuentaId),
+            () -> tx.execute(s -> asentar(leer(cuentaId), "RETIRO", monto, ref)));
+      default:
+        return tx.execute(s -> {
+          Asiento a = movRepo.debitar(cuentaId, "RETIRO", monto, ref)
+              .orElseThrow(() -> rechazo(cuentaId, true));
+          OffsetDateTime fecha = fecha(a);
+          // Después del débito, que ya bloqueó la cuenta: si pasa el cupo, la excepción
+          // deshace el asiento entero
+          cupoDiario.registrarRetiro(cuentaId, a.getClienteId(), monto, fecha);
+          asentado(cuentaId, a);
+          return movimiento(cuentaId, "RETIRO", monto, ref, fecha, a);
+        });
+    }
+  }
 
-    Movimiento m = new Movimiento();
-    m.setCuenta(c);
-    m.setTipo("DEPOSITO");
-    m.setValor(monto);
-    m.setSaldo(nuevoSaldo);
-    m.setReferencia(ref);
-    m.setFecha(OffsetDateTime.now());
-    return movRepo.save(m);
+  // Depósito o retiro sobre la entidad, bloqueada o leída sin bloquear. Hibernate
+  // incrementa la versión al hacer flush; con la lectura optimista, si otra transacción
+  // la cambió antes, el UPDATE no encuentra la fila y la transacción falla con
+  // OptimisticLockingFailureException.
+  private Movimiento asentar(Cuenta c, String tipo, BigDecimal monto, String ref) {
+    boolean debito = "RETIRO".equals(tipo);
+    if (!Boolean.TRUE.equals(c.getEstado())) throw new BusinessException(MovimientoLoteService.cuentaInactiva(c.getId()));
+    if (debito && c.getSaldo().compareTo(monto) < 0) throw new BusinessException("Saldo no disponible.");
+
+    OffsetDateTime fecha = OffsetDateTime.now();
+    if (debito) cupoDiario.registrarRetiro(c.getId(), c.getCliente().getId(), monto, fecha);
+    c.setSaldo(debito ? c.getSaldo().subtract(monto) : c.getSaldo().add(monto));
+    indice.confirmar(c);
+    Movimiento m = movRepo.save(movimiento(c, tipo, monto, ref, fecha));
+    saldoDiarioService.acumular(Collections.singletonList(m));
+    reporteCache.invalidarCliente(c.getCliente().getId());
+    return m;
   }
 
-  @Transactional
-  public Movimiento retirar(Long cuentaId, BigDecimal monto, String ref) {
+  private Cuenta bloquear(Long cuentaId) {
+    return cuentaRepo.bloquearPorIds(Collections.singletonList(cuentaId)).stream().findFirst()
+        .orElseThrow(() -> new NotFoundException(MovimientoLoteService.cuentaInexistente(cuentaId)));
+  }
+
+  private Cuenta leer(Long cuentaId) {
+    return cuentaRepo.findById(cuentaId)
+        .orElseThrow(() -> new NotFoundException(MovimientoLoteService.cuentaInexistente(cuentaId)));
+  }
+
+  private void asentado(Long cuentaId, Asiento a) {
+    cache.cuentaModificada(cuentaId);
+    reporteCache.invalidarCliente(a.getClienteId());
+    indice.confirmar(cuentaId, Boolean.TRUE, a.getSaldo(), a.getVersion());
+  }
+
+  // Solo en el camino de rechazo distinguimos cuenta inexistente, inactiva o sin fondos
+  private RuntimeException rechazo(Long cuentaId, boolean debito) {
+    Optional<Boolean> estado = cuentaRepo.estadoDe(cuentaId);
+    if (!estado.isPresent()) return new NotFoundException(MovimientoLoteService.cuentaInexistente(cuentaId));
+    if (!estado.get() || !debito) return new BusinessException(MovimientoLoteService.cuentaInactiva(cuentaId));
+    return new BusinessException("Saldo no disponible.");
+  }
+
+  // Ambas cuentas se bloquean en un solo SELECT ... FOR UPDATE ordenado por id, así
+  // A→B y B→A concurrentes toman los locks en el mismo orden y no se interbloquean.
+  // Con la estrategia optimista (y ninguna cuenta repartida) se leen sin bloquear y la
+  // transferencia entera se reintenta si alguna de las dos cambió.
+  public void transferir(Long idOrigen, Long idDestino, BigDecimal monto, String ref) {
+    if (idOrigen.equals(idDestino)) throw new BusinessException("La cuenta destino debe ser distinta a la de origen");
     assertMontoPositivo(monto);
-    Cuenta c = cuentaRepo.findById(cuentaId)
-        .orElseThrow(() -> new NotFoundException("Cuenta " + cuentaId + " no existe"));
-    if (c.getSaldo() == null || c.getSaldo().compareTo(monto) < 0) {
-      throw new BusinessException("Saldo no disponible.");
+    List<Long> ids = Arrays.asList(idOrigen, idDestino);
+    if (bloqueo.estrategia() == BloqueoCuentas.Estrategia.OPTIMISTA
+        && !subsaldos.repartida(idOrigen) && !subsaldos.repartida(idDestino)) {
+      bloqueo.reintentar(ids, () -> tx.execute(s -> {
+        transferir(cuentaRepo.findAllById(ids), idOrigen, idDestino, monto, ref);
+        return null;
+      }));
+    } else {
+      tx.executeWithoutResult(s -> transferir(cuentaRepo.bloquearPorIds(ids), idOrigen, idDestino, monto, ref));
+    }
+  }
+
+  private void transferir(List<Cuenta> cuentas, Long idOrigen, Long idDestino, BigDecimal monto, String ref) {
+    Cuenta origen = null;
+    Cuenta destino = null;
+    for (Cuenta c : cuentas) {
+      if (c.getId().equals(idOrigen)) origen = c;
+      else destino = c;
+    }
+    if (origen == null) throw new NotFoundException("Cuenta " + idOrigen + " no existe");
+    if (destino == null) throw new NotFoundException("Cuenta " + idDestino + " no existe");
+    if (!Boolean.TRUE.equals(origen.getEstado())) throw new BusinessException(MovimientoLoteService.cuentaInactiva(idOrigen));
+    if (!Boolean.TRUE.equals(destino.getEstado())) throw new BusinessException(MovimientoLoteService.cuentaInactiva(idDestino));
+    for (Cuenta c : Arrays.asList(origen, destino)) {
+      if (subsaldos.repartida(c.getId())) subsaldos.consolidarBloqueada(c);
     }
-    BigDecimal nuevoSaldo = c.getSaldo().subtract(monto);
-    c.setSaldo(nuevoSaldo);
-    cuentaRepo.save(c);
+    if (origen.getSaldo().compareTo(monto) < 0) throw new BusinessException("Saldo no disponible.");
 
+    // El débito de la transferencia es un RETIRO y consume el cupo diario de la cuenta
+    OffsetDateTime fecha = OffsetDateTime.now();
+    cupoDiario.registrarRetiro(idOrigen, origen.getCliente().getId(), monto, fecha);
+
+    origen.setSaldo(origen.getSaldo().subtract(monto));
+    destino.setSaldo(destino.getSaldo().add(monto));
+    indice.confirmar(origen);
+    indice.confirmar(destino);
+
+    String base = ref == null ? "" : ref;
+    // Los dos INSERT (y los dos UPDATE de saldo) salen en batch al hacer flush.
+    List<Movimiento> movs = movRepo.saveAll(Arrays.asList(
+        movimiento(origen, "RETIRO", monto, base + " - debito", fecha),
+        movimiento(destino, "DEPOSITO", monto, base + " - credito", fecha)));
+    saldoDiarioService.acumular(movs);
+    reporteCache.invalidarClientes(Arrays.asList(origen.getCliente().getId(), destino.getCliente().getId()));
+  }
+
+  private Movimiento movimiento(Cuenta c, String tipo, BigDecimal monto, String ref, OffsetDateTime fecha) {
     Movimiento m = new Movimiento();
     m.setCuenta(c);
-    m.setTipo("RETIRO");
+    m.setTipo(tipo);
     m.setValor(monto);
-    m.setSaldo(nuevoSaldo);
+    m.setSaldo(c.getSaldo());
     m.setReferencia(ref);
-    m.setFecha(OffsetDateTime.now());
-    return movRepo.save(m);
+    m.setFecha(fecha);
+    return m;
   }
 
-  @Transactional
-  public void transferir(Long idOrigen, Long idDestino, BigDecimal monto, String ref) {
-    if (idOrigen.equals(idDestino)) throw new BusinessException("La cuenta destino debe ser distinta a la de origen");
-    retirar(idOrigen, monto, (ref == null ? "" : ref) + " - debito");
-    depositar(idDestino, monto, (ref == null ? "" : ref) + " - credito");
+  // La fecha del asiento atómico la pone la base, con la cuenta bloqueada
+  private static OffsetDateTime fecha(Asiento a) {
+    return OffsetDateTime.ofInstant(a.getFecha(), ZoneId.systemDefault());
+  }
+
+  private Movimiento movimiento(Long cuentaId, String tipo, BigDecimal monto, String ref,
+                                OffsetDateTime fecha, Asiento a) {
+    Movimiento m = new Movimiento();
+    m.setId(a.getId());
+    m.setCuenta(cuentaRepo.getReferenceById(cuentaId));
+    m.setTipo(tipo);
+    m.setValor(monto);
+    m.setSaldo(a.getSaldo());
+    m.setReferencia(ref);
+    m.setFecha(fecha);
+    return m;
   }
 }
@@ -0,0 +1,109 @@
+package com.pv.challenge.service;
+
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ConfigurationBuilder;
+import org.ehcache.config.builders.ExpiryPolicyBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Regiones del cache de segundo nivel de Hibernate (JCache sobre Ehcache, solo heap).
+ * Cada región tiene su tope de entradas; al llenarse Ehcache desaloja. El TTL es una red
+ * de seguridad para cambios hechos por fuera de la aplicación (scripts, seed), no parte
+ * de la invalidación: esa la hace Hibernate y, para los asientos nativos, CacheSegundoNivel.
+ *
+ * Las regiones se crean acá y Hibernate falla al arrancar si una entidad o consulta
+ * pide una que no existe, para que ninguna quede sin tope por omisión.
+ */
+@Component
+public class RegionesCache implements HibernatePropertiesCustomizer, DisposableBean {
+
+  // Entidades
+  public static final String CLIENTES = "clientes";
+  public static final String PERSONAS = "personas";
+  public static final String CUENTAS = "cuentas";
+  // Búsquedas por clave natural (query cache: guarda ids, las entidades salen de su región)
+  public static final String CLIENTE_POR_CLIENTE_ID = "clientes-por-clienteid";
+  public static final String PERSONA_POR_IDENTIFICACION = "personas-por-identificacion";
+  public static final String CUENTA_POR_NUMERO = "cuentas-por-numero";
+
+  private final Map<String, Long> entidades = new LinkedHashMap<>();
+  private final Map<String, Long> consultas = new LinkedHashMap<>();
+  private final CacheManager cacheManager;
+
+  public RegionesCache(@Value("${banco.cache.clientes.max-entradas:100000}") long maxClientes,
+                       @Value("${banco.cache.personas.max-entradas:100000}") long maxPersonas,
+                       @Value("${banco.cache.cuentas.max-entradas:200000}") long maxCuentas,
+                       @Value("${banco.cache.consultas.max-entradas:100000}") long maxConsultas,
+                       @Value("${banco.cache.ttl-segundos:600}") long ttlSegundos) {
+    entidades.put(CLIENTES, maxClientes);
+    entidades.put(PERSONAS, maxPersonas);
+    entidades.put(CUENTAS, maxCuentas);
+    consultas.put(CLIENTE_POR_CLIENTE_ID, maxConsultas);
+    consultas.put(PERSONA_POR_IDENTIFICACION, maxConsultas);
+    consultas.put(CUENTA_POR_NUMERO, maxConsultas);
+
+    ConfigurationBuilder config = ConfigurationBuilder.newConfigurationBuilder();
+    for (Map.Entry<String, Long> r : maxEntradas().entrySet()) {
+      config = config.withCache(r.getKey(), CacheConfigurationBuilder
+          .newCacheConfigurationBuilder(Object.class, Object.class, ResourcePoolsBuilder.heap(r.getValue()))
+          .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofSeconds(ttlSegundos))));
+    }
+    // Marcas de tiempo por tabla para validar el query cache: una entrada por tabla,
+    // no debe desalojarse ni expirar (se perdería la invalidación de las consultas).
+    config = config.withCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME,
+        CacheConfigurationBuilder.newCacheConfigurationBuilder(Object.class, Object.class,
+            ResourcePoolsBuilder.heap(1_000)));
+    // Hibernate la crea aunque todas las consultas cacheadas tengan región propia
+    config = config.withCache(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME,
+        CacheConfigurationBuilder.newCacheConfigurationBuilder(Object.class, Object.class,
+            ResourcePoolsBuilder.heap(1_000)));
+
+    EhcacheCachingProvider provider = (EhcacheCachingProvider)
+        Caching.getCachingProvider(EhcacheCachingProvider.class.getName());
+    // URI propia por instancia: el provider reutiliza managers por URI (varios contextos en tests)
+    cacheManager = provider.getCacheManager(
+        URI.create("urn:banco:segundo-nivel:" + System.identityHashCode(this)), config.build());
+  }
+
+  @Override
+  public void customize(Map<String, Object> hibernateProperties) {
+    hibernateProperties.put("hibernate.cache.region.factory_class", "jcache");
+    hibernateProperties.put(ConfigSettings.CACHE_MANAGER, cacheManager);
+    hibernateProperties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+  }
+
+  // Tope de entradas por región, entidades primero
+  public Map<String, Long> maxEntradas() {
+    Map<String, Long> todas = new LinkedHashMap<>(entidades);
+    todas.putAll(consultas);
+    return Collections.unmodifiableMap(todas);
+  }
+
+  public boolean esConsulta(String region) {
+    return consultas.containsKey(region);
+  }
+
+  CacheManager cacheManager() {
+    return cacheManager;
+  }
+
+  @Override
+  public void destroy() {
+    cacheManager.close();
+  }
+}
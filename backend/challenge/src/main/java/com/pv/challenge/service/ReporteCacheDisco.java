@@ -0,0 +1,129 @@
+package com.pv.challenge.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Cache en disco de estados de cuenta ya generados, con tope de tamaño total.
+ * La clave incluye la versión del libro del cliente, así que un archivo nunca queda
+ * desactualizado: si cambian los datos cambia la clave. Al pasar el tope se borran
+ * los archivos menos usados recientemente.
+ */
+@Component
+public class ReporteCacheDisco {
+
+  private static final Logger log = LoggerFactory.getLogger(ReporteCacheDisco.class);
+  private static final String TEMPORAL = "tmp-";
+
+  private final Path dir;
+  private final long maxBytes;
+
+  // nombre de archivo -> bytes, en orden de acceso (el primero es el menos usado)
+  private final LinkedHashMap<String, Long> entradas = new LinkedHashMap<>(16, 0.75f, true);
+  private long bytes;
+
+  public ReporteCacheDisco(@Value("${banco.reportes.dir:${java.io.tmpdir}/banco-reportes}") String dir,
+                           @Value("${banco.reportes.cache.max-bytes:1073741824}") long maxBytes) {
+    this.dir = Paths.get(dir, "cache");
+    this.maxBytes = maxBytes;
+    try {
+      Files.createDirectories(this.dir);
+      cargarExistentes();
+    } catch (IOException e) {
+      throw new UncheckedIOException("No se pudo preparar el cache de reportes en " + this.dir, e);
+    }
+  }
+
+  public static String clave(Long clienteId, LocalDate desde, LocalDate hasta, String version) {
+    return "c" + clienteId + "_" + desde + "_" + hasta + "_" + version + ".pdf";
+  }
+
+  public synchronized Optional<Path> buscar(String clave) {
+    Long tam = entradas.get(clave);
+    if (tam == null) return Optional.empty();
+    Path p = dir.resolve(clave);
+    if (!Files.exists(p)) {
+      entradas.remove(clave);
+      bytes -= tam;
+      return Optional.empty();
+    }
+    return Optional.of(p);
+  }
+
+  // Archivo temporal en el mismo directorio, para que guardar() sea un move atómico
+  public Path temporal() throws IOException {
+    return Files.createTempFile(dir, TEMPORAL, ".pdf");
+  }
+
+  public synchronized Path guardar(String clave, Path temporal) throws IOException {
+    Path destino = dir.resolve(clave);
+    Files.move(temporal, destino, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    long tam = Files.size(destino);
+    Long anterior = entradas.put(clave, tam);
+    bytes += tam - (anterior == null ? 0 : anterior);
+    desalojar(clave);
+    return destino;
+  }
+
+  public synchronized long bytes() {
+    return bytes;
+  }
+
+  public synchronized int archivos() {
+    return entradas.size();
+  }
+
+  private void desalojar(String recienGuardado) {
+    Iterator<Map.Entry<String, Long>> it = entradas.entrySet().iterator();
+    while (bytes > maxBytes && it.hasNext()) {
+      Map.Entry<String, Long> e = it.next();
+      if (e.getKey().equals(recienGuardado)) continue;
+      try {
+        Files.deleteIfExists(dir.resolve(e.getKey()));
+      } catch (IOException ex) {
+        log.warn("No se pudo borrar {} del cache de reportes: {}", e.getKey(), ex.getMessage());
+        continue;
+      }
+      bytes -= e.getValue();
+      it.remove();
+    }
+  }
+
+  // Al arrancar: retoma los archivos de ejecuciones anteriores, más viejos primero
+  private void cargarExistentes() throws IOException {
+    List<Path> archivos;
+    try (Stream<Path> s = Files.list(dir)) {
+      archivos = s.filter(Files::isRegularFile).collect(Collectors.toList());
+    }
+    archivos.sort(Comparator.comparingLong(p -> p.toFile().lastModified()));
+    for (Path p : archivos) {
+      String nombre = p.getFileName().toString();
+      if (nombre.startsWith(TEMPORAL)) {
+        Files.deleteIfExists(p); // generación interrumpida
+        continue;
+      }
+      long tam = Files.size(p);
+      entradas.put(nombre, tam);
+      bytes += tam;
+    }
+    desalojar(null);
+  }
+}
@@ -0,0 +1,192 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.ReporteCacheDtos.Metricas;
+import com.pv.challenge.dto.ReporteResponseDtos;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cache en memoria de reportes JSON por (clienteId, desde, hasta), acotado por un peso
+ * estimado en bytes (LRU). Los asientos y cambios de cuentas invalidan solo las entradas
+ * del cliente afectado, al momento y de nuevo al confirmar la transacción.
+ *
+ * Para no guardar un reporte leído antes de un asiento que confirma mientras se genera,
+ * cada cliente cae en una "franja" con contador de invalidaciones: quien genera toma
+ * marca() antes de leer y guardar() descarta el resultado si la franja cambió.
+ */
+@Component
+public class ReporteCacheMemoria {
+
+  // Peso estimado de un ReporteResponseDtos en el heap
+  private static final long PESO_BASE = 1_024;
+  private static final long PESO_LINEA = 320;
+  private static final long PESO_RESUMEN = 256;
+  private static final int FRANJAS = 1_024;
+
+  private static final class Clave {
+    final Long clienteId;
+    final LocalDate desde;
+    final LocalDate hasta;
+
+    Clave(Long clienteId, LocalDate desde, LocalDate hasta) {
+      this.clienteId = clienteId;
+      this.desde = desde;
+      this.hasta = hasta;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Clave)) return false;
+      Clave c = (Clave) o;
+      return clienteId.equals(c.clienteId) && desde.equals(c.desde) && hasta.equals(c.hasta);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(clienteId, desde, hasta);
+    }
+  }
+
+  private static final class Entrada {
+    final ReporteResponseDtos reporte;
+    final long peso;
+
+    Entrada(ReporteResponseDtos reporte, long peso) {
+      this.reporte = reporte;
+      this.peso = peso;
+    }
+  }
+
+  private final long maxBytes;
+  private final LinkedHashMap<Clave, Entrada> entradas = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<Long, Set<Clave>> porCliente = new HashMap<>();
+  private final AtomicLongArray franjas = new AtomicLongArray(FRANJAS);
+  private long peso;
+
+  private long aciertos;
+  private long fallos;
+  private long desalojos;
+  private long invalidaciones;
+  private long descartados;
+
+  public ReporteCacheMemoria(@Value("${banco.reportes.cache-memoria.max-bytes:67108864}") long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  // Tomar antes de leer los datos del reporte que se va a guardar
+  public long marca(Long clienteId) {
+    return franjas.get(franja(clienteId));
+  }
+
+  public synchronized ReporteResponseDtos buscar(Long clienteId, LocalDate desde, LocalDate hasta) {
+    Entrada e = entradas.get(new Clave(clienteId, desde, hasta));
+    if (e == null) {
+      fallos++;
+      return null;
+    }
+    aciertos++;
+    return e.reporte;
+  }
+
+  public synchronized void guardar(Long clienteId, LocalDate desde, LocalDate hasta, long marca,
+                                   ReporteResponseDtos r) {
+    long p = peso(r);
+    // Invalidado mientras se generaba, o tan grande que desalojaría buena parte del cache
+    if (franjas.get(franja(clienteId)) != marca || p > maxBytes / 8) {
+      descartados++;
+      return;
+    }
+    Clave k = new Clave(clienteId, desde, hasta);
+    Entrada anterior = entradas.put(k, new Entrada(r, p));
+    if (anterior != null) peso -= anterior.peso;
+    peso += p;
+    porCliente.computeIfAbsent(clienteId, x -> new HashSet<>()).add(k);
+
+    Iterator<Map.Entry<Clave, Entrada>> it = entradas.entrySet().iterator();
+    while (peso > maxBytes && it.hasNext()) {
+      Map.Entry<Clave, Entrada> e = it.next();
+      it.remove();
+      peso -= e.getValue().peso;
+      quitarIndice(e.getKey());
+      desalojos++;
+    }
+  }
+
+  /**
+   * Invalida los reportes de un cliente ahora y, si hay transacción activa, otra vez
+   * después del commit (un lector pudo volver a cachear datos viejos entre medio).
+   */
+  public void invalidarCliente(Long clienteId) {
+    if (clienteId == null) return;
+    invalidarAhora(clienteId);
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          invalidarAhora(clienteId);
+        }
+      });
+    }
+  }
+
+  public void invalidarClientes(Collection<Long> clienteIds) {
+    for (Long id : new HashSet<>(clienteIds)) invalidarCliente(id);
+  }
+
+  public synchronized Metricas metricas() {
+    Metricas m = new Metricas();
+    m.entradas = entradas.size();
+    m.pesoBytes = peso;
+    m.maxBytes = maxBytes;
+    m.aciertos = aciertos;
+    m.fallos = fallos;
+    long total = aciertos + fallos;
+    m.tasaAciertos = total == 0 ? 0 : (double) aciertos / total;
+    m.desalojos = desalojos;
+    m.invalidaciones = invalidaciones;
+    m.descartados = descartados;
+    return m;
+  }
+
+  private synchronized void invalidarAhora(Long clienteId) {
+    franjas.incrementAndGet(franja(clienteId));
+    Set<Clave> claves = porCliente.remove(clienteId);
+    if (claves == null) return;
+    for (Clave k : claves) {
+      Entrada e = entradas.remove(k);
+      if (e != null) {
+        peso -= e.peso;
+        invalidaciones++;
+      }
+    }
+  }
+
+  private void quitarIndice(Clave k) {
+    Set<Clave> claves = porCliente.get(k.clienteId);
+    if (claves == null) return;
+    claves.remove(k);
+    if (claves.isEmpty()) porCliente.remove(k.clienteId);
+  }
+
+  private static int franja(Long clienteId) {
+    return (int) ((clienteId ^ (clienteId >>> 32)) & (FRANJAS - 1));
+  }
+
+  private static long peso(ReporteResponseDtos r) {
+    return PESO_BASE + PESO_LINEA * r.getItems().size() + PESO_RESUMEN * r.getResumen().size();
+  }
+}
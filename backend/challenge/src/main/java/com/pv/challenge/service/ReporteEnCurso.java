@@ -0,0 +1,339 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.ReporteResponseDtos;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Une pedidos idénticos (clienteId, desde, hasta) que llegan mientras el mismo reporte
+ * se está generando: el primero lo genera y los demás esperan su resultado.
+ *
+ * En PDF quien genera escribe directo a su respuesta y guarda en memoria lo escrito
+ * (hasta INICIO_MAXIMO). Solo si alguien se une se abre un archivo temporal con ese
+ * comienzo y desde ahí la salida se copia también al archivo; los que se unen lo leen
+ * a medida que crece, así que todos reciben el mismo PDF sin esperar a que termine.
+ * Un pedido que llega cuando el reporte ya pasó ese tope genera el suyo. El archivo
+ * se borra al soltarlo el último.
+ */
+@Component
+public class ReporteEnCurso {
+
+  private static final Logger log = LoggerFactory.getLogger(ReporteEnCurso.class);
+  private static final int BLOQUE = 64 * 1024;
+  static final int INICIO_MAXIMO = 1024 * 1024;
+
+  @FunctionalInterface
+  public interface EscritorPdf {
+    void escribir(OutputStream out) throws IOException;
+  }
+
+  private final Path dir;
+  private final ConcurrentHashMap<String, CompletableFuture<ReporteResponseDtos>> json = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, PdfEnCurso> pdf = new ConcurrentHashMap<>();
+  private final AtomicLong generados = new AtomicLong();
+  private final AtomicLong unidos = new AtomicLong();
+
+  public ReporteEnCurso(@Value("${banco.reportes.dir:${java.io.tmpdir}/banco-reportes}") String dir) {
+    this.dir = Paths.get(dir, "en-curso");
+    try {
+      Files.createDirectories(this.dir);
+    } catch (IOException e) {
+      throw new UncheckedIOException("No se pudo crear " + this.dir, e);
+    }
+  }
+
+  public ReporteResponseDtos json(Long clienteId, LocalDate desde, LocalDate hasta,
+                                  Supplier<ReporteResponseDtos> generar) {
+    String k = clave(clienteId, desde, hasta);
+    CompletableFuture<ReporteResponseDtos> propio = new CompletableFuture<>();
+    CompletableFuture<ReporteResponseDtos> enCurso = json.putIfAbsent(k, propio);
+    if (enCurso != null) {
+      unidos.incrementAndGet();
+      try {
+        return enCurso.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+        throw e;
+      }
+    }
+    generados.incrementAndGet();
+    try {
+      ReporteResponseDtos r = generar.get();
+      propio.complete(r);
+      return r;
+    } catch (RuntimeException e) {
+      propio.completeExceptionally(e);
+      throw e;
+    } finally {
+      json.remove(k, propio);
+    }
+  }
+
+  public void pdf(Long clienteId, LocalDate desde, LocalDate hasta, OutputStream out,
+                  EscritorPdf escritor) throws IOException {
+    String k = clave(clienteId, desde, hasta);
+    while (true) {
+      PdfEnCurso enCurso = pdf.get(k);
+      if (enCurso != null) {
+        // Terminado, pasado del tope en memoria o sin archivo: se intenta de nuevo
+        if (!enCurso.unirse()) {
+          pdf.remove(k, enCurso);
+          continue;
+        }
+        unidos.incrementAndGet();
+        try {
+          enCurso.copiar(out);
+        } finally {
+          enCurso.soltar();
+        }
+        return;
+      }
+      PdfEnCurso propio = new PdfEnCurso(dir, "c" + clienteId + "-");
+      if (pdf.putIfAbsent(k, propio) != null) continue;
+      generados.incrementAndGet();
+      try {
+        propio.generar(out, escritor);
+      } finally {
+        pdf.remove(k, propio);
+        propio.soltar();
+      }
+      return;
+    }
+  }
+
+  // Reportes generados y pedidos que se unieron a uno en curso (JSON y PDF)
+  public long generados() {
+    return generados.get();
+  }
+
+  public long unidos() {
+    return unidos.get();
+  }
+
+  private static String clave(Long clienteId, LocalDate desde, LocalDate hasta) {
+    return clienteId + "_" + desde + "_" + hasta;
+  }
+
+  private static final class PdfEnCurso {
+    private final Path dir;
+    private final String prefijo;
+    private Path archivo;
+    private FileChannel canal;
+    // Lo escrito mientras nadie se unió; null si pasó el tope y ya no se aceptan unidos
+    private ByteArrayOutputStream inicio = new ByteArrayOutputStream();
+    private long publicados;
+    private boolean terminado;
+    private IOException error;
+    private int referencias = 1; // quien genera
+
+    PdfEnCurso(Path dir, String prefijo) {
+      this.dir = dir;
+      this.prefijo = prefijo;
+    }
+
+    // El primero que se une abre el archivo y le pasa el comienzo ya escrito
+    synchronized boolean unirse() {
+      if (referencias == 0 || terminado) return false;
+      if (canal == null) {
+        if (inicio == null) return false;
+        try {
+          archivo = Files.createTempFile(dir, prefijo, ".pdf");
+          canal = FileChannel.open(archivo, StandardOpenOption.READ, StandardOpenOption.WRITE);
+          ByteBuffer bb = ByteBuffer.wrap(inicio.toByteArray());
+          while (bb.hasRemaining()) canal.write(bb, bb.position());
+          publicados = bb.limit();
+        } catch (IOException e) {
+          log.warn("No se pudo compartir el reporte en curso: {}", e.getMessage());
+          cerrarArchivo();
+          inicio = null;
+          return false;
+        }
+        inicio = null;
+      }
+      referencias++;
+      return true;
+    }
+
+    synchronized boolean hayOtrosLectores() {
+      return referencias > 1;
+    }
+
+    synchronized void soltar() {
+      if (--referencias > 0) return;
+      inicio = null;
+      cerrarArchivo();
+    }
+
+    private void cerrarArchivo() {
+      try {
+        if (canal != null) canal.close();
+        if (archivo != null) Files.deleteIfExists(archivo);
+      } catch (IOException e) {
+        log.warn("No se pudo borrar {}: {}", archivo, e.getMessage());
+      }
+      canal = null;
+      archivo = null;
+    }
+
+    // Sin nadie unido lo escrito solo se retiene en memoria; true si ya hay archivo
+    private synchronized boolean retener(byte[] b, int off, int len) {
+      if (canal != null) return true;
+      if (inicio == null) return false;
+      if (inicio.size() + len > INICIO_MAXIMO) inicio = null;
+      else inicio.write(b, off, len);
+      return false;
+    }
+
+    private synchronized long publicados() {
+      return publicados;
+    }
+
+    void generar(OutputStream out, EscritorPdf escritor) throws IOException {
+      Bifurcacion b = new Bifurcacion(out);
+      try {
+        escritor.escribir(b);
+        b.publicar();
+        terminar(null);
+      } catch (IOException | RuntimeException e) {
+        terminar(e instanceof IOException ? (IOException) e : new IOException("Error generando el reporte", e));
+        throw e;
+      }
+    }
+
+    private synchronized void avanzar(long hasta) {
+      publicados = hasta;
+      notifyAll();
+    }
+
+    private synchronized void terminar(IOException e) {
+      terminado = true;
+      error = e;
+      notifyAll();
+    }
+
+    // Bytes publicados disponibles después de "leidos"; -1 cuando ya no habrá más
+    private synchronized long esperar(long leidos) throws IOException {
+      while (publicados <= leidos && !terminado) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Espera del reporte interrumpida");
+        }
+      }
+      if (error != null) throw new IOException("Falló la generación compartida del reporte", error);
+      return publicados > leidos ? publicados : -1;
+    }
+
+    void copiar(OutputStream out) throws IOException {
+      ByteBuffer buf = ByteBuffer.allocate(BLOQUE);
+      long leidos = 0;
+      long disponibles;
+      while ((disponibles = esperar(leidos)) >= 0) {
+        while (leidos < disponibles) {
+          buf.clear();
+          buf.limit((int) Math.min(BLOQUE, disponibles - leidos));
+          int n = canal.read(buf, leidos);
+          if (n < 0) throw new IOException("Reporte en curso truncado: " + archivo);
+          out.write(buf.array(), 0, n);
+          leidos += n;
+        }
+        out.flush();
+      }
+    }
+
+    /**
+     * Escribe a la respuesta de quien genera y, cuando alguien se unió, acumula en el
+     * archivo por bloques. Si ese cliente se desconecta y hay otros leyendo, la
+     * generación sigue para ellos.
+     */
+    private final class Bifurcacion extends OutputStream {
+      private final OutputStream propio;
+      private boolean propioCaido;
+      private final byte[] buf = new byte[BLOQUE];
+      private int n;
+
+      Bifurcacion(OutputStream propio) {
+        this.propio = propio;
+      }
+
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        if (!propioCaido) {
+          try {
+            propio.write(b, off, len);
+          } catch (IOException e) {
+            caer(e);
+          }
+        }
+        if (!retener(b, off, len)) return;
+        while (len > 0) {
+          int c = Math.min(len, buf.length - n);
+          System.arraycopy(b, off, buf, n, c);
+          n += c;
+          off += c;
+          len -= c;
+          if (n == buf.length) publicar();
+        }
+      }
+
+      @Override
+      public void flush() throws IOException {
+        publicar();
+        if (propioCaido) return;
+        try {
+          propio.flush();
+        } catch (IOException e) {
+          caer(e);
+        }
+      }
+
+      // El PdfWriter no debe cerrar la respuesta: la cierra el contenedor
+      @Override
+      public void close() throws IOException {
+        flush();
+      }
+
+      // Solo hay bloque pendiente si ya hay archivo: el canal quedó visible en retener()
+      void publicar() throws IOException {
+        if (n == 0) return;
+        long desde = publicados();
+        ByteBuffer bb = ByteBuffer.wrap(buf, 0, n);
+        while (bb.hasRemaining()) canal.write(bb, desde + bb.position());
+        n = 0;
+        avanzar(desde + bb.limit());
+      }
+
+      private void caer(IOException e) throws IOException {
+        if (!hayOtrosLectores()) throw e;
+        propioCaido = true;
+        log.debug("Cliente desconectado; el reporte sigue para los demás: {}", e.getMessage());
+      }
+    }
+  }
+}
@@ -0,0 +1,206 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.ReporteJobDtos.JobResponse;
+import com.pv.challenge.exception.BusinessException;
+import com.pv.challenge.exception.NotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Estados de cuenta PDF en segundo plano: el request solo encola y devuelve un id;
+ * el PDF se genera en un pool acotado (hilos y cola fijos) y se descarga después.
+ * Los períodos cerrados (hasta < hoy UTC) se guardan en ReporteCacheDisco con la
+ * versión del libro en la clave, y los pedidos repetidos salen de disco sin generar.
+ */
+@Service
+public class ReporteJobService {
+
+  private static final Logger log = LoggerFactory.getLogger(ReporteJobService.class);
+
+  public enum Estado { PENDIENTE, EN_PROCESO, LISTO, ERROR }
+
+  private static final class Job {
+    final String id = UUID.randomUUID().toString();
+    final OffsetDateTime creado = OffsetDateTime.now();
+    volatile Estado estado = Estado.PENDIENTE;
+    volatile boolean desdeCache;
+    volatile Path archivo;
+    volatile boolean archivoPropio; // fuera del cache: se borra al expirar el job
+    volatile String error;
+    volatile OffsetDateTime terminado;
+  }
+
+  private final ReporteService reporteService;
+  private final ReporteCacheDisco cache;
+  private final Path dirJobs;
+  private final long retencionMinutos;
+  private final ThreadPoolExecutor pool;
+  private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+  public ReporteJobService(ReporteService reporteService,
+                           ReporteCacheDisco cache,
+                           @Value("${banco.reportes.dir:${java.io.tmpdir}/banco-reportes}") String dir,
+                           @Value("${banco.reportes.jobs.hilos:2}") int hilos,
+                           @Value("${banco.reportes.jobs.cola:50}") int cola,
+                           @Value("${banco.reportes.jobs.retencion-minutos:60}") long retencionMinutos) {
+    this.reporteService = reporteService;
+    this.cache = cache;
+    this.dirJobs = Paths.get(dir, "jobs");
+    this.retencionMinutos = retencionMinutos;
+    try {
+      Files.createDirectories(dirJobs);
+    } catch (IOException e) {
+      throw new UncheckedIOException("No se pudo crear " + dirJobs, e);
+    }
+    AtomicInteger n = new AtomicInteger();
+    this.pool = new ThreadPoolExecutor(hilos, hilos, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(cola),
+        r -> {
+          Thread t = new Thread(r, "reporte-job-" + n.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        });
+  }
+
+  public JobResponse encolar(Long clienteId, LocalDate desde, LocalDate hasta) {
+    if (clienteId == null || desde == null || hasta == null) {
+      throw new BusinessException("clienteId, desde y hasta son requeridos.");
+    }
+    if (hasta.isBefore(desde)) throw new BusinessException("hasta debe ser posterior a desde.");
+    reporteService.verificarCliente(clienteId);
+    purgarVencidos();
+
+    Job job = new Job();
+    String clave = cerrado(hasta)
+        ? ReporteCacheDisco.clave(clienteId, desde, hasta, reporteService.versionLibro(clienteId, hasta))
+        : null;
+
+    Optional<Path> enCache = clave == null ? Optional.empty() : cache.buscar(clave);
+    if (enCache.isPresent()) {
+      job.archivo = enCache.get();
+      job.desdeCache = true;
+      job.estado = Estado.LISTO;
+      job.terminado = OffsetDateTime.now();
+      jobs.put(job.id, job);
+      return respuesta(job);
+    }
+
+    jobs.put(job.id, job);
+    try {
+      pool.execute(() -> generar(job, clienteId, desde, hasta, clave));
+    } catch (RejectedExecutionException e) {
+      jobs.remove(job.id);
+      throw e; // cola llena: el handler global responde 503
+    }
+    return respuesta(job);
+  }
+
+  public JobResponse estado(String id) {
+    return respuesta(buscar(id));
+  }
+
+  // Archivo listo para descargar
+  public Path archivo(String id) {
+    Job job = buscar(id);
+    if (job.estado != Estado.LISTO) {
+      throw new BusinessException("El reporte " + id + " no está listo (" + job.estado + ").");
+    }
+    if (!Files.exists(job.archivo)) {
+      throw new NotFoundException("El reporte " + id + " ya no está disponible; volver a solicitarlo.");
+    }
+    return job.archivo;
+  }
+
+  @PreDestroy
+  void cerrar() {
+    pool.shutdownNow();
+  }
+
+  private void generar(Job job, Long clienteId, LocalDate desde, LocalDate hasta, String clave) {
+    job.estado = Estado.EN_PROCESO;
+    Path tmp = null;
+    try {
+      tmp = clave != null ? cache.temporal() : Files.createTempFile(dirJobs, job.id + "-", ".pdf");
+      try (OutputStream out = Files.newOutputStream(tmp)) {
+        reporteService.escribirPdf(clienteId, desde, hasta, out);
+      }
+      if (clave != null) {
+        job.archivo = cache.guardar(clave, tmp);
+      } else {
+        job.archivo = tmp;
+        job.archivoPropio = true;
+      }
+      job.terminado = OffsetDateTime.now();
+      job.estado = Estado.LISTO;
+    } catch (Exception e) {
+      log.error("Error generando reporte {} (cliente {}): {}", job.id, clienteId, e.getMessage(), e);
+      borrar(tmp);
+      job.error = "No se pudo generar el reporte.";
+      job.terminado = OffsetDateTime.now();
+      job.estado = Estado.ERROR;
+    }
+  }
+
+  private Job buscar(String id) {
+    Job job = jobs.get(id);
+    if (job == null) throw new NotFoundException("Reporte " + id + " no existe");
+    return job;
+  }
+
+  // El día de "hasta" ya terminó: los movimientos del período no cambian con nuevos asientos
+  private boolean cerrado(LocalDate hasta) {
+    return hasta.isBefore(LocalDate.now(ZoneOffset.UTC));
+  }
+
+  private void purgarVencidos() {
+    OffsetDateTime limite = OffsetDateTime.now().minusMinutes(retencionMinutos);
+    jobs.values().removeIf(j -> {
+      if (j.terminado == null || j.terminado.isAfter(limite)) return false;
+      if (j.archivoPropio) borrar(j.archivo);
+      return true;
+    });
+  }
+
+  private void borrar(Path p) {
+    if (p == null) return;
+    try {
+      Files.deleteIfExists(p);
+    } catch (IOException e) {
+      log.warn("No se pudo borrar {}: {}", p, e.getMessage());
+    }
+  }
+
+  private JobResponse respuesta(Job job) {
+    JobResponse r = new JobResponse();
+    r.id = job.id;
+    r.estado = job.estado.name();
+    r.desdeCache = job.desdeCache;
+    r.error = job.error;
+    r.creado = job.creado;
+    r.terminado = job.terminado;
+    if (job.estado == Estado.LISTO) r.descarga = "/api/reportes/jobs/" + job.id + "/pdf";
+    return r;
+  }
+}
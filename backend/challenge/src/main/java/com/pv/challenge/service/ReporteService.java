@@ -1,25 +1,25 @@
 package com.pv.challenge.service;
 
-import com.lowagie.text.Document;
-import com.lowagie.text.Font;
-import com.lowagie.text.PageSize;
-import com.lowagie.text.Paragraph;
-import com.lowagie.text.Phrase;
-import com.lowagie.text.pdf.PdfPCell;
-import com.lowagie.text.pdf.PdfPTable;
-import com.lowagie.text.pdf.PdfWriter;
+import com.lowagie.text.DocumentException;
 import com.pv.challenge.dto.ReporteLineaDtos;
 import com.pv.challenge.dto.ReporteResponseDtos;
+import com.pv.challenge.dto.ReporteResumenCuentaDtos;
 import com.pv.challenge.entity.Cliente;
 import com.pv.challenge.entity.Cuenta;
-import com.pv.challenge.entity.Movimiento;
 import com.pv.challenge.exception.NotFoundException;
 import com.pv.challenge.repo.ClienteRepository;
 import com.pv.challenge.repo.CuentaRepository;
 import com.pv.challenge.repo.MovimientoRepository;
+import com.pv.challenge.repo.MovimientoRepository.LineaMovimiento;
+import com.pv.challenge.repo.MovimientoRepository.SaldoCuenta;
+import com.pv.challenge.repo.SaldoDiarioRepository;
+import com.pv.challenge.repo.SaldoDiarioRepository.TotalesCuenta;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
@@ -27,8 +27,13 @@ import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class ReporteService {
@@ -36,69 +41,66 @@ public class ReporteService {
   private final ClienteRepository clienteRepo;
   private final CuentaRepository cuentaRepo;
   private final MovimientoRepository movRepo;
+  private final SaldoDiarioRepository saldoDiarioRepo;
+  private final ReporteCacheMemoria cache;
 
   public ReporteService(ClienteRepository clienteRepo,
                         CuentaRepository cuentaRepo,
-                        MovimientoRepository movRepo) {
+                        MovimientoRepository movRepo,
+                        SaldoDiarioRepository saldoDiarioRepo,
+                        ReporteCacheMemoria cache) {
     this.clienteRepo = clienteRepo;
     this.cuentaRepo = cuentaRepo;
     this.movRepo = movRepo;
+    this.saldoDiarioRepo = saldoDiarioRepo;
+    this.cache = cache;
+  }
+
+  // Reporte JSON pasando por el cache en memoria; los asientos del cliente lo invalidan.
+  public ReporteResponseDtos generarCacheado(Long clienteId, LocalDate desde, LocalDate hasta) {
+    ReporteResponseDtos r = cache.buscar(clienteId, desde, hasta);
+    if (r != null) return r;
+    long marca = cache.marca(clienteId);
+    r = generar(clienteId, desde, hasta, false);
+    cache.guardar(clienteId, desde, hasta, marca, r);
+    return r;
   }
 
   public ReporteResponseDtos generar(Long clienteId, LocalDate desde, LocalDate hasta, boolean incluirPdf) {
     Cliente cliente = clienteRepo.findById(clienteId)
         .orElseThrow(() -> new NotFoundException("Cliente " + clienteId + " no existe"));
         
+    // Días UTC completos [desde, hasta + 1), los mismos que suman los totales de saldos_diarios
     OffsetDateTime desdeOdt = desde.atStartOfDay().atOffset(ZoneOffset.UTC);
-    OffsetDateTime hastaOdt = hasta.atTime(23, 59, 59).atOffset(ZoneOffset.UTC);
-    
+    OffsetDateTime hastaExclusivo = hasta.plusDays(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+
     List<Cuenta> cuentas = cuentaRepo.findByCliente_Id(clienteId);
 
+    // Dos consultas para todo el cliente (saldos iniciales y movimientos en rango,
+    // ordenados por cuenta y fecha) sin importar cuántas cuentas tenga; la mezcla
+    // por fecha se hace al vuelo, sin reordenar todas las líneas.
     List<ReporteLineaDtos> lineas = new ArrayList<>();
-    BigDecimal totalDebitos = BigDecimal.ZERO;
-    BigDecimal totalCreditos = BigDecimal.ZERO;
-
-    for (Cuenta cta : cuentas) {
-      
-      BigDecimal running = calcularSaldoAlInicio(cta, desdeOdt);
-
-      List<Movimiento> enRango =
-          movRepo.findByCuenta_IdAndFechaBetweenOrderByFechaAsc(cta.getId(), desdeOdt, hastaOdt);
-
-      for (Movimiento m : enRango) {
-        BigDecimal valor = m.getValor();               
-        BigDecimal signed = "RETIRO".equalsIgnoreCase(m.getTipo()) ? valor.negate() : valor;
-
-        if (signed.signum() < 0) totalDebitos = totalDebitos.add(signed.abs());
-        else totalCreditos = totalCreditos.add(signed);
-
-        ReporteLineaDtos r = new ReporteLineaDtos();
-        r.setFecha(m.getFecha().toLocalDateTime());
-        r.setCliente(cliente.getPersona().getNombre()); 
-        r.setNumeroCuenta(cta.getNumero());
-        r.setTipoCuenta(cta.getTipo());
-        r.setSaldoInicial(running);
-        r.setEstado(Boolean.TRUE.equals(cta.getEstado()));
-        r.setMovimiento(signed);
-        r.setSaldoDisponible(running.add(signed));
-
-        running = r.getSaldoDisponible();
-        lineas.add(r);
-      }
+    if (!cuentas.isEmpty()) {
+      List<Long> ids = cuentas.stream().map(Cuenta::getId).collect(Collectors.toList());
+      Iterator<ReporteLineaDtos> mezcla = new MezclaMovimientos(
+          cliente.getPersona().getNombre(),
+          cuentas,
+          calcularSaldosAlInicio(ids, desdeOdt),
+          movRepo.findEnRangoPorCuentas(ids, desdeOdt, hastaExclusivo));
+      while (mezcla.hasNext()) lineas.add(mezcla.next());
     }
 
-    lineas = lineas.stream()
-        .sorted(Comparator.comparing(ReporteLineaDtos::getFecha))
-        .collect(Collectors.toList());
-
     ReporteResponseDtos resp = new ReporteResponseDtos();
     resp.setClienteId(clienteId);
     resp.setClienteNombre(cliente.getPersona().getNombre());
     resp.setDesde(desde);
     resp.setHasta(hasta);
     resp.setItems(lineas);
-    resp.setTotalDebitos(totalDebitos);
-    resp.setTotalCreditos(totalCreditos);
+    // Los totales salen de los rollups diarios, igual que en el modo resumen
+    for (TotalesCuenta t : totales(cuentas, desde, hasta).values()) {
+      resp.setTotalCreditos(resp.getTotalCreditos().add(t.getCreditos()));
+      resp.setTotalDebitos(resp.getTotalDebitos().add(t.getDebitos()));
+    }
 
     if (incluirPdf) {
       resp.setPdfBase64(generarPdfBase64(resp));
@@ -106,79 +108,190 @@ public class ReporteService {
     return resp;
   }
   
-  private BigDecimal calcularSaldoAlInicio(Cuenta cta, OffsetDateTime desdeExclusive) {
-    List<Movimiento> anteriores =
-        movRepo.findByCuenta_IdAndFechaBeforeOrderByFechaAsc(cta.getId(), desdeExclusive);
-
-    BigDecimal neto = BigDecimal.ZERO;
-    for (Movimiento m : anteriores) {
-      BigDecimal valor = m.getValor();
-      if ("RETIRO".equalsIgnoreCase(m.getTipo())) neto = neto.subtract(valor);
-      else neto = neto.add(valor);
+  // Para respuestas en streaming: el 404 tiene que salir antes de escribir el cuerpo
+  public void verificarCliente(Long clienteId) {
+    if (!clienteRepo.existsById(clienteId)) {
+      throw new NotFoundException("Cliente " + clienteId + " no existe");
+    }
+  }
+
+  /**
+   * Estado de cuenta en PDF escrito directamente sobre "out" mientras se leen los
+   * movimientos (cursor del servidor, ya en orden de fecha). No arma la lista de
+   * líneas ni el documento en memoria: el heap usado no depende del tamaño del rango.
+   */
+  @Transactional(readOnly = true)
+  public void escribirPdf(Long clienteId, LocalDate desde, LocalDate hasta, OutputStream out) throws IOException {
+    escribir(clienteId, desde, hasta, nombre -> {
+      try {
+        return new EstadoCuentaPdf(out, nombre, clienteId, desde, hasta);
+      } catch (DocumentException e) {
+        throw new IOException("No se pudo generar el PDF", e);
+      }
+    });
+  }
+
+  // Mismo recorrido que el PDF, una fila CSV por línea
+  @Transactional(readOnly = true)
+  public void escribirCsv(Long clienteId, LocalDate desde, LocalDate hasta, OutputStream out) throws IOException {
+    escribir(clienteId, desde, hasta, nombre -> new EstadoCuentaCsv(out));
+  }
+
+  // Mismo recorrido que el PDF, hoja XLSX con totales al pie
+  @Transactional(readOnly = true)
+  public void escribirXlsx(Long clienteId, LocalDate desde, LocalDate hasta, OutputStream out) throws IOException {
+    escribir(clienteId, desde, hasta, nombre -> new EstadoCuentaXlsx(out));
+  }
+
+  @FunctionalInterface
+  private interface AperturaSalida {
+    SalidaEstadoCuenta abrir(String clienteNombre) throws IOException;
+  }
+
+  // Recorre los movimientos del cliente en orden de fecha con saldo corrido por cuenta
+  // y entrega cada línea a la salida; requiere la transacción del llamador para el cursor.
+  private void escribir(Long clienteId, LocalDate desde, LocalDate hasta, AperturaSalida apertura) throws IOException {
+    Cliente cliente = clienteRepo.findById(clienteId)
+        .orElseThrow(() -> new NotFoundException("Cliente " + clienteId + " no existe"));
+    String nombre = cliente.getPersona().getNombre();
+
+    OffsetDateTime desdeOdt = desde.atStartOfDay().atOffset(ZoneOffset.UTC);
+    OffsetDateTime hastaExclusivo = hasta.plusDays(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+
+    List<Cuenta> cuentas = cuentaRepo.findByCliente_Id(clienteId);
+    Map<Long, Cuenta> porId = new HashMap<>();
+    for (Cuenta cta : cuentas) porId.put(cta.getId(), cta);
+    List<Long> ids = new ArrayList<>(porId.keySet());
+
+    try (SalidaEstadoCuenta salida = apertura.abrir(nombre)) {
+      BigDecimal totalCreditos = BigDecimal.ZERO;
+      BigDecimal totalDebitos = BigDecimal.ZERO;
+
+      if (!ids.isEmpty()) {
+        // Saldo corrido por cuenta: arranca en el saldo al inicio del rango
+        Map<Long, BigDecimal> saldos = calcularSaldosAlInicio(ids, desdeOdt);
+        try (Stream<LineaMovimiento> movs = movRepo.streamEnRangoPorFecha(ids, desdeOdt, hastaExclusivo)) {
+          Iterator<LineaMovimiento> it = movs.iterator();
+          while (it.hasNext()) {
+            LineaMovimiento m = it.next();
+            Cuenta cta = porId.get(m.getCuentaId());
+            BigDecimal previo = saldos.getOrDefault(cta.getId(), BigDecimal.ZERO);
+            ReporteLineaDtos r = MezclaMovimientos.linea(nombre, cta, previo, m.getTipo(), m.getValor(), m.getFecha());
+            saldos.put(cta.getId(), r.getSaldoDisponible());
+            salida.agregar(r);
+          }
+        }
+        for (TotalesCuenta t : totales(cuentas, desde, hasta).values()) {
+          totalCreditos = totalCreditos.add(t.getCreditos());
+          totalDebitos = totalDebitos.add(t.getDebitos());
+        }
+      }
+      salida.totales(totalCreditos, totalDebitos);
+    }
+  }
+
+  /**
+   * Versión del libro de un cliente hasta "hasta": cambia si cambia algo que entra en
+   * su estado de cuenta (nombre e identificación del cliente, datos de sus cuentas o
+   * cantidad de movimientos hasta ese día). Sirve de parte de la clave de los reportes
+   * guardados.
+   */
+  @Transactional(readOnly = true)
+  public String versionLibro(Long clienteId, LocalDate hasta) {
+    List<Cuenta> cuentas = new ArrayList<>(cuentaRepo.findByCliente_Id(clienteId));
+    cuentas.sort(Comparator.comparing(Cuenta::getId));
+    long h = clienteRepo.findById(clienteId)
+        .map(c -> Objects.hash(c.getPersona().getNombre(), c.getPersona().getIdentificacion()))
+        .orElse(1);
+    for (Cuenta c : cuentas) {
+      h = 31 * h + Objects.hash(c.getId(), c.getNumero(), c.getTipo(), c.getEstado());
     }
-    return neto;
+    return Long.toHexString(h) + "-" + saldoDiarioRepo.movimientosHasta(clienteId, hasta);
+  }
+
+  /**
+   * Modo resumen: saldo inicial, créditos, débitos, cantidad y saldo final por cuenta,
+   * resuelto solo con saldos_diarios. El costo crece con los días del rango, no con
+   * la cantidad de movimientos.
+   */
+  public ReporteResponseDtos resumen(Long clienteId, LocalDate desde, LocalDate hasta) {
+    Cliente cliente = clienteRepo.findById(clienteId)
+        .orElseThrow(() -> new NotFoundException("Cliente " + clienteId + " no existe"));
+    List<Cuenta> cuentas = cuentaRepo.findByCliente_Id(clienteId);
+    Map<Long, TotalesCuenta> totales = totales(cuentas, desde, hasta);
+    Map<Long, BigDecimal> iniciales = cierresAntesDe(cuentas, desde);
+
+    ReporteResponseDtos resp = new ReporteResponseDtos();
+    resp.setClienteId(clienteId);
+    resp.setClienteNombre(cliente.getPersona().getNombre());
+    resp.setDesde(desde);
+    resp.setHasta(hasta);
+
+    for (Cuenta cta : cuentas) {
+      TotalesCuenta t = totales.get(cta.getId());
+      BigDecimal creditos = t == null ? BigDecimal.ZERO : t.getCreditos();
+      BigDecimal debitos = t == null ? BigDecimal.ZERO : t.getDebitos();
+      BigDecimal inicial = iniciales.getOrDefault(cta.getId(), BigDecimal.ZERO);
+
+      ReporteResumenCuentaDtos r = new ReporteResumenCuentaDtos();
+      r.setNumeroCuenta(cta.getNumero());
+      r.setTipoCuenta(cta.getTipo());
+      r.setEstado(Boolean.TRUE.equals(cta.getEstado()));
+      r.setSaldoInicial(inicial);
+      r.setTotalCreditos(creditos);
+      r.setTotalDebitos(debitos);
+      r.setMovimientos(t == null ? 0 : t.getCantidad());
+      r.setSaldoFinal(inicial.add(creditos).subtract(debitos));
+      resp.getResumen().add(r);
+
+      resp.setTotalCreditos(resp.getTotalCreditos().add(creditos));
+      resp.setTotalDebitos(resp.getTotalDebitos().add(debitos));
+    }
+    return resp;
+  }
+
+  private Map<Long, TotalesCuenta> totales(List<Cuenta> cuentas, LocalDate desde, LocalDate hasta) {
+    Map<Long, TotalesCuenta> porCuenta = new HashMap<>();
+    if (cuentas.isEmpty()) return porCuenta;
+    List<Long> ids = cuentas.stream().map(Cuenta::getId).collect(Collectors.toList());
+    for (TotalesCuenta t : saldoDiarioRepo.totalesPorCuenta(ids, desde, hasta)) {
+      porCuenta.put(t.getCuentaId(), t);
+    }
+    return porCuenta;
+  }
+
+  // Saldo al inicio de "desde" de cada cuenta: el cierre de su último día anterior
+  private Map<Long, BigDecimal> cierresAntesDe(List<Cuenta> cuentas, LocalDate desde) {
+    Map<Long, BigDecimal> cierres = new HashMap<>();
+    if (cuentas.isEmpty()) return cierres;
+    List<Long> ids = cuentas.stream().map(Cuenta::getId).collect(Collectors.toList());
+    for (SaldoCuenta s : saldoDiarioRepo.cierresAntesDe(ids, desde)) {
+      if (s.getSaldo() != null) cierres.put(s.getCuentaId(), s.getSaldo());
+    }
+    return cierres;
+  }
+
+  // Cada movimiento guarda su saldo resultante: el saldo al inicio del rango es el del
+  // último movimiento anterior a "desde" (o cero si no hay ninguno).
+  private Map<Long, BigDecimal> calcularSaldosAlInicio(List<Long> cuentaIds, OffsetDateTime desdeExclusive) {
+    Map<Long, BigDecimal> saldos = new HashMap<>();
+    for (SaldoCuenta s : movRepo.saldosAntesDe(cuentaIds, desdeExclusive)) {
+      if (s.getSaldo() != null) saldos.put(s.getCuentaId(), s.getSaldo());
+    }
+    return saldos;
   }
 
   private String generarPdfBase64(ReporteResponseDtos r) {
     try {
       ByteArrayOutputStream baos = new ByteArrayOutputStream();
-      Document doc = new Document(PageSize.A4.rotate(), 36, 36, 36, 36);
-      PdfWriter.getInstance(doc, baos);
-      doc.open();
-
-      Font h1 = new Font(Font.HELVETICA, 16, Font.BOLD);
-      Font normal = new Font(Font.HELVETICA, 10);
-
-      Paragraph titulo = new Paragraph("Estado de Cuenta", h1);
-      titulo.setAlignment(Paragraph.ALIGN_CENTER);
-      doc.add(titulo);
-
-      doc.add(new Paragraph(
-          String.format("Cliente: %s (ID: %d)  |  Rango: %s a %s",
-              r.getClienteNombre(), r.getClienteId(),
-              r.getDesde(), r.getHasta()), normal));
-      doc.add(new Paragraph(" ", normal));
-
-      PdfPTable table = new PdfPTable(8);
-      table.setWidthPercentage(100);
-      table.setWidths(new float[]{16, 18, 12, 12, 12, 10, 12, 12});
-
-      addHeader(table, "Fecha");
-      addHeader(table, "Cliente");
-      addHeader(table, "Nro. Cuenta");
-      addHeader(table, "Tipo");
-      addHeader(table, "Saldo Inicial");
-      addHeader(table, "Estado");
-      addHeader(table, "Movimiento");
-      addHeader(table, "Saldo Disp.");
-
-      for (ReporteLineaDtos it : r.getItems()) {
-        table.addCell(new PdfPCell(new Phrase(it.getFecha().toString(), normal)));
-        table.addCell(new PdfPCell(new Phrase(it.getCliente(), normal)));
-        table.addCell(new PdfPCell(new Phrase(it.getNumeroCuenta(), normal)));
-        table.addCell(new PdfPCell(new Phrase(it.getTipoCuenta(), normal)));
-        table.addCell(new PdfPCell(new Phrase(it.getSaldoInicial().toPlainString(), normal)));
-        table.addCell(new PdfPCell(new Phrase(Boolean.toString(it.isEstado()), normal)));
-        table.addCell(new PdfPCell(new Phrase(it.getMovimiento().toPlainString(), normal)));
-        table.addCell(new PdfPCell(new Phrase(it.getSaldoDisponible().toPlainString(), normal)));
+      try (EstadoCuentaPdf pdf = new EstadoCuentaPdf(baos, r.getClienteNombre(), r.getClienteId(),
+          r.getDesde(), r.getHasta())) {
+        for (ReporteLineaDtos it : r.getItems()) pdf.agregar(it);
+        pdf.totales(r.getTotalCreditos(), r.getTotalDebitos());
       }
-      doc.add(table);
-
-      doc.add(new Paragraph(" ", normal));
-      doc.add(new Paragraph("Totales:", h1));
-      doc.add(new Paragraph("Créditos: " + r.getTotalCreditos().toPlainString(), normal));
-      doc.add(new Paragraph("Débitos: " + r.getTotalDebitos().toPlainString(), normal));
-
-      doc.close();
       return Base64.getEncoder().encodeToString(baos.toByteArray());
     } catch (Exception e) {
       return null;
     }
   }
-
-  private void addHeader(PdfPTable table, String txt) {
-    Font bold = new Font(Font.HELVETICA, 10, Font.BOLD);
-    PdfPCell cell = new PdfPCell(new Phrase(txt, bold));
-    table.addCell(cell);
-  }
 }
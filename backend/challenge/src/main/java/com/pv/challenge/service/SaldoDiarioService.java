@@ -0,0 +1,78 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.entity.Movimiento;
+import com.pv.challenge.repo.CuentaRepository;
+import com.pv.challenge.repo.MovimientoRepository;
+import com.pv.challenge.repo.SaldoDiarioRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Mantiene los rollups diarios por cuenta (saldos_diarios).
+ * Los asientos atómicos de MovimientoService los actualizan en su propia sentencia;
+ * los caminos JPA (transferencias, lotes, depósito inicial) pasan por acumular().
+ */
+@Service
+public class SaldoDiarioService {
+
+  private static final Logger log = LoggerFactory.getLogger(SaldoDiarioService.class);
+  private static final int PAGINA_BACKFILL = 500;
+
+  private final SaldoDiarioRepository saldoDiarioRepo;
+  private final MovimientoRepository movRepo;
+  private final CuentaRepository cuentaRepo;
+  private final TransactionTemplate tx;
+
+  public SaldoDiarioService(SaldoDiarioRepository saldoDiarioRepo,
+                            MovimientoRepository movRepo,
+                            CuentaRepository cuentaRepo,
+                            PlatformTransactionManager txManager) {
+    this.saldoDiarioRepo = saldoDiarioRepo;
+    this.movRepo = movRepo;
+    this.cuentaRepo = cuentaRepo;
+    this.tx = new TransactionTemplate(txManager);
+  }
+
+  // Debe llamarse dentro de la transacción que insertó los movimientos.
+  public void acumular(Collection<Movimiento> movimientos) {
+    if (movimientos.isEmpty()) return;
+    List<Long> ids = new ArrayList<>(movimientos.size());
+    for (Movimiento m : movimientos) ids.add(m.getId());
+    movRepo.flush(); // los INSERT pendientes deben existir antes de agregarlos
+    saldoDiarioRepo.acumular(ids);
+  }
+
+  /**
+   * Backfill: reconstruye los rollups de todas las cuentas desde movimientos.
+   * Una transacción por cuenta, con la fila de la cuenta bloqueada para que ningún
+   * asiento concurrente quede a medias entre el borrado y la reconstrucción.
+   */
+  public int reconstruir() {
+    int cuentas = 0;
+    long ultimo = 0L;
+    List<Long> pagina;
+    do {
+      pagina = cuentaRepo.idsDespuesDe(ultimo, PageRequest.of(0, PAGINA_BACKFILL));
+      for (Long cuentaId : pagina) {
+        tx.executeWithoutResult(s -> {
+          cuentaRepo.bloquearPorIds(Collections.singletonList(cuentaId));
+          saldoDiarioRepo.borrarCuenta(cuentaId);
+          saldoDiarioRepo.reconstruirCuenta(cuentaId);
+        });
+        cuentas++;
+        ultimo = cuentaId;
+      }
+    } while (pagina.size() == PAGINA_BACKFILL);
+    log.info("Rollups diarios reconstruidos para {} cuentas", cuentas);
+    return cuentas;
+  }
+}
@@ -0,0 +1,21 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.ReporteLineaDtos;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Destino de un estado de cuenta escrito en streaming (PDF, CSV, XLSX): recibe las
+ * líneas en orden de fecha mientras se recorre el cursor de movimientos y no debe
+ * retenerlas. close() termina el formato pero no cierra el stream del llamador.
+ */
+interface SalidaEstadoCuenta extends AutoCloseable {
+
+  void agregar(ReporteLineaDtos linea) throws IOException;
+
+  void totales(BigDecimal totalCreditos, BigDecimal totalDebitos) throws IOException;
+
+  @Override
+  void close() throws IOException;
+}
@@ -0,0 +1,238 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.CuentaDtos.EstadoSubsaldos;
+import com.pv.challenge.entity.Cuenta;
+import com.pv.challenge.exception.BusinessException;
+import com.pv.challenge.exception.NotFoundException;
+import com.pv.challenge.repo.CuentaRepository;
+import com.pv.challenge.repo.SaldoDiarioRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saldo repartido de cuentas de mucho tráfico (recaudadoras): con N subsaldos, cada
+ * depósito suma a uno elegido al azar (MovimientoRepository.acreditarEnSubsaldo) y
+ * los depósitos concurrentes se reparten entre N filas en vez de hacer cola en la
+ * fila de cuentas. El saldo de la cuenta es cuentas.saldo más la suma de sus subsaldos.
+ *
+ * Consolidar pasa los subsaldos a cuentas.saldo y los créditos pendientes a movimientos,
+ * con su saldo resultante en orden de fecha y el rollup diario. Se consolida antes de
+ * todo lo que lee o debita el saldo con la fila bloqueada (retiros, transferencias,
+ * lotes), así un retiro ve el saldo completo, y cada banco.subsaldos.consolidar-ms
+ * para que historial, reportes y saldos diarios no se atrasen más que eso.
+ *
+ * Qué cuentas están repartidas se guarda en memoria. Una cuenta mal clasificada solo
+ * cambia el camino, no el resultado: un depósito que no encuentra su subsaldo acredita
+ * directo en cuentas.saldo.
+ */
+@Service
+public class SubsaldosService {
+
+  private static final Logger log = LoggerFactory.getLogger(SubsaldosService.class);
+
+  private final JdbcTemplate jdbc;
+  private final CuentaRepository cuentaRepo;
+  private final SaldoDiarioRepository saldoDiarioRepo;
+  private final ReporteCacheMemoria reporteCache;
+  private final IndiceCuentas indice;
+  private final TransactionTemplate tx;
+  private final TransactionTemplate lectura;
+  private final int maximo;
+  private final long consolidarMs;
+
+  private final Set<Long> repartidas = ConcurrentHashMap.newKeySet();
+  private ScheduledExecutorService consolidador;
+
+  public SubsaldosService(JdbcTemplate jdbc,
+                          CuentaRepository cuentaRepo,
+                          SaldoDiarioRepository saldoDiarioRepo,
+                          ReporteCacheMemoria reporteCache,
+                          IndiceCuentas indice,
+                          PlatformTransactionManager txManager,
+                          @Value("${banco.subsaldos.maximo:64}") int maximo,
+                          @Value("${banco.subsaldos.consolidar-ms:1000}") long consolidarMs) {
+    this.jdbc = jdbc;
+    this.cuentaRepo = cuentaRepo;
+    this.saldoDiarioRepo = saldoDiarioRepo;
+    this.reporteCache = reporteCache;
+    this.indice = indice;
+    this.tx = new TransactionTemplate(txManager);
+    // Subsaldos, principal y pendientes de una misma foto
+    this.lectura = new TransactionTemplate(txManager);
+    this.lectura.setReadOnly(true);
+    this.lectura.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    this.maximo = maximo;
+    this.consolidarMs = consolidarMs;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public synchronized void iniciar() {
+    repartidas.addAll(jdbc.queryForList("SELECT id FROM cuentas WHERE subsaldos > 0", Long.class));
+    if (!repartidas.isEmpty()) log.info("Cuentas con saldo repartido: {}", repartidas.size());
+    if (consolidarMs <= 0 || consolidador != null) return;
+    consolidador = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "subsaldos-consolidar");
+      t.setDaemon(true);
+      return t;
+    });
+    consolidador.scheduleWithFixedDelay(this::consolidarTodas, consolidarMs, consolidarMs, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  synchronized void cerrar() {
+    if (consolidador != null) consolidador.shutdownNow();
+  }
+
+  public boolean repartida(Long cuentaId) {
+    return repartidas.contains(cuentaId);
+  }
+
+  /**
+   * Reparte el saldo de la cuenta en n subsaldos (0 = sin repartir). Consolida antes
+   * lo que hubiera, así el cambio no mueve plata: solo cambia dónde caen los depósitos.
+   */
+  public EstadoSubsaldos repartir(Long cuentaId, int n) {
+    if (n < 0 || n > maximo) throw new BusinessException("subsaldos debe estar entre 0 y " + maximo + ".");
+    tx.executeWithoutResult(s -> {
+      Cuenta c = bloquear(cuentaId);
+      consolidarBloqueada(c);
+      // Un depósito esperando un subsaldo borrado no lo encuentra y acredita directo
+      jdbc.update("DELETE FROM subsaldos WHERE cuenta_id = ?", cuentaId);
+      if (n > 0) jdbc.update("INSERT INTO subsaldos (cuenta_id, slot) SELECT ?, generate_series(0, ? - 1)", cuentaId, n);
+      jdbc.update("UPDATE cuentas SET subsaldos = ? WHERE id = ?", n, cuentaId);
+      despuesDelCommit(() -> {
+        if (n > 0) repartidas.add(cuentaId);
+        else repartidas.remove(cuentaId);
+      });
+    });
+    return estado(cuentaId);
+  }
+
+  public EstadoSubsaldos consolidar(Long cuentaId) {
+    tx.executeWithoutResult(s -> consolidarBloqueada(bloquear(cuentaId)));
+    return estado(cuentaId);
+  }
+
+  public EstadoSubsaldos estado(Long cuentaId) {
+    return lectura.execute(s -> {
+      List<EstadoSubsaldos> es = jdbc.query("SELECT saldo, subsaldos FROM cuentas WHERE id = ?", (rs, i) -> {
+        EstadoSubsaldos e = new EstadoSubsaldos();
+        e.cuentaId = cuentaId;
+        e.saldoPrincipal = rs.getBigDecimal(1);
+        e.subsaldos = rs.getInt(2);
+        return e;
+      }, cuentaId);
+      if (es.isEmpty()) throw new NotFoundException(MovimientoLoteService.cuentaInexistente(cuentaId));
+      EstadoSubsaldos e = es.get(0);
+      e.saldos = jdbc.queryForList("SELECT saldo FROM subsaldos WHERE cuenta_id = ? ORDER BY slot", BigDecimal.class, cuentaId);
+      e.pendientes = jdbc.queryForObject("SELECT COUNT(*) FROM creditos_repartidos WHERE cuenta_id = ?", Long.class, cuentaId);
+      e.saldo = e.saldoPrincipal;
+      for (BigDecimal b : e.saldos) e.saldo = e.saldo.add(b);
+      return e;
+    });
+  }
+
+  // Saldo completo de una cuenta repartida en una sola lectura; null si no existe
+  public BigDecimal saldoTotal(Long cuentaId) {
+    List<BigDecimal> r = jdbc.queryForList(
+        "SELECT c.saldo + COALESCE((SELECT SUM(s.saldo) FROM subsaldos s WHERE s.cuenta_id = c.id), 0) " +
+        "FROM cuentas c WHERE c.id = ?", BigDecimal.class, cuentaId);
+    return r.isEmpty() ? null : r.get(0);
+  }
+
+  /**
+   * Pasa los subsaldos de la cuenta a su saldo y los créditos pendientes a movimientos.
+   * Debe llamarse dentro de la transacción que bloqueó la fila de la cuenta: al bloquear
+   * los subsaldos espera a los depósitos en curso, así los pendientes que ve son
+   * exactamente los que suman los subsaldos. Devuelve los créditos consolidados.
+   */
+  int consolidarBloqueada(Cuenta c) {
+    Long id = c.getId();
+    List<BigDecimal> saldos = jdbc.queryForList("SELECT saldo FROM subsaldos WHERE cuenta_id = ? FOR UPDATE", BigDecimal.class, id);
+    BigDecimal enSubsaldos = BigDecimal.ZERO;
+    for (BigDecimal b : saldos) enSubsaldos = enSubsaldos.add(b);
+
+    List<Long> ids = new ArrayList<>();
+    BigDecimal[] suma = {BigDecimal.ZERO};
+    // Los créditos se asientan ahora, detrás de todo lo que ya tiene la cuenta: con su
+    // fecha original quedarían antes de débitos posteriores cuyos saldos no los incluyen
+    // y cambiarían el cierre de días ya cerrados. La fecha del crédito va en fecha_origen
+    // y el saldo corrido sigue el id, el orden en que (fecha, id) los lee.
+    Timestamp ahora = Timestamp.from(Instant.now());
+    jdbc.query(
+        "WITH p AS (DELETE FROM creditos_repartidos WHERE cuenta_id = ? RETURNING id, valor, referencia, fecha) " +
+        "INSERT INTO movimientos (id, cuenta_id, tipo, valor, saldo, referencia, fecha, fecha_origen) " +
+        "SELECT id, ?, 'DEPOSITO', valor, CAST(? AS NUMERIC) + SUM(valor) OVER (ORDER BY id), referencia, ?, fecha FROM p " +
+        "RETURNING id, valor",
+        rs -> {
+          ids.add(rs.getLong(1));
+          suma[0] = suma[0].add(rs.getBigDecimal(2));
+        }, id, id, c.getSaldo(), ahora);
+    if (suma[0].compareTo(enSubsaldos) != 0) {
+      throw new IllegalStateException("Cuenta " + id + ": subsaldos " + enSubsaldos
+          + " no coinciden con créditos pendientes " + suma[0]);
+    }
+    if (ids.isEmpty()) return 0;
+
+    jdbc.update("UPDATE subsaldos SET saldo = 0 WHERE cuenta_id = ? AND saldo <> 0", id);
+    saldoDiarioRepo.acumular(ids);
+    c.setSaldo(c.getSaldo().add(suma[0]));
+    indice.confirmar(c);
+    reporteCache.invalidarCliente(c.getCliente().getId());
+    return ids.size();
+  }
+
+  private void consolidarTodas() {
+    for (Long id : repartidas) {
+      try {
+        Boolean hay = jdbc.queryForObject("SELECT EXISTS (SELECT 1 FROM creditos_repartidos WHERE cuenta_id = ?)", Boolean.class, id);
+        if (Boolean.TRUE.equals(hay)) tx.executeWithoutResult(s -> consolidarBloqueada(bloquear(id)));
+      } catch (NotFoundException e) {
+        repartidas.remove(id); // borrada: sus subsaldos se fueron en cascada
+      } catch (RuntimeException e) {
+        log.warn("No se pudo consolidar la cuenta {}: {}", id, e.getMessage());
+      }
+    }
+  }
+
+  private Cuenta bloquear(Long cuentaId) {
+    return cuentaRepo.bloquearPorIds(Collections.singletonList(cuentaId)).stream().findFirst()
+        .orElseThrow(() -> new NotFoundException(MovimientoLoteService.cuentaInexistente(cuentaId)));
+  }
+
+  private static void despuesDelCommit(Runnable r) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          r.run();
+        }
+      });
+    } else {
+      r.run();
+    }
+  }
+}
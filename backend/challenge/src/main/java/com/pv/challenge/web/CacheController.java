@@ -0,0 +1,26 @@
+package com.pv.challenge.web;
+
+import com.pv.challenge.dto.CacheDtos.RegionCache;
+import com.pv.challenge.service.CacheSegundoNivel;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/cache")
+public class CacheController {
+
+    private final CacheSegundoNivel cache;
+
+    public CacheController(CacheSegundoNivel cache) {
+        this.cache = cache;
+    }
+
+    // Aciertos y fallos por región del cache de segundo nivel (entidades y búsquedas por clave natural)
+    @GetMapping("/metricas")
+    public List<RegionCache> metricas() {
+        return cache.metricas();
+    }
+}
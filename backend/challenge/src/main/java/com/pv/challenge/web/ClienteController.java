@@ -2,26 +2,43 @@ package com.pv.challenge.web;
 
 import com.pv.challenge.entity.Cliente;
 import com.pv.challenge.service.ClienteService;
+import com.pv.challenge.service.ImportacionClientesService;
+import com.pv.challenge.service.ImportacionClientesService.Formato;
 import com.pv.challenge.dto.ClienteDtos;
 import com.pv.challenge.dto.ClienteDtos.SaveClienteRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.InputStream;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/clientes")
 public class ClienteController {
 
+    static final String NDJSON = "application/x-ndjson";
+
     private final ClienteService service;
+    private final ImportacionClientesService importacionService;
 
-    public ClienteController(ClienteService service) {
+    public ClienteController(ClienteService service, ImportacionClientesService importacionService) {
         this.service = service;
+        this.importacionService = importacionService;
     }
 
+    // Paginado por cursor: "siguiente" de la respuesta se pasa como "cursor" en el próximo pedido
     @GetMapping
-    public List<ClienteDtos.ClienteResponse> listar() {
-        return service.listar().stream().map(this::map).collect(Collectors.toList());
+    public ClienteDtos.PaginaClientes listar(@RequestParam(required = false) String cursor,
+                                             @RequestParam(defaultValue = "50") int limite) {
+        return service.listar(cursor, limite);
+    }
+
+    // Búsqueda por nombre (prefijo o subcadena), identificación o clienteId (prefijo), por relevancia
+    @GetMapping("/search")
+    public List<ClienteDtos.ClienteResponse> buscar(@RequestParam String q,
+                                                    @RequestParam(defaultValue = "20") int limite) {
+        return service.buscar(q, limite);
     }
 
     @GetMapping("/{id}")
@@ -34,6 +51,16 @@ public class ClienteController {
         return map(service.crear(req));
     }
 
+    // Alta masiva: CSV con encabezado o NDJSON, un SaveClienteRequest por fila; devuelve
+    // los rechazos por línea y la tasa de importación
+    @PostMapping(value = "/importaciones", consumes = {"text/csv", NDJSON})
+    public ClienteDtos.ImportacionResponse importar(@RequestHeader(HttpHeaders.CONTENT_TYPE) String tipo,
+                                                    InputStream cuerpo) {
+        Formato formato = MediaType.parseMediaType(tipo).isCompatibleWith(MediaType.valueOf(NDJSON))
+                ? Formato.NDJSON : Formato.CSV;
+        return importacionService.importar(cuerpo, formato);
+    }
+
     @PutMapping("/{id}")
     public ClienteDtos.ClienteResponse actualizar(@PathVariable Long id, @RequestBody SaveClienteRequest req) {
         return map(service.actualizar(id, req));
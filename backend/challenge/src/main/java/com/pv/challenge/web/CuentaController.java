@@ -2,10 +2,18 @@ package com.pv.challenge.web;
 
 import com.pv.challenge.entity.Cuenta;
 import com.pv.challenge.service.CuentaService;
+import com.pv.challenge.service.IndiceCuentas;
+import com.pv.challenge.service.SubsaldosService;
 import com.pv.challenge.dto.CuentaDtos.SaveCuentaRequest;
 import com.pv.challenge.dto.CuentaDtos.CuentaResponse;
+import com.pv.challenge.dto.CuentaDtos.EstadoSubsaldos;
+import com.pv.challenge.dto.CuentaDtos.MetricasIndice;
+import com.pv.challenge.dto.CuentaDtos.PaginaCuentas;
+import com.pv.challenge.dto.CuentaDtos.SaldoResponse;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -14,14 +22,26 @@ import java.util.stream.Collectors;
 public class CuentaController {
 
     private final CuentaService service;
+    private final IndiceCuentas indice;
+    private final SubsaldosService subsaldos;
 
-    public CuentaController(CuentaService service) {
+    public CuentaController(CuentaService service, IndiceCuentas indice, SubsaldosService subsaldos) {
         this.service = service;
+        this.indice = indice;
+        this.subsaldos = subsaldos;
     }
 
+    // Paginado por cursor: "siguiente" de la respuesta se pasa como "cursor" en el próximo pedido
     @GetMapping
-    public List<CuentaResponse> listar() { 
-        return service.listar().stream().map(this::map).collect(Collectors.toList()); 
+    public PaginaCuentas listar(@RequestParam(required = false) String cursor,
+                                @RequestParam(defaultValue = "50") int limite) {
+        return service.listar(cursor, limite);
+    }
+
+    // Tamaño y rechazos del índice en memoria que filtra asientos inválidos antes de la base
+    @GetMapping("/indice")
+    public MetricasIndice indice() {
+        return indice.metricas();
     }
 
     @GetMapping("/cliente/{clienteId}")
@@ -34,6 +54,33 @@ public class CuentaController {
         return map(service.obtener(id)); 
     }
 
+    @GetMapping("/{id}/saldo")
+    public SaldoResponse saldo(@PathVariable Long id,
+                               @RequestParam(required = false)
+                               @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime at) {
+        SaldoResponse r = new SaldoResponse();
+        r.cuentaId = id;
+        r.at = at != null ? at : OffsetDateTime.now();
+        r.saldo = service.saldoAl(id, r.at);
+        return r;
+    }
+
+    @GetMapping("/{id}/subsaldos")
+    public EstadoSubsaldos subsaldos(@PathVariable Long id) {
+        return subsaldos.estado(id);
+    }
+
+    // n > 0 reparte el saldo de la cuenta en n subsaldos para depósitos concurrentes; 0 lo vuelve a unir
+    @PutMapping("/{id}/subsaldos")
+    public EstadoSubsaldos repartir(@PathVariable Long id, @RequestParam int n) {
+        return subsaldos.repartir(id, n);
+    }
+
+    @PostMapping("/{id}/subsaldos/consolidar")
+    public EstadoSubsaldos consolidar(@PathVariable Long id) {
+        return subsaldos.consolidar(id);
+    }
+
     @PostMapping
     public CuentaResponse crear(@RequestBody SaveCuentaRequest req) { 
         return map(service.crear(req)); 
@@ -54,7 +101,7 @@ public class CuentaController {
         r.id = c.getId();
         r.numero = c.getNumero();
         r.tipo = c.getTipo();
-        r.saldo = c.getSaldo();
+        r.saldo = subsaldos.repartida(c.getId()) ? subsaldos.saldoTotal(c.getId()) : c.getSaldo();
         r.estado = c.getEstado();
         r.clienteId = c.getCliente().getId();
         r.clienteNombre = c.getCliente().getPersona().getNombre();
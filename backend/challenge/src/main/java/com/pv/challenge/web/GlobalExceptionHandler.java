@@ -5,6 +5,7 @@ import com.pv.challenge.exception.ErrorResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -15,6 +16,7 @@ import org.springframework.http.converter.HttpMessageNotReadableException;
 import javax.servlet.http.HttpServletRequest;
 import java.time.OffsetDateTime;
 import java.util.NoSuchElementException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 @RestControllerAdvice
@@ -48,6 +50,12 @@ public class GlobalExceptionHandler {
     return build(HttpStatus.CONFLICT, "Conflicto con los datos (duplicados o integridad).", req);
   }
 
+  // Conflicto de versión que sobrevivió a los reintentos (banco.cuentas.bloqueo=optimista)
+  @ExceptionHandler(OptimisticLockingFailureException.class)
+  public ResponseEntity<ErrorResponse> handleVersion(OptimisticLockingFailureException ex, HttpServletRequest req) {
+    return build(HttpStatus.CONFLICT, "La cuenta cambió mientras se actualizaba; reintentar.", req);
+  }
+
   @ExceptionHandler(HttpMessageNotReadableException.class)
   public ResponseEntity<ErrorResponse> handleBadBody(HttpMessageNotReadableException ex, HttpServletRequest req) {
     return build(HttpStatus.BAD_REQUEST, "Cuerpo de la petición inválido.", req);
@@ -62,6 +70,11 @@ public class GlobalExceptionHandler {
     return build(HttpStatus.BAD_REQUEST, msg, req);
   }
 
+  @ExceptionHandler(RejectedExecutionException.class)
+  public ResponseEntity<ErrorResponse> handleSaturado(RejectedExecutionException ex, HttpServletRequest req) {
+    return build(HttpStatus.SERVICE_UNAVAILABLE, "Servidor ocupado; reintentar más tarde.", req);
+  }
+
   @ExceptionHandler(Exception.class)
   public ResponseEntity<ErrorResponse> handleGeneric(Exception ex, HttpServletRequest req) {
     log.error("Error interno en {}: {}", req.getRequestURI(), ex.getMessage(), ex);
@@ -1,52 +1,167 @@
 package com.pv.challenge.web;
 
+import com.pv.challenge.dto.ExportacionDtos.ExportacionResponse;
 import com.pv.challenge.dto.MovimientoDtos;
-import com.pv.challenge.entity.Movimiento;
-import com.pv.challenge.repo.MovimientoRepository;
+import com.pv.challenge.service.AsientosAgrupadosService;
+import com.pv.challenge.service.CupoDiarioService;
+import com.pv.challenge.service.DiarioAsientosService;
+import com.pv.challenge.service.ExportacionService;
+import com.pv.challenge.service.IdempotenciaService;
+import com.pv.challenge.service.MovimientoLoteService;
 import com.pv.challenge.service.MovimientoService;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/movimientos")
 public class MovimientoController {
 
+    static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
     private final MovimientoService service;
-    private final MovimientoRepository movRepo;
+    private final MovimientoLoteService loteService;
+    private final ExportacionService exportacionService;
+    private final CupoDiarioService cupoDiarioService;
+    private final IdempotenciaService idempotencia;
+    private final AsientosAgrupadosService agrupados;
+    private final DiarioAsientosService diario;
 
-    public MovimientoController(MovimientoService service, MovimientoRepository movRepo) {
+    public MovimientoController(MovimientoService service, MovimientoLoteService loteService,
+                                ExportacionService exportacionService, CupoDiarioService cupoDiarioService,
+                                IdempotenciaService idempotencia, AsientosAgrupadosService agrupados,
+                                DiarioAsientosService diario) {
         this.service = service;
-        this.movRepo = movRepo;
+        this.loteService = loteService;
+        this.exportacionService = exportacionService;
+        this.cupoDiarioService = cupoDiarioService;
+        this.idempotencia = idempotencia;
+        this.agrupados = agrupados;
+        this.diario = diario;
     }
 
+    // Paginado por cursor: "siguiente" de la respuesta se pasa como "cursor" en el próximo pedido
     @GetMapping
-    public List<MovimientoDtos.MovimientoResponse> listar(@RequestParam(required = false) Long cuentaId) {
-        List<Movimiento> movimientos = cuentaId == null ? movRepo.findAll() : movRepo.findByCuenta_Id(cuentaId);
-        return movimientos.stream().map(MovimientoDtos.MovimientoResponse::new).collect(Collectors.toList());
+    public MovimientoDtos.PaginaMovimientos listar(@RequestParam(required = false) Long cuentaId,
+                                                   @RequestParam(required = false) String tipo,
+                                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+                                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+                                                   @RequestParam(required = false) BigDecimal montoMin,
+                                                   @RequestParam(required = false) BigDecimal montoMax,
+                                                   @RequestParam(required = false) String cursor,
+                                                   @RequestParam(defaultValue = "50") int limite) {
+        MovimientoDtos.FiltroMovimientos f = new MovimientoDtos.FiltroMovimientos();
+        f.cuentaId = cuentaId;
+        f.tipo = tipo;
+        f.desde = desde;
+        f.hasta = hasta;
+        f.montoMin = montoMin;
+        f.montoMax = montoMax;
+        return service.listar(f, cursor, limite);
     }
 
+    // Con Idempotency-Key, un reintento con la misma clave y los mismos parámetros
+    // devuelve el resultado original en vez de registrar otro movimiento. Sin clave y
+    // con banco.asientos.agrupados, el asiento va por el commit agrupado; con clave
+    // va siempre por el camino síncrono, que comparte la transacción de la reserva.
     @PostMapping("/deposito")
     public MovimientoDtos.MovimientoResponse depositar(@RequestParam Long cuentaId,
                                 @RequestParam BigDecimal monto,
-                                @RequestParam(required = false) String ref) {
-        return new MovimientoDtos.MovimientoResponse(service.depositar(cuentaId, monto, ref));
+                                @RequestParam(required = false) String ref,
+                                @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String clave) {
+        if (clave == null) {
+            if (agrupados.activo()) return agrupados.registrar(cuentaId, "DEPOSITO", monto, ref);
+            return new MovimientoDtos.MovimientoResponse(service.depositar(cuentaId, monto, ref));
+        }
+        return idempotencia.ejecutar(clave, "DEPOSITO", IdempotenciaService.huella(cuentaId, monto, ref),
+            Collections.singletonList(cuentaId), () -> service.depositar(cuentaId, monto, ref));
+    }
+
+    // Depósito confirmado al quedar anotado en el diario local (banco.diario.activo);
+    // se aplica a la cuenta en segundo plano. GET /diario muestra cuánto falta aplicar
+    @PostMapping("/deposito/diferido")
+    public ResponseEntity<MovimientoDtos.AcuseDiario> depositarDiferido(@RequestParam Long cuentaId,
+                                                                        @RequestParam BigDecimal monto,
+                                                                        @RequestParam(required = false) String ref) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(diario.depositar(cuentaId, monto, ref));
+    }
+
+    @GetMapping("/diario")
+    public MovimientoDtos.EstadoDiario estadoDiario() {
+        return diario.estado();
     }
 
     @PostMapping("/retiro")
     public MovimientoDtos.MovimientoResponse retirar(@RequestParam Long cuentaId,
                               @RequestParam BigDecimal monto,
-                              @RequestParam(required = false) String ref) {
-        return new MovimientoDtos.MovimientoResponse(service.retirar(cuentaId, monto, ref));
+                              @RequestParam(required = false) String ref,
+                              @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String clave) {
+        if (clave == null) {
+            if (agrupados.activo()) return agrupados.registrar(cuentaId, "RETIRO", monto, ref);
+            return new MovimientoDtos.MovimientoResponse(service.retirar(cuentaId, monto, ref));
+        }
+        return idempotencia.ejecutar(clave, "RETIRO", IdempotenciaService.huella(cuentaId, monto, ref),
+            Collections.singletonList(cuentaId), () -> service.retirar(cuentaId, monto, ref));
     }
 
     @PostMapping("/transferencia")
     public void transferir(@RequestParam Long origenId,
                            @RequestParam Long destinoId,
                            @RequestParam BigDecimal monto,
-                           @RequestParam(required = false) String ref) {
-        service.transferir(origenId, destinoId, monto, ref);
+                           @RequestParam(required = false) String ref,
+                           @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String clave) {
+        if (clave == null) {
+            service.transferir(origenId, destinoId, monto, ref);
+            return;
+        }
+        idempotencia.ejecutar(clave, "TRANSFERENCIA", IdempotenciaService.huella(origenId, destinoId, monto, ref),
+            Arrays.asList(origenId, destinoId), () -> {
+                service.transferir(origenId, destinoId, monto, ref);
+                return null;
+            });
+    }
+
+    @PostMapping("/lote")
+    public MovimientoDtos.LoteResponse lote(@RequestBody List<MovimientoDtos.OperacionLote> operaciones) {
+        return loteService.registrar(operaciones);
+    }
+
+    // Rehace los contadores del cupo diario de un día (por defecto hoy) desde los
+    // movimientos; devuelve los clientes procesados
+    @PostMapping("/retiros-diarios/reconstruir")
+    public int reconstruirRetirosDiarios(@RequestParam(required = false)
+                                         @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dia) {
+        return cupoDiarioService.reconstruir(dia != null ? dia : cupoDiarioService.hoy());
+    }
+
+    // Exportación completa para auditoría: archivos gzip por rango de ids, en segundo plano
+    @PostMapping("/exportaciones")
+    public ResponseEntity<ExportacionResponse> exportar(@RequestParam(defaultValue = "csv") String formato) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(exportacionService.iniciar(formato));
+    }
+
+    @GetMapping("/exportaciones/{id}")
+    public ExportacionResponse estadoExportacion(@PathVariable String id) {
+        return exportacionService.estado(id);
+    }
+
+    @GetMapping("/exportaciones/{id}/partes/{numero}")
+    public ResponseEntity<Resource> descargarParte(@PathVariable String id, @PathVariable int numero) {
+        FileSystemResource archivo = new FileSystemResource(exportacionService.archivo(id, numero));
+        return ResponseEntity.ok()
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + archivo.getFilename())
+            .contentType(MediaType.parseMediaType("application/gzip"))
+            .body(archivo);
     }
 }
@@ -1,41 +1,185 @@
 package com.pv.challenge.web;
 
+import com.pv.challenge.dto.CierreDtos.CierreRequest;
+import com.pv.challenge.dto.CierreDtos.CierreResponse;
+import com.pv.challenge.dto.ReporteCacheDtos.Metricas;
+import com.pv.challenge.dto.ReporteJobDtos.JobRequest;
+import com.pv.challenge.dto.ReporteJobDtos.JobResponse;
 import com.pv.challenge.dto.ReporteResponseDtos;
+import com.pv.challenge.service.CierreMensualService;
+import com.pv.challenge.service.ReporteCacheMemoria;
+import com.pv.challenge.service.ReporteEnCurso;
+import com.pv.challenge.service.ReporteJobService;
 import com.pv.challenge.service.ReporteService;
+import com.pv.challenge.service.SaldoDiarioService;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
-import java.util.Base64;
 
 @RestController
 @RequestMapping("/api/reportes")
 public class ReporteController {
 
+  static final String TEXT_CSV = "text/csv";
+  static final String XLSX = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
   private final ReporteService service;
-  public ReporteController(ReporteService service) { this.service = service; }
+  private final SaldoDiarioService saldoDiarioService;
+  private final ReporteJobService jobService;
+  private final ReporteCacheMemoria cache;
+  private final ReporteEnCurso enCurso;
+  private final CierreMensualService cierreService;
+
+  public ReporteController(ReporteService service, SaldoDiarioService saldoDiarioService,
+                           ReporteJobService jobService, ReporteCacheMemoria cache, ReporteEnCurso enCurso,
+                           CierreMensualService cierreService) {
+    this.service = service;
+    this.saldoDiarioService = saldoDiarioService;
+    this.jobService = jobService;
+    this.cache = cache;
+    this.enCurso = enCurso;
+    this.cierreService = cierreService;
+  }
 
   @GetMapping("/json")
   public ReporteResponseDtos json(
       @RequestParam Long clienteId,
       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
-    return service.generar(clienteId, desde, hasta, false);
+    return enCurso.json(clienteId, desde, hasta, () -> service.generarCacheado(clienteId, desde, hasta));
+  }
+
+  // Estado de cuenta por negociación de contenido (Accept): JSON si no se pide otro
+  // formato; PDF, CSV y XLSX se escriben en streaming igual que en sus rutas propias
+  @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.ALL_VALUE})
+  public ReporteResponseDtos estadoCuenta(
+      @RequestParam Long clienteId,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+    return json(clienteId, desde, hasta);
   }
 
+  @GetMapping(produces = MediaType.APPLICATION_PDF_VALUE)
+  public ResponseEntity<StreamingResponseBody> estadoCuentaPdf(
+      @RequestParam Long clienteId,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+    return pdf(clienteId, desde, hasta);
+  }
+
+  @GetMapping(produces = TEXT_CSV)
+  public ResponseEntity<StreamingResponseBody> estadoCuentaCsv(
+      @RequestParam Long clienteId,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+    return csv(clienteId, desde, hasta);
+  }
+
+  @GetMapping(produces = XLSX)
+  public ResponseEntity<StreamingResponseBody> estadoCuentaXlsx(
+      @RequestParam Long clienteId,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+    return xlsx(clienteId, desde, hasta);
+  }
+
+  @GetMapping("/cache/metricas")
+  public Metricas metricasCache() {
+    return cache.metricas();
+  }
+
+  @GetMapping("/resumen")
+  public ReporteResponseDtos resumen(
+      @RequestParam Long clienteId,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+    return service.resumen(clienteId, desde, hasta);
+  }
+
+  // Backfill de rollups diarios para datos existentes; devuelve las cuentas procesadas
+  @PostMapping("/saldos-diarios/reconstruir")
+  public int reconstruirSaldosDiarios() {
+    return saldoDiarioService.reconstruir();
+  }
+
+  // El PDF se escribe directo en la respuesta mientras se leen los movimientos;
+  // pedidos idénticos simultáneos reciben los mismos bytes de una sola generación
   @GetMapping("/pdf")
-  public ResponseEntity<byte[]> pdf(
+  public ResponseEntity<StreamingResponseBody> pdf(
+      @RequestParam Long clienteId,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+    service.verificarCliente(clienteId);
+    StreamingResponseBody body = out -> enCurso.pdf(clienteId, desde, hasta, out,
+        o -> service.escribirPdf(clienteId, desde, hasta, o));
+    return ResponseEntity.ok()
+        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=reporte.pdf")
+        .contentType(MediaType.APPLICATION_PDF)
+        .body(body);
+  }
+
+  // Para planillas: mismo recorrido de movimientos que el PDF, memoria constante
+  @GetMapping("/csv")
+  public ResponseEntity<StreamingResponseBody> csv(
+      @RequestParam Long clienteId,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+    service.verificarCliente(clienteId);
+    return ResponseEntity.ok()
+        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=reporte.csv")
+        .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+        .body(out -> service.escribirCsv(clienteId, desde, hasta, out));
+  }
+
+  @GetMapping("/xlsx")
+  public ResponseEntity<StreamingResponseBody> xlsx(
       @RequestParam Long clienteId,
       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
-    ReporteResponseDtos r = service.generar(clienteId, desde, hasta, true);
-    byte[] bytes = r.getPdfBase64() == null ? new byte[0] : Base64.getDecoder().decode(r.getPdfBase64());
+    service.verificarCliente(clienteId);
+    return ResponseEntity.ok()
+        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=reporte.xlsx")
+        .contentType(MediaType.parseMediaType(XLSX))
+        .body(out -> service.escribirXlsx(clienteId, desde, hasta, out));
+  }
+
+  // Estado de cuenta en segundo plano: 202 con el id del job para consultar y descargar
+  @PostMapping("/jobs")
+  public ResponseEntity<JobResponse> encolar(@RequestBody JobRequest req) {
+    return ResponseEntity.status(HttpStatus.ACCEPTED)
+        .body(jobService.encolar(req.clienteId, req.desde, req.hasta));
+  }
+
+  @GetMapping("/jobs/{id}")
+  public JobResponse estadoJob(@PathVariable String id) {
+    return jobService.estado(id);
+  }
+
+  @GetMapping("/jobs/{id}/pdf")
+  public ResponseEntity<Resource> descargarJob(@PathVariable String id) {
     return ResponseEntity.ok()
         .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=reporte.pdf")
         .contentType(MediaType.APPLICATION_PDF)
-        .body(bytes);
+        .body(new FileSystemResource(jobService.archivo(id)));
+  }
+
+  // Cierre de mes: estados de cuenta de todos los clientes, en segundo plano
+  @PostMapping("/cierres")
+  public ResponseEntity<CierreResponse> iniciarCierre(@RequestBody CierreRequest req) {
+    return ResponseEntity.status(HttpStatus.ACCEPTED).body(cierreService.iniciar(req.periodo, req.zip));
+  }
+
+  @GetMapping("/cierres/{periodo}")
+  public CierreResponse estadoCierre(@PathVariable String periodo) {
+    return cierreService.estado(periodo);
   }
 }
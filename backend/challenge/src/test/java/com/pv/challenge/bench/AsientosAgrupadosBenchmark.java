@@ -0,0 +1,67 @@
+package com.pv.challenge.bench;
+
+import com.pv.challenge.repo.CuentaRepository;
+import com.pv.challenge.service.AsientosAgrupadosService;
+import com.pv.challenge.service.ClienteService;
+import com.pv.challenge.service.CuentaService;
+import com.pv.challenge.service.MovimientoService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Pico de depósitos (tipo pago de nómina): 64 hilos sobre 256 cuentas, con el asiento
+ * síncrono de MovimientoService (una transacción por depósito) contra el commit
+ * agrupado de AsientosAgrupadosService. Compara ops/s a p99 similar y verifica que
+ * ambos caminos dejan los saldos completos.
+ */
+@SpringBootTest(properties = {
+    "banco.asientos.agrupados=true",
+    "banco.asientos.escritores=4",
+    "banco.retiros.limite-diario-cuenta=0"})
+class AsientosAgrupadosBenchmark {
+
+  private static final int HILOS = 64;
+  private static final int OPS_POR_HILO = 500;
+  private static final int CUENTAS = 256;
+  private static final BigDecimal MONTO = BigDecimal.ONE;
+
+  @Autowired private MovimientoService service;
+  @Autowired private AsientosAgrupadosService agrupados;
+  @Autowired private ClienteService clienteService;
+  @Autowired private CuentaService cuentaService;
+  @Autowired private CuentaRepository cuentaRepo;
+
+  @Test
+  void sincrono_vs_agrupado() throws Exception {
+    List<Long> sincronas = cuentas();
+    Bench.Resultado s = Bench.correr("deposito sincrono", HILOS, OPS_POR_HILO,
+        (h, i) -> service.depositar(sincronas.get((h * OPS_POR_HILO + i) % CUENTAS), MONTO, "bench"));
+
+    List<Long> agrupadas = cuentas();
+    Bench.Resultado a = Bench.correr("deposito agrupado", HILOS, OPS_POR_HILO,
+        (h, i) -> agrupados.registrar(agrupadas.get((h * OPS_POR_HILO + i) % CUENTAS), "DEPOSITO", MONTO, "bench"));
+
+    System.out.printf("[bench] agrupado/sincrono: x%.1f ops/s, p99 %dus vs %dus%n",
+        a.opsPorSegundo() / s.opsPorSegundo(), a.percentilMicros(99), s.percentilMicros(99));
+    assertEquals(0, s.errores);
+    assertEquals(0, a.errores);
+    BigDecimal esperado = MONTO.multiply(BigDecimal.valueOf((long) HILOS * OPS_POR_HILO / CUENTAS));
+    for (Long id : agrupadas) {
+      assertEquals(0, esperado.compareTo(cuentaRepo.findById(id).get().getSaldo()), "Cuenta " + id);
+    }
+  }
+
+  private List<Long> cuentas() {
+    Long cliente = Bench.nuevoCliente(clienteService).getId();
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < CUENTAS; i++) ids.add(Bench.nuevaCuenta(cuentaService, cliente, BigDecimal.ZERO));
+    return ids;
+  }
+}
@@ -0,0 +1,129 @@
+package com.pv.challenge.bench;
+
+import com.pv.challenge.dto.ClienteDtos.SaveClienteRequest;
+import com.pv.challenge.dto.CuentaDtos.SaveCuentaRequest;
+import com.pv.challenge.entity.Cliente;
+import com.pv.challenge.service.ClienteService;
+import com.pv.challenge.service.CuentaService;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Utilidades comunes de los benchmarks (perfil Maven "bench", requiere PostgreSQL).
+ * Corre una operación con N hilos a la vez y reporta throughput y latencias.
+ */
+final class Bench {
+
+  private static final AtomicLong SEQ = new AtomicLong();
+
+  private Bench() {}
+
+  interface Operacion {
+    void ejecutar(int hilo, int i) throws Exception;
+  }
+
+  static final class Resultado {
+    final String nombre;
+    final long ops;
+    final long errores;
+    final double segundos;
+    private final long[] latenciasNs;
+
+    Resultado(String nombre, long ops, long errores, double segundos, long[] latenciasNs) {
+      this.nombre = nombre;
+      this.ops = ops;
+      this.errores = errores;
+      this.segundos = segundos;
+      this.latenciasNs = latenciasNs;
+      Arrays.sort(this.latenciasNs);
+    }
+
+    double opsPorSegundo() { return ops / segundos; }
+
+    double tasaError() { return ops == 0 ? 0 : (double) errores / ops; }
+
+    long percentilMicros(double p) {
+      if (latenciasNs.length == 0) return 0;
+      int idx = (int) Math.min(latenciasNs.length - 1, Math.ceil(p / 100.0 * latenciasNs.length) - 1);
+      return TimeUnit.NANOSECONDS.toMicros(latenciasNs[Math.max(0, idx)]);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("[bench] %-32s ops=%d errores=%d (%.1f%%) t=%.2fs  %.0f ops/s  p50=%dus p99=%dus",
+          nombre, ops, errores, tasaError() * 100, segundos, opsPorSegundo(),
+          percentilMicros(50), percentilMicros(99));
+    }
+  }
+
+  static Resultado correr(String nombre, int hilos, int opsPorHilo, Operacion op) throws InterruptedException {
+    ExecutorService pool = Executors.newFixedThreadPool(hilos);
+    CountDownLatch largada = new CountDownLatch(1);
+    long[] latencias = new long[hilos * opsPorHilo];
+    AtomicLong errores = new AtomicLong();
+
+    for (int t = 0; t < hilos; t++) {
+      final int hilo = t;
+      pool.submit(() -> {
+        try {
+          largada.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        for (int i = 0; i < opsPorHilo; i++) {
+          long t0 = System.nanoTime();
+          try {
+            op.ejecutar(hilo, i);
+          } catch (Exception e) {
+            errores.incrementAndGet();
+          }
+          latencias[hilo * opsPorHilo + i] = System.nanoTime() - t0;
+        }
+      });
+    }
+
+    long inicio = System.nanoTime();
+    largada.countDown();
+    pool.shutdown();
+    pool.awaitTermination(1, TimeUnit.HOURS);
+    double segundos = (System.nanoTime() - inicio) / 1e9;
+
+    Resultado r = new Resultado(nombre, latencias.length, errores.get(), segundos, latencias);
+    System.out.println(r);
+    return r;
+  }
+
+  static String sufijo() {
+    return Long.toString(System.currentTimeMillis(), 36) + SEQ.incrementAndGet();
+  }
+
+  static Cliente nuevoCliente(ClienteService clientes) {
+    String s = sufijo();
+    SaveClienteRequest req = new SaveClienteRequest();
+    req.nombre = "Bench " + s;
+    req.genero = "Otro";
+    req.edad = 30;
+    req.identificacion = "BI" + s;
+    req.direccion = "bench";
+    req.telefono = "0000000000";
+    req.clienteId = "bench" + s;
+    req.contrasena = "bench";
+    return clientes.crear(req);
+  }
+
+  static Long nuevaCuenta(CuentaService cuentas, Long clienteId, BigDecimal saldoInicial) {
+    SaveCuentaRequest req = new SaveCuentaRequest();
+    req.numero = "B" + sufijo();
+    req.tipo = "Ahorro";
+    req.saldoInicial = saldoInicial;
+    req.clienteId = clienteId;
+    return cuentas.crear(req).getId();
+  }
+}
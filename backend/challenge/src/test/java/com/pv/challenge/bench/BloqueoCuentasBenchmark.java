@@ -0,0 +1,75 @@
+package com.pv.challenge.bench;
+
+import com.pv.challenge.service.BloqueoCuentas;
+import com.pv.challenge.service.BloqueoCuentas.Estrategia;
+import com.pv.challenge.service.ClienteService;
+import com.pv.challenge.service.CuentaService;
+import com.pv.challenge.service.MovimientoService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Pesimista, optimista y atómica con 32 hilos alternando depósitos y retiros sobre 1,
+ * 4, 32 y 256 cuentas (de mucha a poca contención): ops/s, p99 y, en la optimista,
+ * conflictos de versión por operación y operaciones que agotaron los reintentos.
+ * Los cupos diarios se suben para que no rechacen retiros.
+ */
+@SpringBootTest(properties = {
+    "banco.retiros.limite-diario-cuenta=1000000000",
+    "banco.retiros.limite-diario-cliente=1000000000"})
+class BloqueoCuentasBenchmark {
+
+  private static final int HILOS = 32;
+  private static final int OPS_POR_HILO = 250;
+  private static final int[] CUENTAS = {1, 4, 32, 256};
+  private static final BigDecimal SALDO_INICIAL = new BigDecimal("1000000.00");
+  private static final BigDecimal MONTO = BigDecimal.ONE;
+
+  @Autowired private MovimientoService service;
+  @Autowired private BloqueoCuentas bloqueo;
+  @Autowired private ClienteService clienteService;
+  @Autowired private CuentaService cuentaService;
+
+  private Estrategia original;
+
+  @AfterEach
+  void restaurar() {
+    if (original != null) bloqueo.usar(original);
+  }
+
+  @Test
+  void depositosYRetiros_segunEstrategiaYContencion() throws Exception {
+    original = bloqueo.estrategia();
+    for (int n : CUENTAS) {
+      for (Estrategia e : Estrategia.values()) {
+        Long cliente = Bench.nuevoCliente(clienteService).getId();
+        Long[] cuentas = new Long[n];
+        for (int i = 0; i < n; i++) cuentas[i] = Bench.nuevaCuenta(cuentaService, cliente, SALDO_INICIAL);
+        bloqueo.usar(e);
+
+        long conflictos = bloqueo.conflictos();
+        long agotados = bloqueo.agotados();
+        Bench.Resultado r = Bench.correr(e + " cuentas=" + n, HILOS, OPS_POR_HILO, (h, i) -> {
+          Long cuenta = cuentas[ThreadLocalRandom.current().nextInt(n)];
+          if (i % 2 == 0) service.depositar(cuenta, MONTO, "bench");
+          else service.retirar(cuenta, MONTO, "bench");
+        });
+        conflictos = bloqueo.conflictos() - conflictos;
+        agotados = bloqueo.agotados() - agotados;
+
+        System.out.println(r);
+        System.out.printf("[bench] %s cuentas=%d: %.0f ops/s, p99=%dus, conflictos %.3f por op, %d abortadas%n",
+            e, n, r.opsPorSegundo(), r.percentilMicros(99), (double) conflictos / r.ops, agotados);
+        // Los únicos errores posibles son conflictos que agotaron los reintentos
+        assertEquals(agotados, r.errores, e + " cuentas=" + n);
+      }
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package com.pv.challenge.bench;
+
+import com.pv.challenge.service.ClienteService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Latencia de GET /api/clientes/search sobre -Dbench.clientes clientes (por defecto 1M)
+ * con nombres combinados de listas de nombres y apellidos, contra la consulta ingenua
+ * con ILIKE '%q%' / LIKE 'q%' sobre las columnas (sin índices que le sirvan). El dataset
+ * se agrega con generate_series y queda para las corridas siguientes.
+ */
+@SpringBootTest
+class ClienteBusquedaBenchmark {
+
+  private static final long CLIENTES = Long.getLong("bench.clientes", 1_000_000L);
+  private static final long POR_INSERT = 100_000L;
+  private static final int LIMITE = 20;
+  private static final int REPETICIONES = 50;
+  private static final String MARCA = "bench-busqueda";
+
+  private static final String NOMBRES =
+      "'Ana','José','María','Juan','Lucía','Carlos','Sofía','Luis','Valeria','Jorge'," +
+      "'Daniela','Miguel','Gabriela','Andrés','Camila','Diego','Paula','Fernando','Isabel','Marco'";
+  private static final String APELLIDOS =
+      "'Lema','Montalvo','Osorio','Pérez','Andrade','Vera','Cevallos','Mora','Zambrano','Torres'," +
+      "'Castillo','Salazar','Ortiz','Guerrero','Villacís','Paredes','Jaramillo','Benítez','Carrión','Espinoza'," +
+      "'Quiroga','Naranjo','Arias','Rivadeneira','Cárdenas','Tapia','Ponce','Herrera','Suárez','Molina'";
+
+  // Lo que un usuario escribiría: prefijo de nombre común, apellido (palabra), subcadena,
+  // dos letras, prefijo de identificación y de clienteId, y algo que no existe.
+  private static final List<String> CONSULTAS =
+      Arrays.asList("ana", "montalvo", "ntal", "jo", "17100", "bq12", "zzzz");
+
+  @Autowired private ClienteService clienteService;
+  @Autowired private JdbcTemplate jdbc;
+
+  @Test
+  void busqueda_indexada_contra_like() {
+    poblar();
+    for (String q : CONSULTAS) {
+      medir("indexada '" + q + "'", () -> clienteService.buscar(q, LIMITE));
+      medir("LIKE '" + q + "'", () -> jdbc.queryForList(
+          "SELECT c.id, p.nombre FROM clientes c JOIN personas p ON p.id = c.id " +
+          "WHERE p.nombre ILIKE ? OR p.identificacion LIKE ? OR c.clienteid ILIKE ? " +
+          "ORDER BY p.nombre LIMIT ?",
+          "%" + q + "%", q + "%", q + "%", LIMITE));
+    }
+  }
+
+  private static void medir(String nombre, Supplier<?> busqueda) {
+    busqueda.get(); // calentamiento
+    int repeticiones = nombre.startsWith("LIKE") ? Math.max(5, REPETICIONES / 10) : REPETICIONES;
+    long[] ns = new long[repeticiones];
+    int filas = 0;
+    for (int i = 0; i < repeticiones; i++) {
+      long t0 = System.nanoTime();
+      Object r = busqueda.get();
+      ns[i] = System.nanoTime() - t0;
+      filas = ((List<?>) r).size();
+    }
+    Arrays.sort(ns);
+    System.out.printf("[bench] %-24s filas=%-3d p50=%.2fms p99=%.2fms%n", nombre, filas,
+        ns[repeticiones / 2] / 1e6, ns[Math.min(repeticiones - 1, repeticiones * 99 / 100)] / 1e6);
+  }
+
+  private void poblar() {
+    Long existentes = jdbc.queryForObject("SELECT count(*) FROM personas WHERE direccion = ?", Long.class, MARCA);
+    long desde = existentes == null ? 0 : existentes;
+    long t0 = System.nanoTime();
+    for (long hechos = desde; hechos < CLIENTES; hechos += POR_INSERT) {
+      long hasta = Math.min(CLIENTES, hechos + POR_INSERT);
+      // Nombre + dos apellidos (6.000 combinaciones) y una identificación de 10 dígitos
+      jdbc.update(
+          "WITH p AS (INSERT INTO personas (nombre, genero, edad, identificacion, direccion, telefono) " +
+          "           SELECT (ARRAY[" + NOMBRES + "])[1 + g % 20] || ' ' || " +
+          "                  (ARRAY[" + APELLIDOS + "])[1 + (g / 20) % 30] || ' ' || " +
+          "                  (ARRAY[" + APELLIDOS + "])[1 + (g / 600) % 30], " +
+          "                  'Otro', 30, (1710000000 + g)::text, ?, '0000000000' " +
+          "           FROM generate_series(?, ?) g RETURNING id) " +
+          "INSERT INTO clientes (id, clienteid, contrasena) SELECT id, 'bq' || id, 'bench' FROM p",
+          MARCA, hechos + 1, hasta);
+    }
+    if (desde < CLIENTES) {
+      jdbc.execute("ANALYZE personas");
+      jdbc.execute("ANALYZE clientes");
+      System.out.printf("[bench] dataset: %d clientes nuevos en %.1fs%n",
+          CLIENTES - desde, (System.nanoTime() - t0) / 1e9);
+    }
+  }
+}
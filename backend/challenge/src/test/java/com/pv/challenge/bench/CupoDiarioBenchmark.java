@@ -0,0 +1,101 @@
+package com.pv.challenge.bench;
+
+import com.pv.challenge.service.ClienteService;
+import com.pv.challenge.service.CuentaService;
+import com.pv.challenge.service.CupoDiarioService;
+import com.pv.challenge.service.MovimientoService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Contención del cupo diario: 32 hilos retirando 1.00 de (a) una misma cuenta, (b)
+ * cuentas distintas de un mismo cliente y (c) clientes distintos. En (a) y (b) el cupo
+ * se agota a mitad de corrida y se verifica que se aceptó exactamente el cupo, ni un
+ * retiro más. Al final compara leer el contador del día contra sumar los RETIRO del
+ * día de la cuenta caliente, que es lo que haría la verificación sin contadores.
+ */
+@SpringBootTest(properties = {
+    "banco.retiros.zona=" + CupoDiarioBenchmark.ZONA,
+    "banco.retiros.limite-diario-cuenta=5000",
+    "banco.retiros.limite-diario-cliente=6000"})
+class CupoDiarioBenchmark {
+
+  static final String ZONA = "America/Guayaquil";
+  private static final int HILOS = 32;
+  private static final int OPS_POR_HILO = 250;
+  private static final BigDecimal SALDO_INICIAL = new BigDecimal("100000.00");
+  private static final int REPETICIONES = 200;
+
+  @Autowired private MovimientoService service;
+  @Autowired private ClienteService clienteService;
+  @Autowired private CuentaService cuentaService;
+  @Autowired private CupoDiarioService cupoDiario;
+  @Autowired private JdbcTemplate jdbc;
+
+  @Test
+  void retiros_con_cupo_bajo_contencion() throws Exception {
+    // (a) Una cuenta: 8.000 intentos, cupo de 5.000
+    Long clienteA = Bench.nuevoCliente(clienteService).getId();
+    Long caliente = Bench.nuevaCuenta(cuentaService, clienteA, SALDO_INICIAL);
+    Bench.Resultado a = Bench.correr("cupo misma cuenta", HILOS, OPS_POR_HILO,
+        (h, i) -> service.retirar(caliente, BigDecimal.ONE, "bench"));
+    assertEquals(HILOS * OPS_POR_HILO - 5000, a.errores, "Se aceptan exactamente 5.000 retiros");
+
+    // (b) Una cuenta por hilo, todas del mismo cliente: cupo del cliente de 6.000
+    Long clienteB = Bench.nuevoCliente(clienteService).getId();
+    List<Long> delCliente = new ArrayList<>();
+    for (int h = 0; h < HILOS; h++) delCliente.add(Bench.nuevaCuenta(cuentaService, clienteB, SALDO_INICIAL));
+    Bench.Resultado b = Bench.correr("cupo mismo cliente", HILOS, OPS_POR_HILO,
+        (h, i) -> service.retirar(delCliente.get(h), BigDecimal.ONE, "bench"));
+    assertEquals(HILOS * OPS_POR_HILO - 6000, b.errores, "Se aceptan exactamente 6.000 retiros del cliente");
+
+    // (c) Un cliente y una cuenta por hilo: sin contención ni rechazos
+    List<Long> independientes = new ArrayList<>();
+    for (int h = 0; h < HILOS; h++) {
+      Long cliente = Bench.nuevoCliente(clienteService).getId();
+      independientes.add(Bench.nuevaCuenta(cuentaService, cliente, SALDO_INICIAL));
+    }
+    Bench.Resultado c = Bench.correr("cupo clientes distintos", HILOS, OPS_POR_HILO,
+        (h, i) -> service.retirar(independientes.get(h), BigDecimal.ONE, "bench"));
+    assertEquals(0, c.errores);
+
+    LocalDate hoy = cupoDiario.hoy();
+    OffsetDateTime desde = hoy.atStartOfDay(ZoneId.of(ZONA)).toOffsetDateTime();
+    BigDecimal suma = jdbc.queryForObject(
+        "SELECT COALESCE(SUM(valor), 0) FROM movimientos WHERE cuenta_id = ? AND tipo = 'RETIRO' AND fecha >= ?",
+        BigDecimal.class, caliente, desde);
+    assertEquals(0, new BigDecimal("5000").compareTo(suma), "Los movimientos coinciden con el cupo aceptado");
+
+    medir("contador del día", () -> jdbc.queryForObject(
+        "SELECT total FROM retiros_diarios WHERE cuenta_id = ? AND dia = ?", BigDecimal.class, caliente, hoy));
+    medir("SUM de RETIRO del día", () -> jdbc.queryForObject(
+        "SELECT COALESCE(SUM(valor), 0) FROM movimientos WHERE cuenta_id = ? AND tipo = 'RETIRO' AND fecha >= ?",
+        BigDecimal.class, caliente, desde));
+  }
+
+  private static void medir(String nombre, Supplier<?> consulta) {
+    consulta.get(); // calentamiento
+    long[] ns = new long[REPETICIONES];
+    for (int i = 0; i < REPETICIONES; i++) {
+      long t0 = System.nanoTime();
+      consulta.get();
+      ns[i] = System.nanoTime() - t0;
+    }
+    Arrays.sort(ns);
+    System.out.printf("[bench] %-24s p50=%.3fms p99=%.3fms%n", nombre,
+        ns[REPETICIONES / 2] / 1e6, ns[REPETICIONES * 99 / 100] / 1e6);
+  }
+}
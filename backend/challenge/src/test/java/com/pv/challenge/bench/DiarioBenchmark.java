@@ -0,0 +1,72 @@
+package com.pv.challenge.bench;
+
+import com.pv.challenge.repo.CuentaRepository;
+import com.pv.challenge.service.ClienteService;
+import com.pv.challenge.service.CuentaService;
+import com.pv.challenge.service.DiarioAsientosService;
+import com.pv.challenge.service.MovimientoService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Latencia de acuse de un depósito: asiento JPA síncrono de MovimientoService contra el
+ * diario local con fsync por acuse (DiarioAsientosService). Muestra p50/p99 de cada
+ * camino, espera a que el aplicador alcance al diario y verifica los saldos.
+ */
+@SpringBootTest(properties = {
+    "banco.diario.activo=true",
+    "banco.diario.fsync=siempre",
+    "banco.diario.dir=${java.io.tmpdir}/banco-diario-bench",
+    "banco.diario.nodo=bench"})
+class DiarioBenchmark {
+
+  private static final int HILOS = 32;
+  private static final int OPS_POR_HILO = 500;
+  private static final int CUENTAS = 256;
+  private static final BigDecimal MONTO = BigDecimal.ONE;
+
+  @Autowired private MovimientoService service;
+  @Autowired private DiarioAsientosService diario;
+  @Autowired private ClienteService clienteService;
+  @Autowired private CuentaService cuentaService;
+  @Autowired private CuentaRepository cuentaRepo;
+
+  @Test
+  void acuseJpa_vs_diario() throws Exception {
+    List<Long> directas = cuentas();
+    Bench.Resultado j = Bench.correr("deposito jpa", HILOS, OPS_POR_HILO,
+        (h, i) -> service.depositar(directas.get((h * OPS_POR_HILO + i) % CUENTAS), MONTO, "bench"));
+
+    List<Long> diferidas = cuentas();
+    Bench.Resultado d = Bench.correr("deposito diario", HILOS, OPS_POR_HILO,
+        (h, i) -> diario.depositar(diferidas.get((h * OPS_POR_HILO + i) % CUENTAS), MONTO, "bench"));
+
+    long inicio = System.nanoTime();
+    while (diario.estado().pendientes > 0) Thread.sleep(10);
+    System.out.printf("[bench] acuse p50/p99: jpa %d/%dus, diario %d/%dus; aplicador al día en %d ms%n",
+        j.percentilMicros(50), j.percentilMicros(99), d.percentilMicros(50), d.percentilMicros(99),
+        (System.nanoTime() - inicio) / 1_000_000);
+
+    assertEquals(0, j.errores);
+    assertEquals(0, d.errores);
+    assertEquals(0, diario.estado().rechazados);
+    BigDecimal esperado = MONTO.multiply(BigDecimal.valueOf((long) HILOS * OPS_POR_HILO / CUENTAS));
+    for (Long id : diferidas) {
+      assertEquals(0, esperado.compareTo(cuentaRepo.findById(id).get().getSaldo()), "Cuenta " + id);
+    }
+  }
+
+  private List<Long> cuentas() {
+    Long cliente = Bench.nuevoCliente(clienteService).getId();
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < CUENTAS; i++) ids.add(Bench.nuevaCuenta(cuentaService, cliente, BigDecimal.ZERO));
+    return ids;
+  }
+}
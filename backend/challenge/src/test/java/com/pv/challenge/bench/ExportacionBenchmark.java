@@ -0,0 +1,78 @@
+package com.pv.challenge.bench;
+
+import com.pv.challenge.dto.ExportacionDtos.ExportacionResponse;
+import com.pv.challenge.service.ClienteService;
+import com.pv.challenge.service.CuentaService;
+import com.pv.challenge.service.ExportacionService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Filas por segundo de la exportación completa de movimientos sobre un dataset
+ * sintético. El tamaño se elige con -Dbench.filas (por defecto 10M; la cifra de
+ * referencia es a 100M: mvn -Pbench test -Dtest=ExportacionBenchmark -Dbench.filas=100000000).
+ * Las filas se insertan con generate_series repartidas entre 1.000 cuentas y quedan
+ * en la base para las corridas siguientes: solo se agrega lo que falta.
+ */
+@SpringBootTest
+class ExportacionBenchmark {
+
+  private static final long FILAS = Long.getLong("bench.filas", 10_000_000L);
+  private static final int CUENTAS = 1_000;
+  private static final long FILAS_POR_INSERT = 1_000_000L;
+
+  @Autowired private ExportacionService service;
+  @Autowired private ClienteService clienteService;
+  @Autowired private CuentaService cuentaService;
+  @Autowired private JdbcTemplate jdbc;
+
+  @Test
+  void exportar_csv_y_ndjson() throws Exception {
+    poblar();
+    for (String formato : new String[] {"csv", "ndjson"}) {
+      long t0 = System.nanoTime();
+      ExportacionResponse r = service.iniciar(formato);
+      while ("EN_PROCESO".equals(r.estado)) {
+        Thread.sleep(1_000);
+        r = service.estado(r.id);
+      }
+      double s = (System.nanoTime() - t0) / 1e9;
+      assertEquals("LISTO", r.estado, r.error);
+      System.out.printf("[bench] exportación %-6s filas=%d partes=%d t=%.1fs  %.0f filas/s%n",
+          formato, r.filas, r.partes.size(), s, r.filas / s);
+    }
+  }
+
+  private void poblar() {
+    Long existentes = jdbc.queryForObject("SELECT count(*) FROM movimientos", Long.class);
+    long faltan = FILAS - (existentes == null ? 0 : existentes);
+    if (faltan <= 0) return;
+
+    Long clienteId = Bench.nuevoCliente(clienteService).getId();
+    List<Long> cuentas = new ArrayList<>(CUENTAS);
+    for (int i = 0; i < CUENTAS; i++) cuentas.add(Bench.nuevaCuenta(cuentaService, clienteId, BigDecimal.ZERO));
+    long primera = cuentas.get(0);
+    long ultima = cuentas.get(CUENTAS - 1);
+
+    long t0 = System.nanoTime();
+    for (long hechas = 0; hechas < faltan; hechas += FILAS_POR_INSERT) {
+      long n = Math.min(FILAS_POR_INSERT, faltan - hechas);
+      // Cuentas consecutivas del bench: reparte las filas entre ellas por módulo
+      jdbc.update(
+          "INSERT INTO movimientos (cuenta_id, tipo, valor, saldo, referencia, fecha) " +
+          "SELECT ? + (g % ?), CASE WHEN g % 2 = 0 THEN 'DEPOSITO' ELSE 'RETIRO' END, " +
+          "       (g % 500) + 1.25, 1000.00, 'sintetico ' || g, now() - (g || ' seconds')::interval " +
+          "FROM generate_series(1, ?) g",
+          primera, ultima - primera + 1, n);
+    }
+    System.out.printf("[bench] dataset: %d filas nuevas en %.1fs%n", faltan, (System.nanoTime() - t0) / 1e9);
+  }
+}
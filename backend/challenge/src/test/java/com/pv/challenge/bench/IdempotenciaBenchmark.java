@@ -0,0 +1,98 @@
+package com.pv.challenge.bench;
+
+import com.pv.challenge.entity.Movimiento;
+import com.pv.challenge.repo.ClaveIdempotenciaRepository;
+import com.pv.challenge.repo.MovimientoRepository;
+import com.pv.challenge.service.BloqueoCuentas;
+import com.pv.challenge.service.ClienteService;
+import com.pv.challenge.service.CuentaService;
+import com.pv.challenge.service.IdempotenciaService;
+import com.pv.challenge.service.MovimientoService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Costo del Idempotency-Key por asiento: depósito sin clave contra depósito con clave
+ * nueva (reserva + completar en la misma transacción), y latencia de un reintento
+ * servido desde memoria (debe quedar en pocos microsegundos) y desde la tabla. Los
+ * reintentos no deben registrar ningún movimiento.
+ */
+@SpringBootTest
+class IdempotenciaBenchmark {
+
+  private static final int HILOS = 8;
+  private static final int OPS_POR_HILO = 500;
+  private static final BigDecimal MONTO = BigDecimal.ONE;
+
+  @Autowired private MovimientoService service;
+  @Autowired private IdempotenciaService idempotencia;
+  @Autowired private BloqueoCuentas bloqueo;
+  @Autowired private ClienteService clienteService;
+  @Autowired private CuentaService cuentaService;
+  @Autowired private ClaveIdempotenciaRepository claveRepo;
+  @Autowired private MovimientoRepository movRepo;
+  @Autowired private PlatformTransactionManager txManager;
+  @Autowired private JdbcTemplate jdbc;
+
+  @Test
+  void costo_por_asiento_y_reintentos() throws Exception {
+    Long cliente = Bench.nuevoCliente(clienteService).getId();
+    List<Long> cuentas = new ArrayList<>();
+    for (int h = 0; h < HILOS; h++) cuentas.add(Bench.nuevaCuenta(cuentaService, cliente, BigDecimal.ZERO));
+    String s = Bench.sufijo();
+
+    Bench.correr("deposito sin clave", HILOS, OPS_POR_HILO,
+        (h, i) -> service.depositar(cuentas.get(h), MONTO, "bench"));
+    Bench.correr("deposito con clave nueva", HILOS, OPS_POR_HILO,
+        (h, i) -> depositar(idempotencia, clave(s, h, i), cuentas.get(h)));
+
+    long antes = jdbc.queryForObject("SELECT count(*) FROM movimientos", Long.class);
+    medir("reintento en memoria", h -> depositar(idempotencia, clave(s, h % HILOS, h / HILOS), cuentas.get(h % HILOS)));
+
+    // Sin memoria delante: cada reintento lee la clave y el movimiento de la tabla
+    IdempotenciaService soloTabla = new IdempotenciaService(claveRepo, movRepo, bloqueo, txManager, 24, 0, 0);
+    medir("reintento desde la tabla", h -> depositar(soloTabla, clave(s, h % HILOS, h / HILOS), cuentas.get(h % HILOS)));
+
+    long despues = jdbc.queryForObject("SELECT count(*) FROM movimientos", Long.class);
+    assertEquals(antes, despues, "Los reintentos no registran movimientos");
+  }
+
+  private Object depositar(IdempotenciaService idem, String clave, Long cuentaId) {
+    Supplier<Movimiento> asiento = () -> service.depositar(cuentaId, MONTO, "bench");
+    return idem.ejecutar(clave, "DEPOSITO", IdempotenciaService.huella(cuentaId, MONTO, "bench"),
+        Collections.singletonList(cuentaId), asiento);
+  }
+
+  private static String clave(String s, int hilo, int i) {
+    return "bench-" + s + "-" + hilo + "-" + i;
+  }
+
+  private interface Reintento {
+    Object ejecutar(int i);
+  }
+
+  private static void medir(String nombre, Reintento r) {
+    int n = HILOS * OPS_POR_HILO;
+    for (int i = 0; i < n; i++) r.ejecutar(i); // calentamiento
+    long[] ns = new long[n];
+    for (int i = 0; i < n; i++) {
+      long t0 = System.nanoTime();
+      r.ejecutar(i);
+      ns[i] = System.nanoTime() - t0;
+    }
+    Arrays.sort(ns);
+    System.out.printf("[bench] %-24s p50=%.1fus p99=%.1fus%n", nombre, ns[n / 2] / 1e3, ns[n * 99 / 100] / 1e3);
+  }
+}
@@ -0,0 +1,75 @@
+package com.pv.challenge.bench;
+
+import com.pv.challenge.dto.ClienteDtos.ImportacionResponse;
+import com.pv.challenge.dto.ClienteDtos.SaveClienteRequest;
+import com.pv.challenge.service.ClienteService;
+import com.pv.challenge.service.ImportacionClientesService;
+import com.pv.challenge.service.ImportacionClientesService.Formato;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.BufferedWriter;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Filas/seg de la importación masiva (CSV de -Dbench.importacion clientes, por defecto
+ * 500k) contra ClienteService.crear uno a uno, que es lo que hace hoy la migración por
+ * la API REST. El archivo se genera en un temporal con claves nuevas en cada corrida.
+ */
+@SpringBootTest
+class ImportacionClientesBenchmark {
+
+  private static final int FILAS = Integer.getInteger("bench.importacion", 500_000);
+  private static final int UNITARIAS = 2_000;
+
+  @Autowired private ImportacionClientesService importacionService;
+  @Autowired private ClienteService clienteService;
+
+  @Test
+  void importacion_vs_crear() throws Exception {
+    String s = Bench.sufijo();
+
+    long t0 = System.nanoTime();
+    for (int i = 0; i < UNITARIAS; i++) {
+      SaveClienteRequest req = new SaveClienteRequest();
+      req.nombre = "Bench " + i;
+      req.genero = "Otro";
+      req.edad = 30;
+      req.identificacion = "BU" + s + "-" + i;
+      req.direccion = "bench";
+      req.telefono = "0000000000";
+      req.clienteId = "bu" + s + "-" + i;
+      req.contrasena = "bench";
+      clienteService.crear(req);
+    }
+    double segUnitario = (System.nanoTime() - t0) / 1e9;
+    System.out.printf("[bench] crear: %d clientes en %.2fs = %.0f filas/s (%d clientes: ~%.0f min)%n",
+        UNITARIAS, segUnitario, UNITARIAS / segUnitario, FILAS, FILAS / (UNITARIAS / segUnitario) / 60);
+
+    Path csv = Files.createTempFile("bench-importacion", ".csv");
+    try {
+      try (BufferedWriter w = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+        w.write("nombre,genero,edad,identificacion,direccion,telefono,clienteId,contrasena,estado\n");
+        for (int i = 0; i < FILAS; i++) {
+          w.write("Bench " + i + ",Otro,30,BM" + s + "-" + i + ",bench,0000000000,bm" + s + "-" + i + ",bench,true\n");
+        }
+      }
+
+      ImportacionResponse r;
+      try (InputStream in = Files.newInputStream(csv)) {
+        r = importacionService.importar(in, Formato.CSV);
+      }
+      System.out.printf("[bench] importación: %d clientes en %.2fs = %.0f filas/s (x%.1f; rechazadas=%d)%n",
+          r.leidas, r.segundos, r.filasPorSegundo, r.filasPorSegundo / (UNITARIAS / segUnitario), r.rechazadas);
+      assertEquals(FILAS, r.importadas);
+    } finally {
+      Files.deleteIfExists(csv);
+    }
+  }
+}
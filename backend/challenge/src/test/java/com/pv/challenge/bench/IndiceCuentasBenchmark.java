@@ -0,0 +1,81 @@
+package com.pv.challenge.bench;
+
+import com.pv.challenge.dto.CuentaDtos.MetricasIndice;
+import com.pv.challenge.service.ClienteService;
+import com.pv.challenge.service.CuentaService;
+import com.pv.challenge.service.IndiceCuentas;
+import com.pv.challenge.service.MovimientoService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Índice de cuentas en memoria: heap por millón de cuentas y latencia de un retiro
+ * sin fondos rechazado por el índice contra uno que solo rechaza la base (saldo
+ * bajado por fuera de la aplicación, que el índice todavía no ve).
+ */
+@SpringBootTest(properties = "banco.indice-cuentas.activo=true")
+class IndiceCuentasBenchmark {
+
+  private static final int CUENTAS_MEMORIA = 1_000_000;
+  private static final int HILOS = 16;
+  private static final int OPS_POR_HILO = 500;
+  private static final BigDecimal RETIRO = new BigDecimal("50.00");
+
+  @Autowired private MovimientoService service;
+  @Autowired private IndiceCuentas indice;
+  @Autowired private ClienteService clienteService;
+  @Autowired private CuentaService cuentaService;
+  @Autowired private JdbcTemplate jdbc;
+  @Autowired private PlatformTransactionManager txManager;
+
+  @Test
+  void memoriaPorMillonDeCuentas() {
+    Runtime rt = Runtime.getRuntime();
+    System.gc();
+    long antes = rt.totalMemory() - rt.freeMemory();
+    IndiceCuentas aparte = new IndiceCuentas(jdbc, txManager, true, 1024, 10_000);
+    BigDecimal saldo = new BigDecimal("1234.56");
+    long inicio = System.nanoTime();
+    for (long id = 1; id <= CUENTAS_MEMORIA; id++) aparte.confirmar(id, true, saldo, 1L);
+    long ms = (System.nanoTime() - inicio) / 1_000_000;
+    System.gc();
+    long despues = rt.totalMemory() - rt.freeMemory();
+
+    MetricasIndice m = aparte.metricas();
+    System.out.printf("[bench] indice %d cuentas: capacidad %d, %d MB estimados, ~%d MB de heap medidos, carga %d ms%n",
+        m.cuentas, m.capacidad, m.bytes >> 20, Math.max(0, despues - antes) >> 20, ms);
+    assertEquals(CUENTAS_MEMORIA, m.cuentas);
+  }
+
+  @Test
+  void rechazoEnIndice_vs_rechazoEnBase() throws Exception {
+    Long cliente = Bench.nuevoCliente(clienteService).getId();
+    Long conocida = Bench.nuevaCuenta(cuentaService, cliente, BigDecimal.ONE);
+    Long desfasada = Bench.nuevaCuenta(cuentaService, cliente, new BigDecimal("1000.00"));
+    // Por fuera de la aplicación: el índice sigue creyendo que hay 1000
+    jdbc.update("UPDATE cuentas SET saldo = 1 WHERE id = ?", desfasada);
+
+    long rechazosAntes = indice.metricas().rechazos;
+    Bench.Resultado i = Bench.correr("retiro rechazado en indice", HILOS, OPS_POR_HILO,
+        (h, n) -> service.retirar(conocida, RETIRO, "bench"));
+    Bench.Resultado b = Bench.correr("retiro rechazado en base", HILOS, OPS_POR_HILO,
+        (h, n) -> service.retirar(desfasada, RETIRO, "bench"));
+    System.out.println(i);
+    System.out.println(b);
+    System.out.printf("[bench] rechazo p50/p99: indice %d/%dus, base %d/%dus%n",
+        i.percentilMicros(50), i.percentilMicros(99), b.percentilMicros(50), b.percentilMicros(99));
+
+    long total = (long) HILOS * OPS_POR_HILO;
+    assertEquals(total, i.errores);
+    assertEquals(total, b.errores);
+    assertTrue(indice.metricas().rechazos - rechazosAntes >= total);
+  }
+}
@@ -0,0 +1,98 @@
+package com.pv.challenge.bench;
+
+import com.pv.challenge.dto.ClienteDtos.PaginaClientes;
+import com.pv.challenge.dto.CuentaDtos.PaginaCuentas;
+import com.pv.challenge.repo.CuentaRepository;
+import com.pv.challenge.service.ClienteService;
+import com.pv.challenge.service.CuentaService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Consultas y latencia por página de los listados con -Dbench.clientes clientes
+ * (por defecto 1M, una cuenta cada uno): proyección por keyset contra el findAll
+ * paginado de entidades que había antes, al principio y a mitad de la tabla.
+ * El dataset se agrega con generate_series y queda para las corridas siguientes.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class ListadoBenchmark {
+
+  private static final long CLIENTES = Long.getLong("bench.clientes", 1_000_000L);
+  private static final long POR_INSERT = 100_000L;
+  private static final int LIMITE = 50;
+  private static final int REPETICIONES = 50;
+
+  @Autowired private ClienteService clienteService;
+  @Autowired private CuentaService cuentaService;
+  @Autowired private CuentaRepository cuentaRepo;
+  @Autowired private JdbcTemplate jdbc;
+  @Autowired private EntityManagerFactory emf;
+
+  @Test
+  void paginas_de_clientes_y_cuentas() {
+    poblar();
+    Statistics stats = emf.unwrap(SessionFactory.class).getStatistics();
+    String medioCliente = String.valueOf(jdbc.queryForObject(
+        "SELECT id FROM clientes ORDER BY id OFFSET (SELECT count(*) / 2 FROM clientes) LIMIT 1", Long.class));
+    String medioCuenta = String.valueOf(jdbc.queryForObject(
+        "SELECT id FROM cuentas ORDER BY id OFFSET (SELECT count(*) / 2 FROM cuentas) LIMIT 1", Long.class));
+    int paginaMedia = (int) (CLIENTES / 2 / LIMITE);
+
+    medir("clientes proyección, primera", stats, () -> clienteService.listar(null, LIMITE));
+    medir("clientes proyección, mitad", stats, () -> clienteService.listar(medioCliente, LIMITE));
+    medir("cuentas proyección, primera", stats, () -> cuentaService.listar(null, LIMITE));
+    medir("cuentas proyección, mitad", stats, () -> cuentaService.listar(medioCuenta, LIMITE));
+    // Lo anterior: entidades con Cliente y Persona EAGER, más el count(*) de Page
+    medir("cuentas entidades, primera", stats, () -> cuentaRepo.findAll(PageRequest.of(0, LIMITE)));
+    medir("cuentas entidades, mitad", stats, () -> cuentaRepo.findAll(PageRequest.of(paginaMedia, LIMITE)));
+  }
+
+  private static void medir(String nombre, Statistics stats, Supplier<?> pagina) {
+    pagina.get(); // calentamiento
+    stats.clear();
+    long[] ns = new long[REPETICIONES];
+    for (int i = 0; i < REPETICIONES; i++) {
+      long t0 = System.nanoTime();
+      Object p = pagina.get();
+      ns[i] = System.nanoTime() - t0;
+      if (p instanceof PaginaClientes && ((PaginaClientes) p).items.size() != LIMITE
+          || p instanceof PaginaCuentas && ((PaginaCuentas) p).items.size() != LIMITE) {
+        throw new IllegalStateException("Página incompleta en " + nombre);
+      }
+    }
+    Arrays.sort(ns);
+    System.out.printf("[bench] %-28s consultas/página=%.1f p50=%.2fms p99=%.2fms%n", nombre,
+        stats.getPrepareStatementCount() / (double) REPETICIONES,
+        ns[REPETICIONES / 2] / 1e6, ns[REPETICIONES * 99 / 100] / 1e6);
+  }
+
+  private void poblar() {
+    Long existentes = jdbc.queryForObject("SELECT count(*) FROM clientes", Long.class);
+    long faltan = CLIENTES - (existentes == null ? 0 : existentes);
+    long t0 = System.nanoTime();
+    for (long hechos = 0; hechos < faltan; hechos += POR_INSERT) {
+      long n = Math.min(POR_INSERT, faltan - hechos);
+      // Persona, cliente (mismo id) y una cuenta por fila, en una sentencia
+      jdbc.update(
+          "WITH p AS (INSERT INTO personas (nombre, genero, edad, identificacion, direccion, telefono) " +
+          "           SELECT 'Sintetico ' || g, 'Otro', 30, ? || g, 'bench', '0000000000' " +
+          "           FROM generate_series(1, ?) g RETURNING id), " +
+          "     c AS (INSERT INTO clientes (id, clienteid, contrasena) " +
+          "           SELECT id, 'sint' || id, 'bench' FROM p RETURNING id) " +
+          "INSERT INTO cuentas (numero, tipo, cliente_id) SELECT 'S' || id, 'Ahorro', id FROM c",
+          "SI" + Bench.sufijo() + "-", n);
+    }
+    if (faltan > 0) {
+      System.out.printf("[bench] dataset: %d clientes nuevos en %.1fs%n", faltan, (System.nanoTime() - t0) / 1e9);
+    }
+  }
+}
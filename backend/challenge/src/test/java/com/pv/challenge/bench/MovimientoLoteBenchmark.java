@@ -0,0 +1,71 @@
+package com.pv.challenge.bench;
+
+import com.pv.challenge.dto.MovimientoDtos.LoteResponse;
+import com.pv.challenge.dto.MovimientoDtos.OperacionLote;
+import com.pv.challenge.service.ClienteService;
+import com.pv.challenge.service.CuentaService;
+import com.pv.challenge.service.MovimientoLoteService;
+import com.pv.challenge.service.MovimientoService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Filas/seg del lote por MovimientoLoteService contra depósitos uno a uno
+ * (una transacción por llamada, como hace hoy el feed nocturno).
+ */
+@SpringBootTest
+class MovimientoLoteBenchmark {
+
+  private static final int CUENTAS = 1_000;
+  private static final int OPERACIONES_LOTE = 200_000;
+  private static final int OPERACIONES_UNITARIAS = 5_000;
+
+  @Autowired private MovimientoService service;
+  @Autowired private MovimientoLoteService loteService;
+  @Autowired private ClienteService clienteService;
+  @Autowired private CuentaService cuentaService;
+
+  @Test
+  void lote_vs_unitario() {
+    Long clienteId = Bench.nuevoCliente(clienteService).getId();
+    List<Long> cuentas = new ArrayList<>();
+    for (int i = 0; i < CUENTAS; i++) {
+      cuentas.add(Bench.nuevaCuenta(cuentaService, clienteId, new BigDecimal("1000.00")));
+    }
+    Random rnd = new Random(42);
+
+    long t0 = System.nanoTime();
+    for (int i = 0; i < OPERACIONES_UNITARIAS; i++) {
+      service.depositar(cuentas.get(rnd.nextInt(CUENTAS)), BigDecimal.ONE, "bench");
+    }
+    double segUnitario = (System.nanoTime() - t0) / 1e9;
+    System.out.printf("[bench] unitario: %d filas en %.2fs = %.0f filas/s%n",
+        OPERACIONES_UNITARIAS, segUnitario, OPERACIONES_UNITARIAS / segUnitario);
+
+    List<OperacionLote> ops = new ArrayList<>(OPERACIONES_LOTE);
+    for (int i = 0; i < OPERACIONES_LOTE; i++) {
+      OperacionLote o = new OperacionLote();
+      o.cuentaId = cuentas.get(rnd.nextInt(CUENTAS));
+      o.tipo = i % 4 == 0 ? "RETIRO" : "DEPOSITO";
+      o.monto = BigDecimal.ONE;
+      o.ref = "bench";
+      ops.add(o);
+    }
+
+    t0 = System.nanoTime();
+    LoteResponse r = loteService.registrar(ops);
+    double segLote = (System.nanoTime() - t0) / 1e9;
+    System.out.printf("[bench] lote: %d filas en %.2fs = %.0f filas/s (aplicados=%d rechazados=%d)%n",
+        OPERACIONES_LOTE, segLote, OPERACIONES_LOTE / segLote, r.aplicados, r.rechazados);
+
+    assertEquals(OPERACIONES_LOTE, r.aplicados);
+  }
+}
@@ -0,0 +1,77 @@
+package com.pv.challenge.bench;
+
+import com.pv.challenge.entity.Cuenta;
+import com.pv.challenge.entity.Movimiento;
+import com.pv.challenge.repo.CuentaRepository;
+import com.pv.challenge.repo.MovimientoRepository;
+import com.pv.challenge.service.ClienteService;
+import com.pv.challenge.service.CuentaService;
+import com.pv.challenge.service.MovimientoService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Depósitos concurrentes sobre una misma cuenta: camino anterior
+ * (findById → setSaldo → save → save) contra el asiento atómico de MovimientoService.
+ */
+@SpringBootTest
+class MovimientoPostingBenchmark {
+
+  private static final int HILOS = 32;
+  private static final int OPS_POR_HILO = 200;
+  private static final BigDecimal MONTO = BigDecimal.ONE;
+
+  @Autowired private MovimientoService service;
+  @Autowired private ClienteService clienteService;
+  @Autowired private CuentaService cuentaService;
+  @Autowired private CuentaRepository cuentaRepo;
+  @Autowired private MovimientoRepository movRepo;
+  @Autowired private PlatformTransactionManager txManager;
+
+  @Test
+  void leerModificarEscribir_vs_asientoAtomico() throws Exception {
+    Long clienteId = Bench.nuevoCliente(clienteService).getId();
+    BigDecimal esperado = MONTO.multiply(BigDecimal.valueOf((long) HILOS * OPS_POR_HILO));
+    TransactionTemplate tx = new TransactionTemplate(txManager);
+
+    Long previa = Bench.nuevaCuenta(cuentaService, clienteId, BigDecimal.ZERO);
+    Bench.correr("leer-modificar-escribir", HILOS, OPS_POR_HILO,
+        (h, i) -> tx.executeWithoutResult(s -> depositoLeerModificarEscribir(previa)));
+    BigDecimal saldoPrevio = cuentaRepo.findById(previa).get().getSaldo();
+    System.out.printf("[bench] leer-modificar-escribir saldo=%s esperado=%s (perdidos=%s)%n",
+        saldoPrevio, esperado, esperado.subtract(saldoPrevio));
+
+    Long atomica = Bench.nuevaCuenta(cuentaService, clienteId, BigDecimal.ZERO);
+    Bench.correr("asiento-atomico", HILOS, OPS_POR_HILO,
+        (h, i) -> service.depositar(atomica, MONTO, "bench"));
+    BigDecimal saldoAtomico = cuentaRepo.findById(atomica).get().getSaldo();
+    System.out.printf("[bench] asiento-atomico saldo=%s esperado=%s%n", saldoAtomico, esperado);
+
+    assertEquals(0, esperado.compareTo(saldoAtomico), "El asiento atómico no debe perder depósitos");
+  }
+
+  // Réplica del camino anterior a los asientos atómicos, como línea base.
+  private void depositoLeerModificarEscribir(Long cuentaId) {
+    Cuenta c = cuentaRepo.findById(cuentaId).get();
+    BigDecimal nuevoSaldo = c.getSaldo().add(MONTO);
+    c.setSaldo(nuevoSaldo);
+    cuentaRepo.save(c);
+
+    Movimiento m = new Movimiento();
+    m.setCuenta(c);
+    m.setTipo("DEPOSITO");
+    m.setValor(MONTO);
+    m.setSaldo(nuevoSaldo);
+    m.setReferencia("bench");
+    m.setFecha(OffsetDateTime.now());
+    movRepo.save(m);
+  }
+}
@@ -0,0 +1,69 @@
+package com.pv.challenge.bench;
+
+import com.pv.challenge.dto.MovimientoDtos.LoteResponse;
+import com.pv.challenge.dto.MovimientoDtos.OperacionLote;
+import com.pv.challenge.dto.ReporteResponseDtos;
+import com.pv.challenge.service.ClienteService;
+import com.pv.challenge.service.CuentaService;
+import com.pv.challenge.service.MovimientoLoteService;
+import com.pv.challenge.service.ReporteService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Latencia de ReporteService.generar para clientes con 1, 10 y 100 cuentas
+ * (mismo total de movimientos por cliente, repartido entre sus cuentas).
+ */
+@SpringBootTest
+class ReporteBenchmark {
+
+  private static final int[] CUENTAS_POR_CLIENTE = {1, 10, 100};
+  private static final int MOVIMIENTOS_POR_CLIENTE = 20_000;
+  private static final int REPETICIONES = 20;
+
+  @Autowired private ReporteService service;
+  @Autowired private MovimientoLoteService loteService;
+  @Autowired private ClienteService clienteService;
+  @Autowired private CuentaService cuentaService;
+
+  @Test
+  void generar_por_cantidad_de_cuentas() throws Exception {
+    LocalDate hoy = LocalDate.now(ZoneOffset.UTC);
+
+    for (int n : CUENTAS_POR_CLIENTE) {
+      Long clienteId = Bench.nuevoCliente(clienteService).getId();
+      List<Long> cuentas = new ArrayList<>();
+      for (int i = 0; i < n; i++) {
+        cuentas.add(Bench.nuevaCuenta(cuentaService, clienteId, new BigDecimal("1000.00")));
+      }
+
+      List<OperacionLote> ops = new ArrayList<>(MOVIMIENTOS_POR_CLIENTE);
+      for (int i = 0; i < MOVIMIENTOS_POR_CLIENTE; i++) {
+        OperacionLote o = new OperacionLote();
+        o.cuentaId = cuentas.get(i % n);
+        o.tipo = "DEPOSITO";
+        o.monto = BigDecimal.ONE;
+        o.ref = "bench";
+        ops.add(o);
+      }
+      LoteResponse lote = loteService.registrar(ops);
+      assertEquals(MOVIMIENTOS_POR_CLIENTE, lote.aplicados);
+
+      // Incluye los depósitos iniciales de cada cuenta
+      ReporteResponseDtos r = service.generar(clienteId, hoy, hoy, false);
+      assertEquals(MOVIMIENTOS_POR_CLIENTE + n, r.getItems().size());
+
+      Bench.correr("reporte " + n + " cuentas", 1, REPETICIONES,
+          (h, i) -> service.generar(clienteId, hoy, hoy, false));
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package com.pv.challenge.bench;
+
+import com.pv.challenge.dto.CuentaDtos.EstadoSubsaldos;
+import com.pv.challenge.service.ClienteService;
+import com.pv.challenge.service.CuentaService;
+import com.pv.challenge.service.MovimientoService;
+import com.pv.challenge.service.SubsaldosService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Depósitos concurrentes sobre una sola cuenta recaudadora con el saldo sin repartir
+ * y repartido en N = 1..32 subsaldos: ops/s y p99 por N, con el consolidador corriendo
+ * de fondo. Al final de cada corrida consolida y verifica saldo y pendientes.
+ */
+@SpringBootTest(properties = "banco.subsaldos.consolidar-ms=200")
+class SubsaldosBenchmark {
+
+  private static final int HILOS = 32;
+  private static final int OPS_POR_HILO = 500;
+  private static final int[] SUBSALDOS = {0, 1, 2, 4, 8, 16, 32};
+  private static final BigDecimal MONTO = BigDecimal.ONE;
+
+  @Autowired private MovimientoService service;
+  @Autowired private SubsaldosService subsaldos;
+  @Autowired private ClienteService clienteService;
+  @Autowired private CuentaService cuentaService;
+
+  @Test
+  void depositosEnUnaCuenta_segunSubsaldos() throws Exception {
+    Long cliente = Bench.nuevoCliente(clienteService).getId();
+    double base = 0;
+    for (int n : SUBSALDOS) {
+      Long cuenta = Bench.nuevaCuenta(cuentaService, cliente, BigDecimal.ZERO);
+      if (n > 0) subsaldos.repartir(cuenta, n);
+
+      Bench.Resultado r = Bench.correr("deposito N=" + n, HILOS, OPS_POR_HILO,
+          (h, i) -> service.depositar(cuenta, MONTO, "bench"));
+      if (n == 0) base = r.opsPorSegundo();
+      System.out.println(r);
+      System.out.printf("[bench] N=%d: x%.1f ops/s respecto de la cuenta sin repartir%n", n, r.opsPorSegundo() / base);
+
+      EstadoSubsaldos e = subsaldos.consolidar(cuenta);
+      assertEquals(0, r.errores);
+      assertEquals(0, e.pendientes);
+      assertEquals(0, MONTO.multiply(BigDecimal.valueOf((long) HILOS * OPS_POR_HILO)).compareTo(e.saldo), "N=" + n);
+      assertEquals(0, e.saldo.compareTo(e.saldoPrincipal));
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package com.pv.challenge.bench;
+
+import com.pv.challenge.repo.CuentaRepository;
+import com.pv.challenge.service.ClienteService;
+import com.pv.challenge.service.CuentaService;
+import com.pv.challenge.service.MovimientoService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Contención: muchos hilos transfiriendo al azar entre pocas cuentas "calientes"
+ * (incluye A→B y B→A simultáneas). Reporta transferencias/seg y verifica que
+ * el total de dinero se conserva.
+ */
+// Las cuentas calientes debitan miles de veces en el día: sin cupo diario
+@SpringBootTest(properties = "banco.retiros.limite-diario-cuenta=0")
+class TransferenciaBenchmark {
+
+  private static final int CUENTAS_CALIENTES = 4;
+  private static final int HILOS = 32;
+  private static final int OPS_POR_HILO = 250;
+  private static final BigDecimal SALDO_INICIAL = new BigDecimal("100000.00");
+
+  @Autowired private MovimientoService service;
+  @Autowired private ClienteService clienteService;
+  @Autowired private CuentaService cuentaService;
+  @Autowired private CuentaRepository cuentaRepo;
+
+  @Test
+  void transferencias_entre_cuentas_calientes() throws Exception {
+    Long clienteId = Bench.nuevoCliente(clienteService).getId();
+    List<Long> cuentas = new ArrayList<>();
+    for (int i = 0; i < CUENTAS_CALIENTES; i++) {
+      cuentas.add(Bench.nuevaCuenta(cuentaService, clienteId, SALDO_INICIAL));
+    }
+
+    Bench.Resultado r = Bench.correr("transferencias " + CUENTAS_CALIENTES + " cuentas", HILOS, OPS_POR_HILO,
+        (h, i) -> {
+          ThreadLocalRandom rnd = ThreadLocalRandom.current();
+          int a = rnd.nextInt(CUENTAS_CALIENTES);
+          int b = (a + 1 + rnd.nextInt(CUENTAS_CALIENTES - 1)) % CUENTAS_CALIENTES;
+          service.transferir(cuentas.get(a), cuentas.get(b), BigDecimal.ONE, "bench");
+        });
+
+    BigDecimal total = BigDecimal.ZERO;
+    for (Long id : cuentas) total = total.add(cuentaRepo.findById(id).get().getSaldo());
+
+    assertEquals(0, r.errores, "No debe haber deadlocks ni fallos");
+    assertEquals(0, SALDO_INICIAL.multiply(BigDecimal.valueOf(CUENTAS_CALIENTES)).compareTo(total),
+        "El dinero total debe conservarse");
+  }
+}
@@ -0,0 +1,278 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.MovimientoDtos.LoteResponse;
+import com.pv.challenge.dto.MovimientoDtos.MovimientoResponse;
+import com.pv.challenge.dto.MovimientoDtos.OperacionLote;
+import com.pv.challenge.dto.MovimientoDtos.ResultadoLote;
+import com.pv.challenge.exception.BusinessException;
+import com.pv.challenge.exception.NotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class AsientosAgrupadosServiceTest {
+
+  private MovimientoLoteService loteService;
+  private AsientosAgrupadosService service;
+  private final AtomicInteger ids = new AtomicInteger(100);
+
+  @BeforeEach
+  void setup() {
+    loteService = mock(MovimientoLoteService.class);
+  }
+
+  @AfterEach
+  void cerrar() throws InterruptedException {
+    if (service != null) service.cerrar();
+  }
+
+  // Aplica todo el lote: cada operación queda con id nuevo y saldo = monto
+  private LoteResponse aplicado(List<OperacionLote> ops) {
+    LoteResponse r = new LoteResponse();
+    for (int i = 0; i < ops.size(); i++) {
+      ResultadoLote res = new ResultadoLote();
+      res.indice = i;
+      res.ok = true;
+      res.movimientoId = (long) ids.incrementAndGet();
+      res.saldo = ops.get(i).monto;
+      res.fecha = OffsetDateTime.now();
+      r.resultados.add(res);
+    }
+    return r;
+  }
+
+  private static AsientosAgrupadosService.Pendiente pendiente(long cuentaId, String tipo, String monto) {
+    OperacionLote op = new OperacionLote();
+    op.cuentaId = cuentaId;
+    op.tipo = tipo;
+    op.monto = new BigDecimal(monto);
+    return new AsientosAgrupadosService.Pendiente(op);
+  }
+
+  @Test
+  void aplicar_completaCadaFuturoConSuResultado() {
+    service = new AsientosAgrupadosService(loteService, false, 1, 16, 100, 30000);
+    AsientosAgrupadosService.Pendiente ok = pendiente(1L, "DEPOSITO", "10.00");
+    AsientosAgrupadosService.Pendiente sinCuenta = pendiente(2L, "DEPOSITO", "10.00");
+    AsientosAgrupadosService.Pendiente sinSaldo = pendiente(3L, "RETIRO", "10.00");
+    LoteResponse r = aplicado(Collections.singletonList(ok.op));
+    ResultadoLote r1 = new ResultadoLote();
+    r1.indice = 1;
+    r1.error = MovimientoLoteService.cuentaInexistente(2L);
+    ResultadoLote r2 = new ResultadoLote();
+    r2.indice = 2;
+    r2.error = "Saldo no disponible.";
+    r.resultados.add(r1);
+    r.resultados.add(r2);
+    when(loteService.registrar(anyList())).thenReturn(r);
+
+    service.aplicar(Arrays.asList(ok, sinCuenta, sinSaldo));
+
+    MovimientoResponse m = ok.futuro.join();
+    assertEquals(1L, m.getCuentaId());
+    assertEquals("DEPOSITO", m.getTipo());
+    assertEquals(101L, m.getId());
+    Throwable e1 = assertThrows(Exception.class, sinCuenta.futuro::join).getCause();
+    assertTrue(e1 instanceof NotFoundException);
+    Throwable e2 = assertThrows(Exception.class, sinSaldo.futuro::join).getCause();
+    assertTrue(e2 instanceof BusinessException);
+    assertEquals("Saldo no disponible.", e2.getMessage());
+  }
+
+  @Test
+  void aplicar_errorDelLote_fallanTodos() {
+    service = new AsientosAgrupadosService(loteService, false, 1, 16, 100, 30000);
+    when(loteService.registrar(anyList())).thenThrow(new IllegalStateException("sin conexión"));
+    AsientosAgrupadosService.Pendiente a = pendiente(1L, "DEPOSITO", "1");
+    AsientosAgrupadosService.Pendiente b = pendiente(2L, "DEPOSITO", "1");
+
+    service.aplicar(Arrays.asList(a, b));
+
+    assertTrue(a.futuro.isCompletedExceptionally());
+    assertTrue(b.futuro.isCompletedExceptionally());
+  }
+
+  @Test
+  void aplicar_fallaDeInfraestructura_saleConLaExcepcionOriginal() {
+    service = new AsientosAgrupadosService(loteService, false, 1, 16, 100, 30000);
+    IllegalStateException caida = new IllegalStateException("sin conexión");
+    LoteResponse r = new LoteResponse();
+    ResultadoLote res = new ResultadoLote();
+    res.error = "Error al aplicar el lote; reintentar.";
+    res.falla = caida;
+    r.resultados.add(res);
+    when(loteService.registrar(anyList())).thenReturn(r);
+    AsientosAgrupadosService.Pendiente a = pendiente(1L, "DEPOSITO", "1");
+
+    service.aplicar(Collections.singletonList(a));
+
+    // No es un rechazo de negocio (400): llega la falla tal cual y se mapea a 5xx
+    assertSame(caida, assertThrows(Exception.class, a.futuro::join).getCause());
+  }
+
+  @Test
+  void desactivado_noAceptaAsientos() {
+    service = new AsientosAgrupadosService(loteService, false, 4, 16, 100, 30000);
+    assertFalse(service.activo());
+    assertThrows(IllegalStateException.class, () -> service.encolar(1L, "DEPOSITO", BigDecimal.ONE, null));
+  }
+
+  @Test
+  void respetaElOrdenPorCuenta_yAgrupaEnLotes() throws Exception {
+    Map<Long, List<String>> aplicados = new ConcurrentHashMap<>();
+    AtomicInteger lotes = new AtomicInteger();
+    when(loteService.registrar(anyList())).thenAnswer(inv -> {
+      List<OperacionLote> ops = inv.getArgument(0);
+      lotes.incrementAndGet();
+      Thread.sleep(1); // lo que tarda el commit: mientras tanto se acumula el lote siguiente
+      for (OperacionLote op : ops) aplicados.computeIfAbsent(op.cuentaId, k -> new ArrayList<>()).add(op.ref);
+      return aplicado(ops);
+    });
+    service = new AsientosAgrupadosService(loteService, true, 2, 64, 50, 30000);
+
+    int cuentas = 4;
+    int porCuenta = 500;
+    List<CompletableFuture<MovimientoResponse>> futuros = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch listos = new CountDownLatch(cuentas);
+    for (int c = 0; c < cuentas; c++) {
+      long cuentaId = c;
+      new Thread(() -> {
+        for (int i = 0; i < porCuenta; i++) {
+          while (true) {
+            try {
+              futuros.add(service.encolar(cuentaId, "DEPOSITO", BigDecimal.ONE, Integer.toString(i)));
+              break;
+            } catch (RejectedExecutionException lleno) {
+              Thread.yield();
+            }
+          }
+        }
+        listos.countDown();
+      }).start();
+    }
+    assertTrue(listos.await(30, TimeUnit.SECONDS));
+    for (CompletableFuture<MovimientoResponse> f : futuros) f.get(30, TimeUnit.SECONDS);
+
+    for (long c = 0; c < cuentas; c++) {
+      List<String> refs = aplicados.get(c);
+      assertEquals(porCuenta, refs.size());
+      for (int i = 0; i < porCuenta; i++) assertEquals(Integer.toString(i), refs.get(i));
+    }
+    assertTrue(lotes.get() < cuentas * porCuenta, "Varios asientos por commit");
+  }
+
+  @Test
+  void anilloLleno_rechaza() throws Exception {
+    CountDownLatch entro = new CountDownLatch(1);
+    CountDownLatch seguir = new CountDownLatch(1);
+    when(loteService.registrar(anyList())).thenAnswer(inv -> {
+      entro.countDown();
+      seguir.await();
+      return aplicado(inv.getArgument(0));
+    });
+    service = new AsientosAgrupadosService(loteService, true, 1, 2, 10, 30000);
+
+    CompletableFuture<MovimientoResponse> primero = service.encolar(1L, "DEPOSITO", BigDecimal.ONE, null);
+    assertTrue(entro.await(5, TimeUnit.SECONDS)); // el escritor ya lo sacó del anillo y está "confirmando"
+    service.encolar(1L, "DEPOSITO", BigDecimal.ONE, null);
+    service.encolar(1L, "DEPOSITO", BigDecimal.ONE, null);
+    assertThrows(RejectedExecutionException.class, () -> service.encolar(1L, "DEPOSITO", BigDecimal.ONE, null));
+
+    seguir.countDown();
+    assertNotNull(primero.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void registrar_lanzaElRechazoDelAsiento() {
+    when(loteService.registrar(anyList())).thenAnswer(inv -> {
+      LoteResponse r = new LoteResponse();
+      ResultadoLote res = new ResultadoLote();
+      res.error = "Cupo diario excedido";
+      r.resultados.add(res);
+      return r;
+    });
+    service = new AsientosAgrupadosService(loteService, true, 1, 16, 10, 30000);
+
+    BusinessException ex = assertThrows(BusinessException.class,
+        () -> service.registrar(1L, "RETIRO", BigDecimal.ONE, null));
+    assertEquals("Cupo diario excedido", ex.getMessage());
+  }
+
+  @Test
+  void registrar_esperaAcotadaPorLaConfirmacion() throws Exception {
+    CountDownLatch seguir = new CountDownLatch(1);
+    when(loteService.registrar(anyList())).thenAnswer(inv -> {
+      seguir.await();
+      return aplicado(inv.getArgument(0));
+    });
+    service = new AsientosAgrupadosService(loteService, true, 1, 16, 10, 50);
+
+    IllegalStateException ex = assertThrows(IllegalStateException.class,
+        () -> service.registrar(1L, "DEPOSITO", BigDecimal.ONE, null));
+    assertTrue(ex.getMessage().contains("no confirmó"));
+    seguir.countDown();
+  }
+
+  @Test
+  void cerrar_aplicaLoEncoladoYDespuesNoAcepta() throws Exception {
+    CountDownLatch entro = new CountDownLatch(1);
+    CountDownLatch seguir = new CountDownLatch(1);
+    when(loteService.registrar(anyList())).thenAnswer(inv -> {
+      entro.countDown();
+      seguir.await();
+      return aplicado(inv.getArgument(0));
+    });
+    service = new AsientosAgrupadosService(loteService, true, 1, 16, 10, 30000);
+    CompletableFuture<MovimientoResponse> primero = service.encolar(1L, "DEPOSITO", BigDecimal.ONE, null);
+    assertTrue(entro.await(5, TimeUnit.SECONDS));
+    CompletableFuture<MovimientoResponse> segundo = service.encolar(1L, "DEPOSITO", BigDecimal.ONE, null);
+
+    Thread cierre = new Thread(() -> {
+      try {
+        service.cerrar();
+      } catch (InterruptedException ignored) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    cierre.start();
+    seguir.countDown();
+    cierre.join(5000);
+
+    assertNotNull(primero.get(5, TimeUnit.SECONDS));
+    assertNotNull(segundo.get(5, TimeUnit.SECONDS));
+    assertThrows(IllegalStateException.class, () -> service.encolar(1L, "DEPOSITO", BigDecimal.ONE, null));
+  }
+
+  @Test
+  void anillo_fifoYCapacidadPotenciaDeDos() {
+    Anillo<Integer> a = new Anillo<>(3);
+    assertEquals(4, a.capacidad());
+    for (int i = 0; i < 4; i++) assertTrue(a.ofrecer(i));
+    assertFalse(a.ofrecer(4));
+
+    List<Integer> salida = new ArrayList<>();
+    assertEquals(3, a.drenar(salida, 3));
+    assertTrue(a.ofrecer(4));
+    a.drenar(salida, 10);
+    assertEquals(Arrays.asList(0, 1, 2, 3, 4), salida);
+    assertTrue(a.vacio());
+  }
+}
@@ -0,0 +1,110 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.entity.Cuenta;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class BloqueoCuentasTest {
+
+  private CacheSegundoNivel cache;
+
+  @BeforeEach
+  void setup() {
+    cache = mock(CacheSegundoNivel.class);
+  }
+
+  @Test
+  void estrategia_seLeeSinImportarMayusculas() {
+    assertEquals(BloqueoCuentas.Estrategia.OPTIMISTA, new BloqueoCuentas(cache, " Optimista ", 5, 2, 100).estrategia());
+    assertThrows(IllegalArgumentException.class, () -> new BloqueoCuentas(cache, "ninguna", 5, 2, 100));
+  }
+
+  @Test
+  void reintentar_conflictoDeVersion_sacaLasCuentasDelCacheYVuelveAIntentar() {
+    BloqueoCuentas b = new BloqueoCuentas(cache, "optimista", 5, 0, 0);
+    AtomicInteger intentos = new AtomicInteger();
+
+    String r = b.reintentar(Arrays.asList(1L, 2L), () -> {
+      if (intentos.incrementAndGet() < 3) throw new ObjectOptimisticLockingFailureException(Cuenta.class, 1L);
+      return "ok";
+    });
+
+    assertEquals("ok", r);
+    assertEquals(3, intentos.get());
+    assertEquals(2, b.conflictos());
+    assertEquals(0, b.agotados());
+    verify(cache, times(2)).cuentaModificada(1L);
+    verify(cache, times(2)).cuentaModificada(2L);
+  }
+
+  @Test
+  void reintentar_agotados_propagaElUltimoConflicto() {
+    BloqueoCuentas b = new BloqueoCuentas(cache, "optimista", 3, 0, 0);
+    AtomicInteger intentos = new AtomicInteger();
+
+    assertThrows(OptimisticLockingFailureException.class, () -> b.reintentar(Arrays.asList(1L), () -> {
+      intentos.incrementAndGet();
+      throw new ObjectOptimisticLockingFailureException(Cuenta.class, 1L);
+    }));
+
+    assertEquals(3, intentos.get());
+    assertEquals(3, b.conflictos());
+    assertEquals(1, b.agotados());
+    // Después del último intento no hay a quién dejarle la cuenta fresca
+    verify(cache, times(2)).cuentaModificada(1L);
+  }
+
+  @Test
+  void reintentar_otrasExcepciones_noSeReintentan() {
+    BloqueoCuentas b = new BloqueoCuentas(cache, "optimista", 5, 0, 0);
+    AtomicInteger intentos = new AtomicInteger();
+
+    assertThrows(IllegalStateException.class, () -> b.reintentar(Arrays.asList(1L), () -> {
+      intentos.incrementAndGet();
+      throw new IllegalStateException("x");
+    }));
+
+    assertEquals(1, intentos.get());
+    verifyNoInteractions(cache);
+  }
+
+  @Test
+  void reintentar_dentroDeUnaTransaccionAbierta_dejaElReintentoAQuienLaAbrio() {
+    BloqueoCuentas b = new BloqueoCuentas(cache, "optimista", 5, 0, 0);
+    AtomicInteger intentos = new AtomicInteger();
+
+    TransactionSynchronizationManager.setActualTransactionActive(true);
+    try {
+      assertThrows(OptimisticLockingFailureException.class, () -> b.reintentar(Arrays.asList(1L), () -> {
+        intentos.incrementAndGet();
+        throw new ObjectOptimisticLockingFailureException(Cuenta.class, 1L);
+      }));
+    } finally {
+      TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+
+    assertEquals(1, intentos.get());
+    verifyNoInteractions(cache);
+  }
+
+  @Test
+  void espera_creceExponencialHastaElTope() {
+    BloqueoCuentas b = new BloqueoCuentas(cache, "optimista", 5, 2, 100);
+    for (int i = 0; i < 200; i++) {
+      assertTrue(b.espera(1) <= TimeUnit.MILLISECONDS.toNanos(2));
+      assertTrue(b.espera(3) <= TimeUnit.MILLISECONDS.toNanos(8));
+      long tope = b.espera(40);
+      assertTrue(tope >= 0 && tope <= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+  }
+}
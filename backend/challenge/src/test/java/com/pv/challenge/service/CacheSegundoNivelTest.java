@@ -0,0 +1,194 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.CacheDtos.RegionCache;
+import com.pv.challenge.entity.Cuenta;
+import org.hibernate.cache.spi.access.EntityDataAccess;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.cache.spi.CacheImplementor;
+import org.hibernate.cache.spi.TimestampsCache;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.metamodel.spi.MetamodelImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.spi.StatisticsImplementor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CacheSegundoNivelTest {
+
+  private static final Serializable[] TABLAS = {"cuentas"};
+
+  private EntityManager em;
+  private EntityManagerFactory emf;
+  private SessionImplementor sesion;
+  private SessionFactoryImplementor factory;
+  private EntityPersister persister;
+  private EntityDataAccess acceso;
+  private TimestampsCache marcas;
+  private RegionesCache regiones;
+  private CacheSegundoNivel cache;
+
+  @BeforeEach
+  void setup() {
+    em = mock(EntityManager.class);
+    emf = mock(EntityManagerFactory.class);
+    sesion = mock(SessionImplementor.class);
+    factory = mock(SessionFactoryImplementor.class);
+    persister = mock(EntityPersister.class);
+    acceso = mock(EntityDataAccess.class);
+    marcas = mock(TimestampsCache.class);
+    MetamodelImplementor metamodel = mock(MetamodelImplementor.class);
+    CacheImplementor cacheImpl = mock(CacheImplementor.class);
+
+    when(em.unwrap(SessionImplementor.class)).thenReturn(sesion);
+    when(sesion.getFactory()).thenReturn(factory);
+    when(factory.getMetamodel()).thenReturn(metamodel);
+    when(metamodel.entityPersister(Cuenta.class)).thenReturn(persister);
+    when(persister.canWriteToCache()).thenReturn(true);
+    when(persister.getCacheAccessStrategy()).thenReturn(acceso);
+    when(persister.getQuerySpaces()).thenReturn(TABLAS);
+    when(factory.getCache()).thenReturn(cacheImpl);
+    when(cacheImpl.getTimestampsCache()).thenReturn(marcas);
+    when(acceso.generateCacheKey(any(), eq(persister), eq(factory), any())).thenAnswer(i -> "k" + i.getArgument(0));
+
+    regiones = new RegionesCache(10, 10, 10, 10, 60);
+    cache = new CacheSegundoNivel(em, emf, regiones);
+  }
+
+  @AfterEach
+  void limpiar() {
+    regiones.destroy();
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
+
+  private void completar(int estado) {
+    for (TransactionSynchronization s : TransactionSynchronizationManager.getSynchronizations()) {
+      s.afterCompletion(estado);
+    }
+  }
+
+  @Test
+  void cuentaModificada_tomaSoftLockYLoLiberaAlTerminarLaTransaccion() {
+    TransactionSynchronizationManager.initSynchronization();
+    SoftLock lock = mock(SoftLock.class);
+    when(acceso.lockItem(sesion, "k7", null)).thenReturn(lock);
+
+    cache.cuentaModificada(7L);
+
+    verify(acceso).lockItem(sesion, "k7", null);
+    verify(acceso, never()).unlockItem(any(), any(), any());
+
+    completar(TransactionSynchronization.STATUS_COMMITTED);
+
+    verify(acceso).unlockItem(sesion, "k7", lock);
+    // Un asiento no cambia número ni titular: las búsquedas cacheadas siguen valiendo
+    verifyNoInteractions(marcas);
+  }
+
+  @Test
+  void cuentaModificada_conRollbackTambienLiberaElLock() {
+    TransactionSynchronizationManager.initSynchronization();
+    SoftLock lock = mock(SoftLock.class);
+    when(acceso.lockItem(sesion, "k8", null)).thenReturn(lock);
+
+    cache.cuentaModificada(8L);
+    completar(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+    verify(acceso).unlockItem(sesion, "k8", lock);
+  }
+
+  @Test
+  void cuentasEliminadas_bloqueaCadaCuentaEInvalidaLasBusquedasPorNumero() {
+    TransactionSynchronizationManager.initSynchronization();
+
+    cache.cuentasEliminadas(Arrays.asList(1L, 2L));
+
+    verify(acceso).lockItem(sesion, "k1", null);
+    verify(acceso).lockItem(sesion, "k2", null);
+    verify(marcas).preInvalidate(TABLAS, sesion);
+    verify(marcas, never()).invalidate(any(Serializable[].class), any());
+
+    completar(TransactionSynchronization.STATUS_COMMITTED);
+
+    verify(acceso).unlockItem(eq(sesion), eq("k1"), any());
+    verify(acceso).unlockItem(eq(sesion), eq("k2"), any());
+    verify(marcas).invalidate(TABLAS, sesion);
+  }
+
+  @Test
+  void sinTransaccion_desalojaDirecto() {
+    cache.cuentasEliminadas(Arrays.asList(3L));
+
+    verify(acceso).evict("k3");
+    verify(acceso, never()).lockItem(any(), any(), any());
+    verify(marcas).invalidate(TABLAS, sesion);
+  }
+
+  @Test
+  void cuentasEliminadas_sinCuentasNoHaceNada() {
+    cache.cuentasEliminadas(Arrays.<Long>asList());
+    verifyNoInteractions(em);
+  }
+
+  @Test
+  void cacheDeshabilitado_noHaceNada() {
+    TransactionSynchronizationManager.initSynchronization();
+    when(persister.canWriteToCache()).thenReturn(false);
+
+    cache.cuentaModificada(9L);
+
+    verifyNoInteractions(acceso);
+    assertTrue(TransactionSynchronizationManager.getSynchronizations().isEmpty());
+  }
+
+  @Test
+  void metricas_porRegionConTasaDeAciertos() {
+    StatisticsImplementor st = mock(StatisticsImplementor.class);
+    when(emf.unwrap(SessionFactoryImplementor.class)).thenReturn(factory);
+    when(factory.getStatistics()).thenReturn(st);
+    CacheRegionStatistics cuentas = mock(CacheRegionStatistics.class);
+    when(cuentas.getHitCount()).thenReturn(30L);
+    when(cuentas.getMissCount()).thenReturn(10L);
+    when(cuentas.getPutCount()).thenReturn(10L);
+    when(st.getDomainDataRegionStatistics(RegionesCache.CUENTAS)).thenReturn(cuentas);
+    CacheRegionStatistics porNumero = mock(CacheRegionStatistics.class);
+    when(porNumero.getHitCount()).thenReturn(5L);
+    when(st.getQueryRegionStatistics(RegionesCache.CUENTA_POR_NUMERO)).thenReturn(porNumero);
+
+    List<RegionCache> ms = cache.metricas();
+
+    assertEquals(6, ms.size());
+    RegionCache c = ms.stream().filter(m -> m.region.equals(RegionesCache.CUENTAS)).findFirst().get();
+    assertEquals("ENTIDAD", c.tipo);
+    assertEquals(10, c.maxEntradas);
+    assertEquals(30, c.aciertos);
+    assertEquals(10, c.fallos);
+    assertEquals(10, c.escrituras);
+    assertEquals(0.75, c.tasaAciertos, 1e-9);
+
+    RegionCache n = ms.stream().filter(m -> m.region.equals(RegionesCache.CUENTA_POR_NUMERO)).findFirst().get();
+    assertEquals("CONSULTA", n.tipo);
+    assertEquals(1.0, n.tasaAciertos, 1e-9);
+
+    // Región todavía sin estadísticas
+    RegionCache p = ms.stream().filter(m -> m.region.equals(RegionesCache.PERSONAS)).findFirst().get();
+    assertEquals(0, p.aciertos);
+    assertEquals(0, p.tasaAciertos, 1e-9);
+  }
+}
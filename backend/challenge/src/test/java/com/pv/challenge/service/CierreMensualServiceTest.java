@@ -0,0 +1,161 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.CierreDtos.CierreResponse;
+import com.pv.challenge.exception.BusinessException;
+import com.pv.challenge.exception.NotFoundException;
+import com.pv.challenge.repo.ClienteRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.Pageable;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CierreMensualServiceTest {
+
+  private static final List<Long> CLIENTES = Arrays.asList(1L, 2L, 3L, 4L, 5L);
+  private static final YearMonth PERIODO = YearMonth.now(ZoneOffset.UTC).minusMonths(1);
+
+  @TempDir Path dir;
+  private ClienteRepository clienteRepo;
+  private ReporteService reporteService;
+  private CierreMensualService service;
+
+  @BeforeEach
+  void setup() throws Exception {
+    clienteRepo = mock(ClienteRepository.class);
+    reporteService = mock(ReporteService.class);
+    // Keyset: ids mayores a "despuesDe", de a una página
+    when(clienteRepo.idsDespuesDe(anyLong(), any(Pageable.class))).thenAnswer(inv -> {
+      long despuesDe = inv.getArgument(0);
+      Pageable p = inv.getArgument(1);
+      return CLIENTES.stream().filter(id -> id > despuesDe).limit(p.getPageSize()).collect(Collectors.toList());
+    });
+    doAnswer(inv -> {
+      inv.<OutputStream>getArgument(3).write(("%PDF cliente " + inv.getArgument(0)).getBytes(StandardCharsets.US_ASCII));
+      return null;
+    }).when(reporteService).escribirPdf(anyLong(), any(), any(), any(OutputStream.class));
+
+    service = new CierreMensualService(clienteRepo, reporteService, null, dir.toString(), 2, 2);
+  }
+
+  @AfterEach
+  void cerrar() {
+    service.cerrar();
+  }
+
+  private CierreResponse esperar() throws InterruptedException {
+    long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    CierreResponse r = service.estado(PERIODO.toString());
+    while ("EN_PROCESO".equals(r.estado) && System.nanoTime() < limite) {
+      Thread.sleep(10);
+      r = service.estado(PERIODO.toString());
+    }
+    return r;
+  }
+
+  private Path dirPeriodo() {
+    return dir.resolve("cierres").resolve(PERIODO.toString());
+  }
+
+  @Test
+  void genera_un_pdf_por_cliente_en_chunks_y_zip() throws Exception {
+    service.iniciar(PERIODO.toString(), true);
+    CierreResponse r = esperar();
+
+    assertEquals("LISTO", r.estado);
+    assertEquals(5, r.generados);
+    assertEquals(0, r.errores);
+    assertEquals(5L, r.ultimoClienteId);
+    assertEquals(3, r.chunks.size());            // 2 + 2 + 1
+    assertEquals(1L, r.chunks.get(0).desdeClienteId);
+    assertEquals(2L, r.chunks.get(0).hastaClienteId);
+    for (Long id : CLIENTES) {
+      assertEquals("%PDF cliente " + id,
+          new String(Files.readAllBytes(dirPeriodo().resolve("c" + id + ".pdf")), StandardCharsets.US_ASCII));
+    }
+    verify(reporteService).escribirPdf(eq(3L), eq(PERIODO.atDay(1)), eq(PERIODO.atEndOfMonth()), any(OutputStream.class));
+    try (ZipFile zip = new ZipFile(r.zip)) {
+      assertEquals(5, zip.size());
+    }
+  }
+
+  @Test
+  void reanuda_desde_el_checkpoint_despues_de_un_reinicio() throws Exception {
+    Files.createDirectories(dirPeriodo());
+    Files.write(dirPeriodo().resolve("checkpoint.properties"), Arrays.asList(
+        "periodo=" + PERIODO, "zip=false", "estado=EN_PROCESO", "ultimoClienteId=2",
+        "generados=2", "omitidos=0", "errores=0", "inicio=2025-01-01T00:00Z"));
+    // Cliente 3 ya se había escrito antes del corte, pero su chunk no llegó al checkpoint
+    Files.write(dirPeriodo().resolve("c3.pdf"), "%PDF previo".getBytes(StandardCharsets.US_ASCII));
+    Files.write(dirPeriodo().resolve("tmp-123.pdf"), new byte[10]);
+
+    service.reanudarPendientes();
+    CierreResponse r = esperar();
+
+    assertEquals("LISTO", r.estado);
+    assertEquals(4, r.generados);
+    assertEquals(1, r.omitidos);
+    verify(reporteService, never()).escribirPdf(eq(1L), any(), any(), any(OutputStream.class));
+    verify(reporteService, never()).escribirPdf(eq(3L), any(), any(), any(OutputStream.class));
+    verify(reporteService).escribirPdf(eq(4L), any(), any(), any(OutputStream.class));
+    assertFalse(Files.exists(dirPeriodo().resolve("tmp-123.pdf")));
+  }
+
+  @Test
+  void reanudar_ignora_directorios_que_no_son_un_periodo() throws Exception {
+    // "backup" ordena antes o después según el sistema de archivos: no debe cortar la revisión
+    Files.createDirectories(dir.resolve("cierres").resolve("backup"));
+    Files.createDirectories(dir.resolve("cierres").resolve("2024-02-copia"));
+    Files.createDirectories(dirPeriodo());
+    Files.write(dirPeriodo().resolve("checkpoint.properties"), Arrays.asList(
+        "periodo=" + PERIODO, "zip=false", "estado=EN_PROCESO", "ultimoClienteId=4",
+        "generados=4", "omitidos=0", "errores=0", "inicio=2025-01-01T00:00Z"));
+
+    service.reanudarPendientes();
+    CierreResponse r = esperar();
+
+    assertEquals("LISTO", r.estado);
+    assertEquals(5, r.generados);
+    verify(reporteService).escribirPdf(eq(5L), any(), any(), any(OutputStream.class));
+  }
+
+  @Test
+  void error_de_un_cliente_se_registra_y_sigue() throws Exception {
+    doThrow(new NotFoundException("Cliente 3 no existe"))
+        .when(reporteService).escribirPdf(eq(3L), any(), any(), any(OutputStream.class));
+
+    service.iniciar(PERIODO.toString(), false);
+    CierreResponse r = esperar();
+
+    assertEquals("LISTO", r.estado);
+    assertEquals(4, r.generados);
+    assertEquals(1, r.errores);
+    assertFalse(Files.exists(dirPeriodo().resolve("c3.pdf")));
+    assertTrue(new String(Files.readAllBytes(dirPeriodo().resolve("errores.log")), StandardCharsets.UTF_8)
+        .startsWith("3\t"));
+  }
+
+  @Test
+  void solo_meses_terminados_y_formato_valido() {
+    assertThrows(BusinessException.class,
+        () -> service.iniciar(YearMonth.now(ZoneOffset.UTC).toString(), false));
+    assertThrows(BusinessException.class, () -> service.iniciar("2025-13", false));
+    assertThrows(NotFoundException.class, () -> service.estado("2020-01"));
+  }
+}
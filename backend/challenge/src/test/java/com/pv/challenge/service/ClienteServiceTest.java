@@ -1,21 +1,33 @@
 package com.pv.challenge.service;
 
+import com.pv.challenge.dto.ClienteDtos.ClienteResponse;
+import com.pv.challenge.dto.ClienteDtos.PaginaClientes;
 import com.pv.challenge.dto.ClienteDtos.SaveClienteRequest;
 import com.pv.challenge.entity.Cliente;
 import com.pv.challenge.entity.Persona;
 import com.pv.challenge.exception.BusinessException;
+import com.pv.challenge.exception.NotFoundException;
 import com.pv.challenge.repo.ClienteRepository;
+import com.pv.challenge.repo.CuentaRepository;
 import com.pv.challenge.repo.PersonaRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 class ClienteServiceTest {
@@ -26,6 +38,18 @@ class ClienteServiceTest {
     @Mock
     private ClienteRepository clienteRepo;
 
+    @Mock
+    private CuentaRepository cuentaRepo;
+
+    @Mock
+    private CacheSegundoNivel cache;
+
+    @Mock
+    private IndiceCuentas indice;
+
+    @Mock
+    private ReporteCacheMemoria reporteCache;
+
     @InjectMocks
     private ClienteService clienteService;
 
@@ -74,4 +98,122 @@ class ClienteServiceTest {
 
         assertThrows(BusinessException.class, () -> clienteService.crear(request));
     }
-}
\ No newline at end of file
+
+    @Test
+    void eliminar_bloqueaEnCacheLasCuentasQueBorraLaCascada() {
+        when(clienteRepo.existsById(5L)).thenReturn(true);
+        when(cuentaRepo.idsPorCliente(5L)).thenReturn(Arrays.asList(50L, 51L));
+
+        clienteService.eliminar(5L);
+
+        // Los ids se leen antes del borrado: después la cascada ya se los llevó
+        InOrder orden = inOrder(cuentaRepo, clienteRepo, cache);
+        orden.verify(cuentaRepo).idsPorCliente(5L);
+        orden.verify(clienteRepo).deleteById(5L);
+        orden.verify(cache).cuentasEliminadas(Arrays.asList(50L, 51L));
+        verify(indice).eliminadas(Arrays.asList(50L, 51L));
+        verify(reporteCache).invalidarCliente(5L);
+    }
+
+    @Test
+    void actualizar_invalidaLosReportesCacheadosDelCliente() {
+        Persona p = new Persona();
+        p.setIdentificacion("1234567890");
+        Cliente c = new Cliente();
+        c.setId(7L);
+        c.setPersona(p);
+        c.setClienteId("juan123");
+        when(clienteRepo.findById(7L)).thenReturn(Optional.of(c));
+        when(clienteRepo.save(c)).thenReturn(c);
+        SaveClienteRequest req = new SaveClienteRequest();
+        req.nombre = "Juan Renombrado";
+        req.identificacion = "1234567890";
+        req.clienteId = "juan123";
+
+        clienteService.actualizar(7L, req);
+
+        assertEquals("Juan Renombrado", p.getNombre());
+        verify(reporteCache).invalidarCliente(7L);
+    }
+
+    @Test
+    void eliminar_clienteInexistente_noTocaElCache() {
+        when(clienteRepo.existsById(6L)).thenReturn(false);
+
+        assertThrows(NotFoundException.class, () -> clienteService.eliminar(6L));
+        verify(clienteRepo, never()).deleteById(any());
+        verifyNoInteractions(cache, reporteCache);
+    }
+
+    @Test
+    void listar_paginaPorProyeccionConCursorSiguiente() {
+        ClienteRepository.FilaCliente f1 = mock(ClienteRepository.FilaCliente.class);
+        when(f1.getId()).thenReturn(4L);
+        when(f1.getNombre()).thenReturn("Ana");
+        when(f1.getClienteId()).thenReturn("ana");
+        ClienteRepository.FilaCliente f2 = mock(ClienteRepository.FilaCliente.class);
+        when(f2.getId()).thenReturn(6L);
+        when(clienteRepo.paginaDespuesDe(eq(0L), argThat(p -> p.getPageSize() == 2)))
+            .thenReturn(Arrays.asList(f1, f2));
+
+        PaginaClientes pagina = clienteService.listar(null, 1);
+
+        assertEquals(1, pagina.items.size());
+        assertEquals("Ana", pagina.items.get(0).nombre);
+        assertEquals("ana", pagina.items.get(0).clienteId);
+        assertEquals("4", pagina.siguiente);
+        verify(clienteRepo, never()).findAll();
+    }
+
+    @Test
+    void buscar_armaLosPatronesYDevuelveEnElOrdenDelRepositorio() {
+        ClienteRepository.FilaCliente f1 = mock(ClienteRepository.FilaCliente.class);
+        when(f1.getId()).thenReturn(3L);
+        when(f1.getNombre()).thenReturn("Jose Lema");
+        ClienteRepository.FilaCliente f2 = mock(ClienteRepository.FilaCliente.class);
+        when(f2.getId()).thenReturn(1L);
+        when(f2.getNombre()).thenReturn("Josefa Lemas");
+        List<ClienteRepository.FilaCliente> filas = Arrays.asList(f1, f2);
+        when(clienteRepo.buscar(anyString(), anyString(), anyString(), anyString(), anyString(), anyString(),
+            anyBoolean(), anyInt(), anyInt())).thenReturn(filas);
+
+        List<ClienteResponse> r = clienteService.buscar("  Jose   LE ", 20);
+
+        assertEquals(Arrays.asList(3L, 1L), Arrays.asList(r.get(0).id, r.get(1).id));
+        assertEquals("Jose Lema", r.get(0).nombre);
+        verify(clienteRepo).buscar("Jose LE", "jose le", "Jose LE%", "jose le%", "% jose le%", "%jose le%",
+            true, 20, 200);
+    }
+
+    @Test
+    void buscar_menosDeTresLetras_soloPrefijos() {
+        clienteService.buscar("an", 5);
+
+        verify(clienteRepo).buscar(eq("an"), eq("an"), eq("an%"), eq("an%"), anyString(), anyString(),
+            eq(false), eq(5), eq(50));
+    }
+
+    @Test
+    void buscar_comodinesSeBuscanLiterales() {
+        clienteService.buscar("50%_x", 5);
+
+        verify(clienteRepo).buscar(eq("50%_x"), eq("50%_x"), eq("50\\%\\_x%"), eq("50\\%\\_x%"),
+            eq("% 50\\%\\_x%"), eq("%50\\%\\_x%"), eq(true), eq(5), eq(50));
+    }
+
+    @Test
+    void buscar_qVacioOLimiteInvalido_lanzaBusinessException() {
+        assertThrows(BusinessException.class, () -> clienteService.buscar("   ", 20));
+        assertThrows(BusinessException.class, () -> clienteService.buscar(null, 20));
+        assertThrows(BusinessException.class, () -> clienteService.buscar("ana", 0));
+        assertThrows(BusinessException.class, () -> clienteService.buscar("ana", 101));
+        assertThrows(BusinessException.class, () -> clienteService.buscar(new String(new char[101]).replace('\0', 'a'), 20));
+        verifyNoInteractions(clienteRepo);
+    }
+
+    @Test
+    void listar_cursorInvalido_lanzaBusinessException() {
+        assertThrows(BusinessException.class, () -> clienteService.listar("x", 50));
+        assertThrows(BusinessException.class, () -> clienteService.listar(null, 501));
+    }
+}
@@ -1,5 +1,6 @@
 package com.pv.challenge.service;
 
+import com.pv.challenge.dto.CuentaDtos.PaginaCuentas;
 import com.pv.challenge.dto.CuentaDtos.SaveCuentaRequest;
 import com.pv.challenge.entity.Cliente;
 import com.pv.challenge.entity.Cuenta;
@@ -8,16 +9,21 @@ import com.pv.challenge.exception.BusinessException;
 import com.pv.challenge.exception.NotFoundException;
 import com.pv.challenge.repo.ClienteRepository;
 import com.pv.challenge.repo.CuentaRepository;
+import com.pv.challenge.repo.CuentaRepository.FilaCuenta;
 import com.pv.challenge.repo.MovimientoRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.math.BigDecimal;
+import java.time.OffsetDateTime;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -30,6 +36,11 @@ class CuentaServiceTest {
   private CuentaRepository cuentaRepo;
   private ClienteRepository clienteRepo;
   private MovimientoRepository movRepo;
+  private SaldoDiarioService saldoDiarioService;
+  private ReporteCacheMemoria reporteCache;
+  private IndiceCuentas indice;
+  private SubsaldosService subsaldos;
+  private BloqueoCuentas bloqueo;
 
   private CuentaService service;
 
@@ -38,7 +49,13 @@ class CuentaServiceTest {
     cuentaRepo = mock(CuentaRepository.class);
     clienteRepo = mock(ClienteRepository.class);
     movRepo = mock(MovimientoRepository.class);
-    service = new CuentaService(cuentaRepo, clienteRepo, movRepo);
+    saldoDiarioService = mock(SaldoDiarioService.class);
+    reporteCache = mock(ReporteCacheMemoria.class);
+    indice = mock(IndiceCuentas.class);
+    subsaldos = mock(SubsaldosService.class);
+    bloqueo = new BloqueoCuentas(mock(CacheSegundoNivel.class), "atomica", 3, 0, 0);
+    service = new CuentaService(cuentaRepo, clienteRepo, movRepo, saldoDiarioService, reporteCache, indice, subsaldos,
+        bloqueo, mock(PlatformTransactionManager.class));
   }
 
   private SaveCuentaRequest reqBase() {
@@ -65,6 +82,7 @@ class CuentaServiceTest {
     ct.setTipo(tipo);
     ct.setEstado(estado);
     ct.setSaldo(BigDecimal.ZERO);
+    ct.setCliente(cliente(10L));
     return ct;
   }
 
@@ -99,6 +117,7 @@ class CuentaServiceTest {
     assertEquals("apertura", m.getReferencia());
     assertNotNull(m.getFecha());
     assertSame(creada, m.getCuenta());
+    verify(saldoDiarioService).acumular(anyCollection());
 
     verify(cuentaRepo, times(2)).save(any(Cuenta.class)); // una al crear, otra al setear saldo inicial
   }
@@ -117,6 +136,7 @@ class CuentaServiceTest {
     assertNotNull(creada);
     assertEquals(0, creada.getSaldo().compareTo(BigDecimal.ZERO));
     verify(movRepo, never()).save(any(Movimiento.class));
+    verify(saldoDiarioService, never()).acumular(anyCollection());
     verify(cuentaRepo, times(1)).save(any(Cuenta.class)); // solo la creación
   }
 
@@ -154,7 +174,7 @@ class CuentaServiceTest {
     req.estado = false;
 
     Cuenta existente = cuentaExistente(50L, "001-ABC", "Ahorro", true);
-    when(cuentaRepo.findById(50L)).thenReturn(Optional.of(existente));
+    when(cuentaRepo.bloquearPorIds(Collections.singletonList(50L))).thenReturn(Collections.singletonList(existente));
     when(cuentaRepo.findByNumero("002-XYZ")).thenReturn(Optional.empty());
     when(cuentaRepo.save(any(Cuenta.class))).thenAnswer(inv -> inv.getArgument(0));
 
@@ -164,9 +184,10 @@ class CuentaServiceTest {
     assertEquals("Corriente", actualizada.getTipo());
     assertEquals(false, actualizada.getEstado());
 
-    verify(cuentaRepo).findById(50L);
+    verify(cuentaRepo).bloquearPorIds(Collections.singletonList(50L));
     verify(cuentaRepo).findByNumero("002-XYZ");
     verify(cuentaRepo).save(existente);
+    verify(indice).confirmar(existente);
   }
 
   @Test
@@ -177,7 +198,7 @@ class CuentaServiceTest {
     req.estado = true;
 
     Cuenta existente = cuentaExistente(60L, "OLD-000", "Corriente", true);
-    when(cuentaRepo.findById(60L)).thenReturn(Optional.of(existente));
+    when(cuentaRepo.bloquearPorIds(Collections.singletonList(60L))).thenReturn(Collections.singletonList(existente));
     when(cuentaRepo.findByNumero("DUP-001")).thenReturn(Optional.of(new Cuenta()));
 
     BusinessException ex = assertThrows(BusinessException.class, () -> service.actualizar(60L, req));
@@ -193,23 +214,76 @@ class CuentaServiceTest {
     req.tipo = "Ahorro";
     req.estado = true;
 
-    when(cuentaRepo.findById(999L)).thenReturn(Optional.empty());
+    when(cuentaRepo.bloquearPorIds(Collections.singletonList(999L))).thenReturn(Collections.emptyList());
     assertThrows(NotFoundException.class, () -> service.actualizar(999L, req));
   }
 
+  @Test
+  void actualizar_optimista_lee_sin_bloquear_y_reintenta_el_conflicto_de_version() {
+    bloqueo.usar(BloqueoCuentas.Estrategia.OPTIMISTA);
+    SaveCuentaRequest req = new SaveCuentaRequest();
+    req.numero = "001-ABC";
+    req.tipo = "Corriente";
+
+    when(cuentaRepo.findById(70L)).thenAnswer(inv -> Optional.of(cuentaExistente(70L, "001-ABC", "Ahorro", true)));
+    when(cuentaRepo.save(any(Cuenta.class)))
+        .thenThrow(new ObjectOptimisticLockingFailureException(Cuenta.class, 70L))
+        .thenAnswer(inv -> inv.getArgument(0));
+
+    Cuenta actualizada = service.actualizar(70L, req);
+
+    assertEquals("Corriente", actualizada.getTipo());
+    verify(cuentaRepo, times(2)).findById(70L);
+    verify(cuentaRepo, never()).bloquearPorIds(anyCollection());
+    assertEquals(1, bloqueo.conflictos());
+  }
+
   // ---------- LISTAR ----------
 
+  private FilaCuenta fila(long id) {
+    FilaCuenta f = mock(FilaCuenta.class);
+    lenient().when(f.getId()).thenReturn(id);
+    lenient().when(f.getNumero()).thenReturn("N" + id);
+    lenient().when(f.getSaldo()).thenReturn(new BigDecimal("5.00"));
+    lenient().when(f.getClienteId()).thenReturn(10L);
+    lenient().when(f.getClienteNombre()).thenReturn("Ana");
+    return f;
+  }
+
+  @Test
+  void listar_pagina_por_proyeccion_con_cursor_siguiente() {
+    // Pide limite + 1 para saber si hay más, sin cargar entidades
+    List<FilaCuenta> filas = Arrays.asList(fila(8), fila(9), fila(11));
+    when(cuentaRepo.paginaDespuesDe(eq(7L), argThat(p -> p.getPageSize() == 3))).thenReturn(filas);
+    when(subsaldos.repartida(anyLong())).thenAnswer(inv -> inv.getArgument(0).equals(9L));
+    when(subsaldos.saldoTotal(9L)).thenReturn(new BigDecimal("42.00"));
+
+    PaginaCuentas p = service.listar("7", 2);
+
+    assertEquals(2, p.items.size());
+    assertEquals(8L, p.items.get(0).id);
+    assertEquals("N8", p.items.get(0).numero);
+    assertEquals("Ana", p.items.get(0).clienteNombre);
+    assertEquals(10L, p.items.get(1).clienteId);
+    assertEquals(0, p.items.get(0).saldo.compareTo(new BigDecimal("5.00")));
+    assertEquals(0, p.items.get(1).saldo.compareTo(new BigDecimal("42.00")));
+    assertEquals("9", p.siguiente);
+    verify(cuentaRepo, never()).findAll();
+  }
+
   @Test
-  void listar_devuelve_todos() {
-    when(cuentaRepo.findAll()).thenReturn(Arrays.asList(new Cuenta(), new Cuenta()));
-    assertEquals(2, service.listar().size());
-    verify(cuentaRepo).findAll();
+  void listar_ultima_pagina_sin_siguiente() {
+    when(cuentaRepo.paginaDespuesDe(eq(0L), any())).thenReturn(Collections.emptyList());
+    PaginaCuentas p = service.listar(null, 50);
+    assertTrue(p.items.isEmpty());
+    assertNull(p.siguiente);
   }
 
   @Test
-  void listar_vacio() {
-    when(cuentaRepo.findAll()).thenReturn(Collections.emptyList());
-    assertTrue(service.listar().isEmpty());
+  void listar_cursor_o_limite_invalidos_lanzan_business() {
+    assertThrows(BusinessException.class, () -> service.listar("abc", 50));
+    assertThrows(BusinessException.class, () -> service.listar(null, 0));
+    assertThrows(BusinessException.class, () -> service.listar(null, CuentaService.LIMITE_PAGINA + 1));
   }
 
   // ---------- LISTAR POR CLIENTE ----------
@@ -225,18 +299,19 @@ class CuentaServiceTest {
 
   @Test
   void eliminar_ok_existente() {
-    when(cuentaRepo.existsById(5L)).thenReturn(true);
+    when(cuentaRepo.clienteIdDe(5L)).thenReturn(Optional.of(10L));
     service.eliminar(5L);
-    verify(cuentaRepo).existsById(5L);
     verify(cuentaRepo).deleteById(5L);
+    verify(reporteCache).invalidarCliente(10L);
+    verify(indice).eliminadas(Collections.singletonList(5L));
   }
 
   @Test
   void eliminar_no_existente_lanza_notfound() {
-    when(cuentaRepo.existsById(6L)).thenReturn(false);
+    when(cuentaRepo.clienteIdDe(6L)).thenReturn(Optional.empty());
     assertThrows(NotFoundException.class, () -> service.eliminar(6L));
-    verify(cuentaRepo).existsById(6L);
     verify(cuentaRepo, never()).deleteById(anyLong());
+    verifyNoInteractions(reporteCache);
   }
 
   // ---------- OBTENER ----------
@@ -256,4 +331,35 @@ class CuentaServiceTest {
     when(cuentaRepo.findById(77L)).thenReturn(Optional.empty());
     assertThrows(NotFoundException.class, () -> service.obtener(77L));
   }
+
+  // ---------- SALDO AL ----------
+
+  @Test
+  void saldoAl_usa_saldo_del_ultimo_movimiento_previo() {
+    OffsetDateTime at = OffsetDateTime.parse("2025-08-01T00:00:00Z");
+    Movimiento ultimo = new Movimiento();
+    ultimo.setSaldo(new BigDecimal("70.00"));
+    when(movRepo.findFirstByCuenta_IdAndFechaBeforeOrderByFechaDescIdDesc(44L, at)).thenReturn(Optional.of(ultimo));
+
+    assertEquals(0, service.saldoAl(44L, at).compareTo(new BigDecimal("70.00")));
+    verify(cuentaRepo, never()).existsById(anyLong());
+  }
+
+  @Test
+  void saldoAl_sin_movimientos_previos_es_cero() {
+    OffsetDateTime at = OffsetDateTime.parse("2025-08-01T00:00:00Z");
+    when(movRepo.findFirstByCuenta_IdAndFechaBeforeOrderByFechaDescIdDesc(44L, at)).thenReturn(Optional.empty());
+    when(cuentaRepo.existsById(44L)).thenReturn(true);
+
+    assertEquals(0, service.saldoAl(44L, at).compareTo(BigDecimal.ZERO));
+  }
+
+  @Test
+  void saldoAl_cuenta_no_existe_lanza_notfound() {
+    OffsetDateTime at = OffsetDateTime.parse("2025-08-01T00:00:00Z");
+    when(movRepo.findFirstByCuenta_IdAndFechaBeforeOrderByFechaDescIdDesc(77L, at)).thenReturn(Optional.empty());
+    when(cuentaRepo.existsById(77L)).thenReturn(false);
+
+    assertThrows(NotFoundException.class, () -> service.saldoAl(77L, at));
+  }
 }
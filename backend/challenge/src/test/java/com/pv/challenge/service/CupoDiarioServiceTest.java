@@ -0,0 +1,198 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.entity.Cliente;
+import com.pv.challenge.entity.Cuenta;
+import com.pv.challenge.entity.Movimiento;
+import com.pv.challenge.exception.BusinessException;
+import com.pv.challenge.repo.ClienteRepository;
+import com.pv.challenge.repo.CuentaRepository;
+import com.pv.challenge.repo.MovimientoRepository;
+import com.pv.challenge.repo.RetiroDiarioRepository;
+import com.pv.challenge.repo.RetiroDiarioRepository.Total;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CupoDiarioServiceTest {
+
+  private static final String ZONA = "America/Guayaquil";
+
+  private RetiroDiarioRepository repo;
+  private MovimientoRepository movRepo;
+  private CuentaRepository cuentaRepo;
+  private ClienteRepository clienteRepo;
+
+  @BeforeEach
+  void setup() {
+    repo = mock(RetiroDiarioRepository.class);
+    movRepo = mock(MovimientoRepository.class);
+    cuentaRepo = mock(CuentaRepository.class);
+    clienteRepo = mock(ClienteRepository.class);
+  }
+
+  private CupoDiarioService service(String limiteCuenta, String limiteCliente) {
+    return new CupoDiarioService(repo, movRepo, cuentaRepo, clienteRepo, mock(PlatformTransactionManager.class),
+        ZONA, new BigDecimal(limiteCuenta), new BigDecimal(limiteCliente));
+  }
+
+  private static Cuenta cuenta(long id, long clienteId) {
+    Cliente cli = new Cliente();
+    cli.setId(clienteId);
+    Cuenta c = new Cuenta();
+    c.setId(id);
+    c.setCliente(cli);
+    return c;
+  }
+
+  private static Total total(long id, String total) {
+    Total t = mock(Total.class);
+    when(t.getId()).thenReturn(id);
+    when(t.getTotal()).thenReturn(new BigDecimal(total));
+    return t;
+  }
+
+  @Test
+  void dia_esElDiaLocalDeLaZonaConfigurada() {
+    CupoDiarioService s = service("1000", "0");
+    // 02:00 UTC del 2 de agosto son las 21:00 del 1 de agosto en Guayaquil (UTC-5)
+    assertEquals(LocalDate.of(2025, 8, 1), s.dia(OffsetDateTime.parse("2025-08-02T02:00:00Z")));
+    assertEquals(LocalDate.of(2025, 8, 2), s.dia(OffsetDateTime.parse("2025-08-02T05:00:00Z")));
+  }
+
+  @Test
+  void registrarRetiro_sumaAlContadorDeCuentaYDeClienteDelDiaLocal() {
+    BigDecimal monto = new BigDecimal("200.00");
+    LocalDate dia = LocalDate.of(2025, 8, 1);
+    when(repo.sumarCuenta(eq(7L), eq(dia), eq(monto), any())).thenReturn(Optional.of(new BigDecimal("700.00")));
+    when(repo.sumarCliente(eq(70L), eq(dia), eq(monto), any())).thenReturn(Optional.of(new BigDecimal("900.00")));
+
+    service("1000", "0").registrarRetiro(7L, 70L, monto, OffsetDateTime.parse("2025-08-02T02:00:00Z"));
+
+    verify(repo).sumarCuenta(7L, dia, monto, new BigDecimal("1000"));
+    // Sin límite por cliente: el contador se mantiene con un tope que no se alcanza
+    ArgumentCaptor<BigDecimal> limite = ArgumentCaptor.forClass(BigDecimal.class);
+    verify(repo).sumarCliente(eq(70L), eq(dia), eq(monto), limite.capture());
+    assertTrue(limite.getValue().compareTo(new BigDecimal("1e15")) > 0);
+  }
+
+  @Test
+  void registrarRetiro_cupoDeCuentaExcedido() {
+    when(repo.sumarCuenta(anyLong(), any(), any(), any())).thenReturn(Optional.empty());
+
+    BusinessException ex = assertThrows(BusinessException.class,
+        () -> service("1000", "0").registrarRetiro(7L, 70L, new BigDecimal("1.00"), OffsetDateTime.now()));
+
+    assertEquals("Cupo diario excedido", ex.getMessage());
+    verify(repo, never()).sumarCliente(anyLong(), any(), any(), any());
+  }
+
+  @Test
+  void registrarRetiro_cupoDeClienteExcedido() {
+    when(repo.sumarCuenta(anyLong(), any(), any(), any())).thenReturn(Optional.of(BigDecimal.TEN));
+    when(repo.sumarCliente(anyLong(), any(), any(), any())).thenReturn(Optional.empty());
+
+    BusinessException ex = assertThrows(BusinessException.class,
+        () -> service("1000", "1500").registrarRetiro(7L, 70L, BigDecimal.TEN, OffsetDateTime.now()));
+
+    assertEquals("Cupo diario del cliente excedido", ex.getMessage());
+    verify(repo).sumarCliente(eq(70L), any(), eq(BigDecimal.TEN), eq(new BigDecimal("1500")));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void bloquear_leeLasCuentasYBloqueaLosClientesEnOrden() {
+    Cuenta c1 = cuenta(1L, 20L);
+    Cuenta c2 = cuenta(2L, 10L);
+    Cuenta c3 = cuenta(3L, 20L);
+    List<Total> cuentas = Collections.singletonList(total(1L, "80.00"));
+    List<Total> clientes = Collections.singletonList(total(20L, "130.00"));
+    when(repo.totalesCuentas(anyCollection(), any())).thenReturn(cuentas);
+    when(repo.bloquearClientes(anyCollection(), any())).thenReturn(clientes);
+
+    CupoDiarioService.Cupos cupos = service("100", "150").bloquear(Arrays.asList(c1, c2, c3), OffsetDateTime.now());
+
+    ArgumentCaptor<Collection<Long>> ids = ArgumentCaptor.forClass(Collection.class);
+    InOrder orden = inOrder(repo);
+    orden.verify(repo).totalesCuentas(anyCollection(), any());
+    orden.verify(repo).crearClientes(ids.capture(), any());
+    orden.verify(repo).bloquearClientes(anyCollection(), any());
+    assertEquals(Arrays.asList(10L, 20L), new ArrayList<>(ids.getValue()));
+
+    assertEquals("Cupo diario excedido", cupos.reservar(c1, new BigDecimal("30.00")));
+    assertEquals("Cupo diario del cliente excedido", cupos.reservar(c3, new BigDecimal("30.00")));
+    assertNull(cupos.reservar(c3, new BigDecimal("20.00")));      // cliente 20 en 150
+    assertEquals("Cupo diario del cliente excedido", cupos.reservar(c1, new BigDecimal("0.01")));
+    assertNull(cupos.reservar(c2, new BigDecimal("100.00")));     // cliente 10 sin retiros
+  }
+
+  @Test
+  void bloquear_sinCuentasNoConsulta() {
+    service("100", "0").bloquear(Collections.<Cuenta>emptyList(), OffsetDateTime.now());
+    verifyNoInteractions(repo);
+  }
+
+  @Test
+  void acumular_soloRetiros_despuesDelFlush() {
+    Movimiento dep = new Movimiento();
+    dep.setId(1L);
+    dep.setTipo("DEPOSITO");
+    Movimiento ret = new Movimiento();
+    ret.setId(2L);
+    ret.setTipo("RETIRO");
+
+    service("100", "0").acumular(Arrays.asList(dep, ret));
+
+    InOrder orden = inOrder(movRepo, repo);
+    orden.verify(movRepo).flush();
+    orden.verify(repo).acumularCuentas(Collections.singletonList(2L), ZONA);
+    orden.verify(repo).acumularClientes(Collections.singletonList(2L), ZONA);
+  }
+
+  @Test
+  void acumular_sinRetirosNoHaceNada() {
+    Movimiento dep = new Movimiento();
+    dep.setTipo("DEPOSITO");
+    service("100", "0").acumular(Collections.singletonList(dep));
+    verifyNoInteractions(movRepo, repo);
+  }
+
+  @Test
+  void reconstruir_porPaginasDeClientesConSusCuentasBloqueadas() {
+    LocalDate dia = LocalDate.of(2025, 8, 1);
+    List<Long> pagina = Arrays.asList(5L, 6L);
+    List<Long> cuentas = Arrays.asList(50L, 60L, 61L);
+    when(clienteRepo.idsDespuesDe(eq(0L), any(Pageable.class))).thenReturn(pagina);
+    when(cuentaRepo.idsPorClientes(pagina)).thenReturn(cuentas);
+
+    int n = service("100", "0").reconstruir(dia);
+
+    assertEquals(2, n);
+    InOrder orden = inOrder(cuentaRepo, repo);
+    orden.verify(cuentaRepo).bloquearPorIds(cuentas);
+    orden.verify(repo).borrarCuentas(cuentas, dia);
+    // El día local completo: de medianoche a medianoche en Guayaquil
+    orden.verify(repo).reconstruirCuentas(cuentas, OffsetDateTime.parse("2025-08-01T00:00:00-05:00"),
+        OffsetDateTime.parse("2025-08-02T00:00:00-05:00"), ZONA);
+    orden.verify(repo).borrarClientes(pagina, dia);
+    orden.verify(repo).reconstruirClientes(pagina, dia);
+    // Página incompleta: no hay más clientes
+    verify(clienteRepo, times(1)).idsDespuesDe(anyLong(), any(Pageable.class));
+  }
+}
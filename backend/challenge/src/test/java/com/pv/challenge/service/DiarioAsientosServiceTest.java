@@ -0,0 +1,230 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.MovimientoDtos.AcuseDiario;
+import com.pv.challenge.dto.MovimientoDtos.EstadoDiario;
+import com.pv.challenge.dto.MovimientoDtos.LoteResponse;
+import com.pv.challenge.dto.MovimientoDtos.OperacionLote;
+import com.pv.challenge.dto.MovimientoDtos.ResultadoLote;
+import com.pv.challenge.exception.BusinessException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class DiarioAsientosServiceTest {
+
+  private static final OffsetDateTime FECHA = OffsetDateTime.of(2025, 3, 1, 10, 0, 0, 123, ZoneOffset.UTC);
+
+  @TempDir
+  Path dir;
+
+  private MovimientoLoteService loteService;
+  private JdbcTemplate jdbc;
+  private DiarioAsientosService service;
+  private final List<OperacionLote> aplicadas = new CopyOnWriteArrayList<>();
+
+  @BeforeEach
+  void setup() {
+    loteService = mock(MovimientoLoteService.class);
+    jdbc = mock(JdbcTemplate.class);
+    when(loteService.registrar(anyList(), anyList())).thenAnswer(inv -> {
+      List<OperacionLote> ops = inv.getArgument(0);
+      aplicadas.addAll(ops);
+      LoteResponse r = new LoteResponse();
+      for (int i = 0; i < ops.size(); i++) {
+        ResultadoLote res = new ResultadoLote();
+        res.indice = i;
+        res.ok = ops.get(i).cuentaId != 99L;
+        res.error = res.ok ? null : MovimientoLoteService.cuentaInexistente(99L);
+        r.resultados.add(res);
+      }
+      return r;
+    });
+  }
+
+  @AfterEach
+  void cerrar() throws InterruptedException {
+    if (service != null) service.cerrar();
+  }
+
+  private DiarioAsientosService servicio(boolean activo, long aplicada) {
+    when(jdbc.queryForObject(anyString(), eq(Long.class), any())).thenReturn(aplicada);
+    return new DiarioAsientosService(loteService, jdbc, mock(PlatformTransactionManager.class), activo,
+        dir.toString(), "siempre", 10, 4096, 100, "nodo-1");
+  }
+
+  private static List<Long> secuencias(DiarioAsientos d) {
+    List<Long> s = new ArrayList<>();
+    DiarioAsientos.Entrada e;
+    while ((e = d.leer()) != null) s.add(e.secuencia);
+    return s;
+  }
+
+  private List<Path> archivos() throws Exception {
+    try (Stream<Path> s = Files.list(dir)) {
+      return s.sorted().collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  void diario_anotaYLeeEnOrden_conservandoLosDatos() {
+    try (DiarioAsientos d = new DiarioAsientos(dir, 4096, 0)) {
+      assertEquals(1, d.anotar(7L, FECHA, new BigDecimal("10.50"), "pago"));
+      assertEquals(2, d.anotar(8L, FECHA, new BigDecimal("0.01"), null));
+
+      DiarioAsientos.Entrada e = d.leer();
+      assertEquals(1, e.secuencia);
+      assertEquals(7L, e.cuentaId);
+      assertEquals(FECHA, e.fecha);
+      assertEquals(new BigDecimal("10.50"), e.monto);
+      assertEquals("pago", e.ref);
+      assertNull(d.leer().ref);
+      assertNull(d.leer());
+    }
+  }
+
+  @Test
+  void diario_alReabrir_sigueDespuesDeLoAplicado() {
+    try (DiarioAsientos d = new DiarioAsientos(dir, 4096, 0)) {
+      for (int i = 0; i < 5; i++) d.anotar(1L, FECHA, BigDecimal.ONE, null);
+    }
+    try (DiarioAsientos d = new DiarioAsientos(dir, 4096, 3)) {
+      assertEquals(5, d.publicada());
+      assertEquals(6, d.anotar(1L, FECHA, BigDecimal.ONE, null));
+      assertEquals(Arrays.asList(4L, 5L, 6L), secuencias(d));
+    }
+  }
+
+  @Test
+  void diario_colaCortada_seDescartaYSeReescribe() throws Exception {
+    try (DiarioAsientos d = new DiarioAsientos(dir, 4096, 0)) {
+      for (int i = 0; i < 3; i++) d.anotar(1L, FECHA, BigDecimal.ONE, "r" + i);
+    }
+    // Corrompe un byte del monto de la última entrada, como una escritura a medias
+    Path seg = archivos().get(0);
+    try (RandomAccessFile f = new RandomAccessFile(seg.toFile(), "rw")) {
+      int largo = 8 + 8 + 8 + 4 + 2 + 1 + 2 + 2; // monto "1", ref "rN"
+      long pos = 2L * (8 + largo) + 8 + 8 + 8 + 8 + 4 + 2;
+      f.seek(pos);
+      f.write('9');
+    }
+    try (DiarioAsientos d = new DiarioAsientos(dir, 4096, 0)) {
+      assertEquals(2, d.publicada());
+      assertEquals(3, d.anotar(1L, FECHA, BigDecimal.TEN, null));
+      assertEquals(Arrays.asList(1L, 2L, 3L), secuencias(d));
+    }
+  }
+
+  @Test
+  void diario_rotaSegmentos_yLiberaLosAplicados() throws Exception {
+    try (DiarioAsientos d = new DiarioAsientos(dir, 256, 0)) {
+      for (int i = 0; i < 20; i++) d.anotar(1L, FECHA, BigDecimal.ONE, null);
+      assertTrue(d.segmentos() > 2);
+      int antes = archivos().size();
+
+      assertEquals(20, secuencias(d).size());
+      d.liberarHasta(20);
+      assertEquals(1, d.segmentos());
+      assertTrue(archivos().size() < antes);
+    }
+    try (DiarioAsientos d = new DiarioAsientos(dir, 256, 20)) {
+      assertNull(d.leer());
+      assertEquals(21, d.anotar(1L, FECHA, BigDecimal.ONE, null));
+    }
+  }
+
+  @Test
+  void diario_todoAplicado_empiezaDespuesDeLaBase() throws Exception {
+    try (DiarioAsientos d = new DiarioAsientos(dir, 4096, 0)) {
+      d.anotar(1L, FECHA, BigDecimal.ONE, null);
+    }
+    try (DiarioAsientos d = new DiarioAsientos(dir, 4096, 100)) {
+      assertEquals(100, d.publicada());
+      assertNull(d.leer());
+      assertEquals(101, d.anotar(1L, FECHA, BigDecimal.ONE, null));
+    }
+    assertEquals(1, archivos().size());
+  }
+
+  @Test
+  void depositar_confirmaDurableYElAplicadorLoPasaALaBase() throws Exception {
+    service = servicio(true, 0);
+    service.iniciar();
+
+    AcuseDiario a = service.depositar(5L, new BigDecimal("20.00"), "nomina");
+    assertEquals(1, a.secuencia);
+    assertTrue(a.durable);
+
+    esperarAplicada(1);
+    assertEquals(1, aplicadas.size());
+    assertEquals("DEPOSITO", aplicadas.get(0).tipo);
+    assertEquals(5L, aplicadas.get(0).cuentaId);
+    verify(jdbc).update(contains("UPDATE diarios_aplicados"), eq(1L), eq("nodo-1"), eq(1L));
+    EstadoDiario e = service.estado();
+    assertEquals(0, e.pendientes);
+    assertEquals(0, e.atrasoMs);
+  }
+
+  @Test
+  void iniciar_aplicaSoloLoPendienteDespuesDeLaBase() throws Exception {
+    try (DiarioAsientos d = new DiarioAsientos(dir, 4096, 0)) {
+      for (long c = 1; c <= 3; c++) d.anotar(c, FECHA, BigDecimal.ONE, null);
+    }
+    service = servicio(true, 1);
+    service.iniciar();
+
+    esperarAplicada(3);
+    assertEquals(Arrays.asList(2L, 3L), aplicadas.stream().map(o -> o.cuentaId).collect(Collectors.toList()));
+  }
+
+  @Test
+  void rechazoDeLaBase_seCuentaYElDiarioAvanza() throws Exception {
+    service = servicio(true, 0);
+    service.iniciar();
+    service.depositar(99L, BigDecimal.ONE, null);
+    service.depositar(1L, BigDecimal.ONE, null);
+
+    esperarAplicada(2);
+    assertEquals(1, service.estado().rechazados);
+  }
+
+  @Test
+  void inactivo_oMontoInvalido_rechaza() {
+    service = servicio(false, 0);
+    service.iniciar();
+    assertThrows(BusinessException.class, () -> service.depositar(1L, BigDecimal.ONE, null));
+    assertFalse(service.estado().activo);
+
+    DiarioAsientosService activo = servicio(true, 0);
+    BusinessException ex = assertThrows(BusinessException.class, () -> activo.depositar(1L, BigDecimal.ZERO, null));
+    assertEquals("El monto debe ser mayor a 0.", ex.getMessage());
+  }
+
+  private void esperarAplicada(long secuencia) throws InterruptedException {
+    long hasta = System.currentTimeMillis() + 5_000;
+    while (service.estado().aplicada < secuencia && System.currentTimeMillis() < hasta) Thread.sleep(5);
+    assertEquals(secuencia, service.estado().aplicada);
+  }
+}
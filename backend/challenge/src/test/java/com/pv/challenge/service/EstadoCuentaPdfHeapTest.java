@@ -0,0 +1,58 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.ReporteLineaDtos;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Un estado de cuenta de 1M líneas con heap chico. Corre en su propia ejecución de
+ * surefire con -Xmx64m (ver pom.xml): si EstadoCuentaPdf retuviera las filas o el
+ * documento, falla con OutOfMemoryError.
+ */
+class EstadoCuentaPdfHeapTest {
+
+  private static final int LINEAS = 1_000_000;
+
+  // Descarta los bytes, solo los cuenta
+  private static final class Contador extends OutputStream {
+    long bytes;
+    @Override public void write(int b) { bytes++; }
+    @Override public void write(byte[] b, int off, int len) { bytes += len; }
+  }
+
+  @Test
+  void un_millon_de_lineas_con_heap_acotado() throws Exception {
+    Contador out = new Contador();
+    LocalDateTime inicio = LocalDateTime.of(2025, 1, 1, 0, 0);
+    BigDecimal saldo = new BigDecimal("1000.00");
+    BigDecimal uno = BigDecimal.ONE;
+
+    try (EstadoCuentaPdf pdf = new EstadoCuentaPdf(out, "Heap", 1L,
+        LocalDate.of(2025, 1, 1), LocalDate.of(2025, 12, 31))) {
+      for (int i = 0; i < LINEAS; i++) {
+        ReporteLineaDtos r = new ReporteLineaDtos();
+        r.setFecha(inicio.plusSeconds(i * 30L));
+        r.setCliente("Heap");
+        r.setNumeroCuenta("001-" + (i % 10));
+        r.setTipoCuenta("Ahorro");
+        r.setSaldoInicial(saldo);
+        r.setEstado(true);
+        r.setMovimiento(uno);
+        r.setSaldoDisponible(saldo.add(uno));
+        pdf.agregar(r);
+      }
+      pdf.totales(new BigDecimal(LINEAS), BigDecimal.ZERO);
+    }
+
+    long maxMb = Runtime.getRuntime().maxMemory() / (1024 * 1024);
+    System.out.printf("[pdf] %d líneas, %d MB escritos, heap máximo %d MB%n",
+        LINEAS, out.bytes / (1024 * 1024), maxMb);
+    assertTrue(out.bytes > LINEAS, "Debe haber escrito el documento completo");
+  }
+}
@@ -0,0 +1,56 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.ReporteLineaDtos;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Estado de cuenta XLSX de 1,2M líneas con -Xmx64m (ver pom.xml): pasa el límite de
+ * filas de una hoja, así que también recorre el cambio a la segunda hoja. Si la
+ * salida retuviera filas o strings compartidos, falla con OutOfMemoryError.
+ */
+class EstadoCuentaXlsxHeapTest {
+
+  private static final int LINEAS = 1_200_000;
+
+  // Descarta los bytes, solo los cuenta
+  private static final class Contador extends OutputStream {
+    long bytes;
+    @Override public void write(int b) { bytes++; }
+    @Override public void write(byte[] b, int off, int len) { bytes += len; }
+  }
+
+  @Test
+  void mas_filas_que_una_hoja_con_heap_acotado() throws Exception {
+    Contador out = new Contador();
+    LocalDateTime inicio = LocalDateTime.of(2025, 1, 1, 0, 0);
+    BigDecimal saldo = new BigDecimal("1000.00");
+    BigDecimal uno = BigDecimal.ONE;
+
+    try (EstadoCuentaXlsx xlsx = new EstadoCuentaXlsx(out)) {
+      for (int i = 0; i < LINEAS; i++) {
+        ReporteLineaDtos r = new ReporteLineaDtos();
+        r.setFecha(inicio.plusSeconds(i * 30L));
+        r.setCliente("Heap");
+        r.setNumeroCuenta("001-" + (i % 10));
+        r.setTipoCuenta("Ahorro");
+        r.setSaldoInicial(saldo);
+        r.setEstado(true);
+        r.setMovimiento(uno);
+        r.setSaldoDisponible(saldo.add(uno));
+        xlsx.agregar(r);
+      }
+      xlsx.totales(new BigDecimal(LINEAS), BigDecimal.ZERO);
+    }
+
+    long maxMb = Runtime.getRuntime().maxMemory() / (1024 * 1024);
+    System.out.printf("[xlsx] %d líneas, %d MB escritos, heap máximo %d MB%n",
+        LINEAS, out.bytes / (1024 * 1024), maxMb);
+    assertTrue(out.bytes > 0, "Debe haber escrito el libro completo");
+  }
+}
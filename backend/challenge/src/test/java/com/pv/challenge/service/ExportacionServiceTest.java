@@ -0,0 +1,235 @@
+package com.pv.challenge.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pv.challenge.dto.ExportacionDtos.ExportacionResponse;
+import com.pv.challenge.exception.BusinessException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ExportacionServiceTest {
+
+  @TempDir Path dir;
+  private JdbcTemplate jdbc;
+  private Connection origen;
+  private ResultSet instantanea;
+  private ExportacionService service;
+  private final List<Object[]> tabla = new ArrayList<>();
+
+  @BeforeEach
+  void setup() throws Exception {
+    // ids 1..10 con un hueco (5), como deja la secuencia con pool
+    for (long id = 1; id <= 10; id++) {
+      if (id == 5) continue;
+      String ref = id == 3 ? "pago, \"urgente\"" : id == 4 ? null : "ref" + id;
+      tabla.add(new Object[] {id, 100 + id % 2, id % 2 == 0 ? "RETIRO" : "DEPOSITO", id + ".00", "50.00", ref,
+          OffsetDateTime.parse("2025-08-01T10:00:00Z").plusMinutes(id)});
+    }
+    jdbc = mock(JdbcTemplate.class);
+    // Transacción de origen: publica el snapshot y el rango de ids
+    instantanea = mock(ResultSet.class);
+    when(instantanea.next()).thenReturn(true);
+    when(instantanea.getString(1)).thenReturn("00000003-0000001B-1");
+    when(instantanea.getLong(2)).thenReturn(1L);
+    when(instantanea.getLong(3)).thenReturn(10L);
+    PreparedStatement consultaOrigen = mock(PreparedStatement.class);
+    when(consultaOrigen.executeQuery()).thenReturn(instantanea);
+    origen = mock(Connection.class);
+    when(origen.prepareStatement(ExportacionService.INSTANTANEA)).thenReturn(consultaOrigen);
+    DataSource ds = mock(DataSource.class);
+    when(ds.getConnection()).thenReturn(origen);
+    when(jdbc.getDataSource()).thenReturn(ds);
+    // Simula el cursor: entrega al handler las filas del rango pedido, en orden de id
+    doAnswer(inv -> {
+      long[] rango = new long[2];
+      PreparedStatement ps = mock(PreparedStatement.class);
+      doAnswer(a -> rango[a.<Integer>getArgument(0) - 1] = a.getArgument(1)).when(ps).setLong(anyInt(), anyLong());
+      Connection con = mock(Connection.class);
+      when(con.prepareStatement(ExportacionService.CONSULTA)).thenReturn(ps);
+      inv.<PreparedStatementCreator>getArgument(0).createPreparedStatement(con);
+      verify(ps).setFetchSize(500);
+
+      RowCallbackHandler h = inv.getArgument(1);
+      for (Object[] f : tabla) {
+        long id = (Long) f[0];
+        if (id >= rango[0] && id <= rango[1]) h.processRow(fila(f));
+      }
+      return null;
+    }).when(jdbc).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+    service = servicio(2, 2, 64, 60);
+  }
+
+  private ExportacionService servicio(int hilos, int partesPorHilo, int cola, long retencionMinutos) {
+    return new ExportacionService(jdbc, mock(PlatformTransactionManager.class), dir.toString(),
+        hilos, partesPorHilo, 500, cola, retencionMinutos);
+  }
+
+  @AfterEach
+  void cerrar() {
+    service.cerrar();
+  }
+
+  private static ResultSet fila(Object[] f) throws Exception {
+    ResultSet rs = mock(ResultSet.class);
+    when(rs.getLong(1)).thenReturn((Long) f[0]);
+    when(rs.getLong(2)).thenReturn((Long) f[1]);
+    when(rs.getString(3)).thenReturn((String) f[2]);
+    when(rs.getString(4)).thenReturn((String) f[3]);
+    when(rs.getString(5)).thenReturn((String) f[4]);
+    when(rs.getString(6)).thenReturn((String) f[5]);
+    when(rs.getObject(7, OffsetDateTime.class)).thenReturn((OffsetDateTime) f[6]);
+    return rs;
+  }
+
+  private ExportacionResponse esperar(String id) throws InterruptedException {
+    long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    ExportacionResponse r = service.estado(id);
+    while ("EN_PROCESO".equals(r.estado) && System.nanoTime() < limite) {
+      Thread.sleep(10);
+      r = service.estado(id);
+    }
+    return r;
+  }
+
+  private List<String> lineas(ExportacionResponse r, int parte) throws Exception {
+    Path p = service.archivo(r.id, parte);
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(
+        new GZIPInputStream(Files.newInputStream(p)), StandardCharsets.UTF_8))) {
+      return in.lines().collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  void csv_parte_la_tabla_en_rangos_de_id_y_comprime_cada_parte() throws Exception {
+    ExportacionResponse r = esperar(service.iniciar("csv").id);
+
+    assertEquals("LISTO", r.estado);
+    assertEquals(9, r.filas);
+    // 2 hilos x 2 partes sobre ids 1..10
+    assertEquals(4, r.partes.size());
+    assertEquals(1, r.partes.get(0).desdeId);
+    assertEquals(3, r.partes.get(0).hastaId);
+    assertEquals(10, r.partes.get(3).hastaId);
+
+    List<String> p0 = lineas(r, 0);
+    assertEquals("id,cuentaId,tipo,valor,saldo,referencia,fecha", p0.get(0));
+    assertEquals("1,101,DEPOSITO,1.00,50.00,ref1,2025-08-01T10:01Z", p0.get(1));
+    assertEquals("3,101,DEPOSITO,3.00,50.00,\"pago, \"\"urgente\"\"\",2025-08-01T10:03Z", p0.get(3));
+    // Parte 1 (ids 4..6): sin el 5, referencia nula como campo vacío
+    List<String> p1 = lineas(r, 1);
+    assertEquals(3, p1.size());
+    assertEquals("4,100,RETIRO,4.00,50.00,,2025-08-01T10:04Z", p1.get(1));
+  }
+
+  @Test
+  void ndjson_una_linea_json_por_movimiento() throws Exception {
+    ExportacionResponse r = esperar(service.iniciar("ndjson").id);
+    assertEquals("LISTO", r.estado);
+
+    ObjectMapper om = new ObjectMapper();
+    List<JsonNode> filas = new ArrayList<>();
+    for (int i = 0; i < r.partes.size(); i++) {
+      for (String l : lineas(r, i)) filas.add(om.readTree(l));
+    }
+    assertEquals(9, filas.size());
+    JsonNode tres = filas.get(2);
+    assertEquals(3, tres.get("id").asLong());
+    assertEquals("pago, \"urgente\"", tres.get("referencia").asText());
+    assertEquals(3.0, tres.get("valor").asDouble());
+    // El monto sale tal cual lo da la base (sin pasar por double)
+    assertTrue(lineas(r, 0).get(2).contains("\"valor\":3.00,"));
+    assertTrue(filas.get(3).get("referencia").isNull());
+  }
+
+  @Test
+  void todas_las_partes_leen_el_snapshot_de_la_transaccion_de_origen() throws Exception {
+    ExportacionResponse r = esperar(service.iniciar("csv").id);
+    assertEquals("LISTO", r.estado);
+
+    verify(origen).setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+    verify(origen).setAutoCommit(false);
+    verify(jdbc, times(r.partes.size())).execute("SET TRANSACTION SNAPSHOT '00000003-0000001B-1'");
+    // Cerrada una sola vez, después de que la adoptaron todas las partes
+    verify(origen).rollback();
+    verify(origen).close();
+  }
+
+  @Test
+  void tabla_vacia_termina_sin_partes() throws Exception {
+    when(instantanea.wasNull()).thenReturn(true);
+    ExportacionResponse r = service.iniciar("csv");
+    assertEquals("LISTO", r.estado);
+    assertEquals(0, r.partes.size());
+    verify(origen).close();
+  }
+
+  @Test
+  void cola_llena_rechaza_y_libera_la_transaccion_de_origen() throws Exception {
+    service.cerrar();
+    service = servicio(1, 3, 1, 60);
+    // El único hilo queda con la primera parte, la segunda ocupa la cola y la tercera no entra
+    CountDownLatch soltar = new CountDownLatch(1);
+    doAnswer(inv -> soltar.await(10, TimeUnit.SECONDS))
+        .when(jdbc).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+    assertThrows(RejectedExecutionException.class, () -> service.iniciar("csv"));
+    soltar.countDown();
+    // La transacción de origen no queda abierta esperando partes que no se encolaron
+    verify(origen, timeout(10_000)).close();
+  }
+
+  @Test
+  void exportaciones_vencidas_se_borran_con_sus_archivos() throws Exception {
+    service.cerrar();
+    service = servicio(2, 2, 64, 0);
+    ExportacionResponse vieja = esperar(service.iniciar("csv").id);
+    assertEquals("LISTO", vieja.estado);
+    Path parte = service.archivo(vieja.id, 0);
+    assertTrue(Files.exists(parte));
+    // Directorio de una ejecución anterior, fuera del mapa
+    Path huerfano = Files.createDirectories(dir.resolve("exportaciones").resolve("anterior"));
+    Files.write(huerfano.resolve("movimientos-000.csv.gz"), new byte[] {1});
+    Files.setLastModifiedTime(huerfano, java.nio.file.attribute.FileTime.fromMillis(0));
+
+    Thread.sleep(5);
+    esperar(service.iniciar("csv").id);
+
+    assertThrows(com.pv.challenge.exception.NotFoundException.class, () -> service.estado(vieja.id));
+    assertFalse(Files.exists(parte.getParent()));
+    assertFalse(Files.exists(huerfano));
+  }
+
+  @Test
+  void formato_invalido_lanza_business() {
+    assertThrows(BusinessException.class, () -> service.iniciar("xml"));
+  }
+}
@@ -0,0 +1,231 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.MovimientoDtos.MovimientoResponse;
+import com.pv.challenge.entity.ClaveIdempotencia;
+import com.pv.challenge.entity.Cuenta;
+import com.pv.challenge.entity.Movimiento;
+import com.pv.challenge.exception.BusinessException;
+import com.pv.challenge.repo.ClaveIdempotenciaRepository;
+import com.pv.challenge.repo.MovimientoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class IdempotenciaServiceTest {
+
+  private static final List<Long> CUENTAS = Collections.singletonList(1L);
+
+  private ClaveIdempotenciaRepository repo;
+  private MovimientoRepository movRepo;
+  private IdempotenciaService service;
+
+  @BeforeEach
+  void setup() {
+    repo = mock(ClaveIdempotenciaRepository.class);
+    movRepo = mock(MovimientoRepository.class);
+    service = service(100);
+  }
+
+  private IdempotenciaService service(int maxEntradas) {
+    BloqueoCuentas bloqueo = new BloqueoCuentas(mock(CacheSegundoNivel.class), "atomica", 3, 0, 0);
+    return new IdempotenciaService(repo, movRepo, bloqueo, mock(PlatformTransactionManager.class), 24, maxEntradas, 0);
+  }
+
+  private static Movimiento movimiento(long id, String saldo) {
+    Cuenta c = new Cuenta();
+    c.setId(1L);
+    Movimiento m = new Movimiento();
+    m.setId(id);
+    m.setCuenta(c);
+    m.setTipo("DEPOSITO");
+    m.setValor(new BigDecimal("10.00"));
+    m.setSaldo(new BigDecimal(saldo));
+    return m;
+  }
+
+  private static Supplier<Movimiento> contando(AtomicInteger n, Movimiento m) {
+    return () -> {
+      n.incrementAndGet();
+      return m;
+    };
+  }
+
+  @Test
+  void huella_normalizaMontos() {
+    assertEquals(IdempotenciaService.huella(1L, new BigDecimal("10"), "x"),
+        IdempotenciaService.huella(1L, new BigDecimal("10.00"), "x"));
+    assertNotEquals(IdempotenciaService.huella(1L, new BigDecimal("10"), "x"),
+        IdempotenciaService.huella(1L, new BigDecimal("11"), "x"));
+    assertNotEquals(IdempotenciaService.huella(1L, new BigDecimal("10"), null),
+        IdempotenciaService.huella(1L, new BigDecimal("10"), ""));
+  }
+
+  @Test
+  void primeraVez_reservaEjecutaYCompleta_yElReintentoSaleDeMemoria() {
+    String h = IdempotenciaService.huella(1L, BigDecimal.TEN, null);
+    when(repo.reservar(eq("k1"), eq("DEPOSITO"), eq(h), any(), any())).thenReturn(Optional.of("k1"));
+    AtomicInteger asientos = new AtomicInteger();
+    Supplier<Movimiento> asiento = contando(asientos, movimiento(50L, "110.00"));
+
+    MovimientoResponse r1 = service.ejecutar("k1", "DEPOSITO", h, CUENTAS, asiento);
+    MovimientoResponse r2 = service.ejecutar("k1", "DEPOSITO", h, CUENTAS, asiento);
+
+    assertEquals(1, asientos.get());
+    assertEquals(50L, r1.getId());
+    assertSame(r1, r2);
+    verify(repo).completar("k1", 50L);
+    verify(repo, times(1)).reservar(any(), any(), any(), any(), any());
+  }
+
+  @Test
+  void claveConfirmadaEnLaTabla_devuelveElMovimientoOriginalSinAsiento() {
+    String h = IdempotenciaService.huella(1L, BigDecimal.TEN, null);
+    ClaveIdempotencia c = new ClaveIdempotencia();
+    c.setClave("k1");
+    c.setOperacion("DEPOSITO");
+    c.setHuella(h);
+    c.setMovimientoId(50L);
+    c.setExpiraEn(OffsetDateTime.now().plusHours(1));
+    when(repo.reservar(any(), any(), any(), any(), any())).thenReturn(Optional.empty());
+    when(repo.findById("k1")).thenReturn(Optional.of(c));
+    when(movRepo.findById(50L)).thenReturn(Optional.of(movimiento(50L, "110.00")));
+    AtomicInteger asientos = new AtomicInteger();
+
+    MovimientoResponse r = service.ejecutar("k1", "DEPOSITO", h, CUENTAS, contando(asientos, null));
+
+    assertEquals(0, asientos.get());
+    assertEquals(0, new BigDecimal("110.00").compareTo(r.getSaldo()));
+    verify(repo, never()).completar(any(), any());
+  }
+
+  @Test
+  void optimista_conflictoDeVersion_reintentaReservaYAsientoEnUnaTransaccionNueva() {
+    // La transacción de la reserva queda activa mientras corre el asiento, como en la base
+    PlatformTransactionManager txManager = mock(PlatformTransactionManager.class);
+    when(txManager.getTransaction(any())).thenAnswer(inv -> {
+      TransactionSynchronizationManager.setActualTransactionActive(true);
+      return null;
+    });
+    Answer<Void> fin = inv -> {
+      TransactionSynchronizationManager.setActualTransactionActive(false);
+      return null;
+    };
+    doAnswer(fin).when(txManager).commit(any());
+    doAnswer(fin).when(txManager).rollback(any());
+    CacheSegundoNivel cache = mock(CacheSegundoNivel.class);
+    BloqueoCuentas bloqueo = new BloqueoCuentas(cache, "optimista", 3, 0, 0);
+    IdempotenciaService s = new IdempotenciaService(repo, movRepo, bloqueo, txManager, 24, 100, 0);
+    String h = IdempotenciaService.huella(1L, BigDecimal.TEN, null);
+    when(repo.reservar(eq("k1"), eq("DEPOSITO"), eq(h), any(), any())).thenReturn(Optional.of("k1"));
+    AtomicInteger intentos = new AtomicInteger();
+
+    // Como MovimientoService con la estrategia optimista: el conflicto sale del asiento
+    MovimientoResponse r = s.ejecutar("k1", "DEPOSITO", h, CUENTAS, () -> bloqueo.reintentar(CUENTAS, () -> {
+      if (intentos.incrementAndGet() == 1) throw new ObjectOptimisticLockingFailureException(Cuenta.class, 1L);
+      return movimiento(50L, "110.00");
+    }));
+
+    assertEquals(50L, r.getId());
+    assertEquals(2, intentos.get());
+    verify(txManager).rollback(any());
+    verify(txManager).commit(any());
+    verify(repo, times(2)).reservar(eq("k1"), eq("DEPOSITO"), eq(h), any(), any());
+    verify(repo).completar("k1", 50L);
+    verify(cache).cuentaModificada(1L);
+    assertFalse(TransactionSynchronizationManager.isActualTransactionActive());
+  }
+
+  @Test
+  void mismaClaveConOtrosParametros_rechaza() {
+    when(repo.reservar(any(), any(), any(), any(), any())).thenReturn(Optional.of("k1"));
+    service.ejecutar("k1", "DEPOSITO", IdempotenciaService.huella(1L, BigDecimal.TEN, null), CUENTAS,
+        () -> movimiento(50L, "110.00"));
+
+    BusinessException ex = assertThrows(BusinessException.class, () -> service.ejecutar("k1", "DEPOSITO",
+        IdempotenciaService.huella(1L, BigDecimal.ONE, null), CUENTAS, () -> movimiento(51L, "111.00")));
+    assertEquals("La Idempotency-Key ya se usó con otros parámetros.", ex.getMessage());
+    assertThrows(BusinessException.class, () -> service.ejecutar("k1", "RETIRO",
+        IdempotenciaService.huella(1L, BigDecimal.TEN, null), CUENTAS, () -> movimiento(51L, "100.00")));
+  }
+
+  @Test
+  void asientoFallido_noQuedaEnMemoria_yElReintentoVuelveAIntentar() {
+    when(repo.reservar(any(), any(), any(), any(), any())).thenReturn(Optional.of("k1"));
+    String h = IdempotenciaService.huella(1L, BigDecimal.TEN, null);
+
+    assertThrows(BusinessException.class, () -> service.ejecutar("k1", "RETIRO", h, CUENTAS, () -> {
+      throw new BusinessException("Saldo no disponible.");
+    }));
+    assertEquals(0, service.enMemoria());
+
+    AtomicInteger asientos = new AtomicInteger();
+    service.ejecutar("k1", "RETIRO", h, CUENTAS, contando(asientos, movimiento(50L, "90.00")));
+    assertEquals(1, asientos.get());
+  }
+
+  @Test
+  void transferencia_sinRespuesta_noCompletaMovimiento() {
+    when(repo.reservar(any(), any(), any(), any(), any())).thenReturn(Optional.of("t1"));
+    String h = IdempotenciaService.huella(1L, 2L, BigDecimal.TEN, null);
+
+    assertNull(service.ejecutar("t1", "TRANSFERENCIA", h, CUENTAS, () -> null));
+    assertNull(service.ejecutar("t1", "TRANSFERENCIA", h, CUENTAS, () -> fail("no debe repetir la transferencia")));
+    verify(repo, never()).completar(any(), any());
+  }
+
+  @Test
+  void memoriaAcotada_desalojaLaMenosUsada() {
+    IdempotenciaService s = service(2);
+    when(repo.reservar(any(), any(), any(), any(), any())).thenAnswer(i -> Optional.of(i.getArgument(0)));
+    String h = IdempotenciaService.huella(1L, BigDecimal.TEN, null);
+    s.ejecutar("a", "DEPOSITO", h, CUENTAS, () -> movimiento(1L, "10.00"));
+    s.ejecutar("b", "DEPOSITO", h, CUENTAS, () -> movimiento(2L, "20.00"));
+    s.ejecutar("a", "DEPOSITO", h, CUENTAS, () -> fail("a está en memoria"));
+    s.ejecutar("c", "DEPOSITO", h, CUENTAS, () -> movimiento(3L, "30.00"));
+
+    assertEquals(2, s.enMemoria());
+    // "b" salió de memoria: vuelve a la tabla, donde ya está confirmada
+    doReturn(Optional.empty()).when(repo).reservar(eq("b"), any(), any(), any(), any());
+    ClaveIdempotencia c = new ClaveIdempotencia();
+    c.setOperacion("DEPOSITO");
+    c.setHuella(h);
+    c.setMovimientoId(2L);
+    c.setExpiraEn(OffsetDateTime.now().plusHours(1));
+    when(repo.findById("b")).thenReturn(Optional.of(c));
+    when(movRepo.findById(2L)).thenReturn(Optional.of(movimiento(2L, "20.00")));
+    assertEquals(2L, s.ejecutar("b", "DEPOSITO", h, CUENTAS, () -> fail("b ya fue confirmada")).getId());
+  }
+
+  @Test
+  void claveInvalida_rechazaSinConsultar() {
+    StringBuilder larga = new StringBuilder();
+    for (int i = 0; i <= IdempotenciaService.LARGO_MAXIMO; i++) larga.append('x');
+
+    assertThrows(BusinessException.class, () -> service.ejecutar("", "DEPOSITO", "h", CUENTAS, () -> null));
+    assertThrows(BusinessException.class, () -> service.ejecutar(larga.toString(), "DEPOSITO", "h", CUENTAS, () -> null));
+    verifyNoInteractions(repo);
+  }
+
+  @Test
+  void purgar_porLotesHastaVaciar() {
+    when(repo.purgarVencidas(any(), eq(1_000))).thenReturn(1_000, 1_000, 7);
+
+    assertEquals(2_007, service.purgar());
+    verify(repo, times(3)).purgarVencidas(any(), anyInt());
+  }
+}
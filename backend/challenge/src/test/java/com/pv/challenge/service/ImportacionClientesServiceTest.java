@@ -0,0 +1,232 @@
+package com.pv.challenge.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pv.challenge.dto.ClienteDtos.ErrorImportacion;
+import com.pv.challenge.dto.ClienteDtos.ImportacionResponse;
+import com.pv.challenge.entity.Cliente;
+import com.pv.challenge.entity.Persona;
+import com.pv.challenge.exception.BusinessException;
+import com.pv.challenge.repo.ClienteRepository;
+import com.pv.challenge.repo.PersonaRepository;
+import com.pv.challenge.service.ImportacionClientesService.Formato;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ImportacionClientesServiceTest {
+
+  private static final String ENCABEZADO =
+      "nombre,genero,edad,identificacion,direccion,telefono,clienteId,contrasena,estado\n";
+
+  private PersonaRepository personaRepo;
+  private ClienteRepository clienteRepo;
+  private EntityManager em;
+  private Session sesion;
+  private PlatformTransactionManager txManager;
+  private final List<Object> persistidos = new ArrayList<>();
+  private final AtomicLong ids = new AtomicLong(100);
+
+  @BeforeEach
+  void setup() {
+    personaRepo = mock(PersonaRepository.class);
+    clienteRepo = mock(ClienteRepository.class);
+    em = mock(EntityManager.class);
+    sesion = mock(Session.class);
+    txManager = mock(PlatformTransactionManager.class);
+    when(em.unwrap(Session.class)).thenReturn(sesion);
+    // persist asigna el id de la persona como lo haría la secuencia
+    doAnswer(inv -> {
+      Object e = inv.getArgument(0);
+      if (e instanceof Persona) ((Persona) e).setId(ids.incrementAndGet());
+      persistidos.add(e);
+      return null;
+    }).when(em).persist(any());
+  }
+
+  private ImportacionClientesService service(int tamanoChunk) {
+    return new ImportacionClientesService(personaRepo, clienteRepo, em, new ObjectMapper(), txManager, tamanoChunk);
+  }
+
+  private static ByteArrayInputStream cuerpo(String s) {
+    return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String fila(String identificacion, String clienteId) {
+    return "Ana Lema,Femenino,30," + identificacion + ",Quito,0999999999," + clienteId + ",clave,true\n";
+  }
+
+  private List<Cliente> clientes() {
+    List<Cliente> out = new ArrayList<>();
+    for (Object e : persistidos) if (e instanceof Cliente) out.add((Cliente) e);
+    return out;
+  }
+
+  @Test
+  void csv_insertaLasFilasValidasYReportaLasDemasPorLinea() {
+    when(clienteRepo.clienteIdsExistentes(anyCollection())).thenReturn(Collections.singletonList("tomado"));
+    String csv = ENCABEZADO +
+        "\"Pérez, José \"\"Pepe\"\"\",Masculino,41,1700000001,\"Av. Amazonas\n" +
+        "y Colón\",022000000,jperez,clave,\n" +
+        fila("1700000002", "tomado") +
+        "Luis,Masculino,abc,1700000003,Quito,0999,luis,clave,true\n" +
+        ",Femenino,20,1700000004,Quito,0999,sinnombre,clave,true\n" +
+        fila("1700000001", "otro") +
+        "\n" +
+        "Eva,Femenino,22,1700000005,Quito,0999,eva,clave,false\n";
+
+    ImportacionResponse r = service(100).importar(cuerpo(csv), Formato.CSV);
+
+    assertEquals(6, r.leidas);
+    assertEquals(2, r.importadas);
+    assertEquals(4, r.rechazadas);
+    List<Cliente> cs = clientes();
+    assertEquals(2, cs.size());
+    Persona pepe = cs.get(0).getPersona();
+    assertEquals("Pérez, José \"Pepe\"", pepe.getNombre());
+    assertEquals("Av. Amazonas\ny Colón", pepe.getDireccion());
+    assertEquals(pepe.getId(), cs.get(0).getId());
+    assertTrue(cs.get(0).getEstado());          // estado vacío: activo
+    assertFalse(cs.get(1).getEstado());
+
+    // En orden de línea aunque los rechazos del chunk se conozcan al final
+    List<ErrorImportacion> es = r.errores;
+    assertEquals(4, es.size());
+    assertEquals(4, es.get(0).linea);
+    assertEquals("El clienteId ya existe", es.get(0).error);
+    assertEquals(5, es.get(1).linea);
+    assertEquals("edad debe ser un número entero.", es.get(1).error);
+    assertEquals(6, es.get(2).linea);
+    assertEquals("nombre es requerido.", es.get(2).error);
+    assertEquals(7, es.get(3).linea);
+    assertEquals("La identificación se repite en la línea 2.", es.get(3).error);
+    assertEquals("1700000001", es.get(3).identificacion);
+    assertTrue(r.filasPorSegundo > 0);
+    verify(sesion).setCacheMode(CacheMode.IGNORE);
+  }
+
+  @Test
+  void csv_unaConsultaPorClavePorChunk() {
+    StringBuilder csv = new StringBuilder(ENCABEZADO);
+    for (int i = 0; i < 5; i++) csv.append(fila("17" + i, "c" + i));
+
+    ImportacionResponse r = service(2).importar(cuerpo(csv.toString()), Formato.CSV);
+
+    assertEquals(5, r.importadas);
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<Collection<String>> claves = ArgumentCaptor.forClass(Collection.class);
+    verify(personaRepo, times(3)).identificacionesExistentes(claves.capture());
+    assertEquals(2, claves.getAllValues().get(0).size());
+    assertEquals(1, claves.getAllValues().get(2).size());
+    verify(clienteRepo, times(3)).clienteIdsExistentes(anyCollection());
+    verify(txManager, times(3)).commit(any());
+    assertEquals(10, persistidos.size());
+  }
+
+  @Test
+  void csv_columnasEnOtroOrdenYSinEstado() {
+    String csv = "ClienteId,Contrasena,Nombre,Genero,Edad,Identificacion,Direccion,Telefono\n" +
+        "ana,clave,Ana,Femenino,30,1701,Quito,0999\n" +
+        "luis,clave,Luis,Masculino,31,1702\n";
+
+    ImportacionResponse r = service(10).importar(cuerpo(csv), Formato.CSV);
+
+    assertEquals(1, r.importadas);
+    assertEquals("ana", clientes().get(0).getClienteId());
+    assertEquals("1701", clientes().get(0).getPersona().getIdentificacion());
+    assertTrue(clientes().get(0).getEstado());
+    assertEquals("Se esperaban 8 columnas y hay 6.", r.errores.get(0).error);
+  }
+
+  @Test
+  void csv_sinUnaColumnaRequeridaNoImportaNada() {
+    String csv = "nombre,genero,edad,identificacion,direccion,telefono,contrasena\n";
+
+    BusinessException ex = assertThrows(BusinessException.class,
+        () -> service(10).importar(cuerpo(csv), Formato.CSV));
+
+    assertEquals("Falta la columna clienteId en el encabezado.", ex.getMessage());
+    verifyNoInteractions(txManager);
+  }
+
+  @Test
+  void ndjson_unaSolicitudPorLinea() {
+    String nd =
+        "{\"nombre\":\"Ana\",\"genero\":\"Femenino\",\"edad\":30,\"identificacion\":\"1701\"," +
+        "\"direccion\":\"Quito\",\"telefono\":\"0999\",\"clienteId\":\"ana\",\"contrasena\":\"clave\"}\n" +
+        "\n" +
+        "{\"nombre\":\"Luis\"\n" +
+        "{\"nombre\":\"Eva\",\"genero\":\"Femenino\",\"edad\":-1,\"identificacion\":\"1702\"," +
+        "\"direccion\":\"Quito\",\"telefono\":\"0999\",\"clienteId\":\"eva\",\"contrasena\":\"clave\"}\n";
+
+    ImportacionResponse r = service(10).importar(cuerpo(nd), Formato.NDJSON);
+
+    assertEquals(3, r.leidas);
+    assertEquals(1, r.importadas);
+    assertEquals(3, r.errores.get(0).linea);
+    assertEquals("JSON inválido.", r.errores.get(0).error);
+    assertEquals(4, r.errores.get(1).linea);
+    assertEquals("edad no puede ser negativa.", r.errores.get(1).error);
+    assertEquals("eva", r.errores.get(1).clienteId);
+  }
+
+  @Test
+  void claveCreadaEntreLaVerificacionYElInsert_repiteElChunk() {
+    doThrow(new DataIntegrityViolationException("duplicate key")).doNothing().when(txManager).commit(any());
+    // En el segundo intento la verificación ya ve la identificación creada por otro pedido
+    when(personaRepo.identificacionesExistentes(anyCollection()))
+        .thenReturn(Collections.<String>emptyList())
+        .thenReturn(Collections.singletonList("1701"));
+    String csv = ENCABEZADO + fila("1701", "a") + fila("1702", "b");
+
+    ImportacionResponse r = service(10).importar(cuerpo(csv), Formato.CSV);
+
+    assertEquals(1, r.importadas);
+    assertEquals(1, r.rechazadas);
+    assertEquals("La identificación ya existe", r.errores.get(0).error);
+    verify(txManager, times(2)).commit(any());
+  }
+
+  @Test
+  void chunkQueFallaDosVeces_rechazaSusFilasYSigueConElResto() {
+    doThrow(new DataIntegrityViolationException("duplicate key"))
+        .doThrow(new DataIntegrityViolationException("duplicate key"))
+        .doNothing().when(txManager).commit(any());
+    String csv = ENCABEZADO + fila("1701", "a") + fila("1702", "b") + fila("1703", "c");
+
+    ImportacionResponse r = service(2).importar(cuerpo(csv), Formato.CSV);
+
+    assertEquals(1, r.importadas);
+    assertEquals(2, r.rechazadas);
+    assertEquals("Error al importar el chunk; reintentar.", r.errores.get(0).error);
+    assertEquals(3, r.errores.get(1).linea);
+  }
+
+  @Test
+  void reporteDeErroresAcotado() {
+    StringBuilder nd = new StringBuilder();
+    for (int i = 0; i < ImportacionClientesService.MAX_ERRORES + 5; i++) nd.append("x\n");
+
+    ImportacionResponse r = service(10).importar(cuerpo(nd.toString()), Formato.NDJSON);
+
+    assertEquals(ImportacionClientesService.MAX_ERRORES + 5, r.rechazadas);
+    assertEquals(ImportacionClientesService.MAX_ERRORES, r.errores.size());
+    assertEquals(5, r.erroresOmitidos);
+  }
+}
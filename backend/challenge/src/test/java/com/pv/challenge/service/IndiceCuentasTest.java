@@ -0,0 +1,149 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.CuentaDtos.MetricasIndice;
+import com.pv.challenge.exception.BusinessException;
+import com.pv.challenge.exception.NotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class IndiceCuentasTest {
+
+  private JdbcTemplate jdbc;
+  private IndiceCuentas indice;
+
+  @BeforeEach
+  void setup() {
+    jdbc = mock(JdbcTemplate.class);
+    indice = new IndiceCuentas(jdbc, mock(PlatformTransactionManager.class), true, 16, 1000);
+  }
+
+  @Test
+  void cuentaDesconocida_pasaALaBase() {
+    indice.verificarCredito(7L);
+    indice.verificarDebito(7L, new BigDecimal("1000000"));
+    assertEquals(2, indice.metricas().desconocidas);
+    assertEquals(0, indice.metricas().rechazos);
+  }
+
+  @Test
+  void debitoMayorAlSaldo_seRechazaSinIrALaBase() {
+    indice.confirmar(1L, true, new BigDecimal("100.00"), 1L);
+
+    indice.verificarDebito(1L, new BigDecimal("100.00"));
+    BusinessException ex = assertThrows(BusinessException.class,
+        () -> indice.verificarDebito(1L, new BigDecimal("100.01")));
+    assertEquals("Saldo no disponible.", ex.getMessage());
+    indice.verificarCredito(1L);
+    assertEquals(1, indice.metricas().rechazos);
+  }
+
+  @Test
+  void versionVieja_noPisaALaNueva() {
+    indice.confirmar(1L, true, new BigDecimal("100.00"), 5L);
+    indice.confirmar(1L, true, BigDecimal.ZERO, 4L);   // commit anterior que llegó tarde
+    indice.verificarDebito(1L, new BigDecimal("50"));
+
+    indice.confirmar(1L, false, BigDecimal.ZERO, 6L);
+    BusinessException ex = assertThrows(BusinessException.class, () -> indice.verificarCredito(1L));
+    assertEquals("Cuenta 1 inactiva.", ex.getMessage());
+  }
+
+  @Test
+  void cuentaEliminada_esInexistente_aunqueLlegueUnEstadoDespues() {
+    indice.confirmar(3L, true, BigDecimal.TEN, 2L);
+    indice.eliminadas(Collections.singletonList(3L));
+    indice.confirmar(3L, true, BigDecimal.TEN, 3L);
+
+    assertThrows(NotFoundException.class, () -> indice.verificarCredito(3L));
+  }
+
+  @Test
+  void conTransaccion_seAplicaRecienAlCommit() {
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      indice.confirmar(1L, true, BigDecimal.ZERO, 1L);
+      indice.verificarDebito(1L, BigDecimal.ONE); // todavía no está: pasa a la base
+
+      for (TransactionSynchronization s : TransactionSynchronizationManager.getSynchronizations()) s.afterCommit();
+      assertThrows(BusinessException.class, () -> indice.verificarDebito(1L, BigDecimal.ONE));
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
+
+  @Test
+  void cargar_idsHastaElMayorCargadoQueNoEstan_noExisten() throws Exception {
+    ResultSet rs = mock(ResultSet.class);
+    when(rs.getLong(1)).thenReturn(2L, 5L);
+    when(rs.getBoolean(2)).thenReturn(true, false);
+    when(rs.getBigDecimal(3)).thenReturn(new BigDecimal("30.00"), BigDecimal.ZERO);
+    when(rs.getLong(4)).thenReturn(1L, 1L);
+    doAnswer(inv -> {
+      RowCallbackHandler h = inv.getArgument(1);
+      h.processRow(rs);
+      h.processRow(rs);
+      return null;
+    }).when(jdbc).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+    indice.cargar();
+
+    indice.verificarDebito(2L, new BigDecimal("30.00"));
+    assertThrows(BusinessException.class, () -> indice.verificarCredito(5L));
+    assertThrows(NotFoundException.class, () -> indice.verificarCredito(3L));
+    indice.verificarCredito(6L); // creada después de la carga, quizá por otro camino
+    MetricasIndice m = indice.metricas();
+    assertEquals(2, m.cuentas);
+    assertEquals(5L, m.cargadasHasta);
+  }
+
+  @Test
+  void inactivo_noRechazaNiGuarda() {
+    IndiceCuentas apagado = new IndiceCuentas(jdbc, mock(PlatformTransactionManager.class), false, 16, 1000);
+    apagado.confirmar(1L, false, BigDecimal.ZERO, 1L);
+    apagado.cargar();
+
+    apagado.verificarCredito(1L);
+    assertEquals(0, apagado.metricas().cuentas);
+    verifyNoInteractions(jdbc);
+  }
+
+  @Test
+  void mapa_creceSinPerderEntradas() {
+    MapaCuentas mapa = new MapaCuentas(16);
+    int n = 100_000;
+    for (long id = 1; id <= n; id++) assertTrue(mapa.poner(id, MapaCuentas.ACTIVA, id, 1));
+
+    assertEquals(n, mapa.tamano());
+    assertEquals(Integer.highestOneBit(mapa.capacidad()), mapa.capacidad());
+    assertTrue(mapa.tamano() <= mapa.capacidad() * 0.7);
+    assertEquals((long) mapa.capacidad() * MapaCuentas.BYTES_POR_CELDA, mapa.bytes());
+    for (long id : Arrays.asList(1L, 777L, (long) n)) {
+      assertEquals(MapaCuentas.ACTIVA, mapa.verificar(id, id));
+      assertEquals(MapaCuentas.SIN_FONDOS, mapa.verificar(id, id + 1));
+    }
+    assertEquals(MapaCuentas.DESCONOCIDA, mapa.verificar(n + 1, 0));
+    assertFalse(mapa.poner(1L, MapaCuentas.INACTIVA, 0, 1));
+  }
+
+  @Test
+  void centavos_redondeaHaciaArribaYTopaEnLong() {
+    assertEquals(1001, IndiceCuentas.centavos(new BigDecimal("10.01")));
+    assertEquals(1002, IndiceCuentas.centavos(new BigDecimal("10.011")));
+    assertEquals(Long.MAX_VALUE, IndiceCuentas.centavos(new BigDecimal("1E+30")));
+  }
+}
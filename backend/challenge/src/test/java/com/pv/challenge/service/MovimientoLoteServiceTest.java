@@ -0,0 +1,257 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.MovimientoDtos.LoteResponse;
+import com.pv.challenge.dto.MovimientoDtos.OperacionLote;
+import com.pv.challenge.entity.Cliente;
+import com.pv.challenge.entity.Cuenta;
+import com.pv.challenge.entity.Movimiento;
+import com.pv.challenge.repo.CuentaRepository;
+import com.pv.challenge.repo.MovimientoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MovimientoLoteServiceTest {
+
+  private CuentaRepository cuentaRepo;
+  private MovimientoRepository movRepo;
+  private SaldoDiarioService saldoDiarioService;
+  private ReporteCacheMemoria reporteCache;
+  private CupoDiarioService cupoDiario;
+  private MovimientoLoteService service;
+  private final AtomicLong ids = new AtomicLong(100);
+
+  private IndiceCuentas indice;
+  private SubsaldosService subsaldos;
+
+  @BeforeEach
+  void setup() {
+    cuentaRepo = mock(CuentaRepository.class);
+    movRepo = mock(MovimientoRepository.class);
+    saldoDiarioService = mock(SaldoDiarioService.class);
+    reporteCache = mock(ReporteCacheMemoria.class);
+    cupoDiario = mock(CupoDiarioService.class);
+    indice = mock(IndiceCuentas.class);
+    subsaldos = mock(SubsaldosService.class);
+    service = new MovimientoLoteService(cuentaRepo, movRepo, saldoDiarioService, reporteCache, cupoDiario,
+        indice, subsaldos, mock(PlatformTransactionManager.class), 2);
+    // Sin retiros previos en el día; cupo por cuenta de 100 y por cliente de 150
+    when(cupoDiario.bloquear(anyCollection(), any()))
+        .thenAnswer(inv -> new CupoDiarioService.Cupos(new BigDecimal("100"), new BigDecimal("150")));
+
+    // saveAll asigna ids como lo haría la secuencia
+    when(movRepo.saveAll(anyList())).thenAnswer(inv -> {
+      List<Movimiento> ms = inv.getArgument(0);
+      for (Movimiento m : ms) m.setId(ids.incrementAndGet());
+      return ms;
+    });
+  }
+
+  private Cuenta cuenta(long id, String saldo) {
+    Cliente cli = new Cliente();
+    cli.setId(1000 + id);
+    Cuenta c = new Cuenta();
+    c.setId(id);
+    c.setCliente(cli);
+    c.setSaldo(new BigDecimal(saldo));
+    return c;
+  }
+
+  private OperacionLote op(Long cuentaId, String tipo, String monto) {
+    OperacionLote o = new OperacionLote();
+    o.cuentaId = cuentaId;
+    o.tipo = tipo;
+    o.monto = monto == null ? null : new BigDecimal(monto);
+    o.ref = "lote";
+    return o;
+  }
+
+  @Test
+  void registrar_aplica_en_orden_por_cuenta_y_reporta_por_item() {
+    Cuenta c1 = cuenta(1L, "10.00");
+    when(cuentaRepo.bloquearPorIds(anyCollection())).thenReturn(Arrays.asList(c1));
+
+    LoteResponse r = service.registrar(Arrays.asList(
+        op(1L, "RETIRO", "20.00"),    // sin fondos todavía
+        op(1L, "DEPOSITO", "50.00"),  // 60
+        op(1L, "RETIRO", "20.00")));  // 40
+
+    assertEquals(3, r.total);
+    assertEquals(2, r.aplicados);
+    assertEquals(1, r.rechazados);
+    assertFalse(r.resultados.get(0).ok);
+    assertEquals("Saldo no disponible.", r.resultados.get(0).error);
+    assertEquals(0, r.resultados.get(1).saldo.compareTo(new BigDecimal("60.00")));
+    assertEquals(0, r.resultados.get(2).saldo.compareTo(new BigDecimal("40.00")));
+    assertNotNull(r.resultados.get(2).movimientoId);
+    assertEquals(0, c1.getSaldo().compareTo(new BigDecimal("40.00")));
+
+    // Un solo lock, un solo saveAll y un solo rollup para toda la cuenta
+    verify(cuentaRepo, times(1)).bloquearPorIds(anyCollection());
+    verify(movRepo, times(1)).saveAll(anyList());
+    verify(saldoDiarioService, times(1)).acumular(anyCollection());
+    verify(cupoDiario, times(1)).acumular(anyCollection());
+    verify(reporteCache).invalidarClientes(argThat(ids -> ids.contains(1001L)));
+  }
+
+  @Test
+  void registrar_consolida_las_cuentas_repartidas_antes_de_debitar() {
+    Cuenta repartida = cuenta(1L, "10.00");
+    Cuenta comun = cuenta(2L, "10.00");
+    when(cuentaRepo.bloquearPorIds(anyCollection())).thenReturn(Arrays.asList(repartida, comun));
+    when(subsaldos.repartida(1L)).thenReturn(true);
+    // Los subsaldos traen 50 más a la cuenta
+    doAnswer(inv -> {
+      Cuenta c = inv.getArgument(0);
+      c.setSaldo(c.getSaldo().add(new BigDecimal("50.00")));
+      return 3;
+    }).when(subsaldos).consolidarBloqueada(repartida);
+
+    LoteResponse r = service.registrar(Arrays.asList(op(1L, "RETIRO", "40.00")));
+
+    assertEquals(1, r.aplicados);
+    assertEquals(0, new BigDecimal("20.00").compareTo(repartida.getSaldo()));
+    verify(subsaldos, never()).consolidarBloqueada(comun);
+  }
+
+  @Test
+  void registrar_rechaza_cuentas_inactivas_y_confirma_solo_las_modificadas() {
+    Cuenta activa = cuenta(1L, "10.00");
+    Cuenta inactiva = cuenta(2L, "10.00");
+    inactiva.setEstado(false);
+    when(cuentaRepo.bloquearPorIds(anyCollection())).thenReturn(Arrays.asList(activa, inactiva));
+
+    LoteResponse r = service.registrar(Arrays.asList(
+        op(1L, "DEPOSITO", "5.00"),
+        op(2L, "DEPOSITO", "5.00"),
+        op(1L, "DEPOSITO", "5.00")));
+
+    assertEquals(2, r.aplicados);
+    assertEquals("Cuenta 2 inactiva.", r.resultados.get(1).error);
+    verify(indice).confirmar(activa);
+    verify(indice, never()).confirmar(inactiva);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void registrar_rechaza_retiros_que_pasan_el_cupo_diario() {
+    Cuenta c1 = cuenta(1L, "500.00");
+    Cuenta c2 = cuenta(2L, "500.00");
+    c2.setCliente(c1.getCliente());   // mismo cliente que la 1
+    Cuenta c3 = cuenta(3L, "500.00");
+    when(cuentaRepo.bloquearPorIds(anyCollection())).thenReturn(Arrays.asList(c1, c2, c3));
+
+    // tamanoChunk = 2 → [1, 2] y [3]
+    LoteResponse r = service.registrar(Arrays.asList(
+        op(1L, "RETIRO", "90.00"),
+        op(2L, "RETIRO", "70.00"),     // 160 > 150 del cliente
+        op(3L, "RETIRO", "120.00")));  // 120 > 100 de la cuenta
+
+    assertEquals(1, r.aplicados);
+    assertEquals("Cupo diario del cliente excedido", r.resultados.get(1).error);
+    assertEquals("Cupo diario excedido", r.resultados.get(2).error);
+    assertEquals(0, c1.getSaldo().compareTo(new BigDecimal("410.00")));
+    assertEquals(0, c2.getSaldo().compareTo(new BigDecimal("500.00")));
+
+    // Un bloqueo de cupos por chunk, con las cuentas que tienen retiros
+    ArgumentCaptor<Collection<Cuenta>> cap = ArgumentCaptor.forClass(Collection.class);
+    verify(cupoDiario, times(2)).bloquear(cap.capture(), any());
+    assertEquals(Arrays.asList(c1, c2), new ArrayList<>(cap.getAllValues().get(0)));
+    assertEquals(Arrays.asList(c3), new ArrayList<>(cap.getAllValues().get(1)));
+  }
+
+  @Test
+  void registrar_valida_sin_tocar_la_base() {
+    LoteResponse r = service.registrar(Arrays.asList(
+        op(null, "DEPOSITO", "1.00"),
+        op(1L, "OTRO", "1.00"),
+        op(1L, "DEPOSITO", "0")));
+
+    assertEquals(3, r.rechazados);
+    assertEquals("cuentaId es requerido.", r.resultados.get(0).error);
+    assertEquals("tipo debe ser DEPOSITO o RETIRO.", r.resultados.get(1).error);
+    assertEquals("El monto debe ser mayor a 0.", r.resultados.get(2).error);
+    verifyNoInteractions(cuentaRepo);
+    verify(movRepo, never()).saveAll(anyList());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void registrar_agrupa_cuentas_en_chunks_y_rechaza_cuentas_inexistentes() {
+    when(cuentaRepo.bloquearPorIds(anyCollection())).thenAnswer(inv -> {
+      List<Cuenta> out = new ArrayList<>();
+      for (Long id : (Collection<Long>) inv.getArgument(0)) {
+        if (id != 3L) out.add(cuenta(id, "0.00"));
+      }
+      return out;
+    });
+
+    LoteResponse r = service.registrar(Arrays.asList(
+        op(1L, "DEPOSITO", "1.00"),
+        op(2L, "DEPOSITO", "1.00"),
+        op(3L, "DEPOSITO", "1.00")));
+
+    assertEquals(2, r.aplicados);
+    assertEquals("Cuenta 3 no existe", r.resultados.get(2).error);
+
+    // tamanoChunk = 2 → [1, 2] y [3]
+    ArgumentCaptor<Collection<Long>> cap = ArgumentCaptor.forClass(Collection.class);
+    verify(cuentaRepo, times(2)).bloquearPorIds(cap.capture());
+    assertEquals(Arrays.asList(1L, 2L), new ArrayList<>(cap.getAllValues().get(0)));
+    assertEquals(Arrays.asList(3L), new ArrayList<>(cap.getAllValues().get(1)));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void registrar_con_acuses_fecha_el_movimiento_al_aplicarlo() {
+    when(cuentaRepo.bloquearPorIds(anyCollection())).thenReturn(Arrays.asList(cuenta(1L, "0.00")));
+    OffsetDateTime acuse = OffsetDateTime.now().minusDays(1);
+    OffsetDateTime antes = OffsetDateTime.now();
+
+    LoteResponse r = service.registrar(Arrays.asList(op(1L, "DEPOSITO", "5.00")), Arrays.asList(acuse));
+
+    // Fecha de aplicación para el orden (fecha, id) y el rollup del día; el acuse aparte
+    ArgumentCaptor<List<Movimiento>> cap = ArgumentCaptor.forClass(List.class);
+    verify(movRepo).saveAll(cap.capture());
+    Movimiento m = cap.getValue().get(0);
+    assertFalse(m.getFecha().isBefore(antes));
+    assertEquals(acuse, m.getFechaOrigen());
+    assertEquals(m.getFecha(), r.resultados.get(0).fecha);
+  }
+
+  @Test
+  void registrar_error_en_chunk_marca_sus_items_como_rechazados() {
+    RuntimeException caida = new RuntimeException("db caida");
+    when(cuentaRepo.bloquearPorIds(anyCollection())).thenThrow(caida);
+
+    LoteResponse r = service.registrar(Arrays.asList(op(1L, "DEPOSITO", "1.00")));
+
+    assertEquals(1, r.rechazados);
+    assertFalse(r.resultados.get(0).ok);
+    // La falla queda a mano para distinguirla de un rechazo de negocio
+    assertSame(caida, r.resultados.get(0).falla);
+  }
+
+  @Test
+  void registrar_rechazo_de_negocio_no_lleva_falla() {
+    when(cuentaRepo.bloquearPorIds(anyCollection())).thenReturn(Arrays.asList(cuenta(1L, "0.00")));
+
+    LoteResponse r = service.registrar(Arrays.asList(op(1L, "RETIRO", "1.00")));
+
+    assertEquals("Saldo no disponible.", r.resultados.get(0).error);
+    assertNull(r.resultados.get(0).falla);
+  }
+}
@@ -1,18 +1,30 @@
 package com.pv.challenge.service;
 
+import com.pv.challenge.dto.MovimientoDtos.FiltroMovimientos;
+import com.pv.challenge.dto.MovimientoDtos.PaginaMovimientos;
+import com.pv.challenge.entity.Cliente;
 import com.pv.challenge.entity.Cuenta;
 import com.pv.challenge.entity.Movimiento;
 import com.pv.challenge.exception.BusinessException;
 import com.pv.challenge.exception.NotFoundException;
 import com.pv.challenge.repo.CuentaRepository;
 import com.pv.challenge.repo.MovimientoRepository;
+import com.pv.challenge.repo.MovimientoRepository.Asiento;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -24,58 +36,87 @@ class MovimientoServiceTest {
 
   private CuentaRepository cuentaRepo;
   private MovimientoRepository movRepo;
+  private SaldoDiarioService saldoDiarioService;
+  private ReporteCacheMemoria reporteCache;
+  private CacheSegundoNivel cache;
+  private CupoDiarioService cupoDiario;
+  private IndiceCuentas indice;
+  private SubsaldosService subsaldos;
+  private BloqueoCuentas bloqueo;
+  private PlatformTransactionManager txManager;
   private MovimientoService service;
 
   @BeforeEach
   void setup() {
     cuentaRepo = mock(CuentaRepository.class);
     movRepo = mock(MovimientoRepository.class);
-    service = new MovimientoService(cuentaRepo, movRepo);
+    saldoDiarioService = mock(SaldoDiarioService.class);
+    reporteCache = mock(ReporteCacheMemoria.class);
+    cache = mock(CacheSegundoNivel.class);
+    cupoDiario = mock(CupoDiarioService.class);
+    indice = mock(IndiceCuentas.class);
+    subsaldos = mock(SubsaldosService.class);
+    bloqueo = new BloqueoCuentas(cache, "atomica", 3, 0, 0);
+    txManager = mock(PlatformTransactionManager.class);
+    service = new MovimientoService(cuentaRepo, movRepo, saldoDiarioService, reporteCache, cache, cupoDiario,
+        indice, subsaldos, bloqueo, txManager);
   }
   
-  private Cuenta cuenta(long id, String numero, BigDecimal saldo) {
+  // Cada cuenta pertenece a un cliente con id = 1000 + id de la cuenta
+  private Cuenta cuenta(long id) {
+    Cliente cli = new Cliente();
+    cli.setId(1000 + id);
     Cuenta c = new Cuenta();
     c.setId(id);
-    c.setNumero(numero);
-    c.setSaldo(saldo);
-    c.setEstado(true);
+    c.setCliente(cli);
     return c;
   }
 
+  private Asiento asiento(long id, String saldo) {
+    Asiento a = mock(Asiento.class);
+    when(a.getId()).thenReturn(id);
+    when(a.getSaldo()).thenReturn(new BigDecimal(saldo));
+    when(a.getClienteId()).thenReturn(77L);
+    when(a.getVersion()).thenReturn(3L);
+    when(a.getFecha()).thenReturn(Instant.now());
+    return a;
+  }
+
   // ---------- DEPOSITAR ----------
 
   @Test
-  void depositar_ok_actualiza_saldo_y_persiste_movimiento() {
+  void depositar_ok_acredita_en_una_sentencia_y_devuelve_movimiento() {
     Long cuentaId = 10L;
     BigDecimal monto = new BigDecimal("25.00");
-    Cuenta c = cuenta(cuentaId, "001", new BigDecimal("50.00"));
+    Cuenta ref = cuenta(cuentaId);
+    Asiento a = asiento(500L, "75.00");
 
-    when(cuentaRepo.findById(cuentaId)).thenReturn(Optional.of(c));
-    when(cuentaRepo.save(any(Cuenta.class))).thenAnswer(inv -> inv.getArgument(0));
-    when(movRepo.save(any(Movimiento.class))).thenAnswer(inv -> inv.getArgument(0));
+    when(movRepo.acreditar(eq(cuentaId), eq("DEPOSITO"), eq(monto), eq("ref-dep")))
+        .thenReturn(Optional.of(a));
+    when(cuentaRepo.getReferenceById(cuentaId)).thenReturn(ref);
 
     Movimiento m = service.depositar(cuentaId, monto, "ref-dep");
 
-    // Validar saldo actualizado
-    assertEquals(0, c.getSaldo().compareTo(new BigDecimal("75.00")));
-    // Movimiento retornado
     assertNotNull(m);
+    assertEquals(500L, m.getId());
     assertEquals("DEPOSITO", m.getTipo());
     assertEquals(0, m.getValor().compareTo(monto));
     assertEquals(0, m.getSaldo().compareTo(new BigDecimal("75.00")));
     assertEquals("ref-dep", m.getReferencia());
-    assertNotNull(m.getFecha());
-    assertSame(c, m.getCuenta());
-
-    // Capturar registro persistido en repo de movimientos
-    ArgumentCaptor<Movimiento> cap = ArgumentCaptor.forClass(Movimiento.class);
-    verify(movRepo).save(cap.capture());
-    Movimiento guardado = cap.getValue();
-    assertEquals("DEPOSITO", guardado.getTipo());
-    assertEquals(0, guardado.getValor().compareTo(monto));
+    // La fecha es la que puso la base con la cuenta bloqueada
+    assertEquals(a.getFecha(), m.getFecha().toInstant());
+    assertSame(ref, m.getCuenta());
 
-    verify(cuentaRepo).findById(cuentaId);
-    verify(cuentaRepo).save(c);
+    // Sin lectura previa de la cuenta ni save de entidades
+    verify(cuentaRepo, never()).findById(anyLong());
+    verify(cuentaRepo, never()).save(any(Cuenta.class));
+    verify(movRepo, never()).save(any(Movimiento.class));
+    // Reportes cacheados del dueño de la cuenta y la cuenta en el cache de segundo nivel
+    verify(reporteCache).invalidarCliente(77L);
+    verify(cache).cuentaModificada(cuentaId);
+    // El índice de cuentas recibe el saldo y la versión que devolvió el UPDATE
+    verify(indice).verificarCredito(cuentaId);
+    verify(indice).confirmar(cuentaId, Boolean.TRUE, new BigDecimal("75.00"), 3L);
   }
 
   @Test
@@ -93,116 +134,273 @@ class MovimientoServiceTest {
 
   @Test
   void depositar_cuenta_no_existe_lanza_notfound() {
-    when(cuentaRepo.findById(99L)).thenReturn(Optional.empty());
+    when(movRepo.acreditar(eq(99L), anyString(), any(BigDecimal.class), anyString()))
+        .thenReturn(Optional.empty());
     assertThrows(NotFoundException.class, () -> service.depositar(99L, new BigDecimal("10"), "x"));
-    verify(cuentaRepo).findById(99L);
-    verify(movRepo, never()).save(any());
+    verify(movRepo).acreditar(eq(99L), eq("DEPOSITO"), any(BigDecimal.class), eq("x"));
+  }
+
+  @Test
+  void depositar_cuenta_inactiva_lanza_business() {
+    when(movRepo.acreditar(eq(98L), anyString(), any(BigDecimal.class), anyString()))
+        .thenReturn(Optional.empty());
+    when(cuentaRepo.estadoDe(98L)).thenReturn(Optional.of(false));
+
+    BusinessException ex = assertThrows(BusinessException.class,
+        () -> service.depositar(98L, new BigDecimal("10"), "x"));
+    assertEquals("Cuenta 98 inactiva.", ex.getMessage());
   }
 
   // ---------- RETIRAR ----------
 
   @Test
-  void retirar_ok_actualiza_saldo_y_persiste_movimiento() {
+  void retirar_ok_debita_en_una_sentencia_y_devuelve_movimiento() {
     Long cuentaId = 20L;
     BigDecimal monto = new BigDecimal("40.00");
-    Cuenta c = cuenta(cuentaId, "002", new BigDecimal("100.00"));
+    Cuenta ref = cuenta(cuentaId);
+    Asiento a = asiento(501L, "60.00");
 
-    when(cuentaRepo.findById(cuentaId)).thenReturn(Optional.of(c));
-    when(cuentaRepo.save(any(Cuenta.class))).thenAnswer(inv -> inv.getArgument(0));
-    when(movRepo.save(any(Movimiento.class))).thenAnswer(inv -> inv.getArgument(0));
+    when(movRepo.debitar(eq(cuentaId), eq("RETIRO"), eq(monto), eq("ref-ret")))
+        .thenReturn(Optional.of(a));
+    when(cuentaRepo.getReferenceById(cuentaId)).thenReturn(ref);
 
     Movimiento m = service.retirar(cuentaId, monto, "ref-ret");
 
-    assertEquals(0, c.getSaldo().compareTo(new BigDecimal("60.00")));
     assertNotNull(m);
+    assertEquals(501L, m.getId());
     assertEquals("RETIRO", m.getTipo());
     assertEquals(0, m.getValor().compareTo(monto));
     assertEquals(0, m.getSaldo().compareTo(new BigDecimal("60.00")));
     assertEquals("ref-ret", m.getReferencia());
     assertNotNull(m.getFecha());
-    assertSame(c, m.getCuenta());
+    assertSame(ref, m.getCuenta());
 
-    verify(cuentaRepo).findById(cuentaId);
-    verify(cuentaRepo).save(c);
-    verify(movRepo).save(any(Movimiento.class));
+    verify(cuentaRepo, never()).estadoDe(anyLong());
+    verify(cuentaRepo, never()).save(any(Cuenta.class));
+    verify(reporteCache).invalidarCliente(77L);
+    verify(cache).cuentaModificada(cuentaId);
+    verify(cupoDiario).registrarRetiro(cuentaId, 77L, monto, m.getFecha());
+  }
+
+  @Test
+  void retirar_cupo_excedido_propaga_la_excepcion_para_deshacer_el_debito() {
+    Long cuentaId = 22L;
+    Asiento a = mock(Asiento.class);
+    when(a.getClienteId()).thenReturn(77L);
+    when(a.getFecha()).thenReturn(Instant.now());
+    when(movRepo.debitar(eq(cuentaId), eq("RETIRO"), any(BigDecimal.class), anyString()))
+        .thenReturn(Optional.of(a));
+    doThrow(new BusinessException(CupoDiarioService.CUPO_CUENTA))
+        .when(cupoDiario).registrarRetiro(eq(cuentaId), eq(77L), any(BigDecimal.class), any(OffsetDateTime.class));
+
+    BusinessException ex = assertThrows(BusinessException.class,
+        () -> service.retirar(cuentaId, new BigDecimal("600.00"), "x"));
+    assertEquals("Cupo diario excedido", ex.getMessage());
+    verify(cache, never()).cuentaModificada(anyLong());
+    verifyNoInteractions(reporteCache);
   }
 
   @Test
   void retirar_saldo_insuficiente_lanza_business() {
     Long cuentaId = 21L;
-    Cuenta c = cuenta(cuentaId, "003", new BigDecimal("10.00"));
-    when(cuentaRepo.findById(cuentaId)).thenReturn(Optional.of(c));
+    when(movRepo.debitar(eq(cuentaId), anyString(), any(BigDecimal.class), anyString()))
+        .thenReturn(Optional.empty());
+    when(cuentaRepo.estadoDe(cuentaId)).thenReturn(Optional.of(true));
 
-    assertThrows(BusinessException.class, () -> service.retirar(cuentaId, new BigDecimal("50.00"), "x"));
-    // No debe guardar ni cuenta ni movimiento
+    BusinessException ex = assertThrows(BusinessException.class,
+        () -> service.retirar(cuentaId, new BigDecimal("50.00"), "x"));
+    assertEquals("Saldo no disponible.", ex.getMessage());
     verify(cuentaRepo, never()).save(any(Cuenta.class));
+    verify(cache, never()).cuentaModificada(anyLong());
     verify(movRepo, never()).save(any(Movimiento.class));
+    verifyNoInteractions(cupoDiario);
   }
 
   @Test
-  void retirar_con_saldo_null_lanza_business() {
-    Long cuentaId = 22L;
-    Cuenta c = cuenta(cuentaId, "004", null);
-    when(cuentaRepo.findById(cuentaId)).thenReturn(Optional.of(c));
+  void retirar_cuenta_no_existe_lanza_notfound() {
+    when(movRepo.debitar(eq(88L), anyString(), any(BigDecimal.class), anyString()))
+        .thenReturn(Optional.empty());
+    when(cuentaRepo.estadoDe(88L)).thenReturn(Optional.empty());
 
-    assertThrows(BusinessException.class, () -> service.retirar(cuentaId, new BigDecimal("1.00"), "x"));
-    verify(cuentaRepo, never()).save(any(Cuenta.class));
-    verify(movRepo, never()).save(any(Movimiento.class));
+    assertThrows(NotFoundException.class, () -> service.retirar(88L, new BigDecimal("10.00"), "x"));
+    verify(cuentaRepo).estadoDe(88L);
   }
 
   @Test
-  void retirar_cuenta_no_existe_lanza_notfound() {
-    when(cuentaRepo.findById(88L)).thenReturn(Optional.empty());
-    assertThrows(NotFoundException.class, () -> service.retirar(88L, new BigDecimal("10.00"), "x"));
-    verify(cuentaRepo).findById(88L);
-    verify(movRepo, never()).save(any());
+  void retirar_rechazado_por_el_indice_no_abre_transaccion() {
+    doThrow(new BusinessException("Saldo no disponible."))
+        .when(indice).verificarDebito(30L, new BigDecimal("500.00"));
+
+    BusinessException ex = assertThrows(BusinessException.class,
+        () -> service.retirar(30L, new BigDecimal("500.00"), "x"));
+    assertEquals("Saldo no disponible.", ex.getMessage());
+    verifyNoInteractions(txManager, movRepo, cuentaRepo, cupoDiario);
   }
 
-  // ---------- TRANSFERIR ----------
+  // ---------- SALDO REPARTIDO ----------
 
   @Test
-  void transferir_ok_debita_origen_y_acredita_destino_con_movimientos() {
-    Long idOrigen = 30L, idDestino = 31L;
-    BigDecimal monto = new BigDecimal("30.00");
+  void depositar_cuenta_repartida_suma_a_un_subsaldo_sin_tocar_la_cuenta() {
+    Asiento a = mock(Asiento.class);
+    when(a.getId()).thenReturn(900L);
+    when(a.getSaldo()).thenReturn(new BigDecimal("130.00"));
+    when(subsaldos.repartida(40L)).thenReturn(true);
+    when(movRepo.acreditarEnSubsaldo(eq(40L), anyInt(), eq(new BigDecimal("30.00")), eq("x"), any(OffsetDateTime.class)))
+        .thenReturn(Optional.of(a));
+
+    Movimiento m = service.depositar(40L, new BigDecimal("30.00"), "x");
+
+    assertEquals(900L, m.getId());
+    assertEquals(0, m.getSaldo().compareTo(new BigDecimal("130.00")));
+    verify(movRepo, never()).acreditar(anyLong(), anyString(), any(BigDecimal.class), anyString());
+    // La fila de la cuenta no cambió; los reportes se invalidan al consolidar
+    verifyNoInteractions(cache, reporteCache);
+    verify(indice, never()).confirmar(anyLong(), any(), any(), any());
+  }
 
-    Cuenta origen = cuenta(idOrigen, "OR-1", new BigDecimal("100.00"));
-    Cuenta destino = cuenta(idDestino, "DE-1", new BigDecimal("10.00"));
+  @Test
+  void depositar_sin_subsaldo_acredita_directo_en_la_cuenta() {
+    Asiento a = asiento(901L, "60.00");
+    when(subsaldos.repartida(41L)).thenReturn(true);
+    when(movRepo.acreditarEnSubsaldo(eq(41L), anyInt(), any(BigDecimal.class), anyString(), any(OffsetDateTime.class)))
+        .thenReturn(Optional.empty());
+    when(movRepo.acreditar(eq(41L), eq("DEPOSITO"), any(BigDecimal.class), anyString()))
+        .thenReturn(Optional.of(a));
+
+    assertEquals(901L, service.depositar(41L, new BigDecimal("10.00"), "x").getId());
+    verify(cache).cuentaModificada(41L);
+  }
 
-    when(cuentaRepo.findById(idOrigen)).thenReturn(Optional.of(origen));
-    when(cuentaRepo.findById(idDestino)).thenReturn(Optional.of(destino));
-    when(cuentaRepo.save(any(Cuenta.class))).thenAnswer(inv -> inv.getArgument(0));
+  @Test
+  void retirar_cuenta_repartida_consolida_y_debita_con_la_fila_bloqueada() {
+    Cuenta c = cuenta(42L, "10.00");
+    when(cuentaRepo.bloquearPorIds(Collections.singletonList(42L))).thenReturn(Collections.singletonList(c));
+    when(subsaldos.repartida(42L)).thenReturn(true);
+    doAnswer(inv -> {
+      c.setSaldo(c.getSaldo().add(new BigDecimal("90.00")));
+      return 4;
+    }).when(subsaldos).consolidarBloqueada(c);
     when(movRepo.save(any(Movimiento.class))).thenAnswer(inv -> inv.getArgument(0));
 
+    Movimiento m = service.retirar(42L, new BigDecimal("60.00"), "x");
+
+    assertEquals("RETIRO", m.getTipo());
+    assertEquals(0, m.getSaldo().compareTo(new BigDecimal("40.00")));
+    verify(cupoDiario).registrarRetiro(42L, 1042L, new BigDecimal("60.00"), m.getFecha());
+    verify(saldoDiarioService).acumular(Collections.singletonList(m));
+    verify(indice).verificarCredito(42L);
+    verify(indice, never()).verificarDebito(anyLong(), any());
+    verify(indice).confirmar(c);
+    verify(movRepo, never()).debitar(anyLong(), anyString(), any(BigDecimal.class), anyString());
+  }
+
+  @Test
+  void retirar_cuenta_repartida_sin_fondos_aun_consolidada_lanza_business() {
+    Cuenta c = cuenta(43L, "10.00");
+    when(cuentaRepo.bloquearPorIds(Collections.singletonList(43L))).thenReturn(Collections.singletonList(c));
+    when(subsaldos.repartida(43L)).thenReturn(true);
+
+    BusinessException ex = assertThrows(BusinessException.class,
+        () -> service.retirar(43L, new BigDecimal("60.00"), "x"));
+    assertEquals("Saldo no disponible.", ex.getMessage());
+    verify(subsaldos).consolidarBloqueada(c);
+    verifyNoInteractions(cupoDiario);
+    verify(movRepo, never()).save(any(Movimiento.class));
+  }
+
+  // ---------- TRANSFERIR ----------
+
+  private Cuenta cuenta(long id, String saldo) {
+    Cuenta c = cuenta(id);
+    c.setSaldo(new BigDecimal(saldo));
+    return c;
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void transferir_ok_bloquea_ambas_en_un_statement_y_guarda_movimientos_en_batch() {
+    Long idOrigen = 31L, idDestino = 30L;
+    BigDecimal monto = new BigDecimal("30.00");
+
+    Cuenta origen = cuenta(idOrigen, "100.00");
+    Cuenta destino = cuenta(idDestino, "10.00");
+    // El repo devuelve en orden de id (destino primero aquí)
+    when(cuentaRepo.bloquearPorIds(anyCollection())).thenReturn(Arrays.asList(destino, origen));
+
     service.transferir(idOrigen, idDestino, monto, "pago");
 
     // Saldos finales
     assertEquals(0, origen.getSaldo().compareTo(new BigDecimal("70.00")));
     assertEquals(0, destino.getSaldo().compareTo(new BigDecimal("40.00")));
 
-    // Debe haber guardado cuenta dos veces (retiro y depósito) y 2 movimientos
-    verify(cuentaRepo, times(2)).save(any(Cuenta.class));
-    verify(movRepo, times(2)).save(any(Movimiento.class));
+    verify(cuentaRepo, times(1)).bloquearPorIds(anyCollection());
+    verify(cuentaRepo, never()).findById(anyLong());
+
+    ArgumentCaptor<List<Movimiento>> cap = ArgumentCaptor.forClass(List.class);
+    verify(movRepo).saveAll(cap.capture());
+    List<Movimiento> movs = cap.getValue();
+    assertEquals(2, movs.size());
+
+    Movimiento debito = movs.get(0);
+    assertEquals("RETIRO", debito.getTipo());
+    assertSame(origen, debito.getCuenta());
+    assertEquals(0, debito.getValor().compareTo(monto));
+    assertEquals(0, debito.getSaldo().compareTo(new BigDecimal("70.00")));
+    assertTrue(debito.getReferencia().contains("pago") && debito.getReferencia().contains("debito"),
+        "Debe registrar movimiento de RETIRO con referencia '- debito'");
+
+    Movimiento credito = movs.get(1);
+    assertEquals("DEPOSITO", credito.getTipo());
+    assertSame(destino, credito.getCuenta());
+    assertEquals(0, credito.getSaldo().compareTo(new BigDecimal("40.00")));
+    assertTrue(credito.getReferencia().contains("pago") && credito.getReferencia().contains("credito"),
+        "Debe registrar movimiento de DEPOSITO con referencia '- credito'");
+
+    // Rollup diario de ambos movimientos en la misma transacción
+    verify(saldoDiarioService).acumular(anyCollection());
+    verify(reporteCache).invalidarClientes(Arrays.asList(1031L, 1030L));
+    // El débito consume el cupo diario de la cuenta origen
+    verify(cupoDiario).registrarRetiro(idOrigen, 1031L, monto, debito.getFecha());
+  }
 
-    // Verificar tipos y referencias de movimientos
-    ArgumentCaptor<Movimiento> capMov = ArgumentCaptor.forClass(Movimiento.class);
-    verify(movRepo, times(2)).save(capMov.capture());
+  @Test
+  void transferir_cupo_excedido_no_modifica_saldos() {
+    Cuenta origen = cuenta(30L, "5000.00");
+    Cuenta destino = cuenta(31L, "0.00");
+    when(cuentaRepo.bloquearPorIds(anyCollection())).thenReturn(Arrays.asList(origen, destino));
+    doThrow(new BusinessException(CupoDiarioService.CUPO_CLIENTE))
+        .when(cupoDiario).registrarRetiro(eq(30L), eq(1030L), any(BigDecimal.class), any(OffsetDateTime.class));
+
+    BusinessException ex = assertThrows(BusinessException.class,
+        () -> service.transferir(30L, 31L, new BigDecimal("3000.00"), "pago"));
+    assertEquals("Cupo diario del cliente excedido", ex.getMessage());
+    assertEquals(0, origen.getSaldo().compareTo(new BigDecimal("5000.00")));
+    verify(movRepo, never()).saveAll(anyList());
+  }
 
-    boolean retiroOk = capMov.getAllValues().stream()
-        .anyMatch(mm -> "RETIRO".equals(mm.getTipo())
-            && 0 == mm.getValor().compareTo(monto)
-            && mm.getReferencia() != null
-            && mm.getReferencia().contains("pago")
-            && mm.getReferencia().contains("debito"));
+  @Test
+  void transferir_sin_fondos_no_modifica_saldos() {
+    Cuenta origen = cuenta(30L, "10.00");
+    Cuenta destino = cuenta(31L, "0.00");
+    when(cuentaRepo.bloquearPorIds(anyCollection())).thenReturn(Arrays.asList(origen, destino));
+
+    BusinessException ex = assertThrows(BusinessException.class,
+        () -> service.transferir(30L, 31L, new BigDecimal("30.00"), "pago"));
+    assertEquals("Saldo no disponible.", ex.getMessage());
+    assertEquals(0, origen.getSaldo().compareTo(new BigDecimal("10.00")));
+    assertEquals(0, destino.getSaldo().compareTo(BigDecimal.ZERO));
+    verify(movRepo, never()).saveAll(anyList());
+    verifyNoInteractions(saldoDiarioService);
+  }
 
-    boolean depositoOk = capMov.getAllValues().stream()
-        .anyMatch(mm -> "DEPOSITO".equals(mm.getTipo())
-            && 0 == mm.getValor().compareTo(monto)
-            && mm.getReferencia() != null
-            && mm.getReferencia().contains("pago")
-            && mm.getReferencia().contains("credito"));
+  @Test
+  void transferir_destino_no_existe_lanza_notfound() {
+    when(cuentaRepo.bloquearPorIds(anyCollection())).thenReturn(Arrays.asList(cuenta(30L, "100.00")));
 
-    assertTrue(retiroOk, "Debe registrar movimiento de RETIRO con referencia '- debito'");
-    assertTrue(depositoOk, "Debe registrar movimiento de DEPOSITO con referencia '- credito'");
+    NotFoundException ex = assertThrows(NotFoundException.class,
+        () -> service.transferir(30L, 99L, new BigDecimal("1.00"), "x"));
+    assertTrue(ex.getMessage().contains("99"));
+    verify(movRepo, never()).saveAll(anyList());
   }
 
   @Test
@@ -211,4 +409,121 @@ class MovimientoServiceTest {
         () -> service.transferir(1L, 1L, new BigDecimal("10.00"), "x"));
     verifyNoInteractions(cuentaRepo, movRepo);
   }
+
+  // ---------- ESTRATEGIA DE BLOQUEO ----------
+
+  @Test
+  void retirar_pesimista_bloquea_la_fila_y_debita_la_entidad() {
+    bloqueo.usar(BloqueoCuentas.Estrategia.PESIMISTA);
+    Cuenta c = cuenta(50L, "100.00");
+    when(cuentaRepo.bloquearPorIds(Collections.singletonList(50L))).thenReturn(Collections.singletonList(c));
+    when(movRepo.save(any(Movimiento.class))).thenAnswer(inv -> inv.getArgument(0));
+
+    Movimiento m = service.retirar(50L, new BigDecimal("30.00"), "x");
+
+    assertEquals(0, m.getSaldo().compareTo(new BigDecimal("70.00")));
+    verify(cupoDiario).registrarRetiro(50L, 1050L, new BigDecimal("30.00"), m.getFecha());
+    verify(indice).confirmar(c);
+    verify(movRepo, never()).debitar(anyLong(), anyString(), any(BigDecimal.class), anyString());
+    verify(cuentaRepo, never()).findById(anyLong());
+  }
+
+  @Test
+  void depositar_optimista_reintenta_el_conflicto_de_version_con_la_cuenta_releida() {
+    bloqueo.usar(BloqueoCuentas.Estrategia.OPTIMISTA);
+    // Cada intento lee la cuenta de nuevo, como una transacción nueva
+    when(cuentaRepo.findById(51L)).thenAnswer(inv -> Optional.of(cuenta(51L, "10.00")));
+    when(movRepo.save(any(Movimiento.class))).thenAnswer(inv -> inv.getArgument(0));
+    // El UPDATE con la versión vieja falla en el flush del primer intento
+    doThrow(new ObjectOptimisticLockingFailureException(Cuenta.class, 51L))
+        .doNothing()
+        .when(saldoDiarioService).acumular(anyCollection());
+
+    Movimiento m = service.depositar(51L, new BigDecimal("5.00"), "x");
+
+    assertEquals(0, m.getSaldo().compareTo(new BigDecimal("15.00")));
+    verify(cuentaRepo, times(2)).findById(51L);
+    verify(cache).cuentaModificada(51L);
+    assertEquals(1, bloqueo.conflictos());
+    assertEquals(0, bloqueo.agotados());
+    verify(movRepo, never()).acreditar(anyLong(), anyString(), any(BigDecimal.class), anyString());
+  }
+
+  @Test
+  void retirar_optimista_agota_los_intentos_y_propaga_el_conflicto() {
+    bloqueo.usar(BloqueoCuentas.Estrategia.OPTIMISTA);
+    when(cuentaRepo.findById(52L)).thenAnswer(inv -> Optional.of(cuenta(52L, "100.00")));
+    when(movRepo.save(any(Movimiento.class))).thenAnswer(inv -> inv.getArgument(0));
+    doThrow(new ObjectOptimisticLockingFailureException(Cuenta.class, 52L))
+        .when(saldoDiarioService).acumular(anyCollection());
+
+    assertThrows(OptimisticLockingFailureException.class,
+        () -> service.retirar(52L, new BigDecimal("30.00"), "x"));
+    verify(cuentaRepo, times(3)).findById(52L);
+    assertEquals(3, bloqueo.conflictos());
+    assertEquals(1, bloqueo.agotados());
+  }
+
+  @Test
+  void transferir_optimista_lee_ambas_cuentas_sin_bloquear() {
+    bloqueo.usar(BloqueoCuentas.Estrategia.OPTIMISTA);
+    Cuenta origen = cuenta(53L, "100.00");
+    Cuenta destino = cuenta(54L, "0.00");
+    when(cuentaRepo.findAllById(Arrays.asList(53L, 54L))).thenReturn(Arrays.asList(origen, destino));
+
+    service.transferir(53L, 54L, new BigDecimal("40.00"), "pago");
+
+    assertEquals(0, origen.getSaldo().compareTo(new BigDecimal("60.00")));
+    assertEquals(0, destino.getSaldo().compareTo(new BigDecimal("40.00")));
+    verify(cuentaRepo, never()).bloquearPorIds(anyCollection());
+    verify(indice).confirmar(origen);
+    verify(indice).confirmar(destino);
+  }
+
+  // ---------- LISTAR ----------
+
+  private Movimiento movListado(long id, String fecha) {
+    Movimiento m = new Movimiento();
+    m.setId(id);
+    m.setCuenta(cuenta(1L));
+    m.setTipo("DEPOSITO");
+    m.setValor(new BigDecimal("1.00"));
+    m.setSaldo(new BigDecimal("1.00"));
+    m.setFecha(OffsetDateTime.parse(fecha));
+    return m;
+  }
+
+  @Test
+  void listar_pide_uno_de_mas_y_devuelve_cursor_del_ultimo_entregado() {
+    FiltroMovimientos f = new FiltroMovimientos();
+    f.cuentaId = 1L;
+    when(movRepo.pagina(same(f), isNull(), isNull(), eq(3))).thenReturn(Arrays.asList(
+        movListado(9L, "2025-08-03T10:00:00Z"),
+        movListado(8L, "2025-08-02T10:00:00Z"),
+        movListado(7L, "2025-08-01T10:00:00Z")));
+
+    PaginaMovimientos p = service.listar(f, null, 2);
+
+    assertEquals(2, p.items.size());
+    assertEquals(8L, p.items.get(1).getId());
+    assertNotNull(p.siguiente);
+
+    // El cursor vuelve como (fecha, id) del último movimiento entregado
+    when(movRepo.pagina(same(f), any(OffsetDateTime.class), anyLong(), eq(3)))
+        .thenReturn(Arrays.asList(movListado(7L, "2025-08-01T10:00:00Z")));
+    PaginaMovimientos p2 = service.listar(f, p.siguiente, 2);
+
+    verify(movRepo).pagina(f, OffsetDateTime.parse("2025-08-02T10:00:00Z"), 8L, 3);
+    assertEquals(1, p2.items.size());
+    assertNull(p2.siguiente);
+  }
+
+  @Test
+  void listar_cursor_o_limite_invalido_lanza_business() {
+    FiltroMovimientos f = new FiltroMovimientos();
+    assertThrows(BusinessException.class, () -> service.listar(f, "no-es-un-cursor", 10));
+    assertThrows(BusinessException.class, () -> service.listar(f, null, 0));
+    assertThrows(BusinessException.class, () -> service.listar(f, null, MovimientoService.LIMITE_PAGINA + 1));
+    verifyNoInteractions(movRepo);
+  }
 }
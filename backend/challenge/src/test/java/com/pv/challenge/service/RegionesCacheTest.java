@@ -0,0 +1,74 @@
+package com.pv.challenge.service;
+
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.cache.Cache;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegionesCacheTest {
+
+  private RegionesCache regiones;
+
+  @AfterEach
+  void cerrar() {
+    if (regiones != null) regiones.destroy();
+  }
+
+  @Test
+  void customize_entregaElCacheManagerConLasRegionesYFallaSiFaltaUna() {
+    regiones = new RegionesCache(10, 20, 30, 40, 60);
+    Map<String, Object> props = new HashMap<>();
+
+    regiones.customize(props);
+
+    assertEquals("jcache", props.get("hibernate.cache.region.factory_class"));
+    assertSame(regiones.cacheManager(), props.get(ConfigSettings.CACHE_MANAGER));
+    assertEquals("fail", props.get(ConfigSettings.MISSING_CACHE_STRATEGY));
+    for (String r : regiones.maxEntradas().keySet()) assertNotNull(regiones.cacheManager().getCache(r), r);
+    assertNotNull(regiones.cacheManager().getCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME));
+    assertNotNull(regiones.cacheManager().getCache(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME));
+  }
+
+  @Test
+  void maxEntradas_porRegionSegunConfiguracion() {
+    regiones = new RegionesCache(10, 20, 30, 40, 60);
+
+    Map<String, Long> max = regiones.maxEntradas();
+    assertEquals(10L, max.get(RegionesCache.CLIENTES));
+    assertEquals(20L, max.get(RegionesCache.PERSONAS));
+    assertEquals(30L, max.get(RegionesCache.CUENTAS));
+    assertEquals(40L, max.get(RegionesCache.CUENTA_POR_NUMERO));
+    assertTrue(regiones.esConsulta(RegionesCache.PERSONA_POR_IDENTIFICACION));
+    assertFalse(regiones.esConsulta(RegionesCache.CUENTAS));
+  }
+
+  @Test
+  void region_noPasaDelTope() {
+    regiones = new RegionesCache(10, 10, 25, 10, 60);
+    Cache<Object, Object> cuentas = regiones.cacheManager().getCache(RegionesCache.CUENTAS);
+
+    for (long i = 0; i < 1_000; i++) cuentas.put(i, "cuenta-" + i);
+
+    int entradas = 0;
+    for (Cache.Entry<Object, Object> e : cuentas) entradas++;
+    assertTrue(entradas <= 25, "entradas: " + entradas);
+    assertTrue(entradas > 0);
+  }
+
+  @Test
+  void dosInstancias_noCompartenManager() {
+    regiones = new RegionesCache(10, 10, 10, 10, 60);
+    RegionesCache otra = new RegionesCache(10, 10, 10, 10, 60);
+    try {
+      assertNotSame(regiones.cacheManager(), otra.cacheManager());
+    } finally {
+      otra.destroy();
+    }
+  }
+}
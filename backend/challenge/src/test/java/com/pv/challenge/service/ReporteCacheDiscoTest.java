@@ -0,0 +1,62 @@
+package com.pv.challenge.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReporteCacheDiscoTest {
+
+  private Path guardar(ReporteCacheDisco cache, String clave, int bytes) throws Exception {
+    Path tmp = cache.temporal();
+    Files.write(tmp, new byte[bytes]);
+    return cache.guardar(clave, tmp);
+  }
+
+  @Test
+  void clave_incluye_cliente_rango_y_version() {
+    assertEquals("c7_2025-01-01_2025-01-31_ab-12.pdf",
+        ReporteCacheDisco.clave(7L, LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 31), "ab-12"));
+  }
+
+  @Test
+  void guarda_y_encuentra_por_clave(@TempDir Path dir) throws Exception {
+    ReporteCacheDisco cache = new ReporteCacheDisco(dir.toString(), 1_000);
+    Path p = guardar(cache, "a.pdf", 100);
+
+    assertEquals(p, cache.buscar("a.pdf").get());
+    assertFalse(cache.buscar("b.pdf").isPresent());
+    assertEquals(100, cache.bytes());
+  }
+
+  @Test
+  void al_pasar_el_tope_desaloja_el_menos_usado(@TempDir Path dir) throws Exception {
+    ReporteCacheDisco cache = new ReporteCacheDisco(dir.toString(), 250);
+    guardar(cache, "a.pdf", 100);
+    guardar(cache, "b.pdf", 100);
+    cache.buscar("a.pdf");          // "b" pasa a ser el menos usado
+    guardar(cache, "c.pdf", 100);
+
+    assertTrue(cache.buscar("a.pdf").isPresent());
+    assertFalse(cache.buscar("b.pdf").isPresent());
+    assertTrue(cache.buscar("c.pdf").isPresent());
+    assertEquals(200, cache.bytes());
+    assertEquals(2, cache.archivos());
+  }
+
+  @Test
+  void retoma_archivos_al_reiniciar_y_borra_temporales(@TempDir Path dir) throws Exception {
+    ReporteCacheDisco cache = new ReporteCacheDisco(dir.toString(), 1_000);
+    guardar(cache, "a.pdf", 100);
+    Files.write(cache.temporal(), new byte[10]); // generación interrumpida
+
+    ReporteCacheDisco reiniciado = new ReporteCacheDisco(dir.toString(), 1_000);
+    assertTrue(reiniciado.buscar("a.pdf").isPresent());
+    assertEquals(1, reiniciado.archivos());
+    assertEquals(100, reiniciado.bytes());
+  }
+}
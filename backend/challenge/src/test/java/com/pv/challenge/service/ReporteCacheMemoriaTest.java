@@ -0,0 +1,88 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.ReporteCacheDtos.Metricas;
+import com.pv.challenge.dto.ReporteResponseDtos;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReporteCacheMemoriaTest {
+
+  private static final LocalDate DESDE = LocalDate.of(2025, 8, 1);
+  private static final LocalDate HASTA = LocalDate.of(2025, 8, 31);
+
+  // Un reporte sin líneas pesa 1 KB según la estimación del cache
+  private void guardar(ReporteCacheMemoria cache, Long clienteId, LocalDate hasta, ReporteResponseDtos r) {
+    cache.guardar(clienteId, DESDE, hasta, cache.marca(clienteId), r);
+  }
+
+  @Test
+  void acierto_y_fallo_se_cuentan() {
+    ReporteCacheMemoria cache = new ReporteCacheMemoria(100_000);
+    ReporteResponseDtos r = new ReporteResponseDtos();
+
+    assertNull(cache.buscar(1L, DESDE, HASTA));
+    guardar(cache, 1L, HASTA, r);
+    assertSame(r, cache.buscar(1L, DESDE, HASTA));
+    assertNull(cache.buscar(1L, DESDE, HASTA.minusDays(1)));
+
+    Metricas m = cache.metricas();
+    assertEquals(1, m.entradas);
+    assertEquals(1_024, m.pesoBytes);
+    assertEquals(1, m.aciertos);
+    assertEquals(2, m.fallos);
+  }
+
+  @Test
+  void al_pasar_el_tope_desaloja_el_menos_usado() {
+    ReporteCacheMemoria cache = new ReporteCacheMemoria(8 * 1_024 * 2);
+    for (long id = 1; id <= 16; id++) guardar(cache, id, HASTA, new ReporteResponseDtos());
+    cache.buscar(1L, DESDE, HASTA);   // el 2 pasa a ser el menos usado
+    guardar(cache, 17L, HASTA, new ReporteResponseDtos());
+
+    assertNotNull(cache.buscar(1L, DESDE, HASTA));
+    assertNull(cache.buscar(2L, DESDE, HASTA));
+    assertNotNull(cache.buscar(17L, DESDE, HASTA));
+    assertEquals(16, cache.metricas().entradas);
+    assertEquals(1, cache.metricas().desalojos);
+  }
+
+  @Test
+  void invalidar_borra_solo_las_entradas_del_cliente() {
+    ReporteCacheMemoria cache = new ReporteCacheMemoria(100_000);
+    guardar(cache, 1L, HASTA, new ReporteResponseDtos());
+    guardar(cache, 1L, HASTA.minusDays(10), new ReporteResponseDtos());
+    guardar(cache, 2L, HASTA, new ReporteResponseDtos());
+
+    cache.invalidarClientes(Arrays.asList(1L, 1L));
+
+    assertNull(cache.buscar(1L, DESDE, HASTA));
+    assertNull(cache.buscar(1L, DESDE, HASTA.minusDays(10)));
+    assertNotNull(cache.buscar(2L, DESDE, HASTA));
+    assertEquals(2, cache.metricas().invalidaciones);
+    assertEquals(1_024, cache.metricas().pesoBytes);
+  }
+
+  @Test
+  void reporte_generado_antes_de_un_asiento_no_se_guarda() {
+    ReporteCacheMemoria cache = new ReporteCacheMemoria(100_000);
+    long marca = cache.marca(1L);
+    cache.invalidarCliente(1L);     // asiento mientras el reporte se generaba
+    cache.guardar(1L, DESDE, HASTA, marca, new ReporteResponseDtos());
+
+    assertNull(cache.buscar(1L, DESDE, HASTA));
+    assertEquals(1, cache.metricas().descartados);
+  }
+
+  @Test
+  void reporte_demasiado_grande_no_se_guarda() {
+    ReporteCacheMemoria cache = new ReporteCacheMemoria(4_000);
+    guardar(cache, 1L, HASTA, new ReporteResponseDtos());
+
+    assertNull(cache.buscar(1L, DESDE, HASTA));
+    assertEquals(1, cache.metricas().descartados);
+  }
+}
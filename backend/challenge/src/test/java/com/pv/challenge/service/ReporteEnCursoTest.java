@@ -0,0 +1,210 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.ReporteResponseDtos;
+import com.pv.challenge.exception.NotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReporteEnCursoTest {
+
+  private static final int N = 8;
+  private static final LocalDate DESDE = LocalDate.of(2025, 8, 1);
+  private static final LocalDate HASTA = LocalDate.of(2025, 8, 31);
+
+  @TempDir
+  Path dir;
+
+  private ReporteEnCurso enCurso;
+  private ExecutorService pool;
+
+  @BeforeEach
+  void setup() {
+    enCurso = new ReporteEnCurso(dir.toString());
+    pool = Executors.newFixedThreadPool(N);
+  }
+
+  @AfterEach
+  void cerrar() {
+    pool.shutdownNow();
+  }
+
+  // Quien genera espera a que los demás pedidos se unan antes de avanzar
+  private void esperarUnidos(long n) {
+    long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (enCurso.unidos() < n) {
+      if (System.nanoTime() > limite) fail("Los pedidos no se unieron al reporte en curso");
+      Thread.yield();
+    }
+  }
+
+  @Test
+  void json_pedidos_identicos_generan_una_vez() throws Exception {
+    AtomicInteger ejecuciones = new AtomicInteger();
+    ReporteResponseDtos r = new ReporteResponseDtos();
+
+    List<Future<ReporteResponseDtos>> fs = new ArrayList<>();
+    for (int i = 0; i < N; i++) {
+      fs.add(pool.submit(() -> enCurso.json(1L, DESDE, HASTA, () -> {
+        ejecuciones.incrementAndGet();
+        esperarUnidos(N - 1);
+        return r;
+      })));
+    }
+    for (Future<ReporteResponseDtos> f : fs) assertSame(r, f.get(10, TimeUnit.SECONDS));
+
+    assertEquals(1, ejecuciones.get());
+    assertEquals(1, enCurso.generados());
+    assertEquals(N - 1, enCurso.unidos());
+  }
+
+  @Test
+  void json_el_error_llega_a_todos_y_no_queda_en_curso() throws Exception {
+    List<Future<ReporteResponseDtos>> fs = new ArrayList<>();
+    for (int i = 0; i < N; i++) {
+      fs.add(pool.submit(() -> enCurso.json(9L, DESDE, HASTA, () -> {
+        esperarUnidos(N - 1);
+        throw new NotFoundException("Cliente 9 no existe");
+      })));
+    }
+    for (Future<ReporteResponseDtos> f : fs) {
+      Exception e = assertThrows(Exception.class, () -> f.get(10, TimeUnit.SECONDS));
+      assertTrue(e.getCause() instanceof NotFoundException);
+    }
+
+    // El siguiente pedido genera de nuevo
+    ReporteResponseDtos r = new ReporteResponseDtos();
+    assertSame(r, enCurso.json(9L, DESDE, HASTA, () -> r));
+  }
+
+  @Test
+  void pdf_pedidos_identicos_reciben_los_mismos_bytes_de_una_generacion() throws Exception {
+    AtomicInteger ejecuciones = new AtomicInteger();
+    byte[] bloque = new byte[10_000];
+    for (int i = 0; i < bloque.length; i++) bloque[i] = (byte) i;
+
+    List<Future<byte[]>> fs = new ArrayList<>();
+    for (int i = 0; i < N; i++) {
+      fs.add(pool.submit(() -> {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        enCurso.pdf(1L, DESDE, HASTA, out, o -> {
+          ejecuciones.incrementAndGet();
+          o.write(bloque);           // parte del PDF antes de que se unan los demás
+          o.flush();
+          esperarUnidos(N - 1);
+          for (int k = 0; k < 20; k++) o.write(bloque);
+        });
+        return out.toByteArray();
+      }));
+    }
+
+    List<byte[]> salidas = new ArrayList<>();
+    for (Future<byte[]> f : fs) salidas.add(f.get(10, TimeUnit.SECONDS));
+
+    assertEquals(1, ejecuciones.get());
+    assertEquals(21 * bloque.length, salidas.get(0).length);
+    for (byte[] s : salidas) assertArrayEquals(salidas.get(0), s);
+    // El archivo compartido se borra al terminar el último lector
+    try (Stream<Path> s = Files.list(dir.resolve("en-curso"))) {
+      assertEquals(0, s.count());
+    }
+  }
+
+  @Test
+  void pdf_si_se_desconecta_quien_genera_los_demas_reciben_el_reporte() throws Exception {
+    byte[] contenido = "%PDF-1.4 contenido".getBytes();
+    OutputStream desconectado = new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        throw new IOException("Broken pipe");
+      }
+    };
+
+    Future<?> generador = pool.submit(() -> {
+      enCurso.pdf(1L, DESDE, HASTA, desconectado, o -> {
+        esperarUnidos(1);
+        o.write(contenido);
+        o.write(contenido);
+      });
+      return null;
+    });
+    // Espera a que el primero esté generando para unirse
+    long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (enCurso.generados() < 1 && System.nanoTime() < limite) Thread.yield();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Future<?> lector = pool.submit(() -> {
+      enCurso.pdf(1L, DESDE, HASTA, out, o -> fail("No debe generar de nuevo"));
+      return null;
+    });
+
+    lector.get(10, TimeUnit.SECONDS);
+    generador.get(10, TimeUnit.SECONDS);
+    assertEquals(2 * contenido.length, out.size());
+  }
+
+  @Test
+  void pdf_sin_pedidos_unidos_no_usa_archivo_temporal() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    long[] archivos = {-1};
+    enCurso.pdf(1L, DESDE, HASTA, out, o -> {
+      o.write(new byte[200_000]);
+      o.flush();
+      try (Stream<Path> s = Files.list(dir.resolve("en-curso"))) {
+        archivos[0] = s.count();
+      }
+    });
+
+    assertEquals(200_000, out.size());
+    assertEquals(0, archivos[0]);
+  }
+
+  @Test
+  void pdf_pasado_el_tope_en_memoria_el_siguiente_genera_el_suyo() throws Exception {
+    CountDownLatch pasoElTope = new CountDownLatch(1);
+    CountDownLatch segundoGenera = new CountDownLatch(1);
+    Future<byte[]> primero = pool.submit(() -> {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      enCurso.pdf(1L, DESDE, HASTA, out, o -> {
+        o.write(new byte[ReporteEnCurso.INICIO_MAXIMO + 1]);
+        pasoElTope.countDown();
+        try {
+          assertTrue(segundoGenera.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+      });
+      return out.toByteArray();
+    });
+    assertTrue(pasoElTope.await(10, TimeUnit.SECONDS));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    enCurso.pdf(1L, DESDE, HASTA, out, o -> {
+      segundoGenera.countDown();
+      o.write(1);
+    });
+
+    assertEquals(1, out.size());
+    assertEquals(ReporteEnCurso.INICIO_MAXIMO + 1, primero.get(10, TimeUnit.SECONDS).length);
+    assertEquals(2, enCurso.generados());
+    assertEquals(0, enCurso.unidos());
+  }
+}
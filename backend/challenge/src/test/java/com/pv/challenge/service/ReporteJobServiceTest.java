@@ -0,0 +1,144 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.ReporteJobDtos.JobResponse;
+import com.pv.challenge.exception.BusinessException;
+import com.pv.challenge.exception.NotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ReporteJobServiceTest {
+
+  private static final LocalDate DESDE = LocalDate.of(2025, 7, 1);
+  private static final LocalDate HASTA = LocalDate.of(2025, 7, 31);
+
+  @TempDir Path dir;
+  private ReporteService reporteService;
+  private ReporteJobService service;
+
+  @BeforeEach
+  void setup() throws Exception {
+    reporteService = mock(ReporteService.class);
+    when(reporteService.versionLibro(anyLong(), any(LocalDate.class))).thenReturn("v1");
+    doAnswer(inv -> {
+      inv.<OutputStream>getArgument(3).write("%PDF-1.4".getBytes(StandardCharsets.US_ASCII));
+      return null;
+    }).when(reporteService).escribirPdf(anyLong(), any(), any(), any(OutputStream.class));
+
+    service = new ReporteJobService(reporteService, new ReporteCacheDisco(dir.toString(), 1_000_000),
+        dir.toString(), 1, 1, 60);
+  }
+
+  @AfterEach
+  void cerrar() {
+    service.cerrar();
+  }
+
+  private JobResponse esperar(String id) throws InterruptedException {
+    long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    JobResponse r = service.estado(id);
+    while (("PENDIENTE".equals(r.estado) || "EN_PROCESO".equals(r.estado)) && System.nanoTime() < limite) {
+      Thread.sleep(10);
+      r = service.estado(id);
+    }
+    return r;
+  }
+
+  @Test
+  void encolar_genera_en_segundo_plano_y_deja_el_pdf_para_descargar() throws Exception {
+    JobResponse r = service.encolar(1L, DESDE, HASTA);
+    assertNotNull(r.id);
+
+    JobResponse fin = esperar(r.id);
+    assertEquals("LISTO", fin.estado);
+    assertFalse(fin.desdeCache);
+    assertEquals("/api/reportes/jobs/" + r.id + "/pdf", fin.descarga);
+    assertEquals("%PDF-1.4", new String(Files.readAllBytes(service.archivo(r.id)), StandardCharsets.US_ASCII));
+  }
+
+  @Test
+  void periodo_cerrado_repetido_sale_del_cache_sin_volver_a_generar() throws Exception {
+    esperar(service.encolar(1L, DESDE, HASTA).id);
+
+    JobResponse r = service.encolar(1L, DESDE, HASTA);
+
+    assertEquals("LISTO", r.estado);
+    assertTrue(r.desdeCache);
+    verify(reporteService, times(1)).escribirPdf(anyLong(), any(), any(), any(OutputStream.class));
+  }
+
+  @Test
+  void nueva_version_del_libro_vuelve_a_generar() throws Exception {
+    esperar(service.encolar(1L, DESDE, HASTA).id);
+    when(reporteService.versionLibro(1L, HASTA)).thenReturn("v2");
+
+    JobResponse r = esperar(service.encolar(1L, DESDE, HASTA).id);
+
+    assertEquals("LISTO", r.estado);
+    assertFalse(r.desdeCache);
+    verify(reporteService, times(2)).escribirPdf(anyLong(), any(), any(), any(OutputStream.class));
+  }
+
+  @Test
+  void periodo_abierto_no_usa_cache() throws Exception {
+    LocalDate hoy = LocalDate.now(ZoneOffset.UTC);
+    esperar(service.encolar(1L, hoy, hoy).id);
+    esperar(service.encolar(1L, hoy, hoy).id);
+
+    verify(reporteService, never()).versionLibro(anyLong(), any());
+    verify(reporteService, times(2)).escribirPdf(anyLong(), any(), any(), any(OutputStream.class));
+  }
+
+  @Test
+  void cola_llena_rechaza() throws Exception {
+    CountDownLatch bloqueo = new CountDownLatch(1);
+    doAnswer(inv -> {
+      bloqueo.await();
+      return null;
+    }).when(reporteService).escribirPdf(anyLong(), any(), any(), any(OutputStream.class));
+    when(reporteService.versionLibro(anyLong(), any(LocalDate.class))).thenReturn("a", "b", "c");
+
+    try {
+      service.encolar(1L, DESDE, HASTA); // hilo único
+      service.encolar(1L, DESDE, HASTA); // cola de 1
+      assertThrows(RejectedExecutionException.class, () -> service.encolar(1L, DESDE, HASTA));
+    } finally {
+      bloqueo.countDown();
+    }
+  }
+
+  @Test
+  void error_al_generar_queda_en_estado_error() throws Exception {
+    doThrow(new RuntimeException("boom"))
+        .when(reporteService).escribirPdf(anyLong(), any(), any(), any(OutputStream.class));
+
+    JobResponse r = esperar(service.encolar(1L, DESDE, HASTA).id);
+
+    assertEquals("ERROR", r.estado);
+    assertNull(r.descarga);
+    assertThrows(BusinessException.class, () -> service.archivo(r.id));
+  }
+
+  @Test
+  void validaciones_y_job_inexistente() {
+    assertThrows(BusinessException.class, () -> service.encolar(1L, HASTA, DESDE));
+    assertThrows(NotFoundException.class, () -> service.estado("nope"));
+    doThrow(new NotFoundException("Cliente 9 no existe")).when(reporteService).verificarCliente(9L);
+    assertThrows(NotFoundException.class, () -> service.encolar(9L, DESDE, HASTA));
+  }
+}
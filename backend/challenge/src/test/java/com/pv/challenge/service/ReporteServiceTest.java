@@ -2,6 +2,7 @@ package com.pv.challenge.service;
 
 import com.pv.challenge.dto.ReporteLineaDtos;
 import com.pv.challenge.dto.ReporteResponseDtos;
+import com.pv.challenge.dto.ReporteResumenCuentaDtos;
 import com.pv.challenge.entity.Cliente;
 import com.pv.challenge.entity.Cuenta;
 import com.pv.challenge.entity.Movimiento;
@@ -10,18 +11,31 @@ import com.pv.challenge.exception.NotFoundException;
 import com.pv.challenge.repo.ClienteRepository;
 import com.pv.challenge.repo.CuentaRepository;
 import com.pv.challenge.repo.MovimientoRepository;
+import com.pv.challenge.repo.MovimientoRepository.LineaMovimiento;
+import com.pv.challenge.repo.MovimientoRepository.SaldoCuenta;
+import com.pv.challenge.repo.SaldoDiarioRepository;
+import com.pv.challenge.repo.SaldoDiarioRepository.TotalesCuenta;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -37,6 +51,8 @@ class ReporteServiceTest {
   private ClienteRepository clienteRepo;
   private CuentaRepository cuentaRepo;
   private MovimientoRepository movRepo;
+  private SaldoDiarioRepository saldoDiarioRepo;
+  private ReporteCacheMemoria cache;
   private ReporteService service;
 
   @BeforeEach
@@ -44,8 +60,11 @@ class ReporteServiceTest {
     clienteRepo = mock(ClienteRepository.class);
     cuentaRepo = mock(CuentaRepository.class);
     movRepo = mock(MovimientoRepository.class);
-    service = new ReporteService(clienteRepo, cuentaRepo, movRepo);
+    saldoDiarioRepo = mock(SaldoDiarioRepository.class);
+    cache = new ReporteCacheMemoria(1_000_000);
+    service = new ReporteService(clienteRepo, cuentaRepo, movRepo, saldoDiarioRepo, cache);
   }
+
   private Persona persona(String nombre) {
     Persona p = new Persona();
     p.setNombre(nombre);
@@ -74,13 +93,92 @@ class ReporteServiceTest {
     m.setTipo(tipo);
     m.setValor(new BigDecimal(valor));
     m.setReferencia("ref");
-    m.setSaldo(BigDecimal.ZERO); // no lo usa para cálculos de reporte
+    m.setSaldo(BigDecimal.ZERO); // solo se usa el del último movimiento previo (saldo inicial)
     m.setFecha(OffsetDateTime.parse(fechaIsoUtc).withOffsetSameInstant(ZoneOffset.UTC));
     return m;
   }
 
+  private Movimiento previo(Cuenta c, String tipo, String valor, String saldo, String fechaIsoUtc) {
+    Movimiento m = mov(c, tipo, valor, fechaIsoUtc);
+    m.setSaldo(new BigDecimal(saldo));
+    return m;
+  }
+
+  // Fila de saldosAntesDe: saldo null = la cuenta no tenía movimientos previos
+  private SaldoCuenta saldoCuenta(Long cuentaId, BigDecimal saldo) {
+    SaldoCuenta s = mock(SaldoCuenta.class);
+    lenient().when(s.getCuentaId()).thenReturn(cuentaId);
+    when(s.getSaldo()).thenReturn(saldo);
+    return s;
+  }
+
+  private LineaMovimiento linea(Long cuentaId, String tipo, String valor, String fechaIsoUtc) {
+    LineaMovimiento l = mock(LineaMovimiento.class);
+    when(l.getCuentaId()).thenReturn(cuentaId);
+    when(l.getTipo()).thenReturn(tipo);
+    when(l.getValor()).thenReturn(new BigDecimal(valor));
+    when(l.getFecha()).thenReturn(OffsetDateTime.parse(fechaIsoUtc));
+    return l;
+  }
+
+  private TotalesCuenta totales(Long cuentaId, String creditos, String debitos, long cantidad) {
+    TotalesCuenta t = mock(TotalesCuenta.class);
+    when(t.getCuentaId()).thenReturn(cuentaId);
+    when(t.getCreditos()).thenReturn(new BigDecimal(creditos));
+    when(t.getDebitos()).thenReturn(new BigDecimal(debitos));
+    lenient().when(t.getCantidad()).thenReturn(cantidad);
+    return t;
+  }
+
   // ---------- TESTS ----------
 
+  @Test
+  void versionLibro_cambiaSiCambiaElNombreDelCliente() {
+    Cliente c = cliente(1L, "Juan Pérez");
+    when(clienteRepo.findById(1L)).thenReturn(Optional.of(c));
+    when(cuentaRepo.findByCliente_Id(1L)).thenReturn(Arrays.asList(cuenta(10L, "001", "Ahorro", true)));
+    when(saldoDiarioRepo.movimientosHasta(1L, LocalDate.of(2025, 1, 31))).thenReturn(4L);
+
+    String antes = service.versionLibro(1L, LocalDate.of(2025, 1, 31));
+    c.getPersona().setNombre("Juan P. Pérez");
+
+    // El PDF guardado imprime el nombre: con otro nombre es otra versión
+    assertNotEquals(antes, service.versionLibro(1L, LocalDate.of(2025, 1, 31)));
+  }
+
+  @Test
+  void generar_lee_las_lineas_en_rango_semiabierto_hasta_el_dia_siguiente() {
+    Long clienteId = 5L;
+    when(clienteRepo.findById(clienteId)).thenReturn(Optional.of(cliente(clienteId, "Eva")));
+    when(cuentaRepo.findByCliente_Id(clienteId)).thenReturn(Arrays.asList(cuenta(10L, "999", "Ahorro", true)));
+
+    service.generar(clienteId, LocalDate.of(2025,8,1), LocalDate.of(2025,8,31), false);
+
+    // Sin el hueco de 23:59:59 a medianoche que sí cuentan los totales de saldos_diarios
+    verify(movRepo).findEnRangoPorCuentas(anyCollection(),
+        eq(OffsetDateTime.parse("2025-08-01T00:00:00Z")), eq(OffsetDateTime.parse("2025-09-01T00:00:00Z")));
+  }
+
+  @Test
+  void generar_empate_de_fecha_se_ordena_por_cuenta_como_el_pdf() {
+    Long clienteId = 4L;
+    Cuenta c9 = cuenta(9L, "009", "Ahorro", true);
+    Cuenta c3 = cuenta(3L, "003", "Corriente", true);
+    when(clienteRepo.findById(clienteId)).thenReturn(Optional.of(cliente(clienteId, "Luis")));
+    // findByCliente_Id no garantiza orden: la cuenta 9 llega primero
+    when(cuentaRepo.findByCliente_Id(clienteId)).thenReturn(Arrays.asList(c9, c3));
+    when(movRepo.findEnRangoPorCuentas(anyCollection(), any(OffsetDateTime.class), any(OffsetDateTime.class)))
+        .thenReturn(Arrays.asList(
+            mov(c3, "DEPOSITO", "1.00", "2025-08-02T10:00:00Z"),
+            mov(c9, "DEPOSITO", "2.00", "2025-08-02T10:00:00Z")));
+
+    ReporteResponseDtos r = service.generar(clienteId, LocalDate.of(2025,8,1), LocalDate.of(2025,8,31), false);
+
+    // Misma fecha: primero la cuenta de menor id, igual que streamEnRangoPorFecha
+    assertEquals("003", r.getItems().get(0).getNumeroCuenta());
+    assertEquals("009", r.getItems().get(1).getNumeroCuenta());
+  }
+
   @Test
   void generar_ok_con_saldo_inicial_de_movimientos_previos_y_totales() {
     // Cliente y cuenta
@@ -91,16 +189,21 @@ class ReporteServiceTest {
     when(clienteRepo.findById(clienteId)).thenReturn(Optional.of(cli));
     when(cuentaRepo.findByCliente_Id(clienteId)).thenReturn(Arrays.asList(cta));
 
-    // Movimientos ANTERIORES al rango (definen saldo inicial): +100.00
-    Movimiento prev1 = mov(cta, "DEPOSITO", "100.00", "2025-07-31T23:00:00Z");
-    when(movRepo.findByCuenta_IdAndFechaBeforeOrderByFechaAsc(eq(7L), any(OffsetDateTime.class)))
-        .thenReturn(Arrays.asList(prev1));
+    // Último movimiento ANTERIOR al rango (su saldo es el saldo inicial): 100.00
+    Movimiento prev1 = previo(cta, "DEPOSITO", "100.00", "100.00", "2025-07-31T23:00:00Z");
+    SaldoCuenta s7 = saldoCuenta(7L, prev1.getSaldo());
+    when(movRepo.saldosAntesDe(anyCollection(), any(OffsetDateTime.class)))
+        .thenReturn(Arrays.asList(s7));
 
     // Movimientos EN RANGO: +200.00 y -50.00 => totales créditos=200, débitos=50
     Movimiento m1 = mov(cta, "DEPOSITO", "200.00", "2025-08-01T10:00:00Z");
     Movimiento m2 = mov(cta, "RETIRO", "50.00", "2025-08-02T12:00:00Z");
-    when(movRepo.findByCuenta_IdAndFechaBetweenOrderByFechaAsc(eq(7L), any(OffsetDateTime.class), any(OffsetDateTime.class)))
+    when(movRepo.findEnRangoPorCuentas(anyCollection(), any(OffsetDateTime.class), any(OffsetDateTime.class)))
         .thenReturn(Arrays.asList(m1, m2));
+    // Totales del rango desde el rollup diario
+    TotalesCuenta t7 = totales(7L, "200.00", "50.00", 2);
+    when(saldoDiarioRepo.totalesPorCuenta(anyCollection(), any(LocalDate.class), any(LocalDate.class)))
+        .thenReturn(Arrays.asList(t7));
 
     // Ejecutar
     LocalDate desde = LocalDate.of(2025, 8, 1);
@@ -139,6 +242,45 @@ class ReporteServiceTest {
     assertEquals(0, it1.getSaldoDisponible().compareTo(new BigDecimal("250.00")));
   }
 
+  @Test
+  void generar_sin_movimientos_previos_saldo_inicial_cero() {
+    Long clienteId = 5L;
+    Cuenta cta = cuenta(10L, "999", "Ahorro", true);
+    when(clienteRepo.findById(clienteId)).thenReturn(Optional.of(cliente(clienteId, "Eva")));
+    when(cuentaRepo.findByCliente_Id(clienteId)).thenReturn(Arrays.asList(cta));
+    SaldoCuenta s10 = saldoCuenta(10L, null);
+    when(movRepo.saldosAntesDe(anyCollection(), any(OffsetDateTime.class)))
+        .thenReturn(Arrays.asList(s10));
+    when(movRepo.findEnRangoPorCuentas(anyCollection(), any(OffsetDateTime.class), any(OffsetDateTime.class)))
+        .thenReturn(Arrays.asList(mov(cta, "DEPOSITO", "20.00", "2025-08-03T10:00:00Z")));
+
+    ReporteResponseDtos r = service.generar(clienteId, LocalDate.of(2025,8,1), LocalDate.of(2025,8,31), false);
+
+    assertEquals(0, r.getItems().get(0).getSaldoInicial().compareTo(BigDecimal.ZERO));
+    assertEquals(0, r.getItems().get(0).getSaldoDisponible().compareTo(new BigDecimal("20.00")));
+  }
+
+  @Test
+  void generarCacheado_segunda_llamada_sale_del_cache_hasta_invalidar() {
+    Long clienteId = 5L;
+    Cuenta cta = cuenta(10L, "999", "Ahorro", true);
+    when(clienteRepo.findById(clienteId)).thenReturn(Optional.of(cliente(clienteId, "Eva")));
+    when(cuentaRepo.findByCliente_Id(clienteId)).thenReturn(Arrays.asList(cta));
+    when(movRepo.findEnRangoPorCuentas(anyCollection(), any(OffsetDateTime.class), any(OffsetDateTime.class)))
+        .thenReturn(Arrays.asList(mov(cta, "DEPOSITO", "20.00", "2025-08-03T10:00:00Z")));
+    LocalDate desde = LocalDate.of(2025,8,1), hasta = LocalDate.of(2025,8,31);
+
+    ReporteResponseDtos r1 = service.generarCacheado(clienteId, desde, hasta);
+    ReporteResponseDtos r2 = service.generarCacheado(clienteId, desde, hasta);
+    assertSame(r1, r2);
+    verify(clienteRepo, times(1)).findById(clienteId);
+
+    // Un asiento del cliente invalida: la siguiente llamada vuelve a la base
+    cache.invalidarCliente(clienteId);
+    assertNotSame(r1, service.generarCacheado(clienteId, desde, hasta));
+    verify(clienteRepo, times(2)).findById(clienteId);
+  }
+
   @Test
   void generar_cliente_no_existe_lanza_notfound() {
     when(clienteRepo.findById(999L)).thenReturn(Optional.empty());
@@ -172,12 +314,13 @@ class ReporteServiceTest {
     when(cuentaRepo.findByCliente_Id(clienteId)).thenReturn(Arrays.asList(cta));
 
     // Sin movimientos previos
-    when(movRepo.findByCuenta_IdAndFechaBeforeOrderByFechaAsc(eq(8L), any(OffsetDateTime.class)))
-        .thenReturn(Collections.<Movimiento>emptyList());
+    SaldoCuenta s8 = saldoCuenta(8L, null);
+    when(movRepo.saldosAntesDe(anyCollection(), any(OffsetDateTime.class)))
+        .thenReturn(Arrays.asList(s8));
 
     // Un movimiento en rango
     Movimiento m = mov(cta, "DEPOSITO", "10.00", "2025-08-05T09:00:00Z");
-    when(movRepo.findByCuenta_IdAndFechaBetweenOrderByFechaAsc(eq(8L), any(OffsetDateTime.class), any(OffsetDateTime.class)))
+    when(movRepo.findEnRangoPorCuentas(anyCollection(), any(OffsetDateTime.class), any(OffsetDateTime.class)))
         .thenReturn(Arrays.asList(m));
 
     ReporteResponseDtos r = service.generar(clienteId, LocalDate.of(2025,8,1), LocalDate.of(2025,8,31), true);
@@ -186,6 +329,207 @@ class ReporteServiceTest {
     assertFalse(r.getPdfBase64().isEmpty());
   }
 
+  @Test
+  void generar_varias_cuentas_una_consulta_y_mezcla_por_fecha_con_saldo_corrido() {
+    Long clienteId = 11L;
+    Cuenta a = cuenta(40L, "A", "Ahorro", true);
+    Cuenta b = cuenta(41L, "B", "Corriente", true);
+    Cuenta c = cuenta(42L, "C", "Ahorro", true);
+    when(clienteRepo.findById(clienteId)).thenReturn(Optional.of(cliente(clienteId, "Tomas")));
+    when(cuentaRepo.findByCliente_Id(clienteId)).thenReturn(Arrays.asList(a, b, c));
+
+    SaldoCuenta sa = saldoCuenta(40L, new BigDecimal("100.00"));
+    SaldoCuenta sb = saldoCuenta(41L, null);
+    SaldoCuenta sc = saldoCuenta(42L, new BigDecimal("5.00"));
+    when(movRepo.saldosAntesDe(Arrays.asList(40L, 41L, 42L), OffsetDateTime.parse("2025-08-01T00:00:00Z")))
+        .thenReturn(Arrays.asList(sa, sb, sc));
+
+    // Como los devuelve la consulta: por cuenta y luego por fecha
+    when(movRepo.findEnRangoPorCuentas(anyCollection(), any(OffsetDateTime.class), any(OffsetDateTime.class)))
+        .thenReturn(Arrays.asList(
+            mov(a, "DEPOSITO", "10.00", "2025-08-01T09:00:00Z"),
+            mov(a, "RETIRO", "30.00", "2025-08-05T09:00:00Z"),
+            mov(b, "DEPOSITO", "50.00", "2025-08-02T09:00:00Z"),
+            mov(b, "RETIRO", "20.00", "2025-08-05T09:00:00Z"),
+            mov(c, "DEPOSITO", "1.00", "2025-08-03T09:00:00Z")));
+
+    ReporteResponseDtos r = service.generar(clienteId, LocalDate.of(2025, 8, 1), LocalDate.of(2025, 8, 31), false);
+
+    // Orden por fecha; en empate (día 5) respeta el orden de las cuentas del cliente
+    assertEquals(5, r.getItems().size());
+    String[] cuentas = {"A", "B", "C", "A", "B"};
+    String[] saldos = {"110.00", "50.00", "6.00", "80.00", "30.00"};
+    for (int i = 0; i < 5; i++) {
+      assertEquals(cuentas[i], r.getItems().get(i).getNumeroCuenta());
+      assertEquals(0, r.getItems().get(i).getSaldoDisponible().compareTo(new BigDecimal(saldos[i])));
+    }
+    assertEquals(0, r.getItems().get(3).getSaldoInicial().compareTo(new BigDecimal("110.00")));
+
+    // Dos consultas de movimientos en total, sin importar la cantidad de cuentas
+    verify(movRepo, times(1)).saldosAntesDe(anyCollection(), any(OffsetDateTime.class));
+    verify(movRepo, times(1)).findEnRangoPorCuentas(anyCollection(), any(OffsetDateTime.class), any(OffsetDateTime.class));
+    verifyNoMoreInteractions(movRepo);
+  }
+
+  @Test
+  void escribirPdf_recorre_el_cursor_y_escribe_en_el_stream() throws Exception {
+    Long clienteId = 12L;
+    Cuenta a = cuenta(50L, "A", "Ahorro", true);
+    when(clienteRepo.findById(clienteId)).thenReturn(Optional.of(cliente(clienteId, "Ines")));
+    when(cuentaRepo.findByCliente_Id(clienteId)).thenReturn(Arrays.asList(a));
+    SaldoCuenta sa = saldoCuenta(50L, new BigDecimal("10.00"));
+    when(movRepo.saldosAntesDe(anyCollection(), any(OffsetDateTime.class))).thenReturn(Arrays.asList(sa));
+
+    LineaMovimiento l1 = linea(50L, "DEPOSITO", "5.00", "2025-08-01T10:00:00Z");
+    LineaMovimiento l2 = linea(50L, "RETIRO", "3.00", "2025-08-02T10:00:00Z");
+    AtomicBoolean cerrado = new AtomicBoolean();
+    when(movRepo.streamEnRangoPorFecha(anyCollection(), any(OffsetDateTime.class), any(OffsetDateTime.class)))
+        .thenReturn(Stream.of(l1, l2).onClose(() -> cerrado.set(true)));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    service.escribirPdf(clienteId, LocalDate.of(2025, 8, 1), LocalDate.of(2025, 8, 31), out);
+
+    byte[] pdf = out.toByteArray();
+    assertTrue(pdf.length > 0);
+    assertEquals("%PDF", new String(pdf, 0, 4, StandardCharsets.US_ASCII));
+    assertTrue(cerrado.get(), "El cursor debe cerrarse al terminar");
+    verify(movRepo, never()).findEnRangoPorCuentas(anyCollection(), any(), any());
+  }
+
+  // Cliente con una cuenta (saldo previo 10.00) y dos movimientos en el cursor
+  private AtomicBoolean prepararRecorrido(Long clienteId, String nombre) {
+    Cuenta a = cuenta(50L, "A", "Ahorro", true);
+    when(clienteRepo.findById(clienteId)).thenReturn(Optional.of(cliente(clienteId, nombre)));
+    when(cuentaRepo.findByCliente_Id(clienteId)).thenReturn(Arrays.asList(a));
+    SaldoCuenta sa = saldoCuenta(50L, new BigDecimal("10.00"));
+    when(movRepo.saldosAntesDe(anyCollection(), any(OffsetDateTime.class))).thenReturn(Arrays.asList(sa));
+    LineaMovimiento l1 = linea(50L, "DEPOSITO", "5.00", "2025-08-01T10:00:00Z");
+    LineaMovimiento l2 = linea(50L, "RETIRO", "3.00", "2025-08-02T10:00:00Z");
+    AtomicBoolean cerrado = new AtomicBoolean();
+    when(movRepo.streamEnRangoPorFecha(anyCollection(), any(OffsetDateTime.class), any(OffsetDateTime.class)))
+        .thenReturn(Stream.of(l1, l2).onClose(() -> cerrado.set(true)));
+    TotalesCuenta ta = totales(50L, "5.00", "3.00", 2);
+    when(saldoDiarioRepo.totalesPorCuenta(anyCollection(), any(LocalDate.class), any(LocalDate.class)))
+        .thenReturn(Arrays.asList(ta));
+    return cerrado;
+  }
+
+  @Test
+  void escribirCsv_una_fila_por_linea_con_saldo_corrido() throws Exception {
+    AtomicBoolean cerrado = prepararRecorrido(12L, "Perez, Ines");
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    service.escribirCsv(12L, LocalDate.of(2025, 8, 1), LocalDate.of(2025, 8, 31), out);
+
+    String[] filas = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\r\n");
+    assertEquals(3, filas.length);
+    assertEquals("\uFEFF" + EstadoCuentaCsv.ENCABEZADO, filas[0]);
+    assertEquals("2025-08-01T10:00,\"Perez, Ines\",A,Ahorro,10.00,true,5.00,15.00", filas[1]);
+    assertEquals("2025-08-02T10:00,\"Perez, Ines\",A,Ahorro,15.00,true,-3.00,12.00", filas[2]);
+    assertTrue(cerrado.get(), "El cursor debe cerrarse al terminar");
+    verify(movRepo, never()).findEnRangoPorCuentas(anyCollection(), any(), any());
+  }
+
+  @Test
+  void escribirCsv_textos_que_parecen_formulas_se_escriben_como_texto() throws Exception {
+    prepararRecorrido(12L, "=HYPERLINK(\"http://x\",\"y\")");
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    service.escribirCsv(12L, LocalDate.of(2025, 8, 1), LocalDate.of(2025, 8, 31), out);
+
+    String[] filas = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\r\n");
+    assertEquals("2025-08-01T10:00,\"'=HYPERLINK(\"\"http://x\"\",\"\"y\"\")\",A,Ahorro,10.00,true,5.00,15.00", filas[1]);
+    // Los montos negativos siguen siendo números
+    assertTrue(filas[2].endsWith(",-3.00,12.00"));
+  }
+
+  @Test
+  void escribirXlsx_hoja_con_filas_y_totales() throws Exception {
+    prepararRecorrido(12L, "Ines & Cia");
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    service.escribirXlsx(12L, LocalDate.of(2025, 8, 1), LocalDate.of(2025, 8, 31), out);
+
+    Map<String, String> entradas = new HashMap<>();
+    try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+      for (ZipEntry e = zip.getNextEntry(); e != null; e = zip.getNextEntry()) {
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        for (int n; (n = zip.read(buf)) > 0; ) b.write(buf, 0, n);
+        entradas.put(e.getName(), new String(b.toByteArray(), StandardCharsets.UTF_8));
+      }
+    }
+    assertTrue(entradas.keySet().containsAll(Arrays.asList("[Content_Types].xml", "_rels/.rels",
+        "xl/workbook.xml", "xl/_rels/workbook.xml.rels", "xl/styles.xml", "xl/worksheets/sheet1.xml")));
+    assertTrue(entradas.get("xl/workbook.xml").contains("r:id=\"rId1\""));
+
+    String hoja = entradas.get("xl/worksheets/sheet1.xml");
+    assertTrue(hoja.contains("<row r=\"2\"><c s=\"1\"><v>45870.416666666664</v></c>"
+        + "<c t=\"inlineStr\"><is><t xml:space=\"preserve\">Ines &amp; Cia</t></is></c>"), hoja);
+    assertTrue(hoja.contains("<c s=\"2\"><v>-3.00</v></c><c s=\"2\"><v>12.00</v></c></row>"));
+    // Fila vacía (4) y totales desde los saldos diarios
+    assertTrue(hoja.contains("<row r=\"5\"><c s=\"3\" t=\"inlineStr\"><is><t xml:space=\"preserve\">Créditos</t></is></c>"
+        + "<c s=\"2\"><v>5.00</v></c></row>"));
+    assertTrue(hoja.endsWith("</sheetData></worksheet>"));
+  }
+
+  @Test
+  void verificarCliente_inexistente_lanza_notfound() {
+    when(clienteRepo.existsById(77L)).thenReturn(false);
+    assertThrows(NotFoundException.class, () -> service.verificarCliente(77L));
+  }
+
+  @Test
+  void resumen_desde_saldos_diarios_sin_leer_movimientos() {
+    Long clienteId = 6L;
+    Cuenta a = cuenta(20L, "A-1", "Ahorro", true);
+    Cuenta b = cuenta(21L, "B-1", "Corriente", false);
+    when(clienteRepo.findById(clienteId)).thenReturn(Optional.of(cliente(clienteId, "Rosa")));
+    when(cuentaRepo.findByCliente_Id(clienteId)).thenReturn(Arrays.asList(a, b));
+
+    LocalDate desde = LocalDate.of(2025, 1, 1);
+    LocalDate hasta = LocalDate.of(2025, 12, 31);
+    // Solo la cuenta A tiene días con movimientos en el rango
+    TotalesCuenta t20 = totales(20L, "500.00", "120.00", 37);
+    when(saldoDiarioRepo.totalesPorCuenta(Arrays.asList(20L, 21L), desde, hasta))
+        .thenReturn(Arrays.asList(t20));
+    // Los saldos iniciales de todas las cuentas salen de una sola consulta
+    SaldoCuenta c20 = saldoCuenta(20L, new BigDecimal("80.00"));
+    SaldoCuenta c21 = saldoCuenta(21L, new BigDecimal("15.00"));
+    when(saldoDiarioRepo.cierresAntesDe(Arrays.asList(20L, 21L), desde)).thenReturn(Arrays.asList(c20, c21));
+
+    ReporteResponseDtos r = service.resumen(clienteId, desde, hasta);
+
+    assertEquals("Rosa", r.getClienteNombre());
+    assertTrue(r.getItems().isEmpty());
+    assertEquals(2, r.getResumen().size());
+
+    ReporteResumenCuentaDtos ra = r.getResumen().get(0);
+    assertEquals("A-1", ra.getNumeroCuenta());
+    assertEquals(0, ra.getSaldoInicial().compareTo(new BigDecimal("80.00")));
+    assertEquals(0, ra.getTotalCreditos().compareTo(new BigDecimal("500.00")));
+    assertEquals(0, ra.getTotalDebitos().compareTo(new BigDecimal("120.00")));
+    assertEquals(37, ra.getMovimientos());
+    assertEquals(0, ra.getSaldoFinal().compareTo(new BigDecimal("460.00")));
+
+    ReporteResumenCuentaDtos rb = r.getResumen().get(1);
+    assertFalse(rb.isEstado());
+    assertEquals(0, rb.getMovimientos());
+    assertEquals(0, rb.getSaldoFinal().compareTo(new BigDecimal("15.00")));
+
+    assertEquals(0, r.getTotalCreditos().compareTo(new BigDecimal("500.00")));
+    assertEquals(0, r.getTotalDebitos().compareTo(new BigDecimal("120.00")));
+    verifyNoInteractions(movRepo);
+  }
+
+  @Test
+  void resumen_cliente_no_existe_lanza_notfound() {
+    when(clienteRepo.findById(999L)).thenReturn(Optional.empty());
+    assertThrows(NotFoundException.class,
+        () -> service.resumen(999L, LocalDate.now(), LocalDate.now()));
+    verifyNoInteractions(cuentaRepo, saldoDiarioRepo);
+  }
+
   @Test
   void generar_saldo_inicial_con_previos_mixtos() {
     Long clienteId = 4L;
@@ -195,15 +539,15 @@ class ReporteServiceTest {
     when(clienteRepo.findById(clienteId)).thenReturn(Optional.of(cli));
     when(cuentaRepo.findByCliente_Id(clienteId)).thenReturn(Arrays.asList(cta));
 
-    // Previos: +100, -30 => neto = 70
-    Movimiento p1 = mov(cta, "DEPOSITO", "100.00", "2025-07-30T12:00:00Z");
-    Movimiento p2 = mov(cta, "RETIRO",   "30.00",  "2025-07-31T12:00:00Z");
-    when(movRepo.findByCuenta_IdAndFechaBeforeOrderByFechaAsc(eq(9L), any(OffsetDateTime.class)))
-        .thenReturn(Arrays.asList(p1, p2));
+    // Previos: +100, -30 => el último (RETIRO) quedó con saldo 70
+    Movimiento p2 = previo(cta, "RETIRO", "30.00", "70.00", "2025-07-31T12:00:00Z");
+    SaldoCuenta s9 = saldoCuenta(9L, p2.getSaldo());
+    when(movRepo.saldosAntesDe(anyCollection(), any(OffsetDateTime.class)))
+        .thenReturn(Arrays.asList(s9));
 
     // En rango: +5
     Movimiento mr = mov(cta, "DEPOSITO", "5.00", "2025-08-02T10:00:00Z");
-    when(movRepo.findByCuenta_IdAndFechaBetweenOrderByFechaAsc(eq(9L), any(OffsetDateTime.class), any(OffsetDateTime.class)))
+    when(movRepo.findEnRangoPorCuentas(anyCollection(), any(OffsetDateTime.class), any(OffsetDateTime.class)))
         .thenReturn(Arrays.asList(mr));
 
     ReporteResponseDtos r = service.generar(clienteId, LocalDate.of(2025,8,1), LocalDate.of(2025,8,31), false);
@@ -0,0 +1,73 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.entity.Movimiento;
+import com.pv.challenge.repo.CuentaRepository;
+import com.pv.challenge.repo.MovimientoRepository;
+import com.pv.challenge.repo.SaldoDiarioRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SaldoDiarioServiceTest {
+
+  private SaldoDiarioRepository saldoDiarioRepo;
+  private MovimientoRepository movRepo;
+  private CuentaRepository cuentaRepo;
+  private SaldoDiarioService service;
+
+  @BeforeEach
+  void setup() {
+    saldoDiarioRepo = mock(SaldoDiarioRepository.class);
+    movRepo = mock(MovimientoRepository.class);
+    cuentaRepo = mock(CuentaRepository.class);
+    service = new SaldoDiarioService(saldoDiarioRepo, movRepo, cuentaRepo, mock(PlatformTransactionManager.class));
+  }
+
+  private Movimiento mov(long id) {
+    Movimiento m = new Movimiento();
+    m.setId(id);
+    return m;
+  }
+
+  @Test
+  void acumular_hace_flush_y_una_sola_sentencia_con_los_ids() {
+    service.acumular(Arrays.asList(mov(5L), mov(6L), mov(9L)));
+
+    InOrder orden = inOrder(movRepo, saldoDiarioRepo);
+    orden.verify(movRepo).flush();
+    orden.verify(saldoDiarioRepo).acumular(Arrays.asList(5L, 6L, 9L));
+  }
+
+  @Test
+  void acumular_vacio_no_toca_la_base() {
+    service.acumular(Collections.<Movimiento>emptyList());
+    verifyNoInteractions(movRepo, saldoDiarioRepo);
+  }
+
+  @Test
+  void reconstruir_recorre_cuentas_por_paginas_y_reconstruye_cada_una() {
+    List<Long> llena = new ArrayList<>();
+    for (long id = 1; id <= 500; id++) llena.add(id);
+    when(cuentaRepo.idsDespuesDe(eq(0L), any(Pageable.class))).thenReturn(llena);
+    when(cuentaRepo.idsDespuesDe(eq(500L), any(Pageable.class))).thenReturn(Arrays.asList(501L, 502L));
+
+    int procesadas = service.reconstruir();
+
+    assertEquals(502, procesadas);
+    verify(cuentaRepo, times(2)).idsDespuesDe(anyLong(), any(Pageable.class));
+    verify(saldoDiarioRepo).borrarCuenta(502L);
+    verify(saldoDiarioRepo).reconstruirCuenta(502L);
+    verify(saldoDiarioRepo, times(502)).reconstruirCuenta(anyLong());
+  }
+}
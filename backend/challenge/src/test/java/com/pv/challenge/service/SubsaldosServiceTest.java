@@ -0,0 +1,152 @@
+package com.pv.challenge.service;
+
+import com.pv.challenge.dto.CuentaDtos.EstadoSubsaldos;
+import com.pv.challenge.entity.Cliente;
+import com.pv.challenge.entity.Cuenta;
+import com.pv.challenge.exception.BusinessException;
+import com.pv.challenge.repo.CuentaRepository;
+import com.pv.challenge.repo.SaldoDiarioRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SubsaldosServiceTest {
+
+  private static final String SUBSALDOS = "SELECT saldo FROM subsaldos WHERE cuenta_id = ? FOR UPDATE";
+
+  private JdbcTemplate jdbc;
+  private CuentaRepository cuentaRepo;
+  private SaldoDiarioRepository saldoDiarioRepo;
+  private ReporteCacheMemoria reporteCache;
+  private IndiceCuentas indice;
+  private SubsaldosService service;
+
+  @BeforeEach
+  void setup() {
+    jdbc = mock(JdbcTemplate.class);
+    cuentaRepo = mock(CuentaRepository.class);
+    saldoDiarioRepo = mock(SaldoDiarioRepository.class);
+    reporteCache = mock(ReporteCacheMemoria.class);
+    indice = mock(IndiceCuentas.class);
+    service = new SubsaldosService(jdbc, cuentaRepo, saldoDiarioRepo, reporteCache, indice,
+        mock(PlatformTransactionManager.class), 8, 0);
+  }
+
+  private Cuenta cuenta(long id, String saldo) {
+    Cliente cli = new Cliente();
+    cli.setId(1000 + id);
+    Cuenta c = new Cuenta();
+    c.setId(id);
+    c.setCliente(cli);
+    c.setSaldo(new BigDecimal(saldo));
+    return c;
+  }
+
+  // Créditos pendientes que devuelve el INSERT ... RETURNING de la consolidación
+  private void pendientes(String... valores) throws Exception {
+    doAnswer(inv -> {
+      RowCallbackHandler h = inv.getArgument(1);
+      ResultSet rs = mock(ResultSet.class);
+      for (int i = 0; i < valores.length; i++) {
+        when(rs.getLong(1)).thenReturn(500L + i);
+        when(rs.getBigDecimal(2)).thenReturn(new BigDecimal(valores[i]));
+        h.processRow(rs);
+      }
+      return null;
+    }).when(jdbc).query(startsWith("WITH p AS (DELETE FROM creditos_repartidos"), any(RowCallbackHandler.class),
+        ArgumentMatchers.<Object>any(), any(), any(), any());
+  }
+
+  @Test
+  void consolidar_pasaLosSubsaldosALaCuentaYLosCreditosAMovimientos() throws Exception {
+    Cuenta c = cuenta(5L, "100.00");
+    when(jdbc.queryForList(SUBSALDOS, BigDecimal.class, 5L))
+        .thenReturn(Arrays.asList(new BigDecimal("30.00"), BigDecimal.ZERO, new BigDecimal("12.50")));
+    pendientes("20.00", "10.00", "12.50");
+    Timestamp antes = Timestamp.from(Instant.now());
+
+    assertEquals(3, service.consolidarBloqueada(c));
+
+    // Asentados al consolidar, detrás de lo que ya tenía la cuenta; la fecha del crédito aparte
+    ArgumentCaptor<Timestamp> fecha = ArgumentCaptor.forClass(Timestamp.class);
+    verify(jdbc).query(contains("referencia, ?, fecha FROM p"), any(RowCallbackHandler.class),
+        eq(5L), eq(5L), eq(new BigDecimal("100.00")), fecha.capture());
+    assertFalse(fecha.getValue().before(antes));
+    assertEquals(0, new BigDecimal("142.50").compareTo(c.getSaldo()));
+    verify(jdbc).update("UPDATE subsaldos SET saldo = 0 WHERE cuenta_id = ? AND saldo <> 0", 5L);
+    verify(saldoDiarioRepo).acumular(Arrays.asList(500L, 501L, 502L));
+    verify(indice).confirmar(c);
+    verify(reporteCache).invalidarCliente(1005L);
+  }
+
+  @Test
+  void consolidar_sinPendientes_noTocaLaCuenta() throws Exception {
+    Cuenta c = cuenta(6L, "10.00");
+    when(jdbc.queryForList(SUBSALDOS, BigDecimal.class, 6L)).thenReturn(Collections.singletonList(BigDecimal.ZERO));
+    pendientes();
+
+    assertEquals(0, service.consolidarBloqueada(c));
+    verifyNoInteractions(saldoDiarioRepo, indice, reporteCache);
+  }
+
+  @Test
+  void consolidar_subsaldosQueNoCoincidenConLosPendientes_fallaSinTocarLaCuenta() throws Exception {
+    Cuenta c = cuenta(7L, "10.00");
+    when(jdbc.queryForList(SUBSALDOS, BigDecimal.class, 7L)).thenReturn(Collections.singletonList(new BigDecimal("5.00")));
+    pendientes("4.00");
+
+    assertThrows(IllegalStateException.class, () -> service.consolidarBloqueada(c));
+    assertEquals(0, new BigDecimal("10.00").compareTo(c.getSaldo()));
+    verifyNoInteractions(saldoDiarioRepo);
+  }
+
+  @Test
+  void repartir_fueraDeRango_lanzaBusinessSinIrALaBase() {
+    assertThrows(BusinessException.class, () -> service.repartir(1L, -1));
+    assertThrows(BusinessException.class, () -> service.repartir(1L, 9));
+    verifyNoInteractions(jdbc, cuentaRepo);
+  }
+
+  @Test
+  void repartir_consolidaYRehaceLosSubsaldos() {
+    Cuenta c = cuenta(8L, "10.00");
+    when(cuentaRepo.bloquearPorIds(Collections.singletonList(8L))).thenReturn(Collections.singletonList(c));
+    when(jdbc.queryForList(SUBSALDOS, BigDecimal.class, 8L)).thenReturn(Collections.emptyList());
+    EstadoSubsaldos leido = new EstadoSubsaldos();
+    leido.saldoPrincipal = new BigDecimal("10.00");
+    leido.subsaldos = 4;
+    when(jdbc.query(startsWith("SELECT saldo, subsaldos FROM cuentas"), ArgumentMatchers.<RowMapper<EstadoSubsaldos>>any(), eq(8L)))
+        .thenReturn(Collections.singletonList(leido));
+    when(jdbc.queryForList("SELECT saldo FROM subsaldos WHERE cuenta_id = ? ORDER BY slot", BigDecimal.class, 8L))
+        .thenReturn(Collections.nCopies(4, BigDecimal.ZERO));
+    when(jdbc.queryForObject("SELECT COUNT(*) FROM creditos_repartidos WHERE cuenta_id = ?", Long.class, 8L)).thenReturn(0L);
+
+    EstadoSubsaldos e = service.repartir(8L, 4);
+
+    assertEquals(4, e.subsaldos);
+    assertEquals(4, e.saldos.size());
+    assertEquals(0, new BigDecimal("10.00").compareTo(e.saldo));
+
+    verify(jdbc).update("DELETE FROM subsaldos WHERE cuenta_id = ?", 8L);
+    verify(jdbc).update("INSERT INTO subsaldos (cuenta_id, slot) SELECT ?, generate_series(0, ? - 1)", 8L, 4);
+    verify(jdbc).update("UPDATE cuentas SET subsaldos = ? WHERE id = ?", 4, 8L);
+    // Sin transacción real el cambio se aplica enseguida
+    assertTrue(service.repartida(8L));
+  }
+}
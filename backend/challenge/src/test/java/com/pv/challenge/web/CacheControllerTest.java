@@ -0,0 +1,27 @@
+package com.pv.challenge.web;
+
+import com.pv.challenge.dto.CacheDtos.RegionCache;
+import com.pv.challenge.service.CacheSegundoNivel;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CacheControllerTest {
+
+    @Test
+    void metricas_delegaEnElServicio() {
+        CacheSegundoNivel cache = mock(CacheSegundoNivel.class);
+        RegionCache r = new RegionCache();
+        r.region = "cuentas";
+        when(cache.metricas()).thenReturn(Collections.singletonList(r));
+
+        List<RegionCache> out = new CacheController(cache).metricas();
+
+        assertEquals(1, out.size());
+        assertSame(r, out.get(0));
+    }
+}
@@ -2,18 +2,25 @@ package com.pv.challenge.web;
 
 import com.pv.challenge.dto.ClienteDtos.SaveClienteRequest;
 import com.pv.challenge.dto.ClienteDtos.ClienteResponse;
+import com.pv.challenge.dto.ClienteDtos.ImportacionResponse;
+import com.pv.challenge.dto.ClienteDtos.PaginaClientes;
 import com.pv.challenge.entity.Cliente;
 import com.pv.challenge.entity.Persona;
 import com.pv.challenge.exception.BusinessException;
 import com.pv.challenge.exception.NotFoundException;
 import com.pv.challenge.service.ClienteService;
+import com.pv.challenge.service.ImportacionClientesService;
+import com.pv.challenge.service.ImportacionClientesService.Formato;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -26,6 +33,9 @@ class ClienteControllerTest {
     @Mock
     private ClienteService clienteService;
 
+    @Mock
+    private ImportacionClientesService importacionService;
+
     @InjectMocks
     private ClienteController clienteController;
 
@@ -53,18 +63,44 @@ class ClienteControllerTest {
     }
 
     @Test
-    void listar_retornaListaClientes() {
-        Cliente cliente1 = crearClienteConPersona(1L, "Juan Pérez", "juan123");
-        Cliente cliente2 = crearClienteConPersona(2L, "María García", "maria456");
-        
-        when(clienteService.listar()).thenReturn(Arrays.asList(cliente1, cliente2));
+    void listar_retornaPaginaDelServicio() {
+        PaginaClientes pagina = new PaginaClientes();
+        ClienteResponse r = new ClienteResponse();
+        r.nombre = "Juan Pérez";
+        pagina.items.add(r);
+        pagina.siguiente = "1";
+
+        when(clienteService.listar(null, 50)).thenReturn(pagina);
+
+        PaginaClientes resultado = clienteController.listar(null, 50);
+
+        assertSame(pagina, resultado);
+        verify(clienteService).listar(null, 50);
+    }
+
+    @Test
+    void buscar_retornaCoincidenciasDelServicio() {
+        ClienteResponse r = new ClienteResponse();
+        r.nombre = "Juan Pérez";
+        when(clienteService.buscar("jua", 20)).thenReturn(Collections.singletonList(r));
+
+        List<ClienteResponse> resultado = clienteController.buscar("jua", 20);
+
+        assertEquals(1, resultado.size());
+        assertSame(r, resultado.get(0));
+    }
+
+    @Test
+    void importar_eligeElFormatoPorContentType() {
+        InputStream cuerpo = new ByteArrayInputStream(new byte[0]);
+        ImportacionResponse r = new ImportacionResponse();
+        when(importacionService.importar(any(), any())).thenReturn(r);
 
-        List<ClienteResponse> resultado = clienteController.listar();
+        assertSame(r, clienteController.importar("text/csv; charset=UTF-8", cuerpo));
+        verify(importacionService).importar(cuerpo, Formato.CSV);
 
-        assertEquals(2, resultado.size());
-        assertEquals("Juan Pérez", resultado.get(0).nombre);
-        assertEquals("juan123", resultado.get(0).clienteId);
-        verify(clienteService).listar();
+        clienteController.importar("application/x-ndjson", cuerpo);
+        verify(importacionService).importar(cuerpo, Formato.NDJSON);
     }
 
     @Test
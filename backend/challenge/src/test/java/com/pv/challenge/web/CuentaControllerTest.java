@@ -2,12 +2,15 @@ package com.pv.challenge.web;
 
 import com.pv.challenge.dto.CuentaDtos.SaveCuentaRequest;
 import com.pv.challenge.dto.CuentaDtos.CuentaResponse;
+import com.pv.challenge.dto.CuentaDtos.PaginaCuentas;
+import com.pv.challenge.dto.CuentaDtos.SaldoResponse;
 import com.pv.challenge.entity.Cliente;
 import com.pv.challenge.entity.Cuenta;
 import com.pv.challenge.entity.Persona;
 import com.pv.challenge.exception.BusinessException;
 import com.pv.challenge.exception.NotFoundException;
 import com.pv.challenge.service.CuentaService;
+import com.pv.challenge.service.SubsaldosService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
@@ -15,6 +18,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.math.BigDecimal;
+import java.time.OffsetDateTime;
 import java.util.Arrays;
 import java.util.List;
 
@@ -28,6 +32,9 @@ class CuentaControllerTest {
     @Mock
     private CuentaService cuentaService;
 
+    @Mock
+    private SubsaldosService subsaldos;
+
     @InjectMocks
     private CuentaController cuentaController;
 
@@ -56,18 +63,19 @@ class CuentaControllerTest {
     }
 
     @Test
-    void listar_retornaListaCuentas() {
-        Cuenta cuenta1 = crearCuentaConCliente(1L, "001", "Ahorro", new BigDecimal("1000"), "Juan Pérez");
-        Cuenta cuenta2 = crearCuentaConCliente(2L, "002", "Corriente", new BigDecimal("500"), "María García");
-        
-        when(cuentaService.listar()).thenReturn(Arrays.asList(cuenta1, cuenta2));
+    void listar_retornaPaginaDelServicio() {
+        PaginaCuentas pagina = new PaginaCuentas();
+        CuentaResponse r = new CuentaResponse();
+        r.numero = "001";
+        pagina.items.add(r);
 
-        List<CuentaResponse> resultado = cuentaController.listar();
+        when(cuentaService.listar("10", 20)).thenReturn(pagina);
 
-        assertEquals(2, resultado.size());
-        assertEquals("001", resultado.get(0).numero);
-        assertEquals("Juan Pérez", resultado.get(0).clienteNombre);
-        verify(cuentaService).listar();
+        PaginaCuentas resultado = cuentaController.listar("10", 20);
+
+        assertSame(pagina, resultado);
+        assertNull(resultado.siguiente);
+        verify(cuentaService).listar("10", 20);
     }
 
     @Test
@@ -99,6 +107,18 @@ class CuentaControllerTest {
         verify(cuentaService).obtener(cuentaId);
     }
 
+    @Test
+    void obtener_cuentaRepartida_sumaLosSubsaldos() {
+        Cuenta cuenta = crearCuentaConCliente(2L, "002", "Corriente", new BigDecimal("10"), "Juan Pérez");
+        when(cuentaService.obtener(2L)).thenReturn(cuenta);
+        when(subsaldos.repartida(2L)).thenReturn(true);
+        when(subsaldos.saldoTotal(2L)).thenReturn(new BigDecimal("35.50"));
+
+        CuentaResponse resultado = cuentaController.obtener(2L);
+
+        assertEquals(0, resultado.saldo.compareTo(new BigDecimal("35.50")));
+    }
+
     @Test
     void obtener_cuentaNoExiste_lanzaNotFoundException() {
         Long cuentaId = 999L;
@@ -175,4 +195,27 @@ class CuentaControllerTest {
         assertThrows(NotFoundException.class, () -> cuentaController.eliminar(cuentaId));
         verify(cuentaService).eliminar(cuentaId);
     }
-}
\ No newline at end of file
+
+    @Test
+    void saldo_enInstante_retornaSaldoDelServicio() {
+        OffsetDateTime at = OffsetDateTime.parse("2025-08-01T00:00:00Z");
+        when(cuentaService.saldoAl(1L, at)).thenReturn(new BigDecimal("70.00"));
+
+        SaldoResponse resultado = cuentaController.saldo(1L, at);
+
+        assertEquals(1L, resultado.cuentaId);
+        assertEquals(at, resultado.at);
+        assertEquals(0, resultado.saldo.compareTo(new BigDecimal("70.00")));
+        verify(cuentaService).saldoAl(1L, at);
+    }
+
+    @Test
+    void saldo_sinInstante_usaAhora() {
+        when(cuentaService.saldoAl(eq(1L), any(OffsetDateTime.class))).thenReturn(new BigDecimal("5.00"));
+
+        SaldoResponse resultado = cuentaController.saldo(1L, null);
+
+        assertNotNull(resultado.at);
+        assertEquals(0, resultado.saldo.compareTo(new BigDecimal("5.00")));
+    }
+}
@@ -1,10 +1,19 @@
 package com.pv.challenge.web;
 
+import com.pv.challenge.dto.MovimientoDtos;
+import com.pv.challenge.entity.Cuenta;
 import com.pv.challenge.entity.Movimiento;
 import com.pv.challenge.exception.BusinessException;
 import com.pv.challenge.repo.MovimientoRepository;
+import com.pv.challenge.service.AsientosAgrupadosService;
+import com.pv.challenge.service.CupoDiarioService;
+import com.pv.challenge.service.DiarioAsientosService;
+import com.pv.challenge.service.ExportacionService;
+import com.pv.challenge.service.IdempotenciaService;
+import com.pv.challenge.service.MovimientoLoteService;
 import com.pv.challenge.service.MovimientoService;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.context.annotation.Import;
@@ -14,9 +23,20 @@ import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -29,6 +49,12 @@ class MovimientoControllerTest {
 
   @MockBean private MovimientoRepository movimientoRepository; 
   @MockBean private MovimientoService movimientoService;       
+  @MockBean private MovimientoLoteService loteService;
+  @MockBean private ExportacionService exportacionService;
+  @MockBean private CupoDiarioService cupoDiarioService;
+  @MockBean private IdempotenciaService idempotenciaService;
+  @MockBean private AsientosAgrupadosService agrupadosService;
+  @MockBean private DiarioAsientosService diarioService;
 
   @Test
   void retiro_saldoNoDisponible_retorna400() throws Exception {
@@ -46,8 +72,11 @@ class MovimientoControllerTest {
 
   @Test
   void deposito_ok_retornaMovimientoConSaldo() throws Exception {
+    Cuenta c = new Cuenta();
+    c.setId(1L);
     Movimiento m = new Movimiento();
     m.setId(10L);
+    m.setCuenta(c);
     m.setTipo("DEPOSITO");
     m.setValor(new BigDecimal("150.00"));
     m.setSaldo(new BigDecimal("250.00"));
@@ -66,4 +95,142 @@ class MovimientoControllerTest {
         .andExpect(jsonPath("$.valor").value(150.00))
         .andExpect(jsonPath("$.saldo").value(250.00));
   }
+
+  @Test
+  void listar_pasa_filtros_y_devuelve_pagina() throws Exception {
+    MovimientoDtos.PaginaMovimientos p = new MovimientoDtos.PaginaMovimientos();
+    p.siguiente = "abc";
+    when(movimientoService.listar(any(MovimientoDtos.FiltroMovimientos.class), eq("c1"), eq(20))).thenReturn(p);
+
+    mvc.perform(get("/api/movimientos")
+            .param("cuentaId", "5")
+            .param("tipo", "RETIRO")
+            .param("desde", "2025-08-01")
+            .param("montoMin", "10")
+            .param("cursor", "c1")
+            .param("limite", "20"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items").isArray())
+        .andExpect(jsonPath("$.siguiente").value("abc"));
+
+    ArgumentCaptor<MovimientoDtos.FiltroMovimientos> cap = ArgumentCaptor.forClass(MovimientoDtos.FiltroMovimientos.class);
+    verify(movimientoService).listar(cap.capture(), eq("c1"), eq(20));
+    assertEquals(5L, cap.getValue().cuentaId);
+    assertEquals("RETIRO", cap.getValue().tipo);
+    assertEquals(LocalDate.of(2025, 8, 1), cap.getValue().desde);
+    assertEquals(0, cap.getValue().montoMin.compareTo(BigDecimal.TEN));
+    assertNull(cap.getValue().hasta);
+  }
+
+  @Test
+  void lote_ok_retornaResultadosPorOperacion() throws Exception {
+    MovimientoDtos.ResultadoLote ok = new MovimientoDtos.ResultadoLote();
+    ok.indice = 0;
+    ok.ok = true;
+    ok.movimientoId = 51L;
+    ok.saldo = new BigDecimal("110.00");
+    MovimientoDtos.ResultadoLote ko = new MovimientoDtos.ResultadoLote();
+    ko.indice = 1;
+    ko.error = "Saldo no disponible.";
+
+    MovimientoDtos.LoteResponse resp = new MovimientoDtos.LoteResponse();
+    resp.total = 2;
+    resp.aplicados = 1;
+    resp.rechazados = 1;
+    resp.resultados.add(ok);
+    resp.resultados.add(ko);
+    when(loteService.registrar(anyList())).thenReturn(resp);
+
+    mvc.perform(post("/api/movimientos/lote")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("[{\"cuentaId\":1,\"tipo\":\"DEPOSITO\",\"monto\":10},"
+                + "{\"cuentaId\":1,\"tipo\":\"RETIRO\",\"monto\":999}]"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.aplicados").value(1))
+        .andExpect(jsonPath("$.rechazados").value(1))
+        .andExpect(jsonPath("$.resultados[0].movimientoId").value(51))
+        .andExpect(jsonPath("$.resultados[1].error").value("Saldo no disponible."));
+  }
+
+  @Test
+  void reconstruirRetirosDiarios_delDiaPedidoOHoy() throws Exception {
+    when(cupoDiarioService.reconstruir(LocalDate.of(2025, 8, 1))).thenReturn(3);
+    when(cupoDiarioService.hoy()).thenReturn(LocalDate.of(2025, 8, 2));
+    when(cupoDiarioService.reconstruir(LocalDate.of(2025, 8, 2))).thenReturn(5);
+
+    mvc.perform(post("/api/movimientos/retiros-diarios/reconstruir").param("dia", "2025-08-01"))
+        .andExpect(status().isOk())
+        .andExpect(content().string("3"));
+    mvc.perform(post("/api/movimientos/retiros-diarios/reconstruir"))
+        .andExpect(status().isOk())
+        .andExpect(content().string("5"));
+  }
+
+  @Test
+  void deposito_conIdempotencyKey_pasaPorIdempotencia() throws Exception {
+    when(idempotenciaService.ejecutar(eq("k-1"), eq("DEPOSITO"), any(String.class), any(), any()))
+        .thenThrow(new BusinessException("La Idempotency-Key ya se usó con otros parámetros."));
+
+    mvc.perform(post("/api/movimientos/deposito")
+            .header("Idempotency-Key", "k-1")
+            .param("cuentaId", "1")
+            .param("monto", "150"))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.message").value("La Idempotency-Key ya se usó con otros parámetros."));
+
+    verify(idempotenciaService).ejecutar(eq("k-1"), eq("DEPOSITO"),
+        eq(IdempotenciaService.huella(1L, new BigDecimal("150.00"), null)), eq(Collections.singletonList(1L)), any());
+    verify(movimientoService, never()).depositar(any(), any(), any());
+  }
+
+  @Test
+  void transferencia_conIdempotencyKey_repetidaNoTransfiere() throws Exception {
+    mvc.perform(post("/api/movimientos/transferencia")
+            .header("Idempotency-Key", "t-1")
+            .param("origenId", "1")
+            .param("destinoId", "2")
+            .param("monto", "10"))
+        .andExpect(status().isOk());
+
+    // El mock de idempotencia no ejecuta el asiento: como un reintento ya confirmado
+    verify(idempotenciaService).ejecutar(eq("t-1"), eq("TRANSFERENCIA"),
+        eq(IdempotenciaService.huella(1L, 2L, BigDecimal.TEN, null)), eq(Arrays.asList(1L, 2L)), any());
+    verify(movimientoService, never()).transferir(any(), any(), any(), isNull());
+  }
+
+  @Test
+  void deposito_conAsientosAgrupados_esperaElCommitDelLote() throws Exception {
+    when(agrupadosService.activo()).thenReturn(true);
+    when(agrupadosService.registrar(1L, "DEPOSITO", new BigDecimal("150"), null))
+        .thenReturn(new MovimientoDtos.MovimientoResponse(77L, 1L, "DEPOSITO", new BigDecimal("150"),
+            new BigDecimal("250.00"), null, null));
+
+    mvc.perform(post("/api/movimientos/deposito")
+            .param("cuentaId", "1")
+            .param("monto", "150"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.id").value(77))
+        .andExpect(jsonPath("$.saldo").value(250.00));
+
+    verify(movimientoService, never()).depositar(any(), any(), any());
+  }
+
+  @Test
+  void depositoDiferido_respondeAcuseConSecuencia() throws Exception {
+    MovimientoDtos.AcuseDiario acuse = new MovimientoDtos.AcuseDiario();
+    acuse.secuencia = 42L;
+    acuse.cuentaId = 1L;
+    acuse.valor = new BigDecimal("150");
+    acuse.durable = true;
+    when(diarioService.depositar(1L, new BigDecimal("150"), null)).thenReturn(acuse);
+
+    mvc.perform(post("/api/movimientos/deposito/diferido")
+            .param("cuentaId", "1")
+            .param("monto", "150"))
+        .andExpect(status().isAccepted())
+        .andExpect(jsonPath("$.secuencia").value(42))
+        .andExpect(jsonPath("$.durable").value(true));
+
+    verify(movimientoService, never()).depositar(any(), any(), any());
+  }
 }
@@ -1,34 +1,256 @@
 package com.pv.challenge.web;
 
+import com.pv.challenge.dto.ReporteJobDtos.JobResponse;
 import com.pv.challenge.dto.ReporteResponseDtos;
+import com.pv.challenge.exception.NotFoundException;
+import com.pv.challenge.service.CierreMensualService;
+import com.pv.challenge.service.ReporteCacheMemoria;
+import com.pv.challenge.service.ReporteEnCurso;
+import com.pv.challenge.service.ReporteJobService;
 import com.pv.challenge.service.ReporteService;
+import com.pv.challenge.service.SaldoDiarioService;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 public class ReporteControllerTest {
 
+  @TempDir
+  static Path tmp;
+
+  private ReporteController controller(ReporteService svc, SaldoDiarioService saldos, ReporteJobService jobs) {
+    return new ReporteController(svc, saldos, jobs, new ReporteCacheMemoria(1_000_000),
+        new ReporteEnCurso(tmp.toString()), mock(CierreMensualService.class));
+  }
+
   @Test
   void retorna_json_ok() throws Exception {
     ReporteService svc = mock(ReporteService.class);
-    when(svc.generar(eq(1L), any(LocalDate.class), any(LocalDate.class), eq(false)))
+    when(svc.generarCacheado(eq(1L), any(LocalDate.class), any(LocalDate.class)))
         .thenReturn(new ReporteResponseDtos());
 
-    MockMvc mvc = standaloneSetup(new ReporteController(svc)).build();
+    MockMvc mvc = standaloneSetup(controller(svc, mock(SaldoDiarioService.class), mock(ReporteJobService.class))).build();
+
+    mvc.perform(get("/api/reportes/json")
+            .param("clienteId", "1")
+            .param("desde", "2025-08-01")
+            .param("hasta", "2025-08-31"))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+  }
+
+  @Test
+  void cache_metricas_ok() throws Exception {
+    MockMvc mvc = standaloneSetup(controller(mock(ReporteService.class), mock(SaldoDiarioService.class),
+        mock(ReporteJobService.class))).build();
+
+    mvc.perform(get("/api/reportes/cache/metricas"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.entradas").value(0))
+        .andExpect(jsonPath("$.maxBytes").value(1_000_000));
+  }
+
+  @Test
+  void pdf_se_escribe_en_streaming() throws Exception {
+    ReporteService svc = mock(ReporteService.class);
+    doAnswer(inv -> {
+      inv.<OutputStream>getArgument(3).write("%PDF-1.4".getBytes(StandardCharsets.US_ASCII));
+      return null;
+    }).when(svc).escribirPdf(eq(1L), any(LocalDate.class), any(LocalDate.class), any(OutputStream.class));
+
+    MockMvc mvc = standaloneSetup(controller(svc, mock(SaldoDiarioService.class), mock(ReporteJobService.class))).build();
+
+    MvcResult async = mvc.perform(get("/api/reportes/pdf")
+            .param("clienteId", "1")
+            .param("desde", "2025-08-01")
+            .param("hasta", "2025-08-31"))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    mvc.perform(asyncDispatch(async))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(MediaType.APPLICATION_PDF))
+        .andExpect(header().string("Content-Disposition", "attachment; filename=reporte.pdf"))
+        .andExpect(content().string("%PDF-1.4"));
+    verify(svc).verificarCliente(1L);
+    verify(svc, never()).generar(anyLong(), any(), any(), anyBoolean());
+  }
+
+  @Test
+  void pdf_cliente_inexistente_no_empieza_el_stream() throws Exception {
+    ReporteService svc = mock(ReporteService.class);
+    doThrow(new NotFoundException("Cliente 9 no existe")).when(svc).verificarCliente(9L);
+
+    MockMvc mvc = standaloneSetup(controller(svc, mock(SaldoDiarioService.class), mock(ReporteJobService.class))).build();
+
+    mvc.perform(get("/api/reportes/pdf")
+            .param("clienteId", "9")
+            .param("desde", "2025-08-01")
+            .param("hasta", "2025-08-31"))
+        .andExpect(status().isNotFound());
+    verify(svc, never()).escribirPdf(anyLong(), any(), any(), any());
+  }
+
+  @Test
+  void negocia_csv_y_xlsx_por_accept_en_streaming() throws Exception {
+    ReporteService svc = mock(ReporteService.class);
+    doAnswer(inv -> {
+      inv.<OutputStream>getArgument(3).write("fecha,cliente".getBytes(StandardCharsets.UTF_8));
+      return null;
+    }).when(svc).escribirCsv(eq(1L), any(LocalDate.class), any(LocalDate.class), any(OutputStream.class));
+    doAnswer(inv -> {
+      inv.<OutputStream>getArgument(3).write("PK".getBytes(StandardCharsets.US_ASCII));
+      return null;
+    }).when(svc).escribirXlsx(eq(1L), any(LocalDate.class), any(LocalDate.class), any(OutputStream.class));
+
+    MockMvc mvc = standaloneSetup(controller(svc, mock(SaldoDiarioService.class), mock(ReporteJobService.class))).build();
+
+    MvcResult csv = mvc.perform(get("/api/reportes")
+            .accept(MediaType.parseMediaType("text/csv"))
+            .param("clienteId", "1")
+            .param("desde", "2025-08-01")
+            .param("hasta", "2025-08-31"))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+    mvc.perform(asyncDispatch(csv))
+        .andExpect(status().isOk())
+        .andExpect(content().contentTypeCompatibleWith("text/csv"))
+        .andExpect(header().string("Content-Disposition", "attachment; filename=reporte.csv"))
+        .andExpect(content().string("fecha,cliente"));
+
+    MvcResult xlsx = mvc.perform(get("/api/reportes")
+            .accept(MediaType.parseMediaType(ReporteController.XLSX))
+            .param("clienteId", "1")
+            .param("desde", "2025-08-01")
+            .param("hasta", "2025-08-31"))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+    mvc.perform(asyncDispatch(xlsx))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(ReporteController.XLSX))
+        .andExpect(content().string("PK"));
+
+    verify(svc, times(2)).verificarCliente(1L);
+    verify(svc, never()).generarCacheado(anyLong(), any(), any());
+  }
 
-    mvc.perform(get("/api/reportes")
+  @Test
+  void negocia_pdf_por_accept() throws Exception {
+    ReporteService svc = mock(ReporteService.class);
+    doAnswer(inv -> {
+      inv.<OutputStream>getArgument(3).write("%PDF-1.4".getBytes(StandardCharsets.US_ASCII));
+      return null;
+    }).when(svc).escribirPdf(eq(1L), any(LocalDate.class), any(LocalDate.class), any(OutputStream.class));
+
+    MockMvc mvc = standaloneSetup(controller(svc, mock(SaldoDiarioService.class), mock(ReporteJobService.class))).build();
+
+    MvcResult async = mvc.perform(get("/api/reportes")
+            .accept(MediaType.APPLICATION_PDF)
             .param("clienteId", "1")
             .param("desde", "2025-08-01")
             .param("hasta", "2025-08-31"))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+    mvc.perform(asyncDispatch(async))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(MediaType.APPLICATION_PDF))
+        .andExpect(content().string("%PDF-1.4"));
+  }
+
+  @Test
+  void csv_cliente_inexistente_no_empieza_el_stream() throws Exception {
+    ReporteService svc = mock(ReporteService.class);
+    doThrow(new NotFoundException("Cliente 9 no existe")).when(svc).verificarCliente(9L);
+
+    MockMvc mvc = standaloneSetup(controller(svc, mock(SaldoDiarioService.class), mock(ReporteJobService.class))).build();
+
+    mvc.perform(get("/api/reportes/csv")
+            .param("clienteId", "9")
+            .param("desde", "2025-08-01")
+            .param("hasta", "2025-08-31"))
+        .andExpect(status().isNotFound());
+    verify(svc, never()).escribirCsv(anyLong(), any(), any(), any());
+  }
+
+  @Test
+  void resumen_ok() throws Exception {
+    ReporteService svc = mock(ReporteService.class);
+    when(svc.resumen(eq(1L), any(LocalDate.class), any(LocalDate.class)))
+        .thenReturn(new ReporteResponseDtos());
+
+    MockMvc mvc = standaloneSetup(controller(svc, mock(SaldoDiarioService.class), mock(ReporteJobService.class))).build();
+
+    mvc.perform(get("/api/reportes/resumen")
+            .param("clienteId", "1")
+            .param("desde", "2025-01-01")
+            .param("hasta", "2025-12-31"))
         .andExpect(status().isOk())
         .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+    verify(svc).resumen(1L, LocalDate.of(2025, 1, 1), LocalDate.of(2025, 12, 31));
+  }
+
+  @Test
+  void reconstruir_saldos_diarios_devuelve_cuentas_procesadas() throws Exception {
+    SaldoDiarioService saldos = mock(SaldoDiarioService.class);
+    when(saldos.reconstruir()).thenReturn(3);
+
+    MockMvc mvc = standaloneSetup(controller(mock(ReporteService.class), saldos, mock(ReporteJobService.class))).build();
+
+    mvc.perform(post("/api/reportes/saldos-diarios/reconstruir"))
+        .andExpect(status().isOk())
+        .andExpect(content().string("3"));
+  }
+
+  @Test
+  void jobs_encola_y_responde_202_con_id() throws Exception {
+    ReporteJobService jobs = mock(ReporteJobService.class);
+    JobResponse r = new JobResponse();
+    r.id = "abc";
+    r.estado = "PENDIENTE";
+    when(jobs.encolar(1L, LocalDate.of(2025, 7, 1), LocalDate.of(2025, 7, 31))).thenReturn(r);
+
+    MockMvc mvc = standaloneSetup(controller(mock(ReporteService.class), mock(SaldoDiarioService.class), jobs))
+        .setMessageConverters(new MappingJackson2HttpMessageConverter(
+            Jackson2ObjectMapperBuilder.json().build()))
+        .build();
+
+    mvc.perform(post("/api/reportes/jobs")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"clienteId\":1,\"desde\":\"2025-07-01\",\"hasta\":\"2025-07-31\"}"))
+        .andExpect(status().isAccepted())
+        .andExpect(jsonPath("$.id").value("abc"))
+        .andExpect(jsonPath("$.estado").value("PENDIENTE"));
+  }
+
+  @Test
+  void jobs_descarga_el_pdf_generado(@TempDir Path dir) throws Exception {
+    Path pdf = Files.write(dir.resolve("r.pdf"), "%PDF-1.4".getBytes(StandardCharsets.US_ASCII));
+    ReporteJobService jobs = mock(ReporteJobService.class);
+    when(jobs.archivo("abc")).thenReturn(pdf);
+
+    MockMvc mvc = standaloneSetup(controller(mock(ReporteService.class), mock(SaldoDiarioService.class), jobs)).build();
+
+    mvc.perform(get("/api/reportes/jobs/abc/pdf"))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(MediaType.APPLICATION_PDF))
+        .andExpect(content().string("%PDF-1.4"));
   }
 }
@@ -5,6 +5,13 @@ BEGIN;
 -- Limpieza
 -- --------
 DROP VIEW  IF EXISTS vw_estado_cuenta;
+DROP TABLE IF EXISTS creditos_repartidos;
+DROP TABLE IF EXISTS subsaldos;
+DROP TABLE IF EXISTS diarios_aplicados;
+DROP TABLE IF EXISTS claves_idempotencia;
+DROP TABLE IF EXISTS retiros_diarios_cliente;
+DROP TABLE IF EXISTS retiros_diarios;
+DROP TABLE IF EXISTS saldos_diarios;
 DROP TABLE IF EXISTS movimientos;
 DROP TABLE IF EXISTS cuentas;
 DROP TABLE IF EXISTS clientes;
@@ -24,7 +31,17 @@ CREATE TABLE personas (
   creado_en        TIMESTAMPTZ  NOT NULL DEFAULT NOW()
 );
 
-CREATE INDEX idx_personas_identificacion ON personas(identificacion);
+-- Ids de personas en bloques de 50, como movimientos: la importación masiva de
+-- clientes (POST /api/clientes/importaciones) inserta personas en batch.
+ALTER SEQUENCE personas_id_seq INCREMENT BY 50;
+
+-- Búsqueda de clientes (GET /api/clientes/search). Los prefijos usan btree con
+-- collation "C", que sirve tanto para LIKE 'q%' como para ordenar el resultado;
+-- las subcadenas del nombre, trigramas (pg_trgm) en GIN.
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX idx_personas_identificacion ON personas ((identificacion COLLATE "C"));
+CREATE INDEX idx_personas_nombre ON personas ((lower(nombre) COLLATE "C"));
+CREATE INDEX idx_personas_nombre_trgm ON personas USING gin (lower(nombre) gin_trgm_ops);
 
 -- ------------
 -- Tabla CLIENTES
@@ -41,6 +58,7 @@ CREATE TABLE clientes (
 );
 
 CREATE INDEX idx_clientes_estado ON clientes(estado);
+CREATE INDEX idx_clientes_clienteid ON clientes ((lower(clienteid) COLLATE "C"));
 
 -- -----------
 -- Tabla CUENTAS
@@ -54,7 +72,9 @@ CREATE TABLE cuentas (
   cliente_id    BIGINT        NOT NULL
                 REFERENCES clientes(id)
                 ON DELETE CASCADE,            -- borrar cliente → borra cuentas
-  creado_en     TIMESTAMPTZ   NOT NULL DEFAULT NOW()
+  creado_en     TIMESTAMPTZ   NOT NULL DEFAULT NOW(),
+  version       BIGINT        NOT NULL DEFAULT 0,  -- sube en cada cambio de la fila
+  subsaldos     SMALLINT      NOT NULL DEFAULT 0 CHECK (subsaldos >= 0)  -- > 0: saldo repartido (tabla SUBSALDOS)
 );
 
 CREATE INDEX idx_cuentas_cliente ON cuentas(cliente_id);
@@ -73,12 +93,127 @@ CREATE TABLE movimientos (
   valor        NUMERIC(19,2) NOT NULL CHECK (valor > 0),
   saldo        NUMERIC(19,2) NOT NULL CHECK (saldo >= 0),
   referencia   VARCHAR(150),
-  fecha        TIMESTAMPTZ   NOT NULL DEFAULT NOW()
+  fecha        TIMESTAMPTZ   NOT NULL DEFAULT NOW(),
+  -- Cuándo se confirmó al cliente, si se asentó después (acuse del diario de
+  -- depósitos diferidos, crédito repartido consolidado). fecha es siempre la del
+  -- asiento: el saldo corrido de la cuenta y los saldos diarios siguen el orden
+  -- (fecha, id).
+  fecha_origen TIMESTAMPTZ
+);
+
+-- El backend reserva ids en bloques de 50 (secuencia "pooled") para poder
+-- insertar movimientos en batch; los INSERT con DEFAULT siguen funcionando.
+ALTER SEQUENCE movimientos_id_seq INCREMENT BY 50;
+
+-- (cuenta_id, fecha, id): movimientos de una cuenta por rango de fechas y
+-- "último movimiento antes de X" (saldo a una fecha) con una sola búsqueda.
+CREATE INDEX idx_movs_cuenta_fecha ON movimientos(cuenta_id, fecha, id);
+-- Listado paginado (GET /api/movimientos): keyset sobre (fecha, id) descendente,
+-- con o sin filtro de tipo. Con filtro de cuenta sirve idx_movs_cuenta_fecha.
+CREATE INDEX idx_movs_fecha_id ON movimientos(fecha, id);
+CREATE INDEX idx_movs_tipo     ON movimientos(tipo, fecha, id);
+
+-- ---------------
+-- Tabla SALDOS_DIARIOS
+-- ---------------
+-- Rollup por cuenta y día (UTC): apertura, cierre y totales del día. Se mantiene
+-- en la misma transacción que cada movimiento; los reportes resumen y los saldos
+-- iniciales se resuelven aquí sin recorrer el historial.
+CREATE TABLE saldos_diarios (
+  cuenta_id      BIGINT        NOT NULL
+                 REFERENCES cuentas(id)
+                 ON DELETE CASCADE,
+  dia            DATE          NOT NULL,
+  saldo_apertura NUMERIC(19,2) NOT NULL,
+  saldo_cierre   NUMERIC(19,2) NOT NULL,
+  total_creditos NUMERIC(19,2) NOT NULL DEFAULT 0,
+  total_debitos  NUMERIC(19,2) NOT NULL DEFAULT 0,
+  cantidad       INT           NOT NULL DEFAULT 0,
+  PRIMARY KEY (cuenta_id, dia)
+);
+
+-- ---------------
+-- Tablas RETIROS_DIARIOS
+-- ---------------
+-- Retiros acumulados por cuenta y por cliente en el día local (banco.retiros.zona),
+-- para el cupo diario. Se suman en la misma transacción que cada retiro; verificar
+-- el cupo es leer una fila. Se reconstruyen desde movimientos.
+CREATE TABLE retiros_diarios (
+  cuenta_id  BIGINT        NOT NULL
+             REFERENCES cuentas(id)
+             ON DELETE CASCADE,
+  dia        DATE          NOT NULL,
+  total      NUMERIC(19,2) NOT NULL,
+  cantidad   INT           NOT NULL,
+  PRIMARY KEY (cuenta_id, dia)
+);
+
+CREATE TABLE retiros_diarios_cliente (
+  cliente_id BIGINT        NOT NULL
+             REFERENCES clientes(id)
+             ON DELETE CASCADE,
+  dia        DATE          NOT NULL,
+  total      NUMERIC(19,2) NOT NULL,
+  cantidad   INT           NOT NULL,
+  PRIMARY KEY (cliente_id, dia)
+);
+
+-- ---------------
+-- Tabla CLAVES_IDEMPOTENCIA
+-- ---------------
+-- Idempotency-Key de depósitos, retiros y transferencias: se inserta en la misma
+-- transacción que el asiento, así un reintento con la misma clave devuelve el
+-- resultado original. Vencida (expira_en) la clave se puede reutilizar y se purga.
+CREATE TABLE claves_idempotencia (
+  clave          VARCHAR(100) PRIMARY KEY,
+  operacion      VARCHAR(20)  NOT NULL,               -- 'DEPOSITO' | 'RETIRO' | 'TRANSFERENCIA'
+  huella         VARCHAR(64)  NOT NULL,               -- SHA-256 de los parámetros
+  movimiento_id  BIGINT,                              -- asiento devuelto (NULL en transferencias)
+  creado_en      TIMESTAMPTZ  NOT NULL,
+  expira_en      TIMESTAMPTZ  NOT NULL
+);
+
+CREATE INDEX idx_claves_idempotencia_expira ON claves_idempotencia(expira_en);
+
+-- ---------------
+-- Tabla DIARIOS_APLICADOS
+-- ---------------
+-- Última secuencia del diario local de cada nodo (DiarioAsientosService) ya aplicada
+-- a cuentas y movimientos; avanza en la misma transacción que el lote aplicado.
+CREATE TABLE diarios_aplicados (
+  nodo       VARCHAR(100) PRIMARY KEY,
+  secuencia  BIGINT NOT NULL
+);
+
+-- ---------------
+-- Tablas SUBSALDOS y CREDITOS_REPARTIDOS
+-- ---------------
+-- Cuentas de mucho tráfico con el saldo repartido (SubsaldosService): cada depósito
+-- suma a una de las N filas de subsaldos de la cuenta y deja su movimiento en
+-- creditos_repartidos, sin tocar la fila de cuentas. Saldo de la cuenta =
+-- cuentas.saldo + SUM(subsaldos.saldo). Al consolidar, los subsaldos pasan a
+-- cuentas.saldo y los créditos a movimientos (con el mismo id y su saldo resultante),
+-- fechados al consolidar y con la fecha del crédito en fecha_origen.
+CREATE TABLE subsaldos (
+  cuenta_id  BIGINT        NOT NULL
+             REFERENCES cuentas(id)
+             ON DELETE CASCADE,
+  slot       SMALLINT      NOT NULL,
+  saldo      NUMERIC(19,2) NOT NULL DEFAULT 0 CHECK (saldo >= 0),
+  PRIMARY KEY (cuenta_id, slot)
+);
+
+CREATE TABLE creditos_repartidos (
+  id          BIGINT        PRIMARY KEY DEFAULT nextval('movimientos_id_seq'),
+  cuenta_id   BIGINT        NOT NULL
+              REFERENCES cuentas(id)
+              ON DELETE CASCADE,
+  valor       NUMERIC(19,2) NOT NULL CHECK (valor > 0),
+  referencia  VARCHAR(150),
+  fecha       TIMESTAMPTZ   NOT NULL
 );
 
-CREATE INDEX idx_movs_cuenta   ON movimientos(cuenta_id);
-CREATE INDEX idx_movs_fecha    ON movimientos(fecha);
-CREATE INDEX idx_movs_tipo     ON movimientos(tipo);
+CREATE INDEX idx_creditos_repartidos_cuenta ON creditos_repartidos(cuenta_id);
 
 -- ---------------
 -- DATOS DE PRUEBA
@@ -88,14 +223,18 @@ INSERT INTO personas (nombre, genero, edad, identificacion, direccion, telefono)
 ('Juan Pérez', 'Masculino', 30, '1234567890', 'Av. Principal 123', '0987654321'),
 ('María García', 'Femenino', 25, '0987654321', 'Calle Secundaria 456', '0912345678');
 
--- Insertar clientes
-INSERT INTO clientes (id, clienteid, contrasena, estado) VALUES
-(1, 'juan123', '$2a$10$example', true),
-(2, 'maria456', '$2a$10$example', true);
+-- Insertar clientes. Los ids de personas avanzan de a 50 (ver personas_id_seq):
+-- se toman por identificación, no se suponen 1 y 2.
+INSERT INTO clientes (id, clienteid, contrasena, estado)
+SELECT p.id, v.clienteid, '$2a$10$example', true
+FROM (VALUES ('1234567890', 'juan123'), ('0987654321', 'maria456')) AS v(identificacion, clienteid)
+JOIN personas p ON p.identificacion = v.identificacion;
 
 -- Insertar cuentas
-INSERT INTO cuentas (numero, tipo, saldo, cliente_id) VALUES
-('001-001-001', 'Ahorro', 1000.00, 1),
-('001-001-002', 'Corriente', 500.00, 2);
+INSERT INTO cuentas (numero, tipo, saldo, cliente_id)
+SELECT v.numero, v.tipo, v.saldo, p.id
+FROM (VALUES ('001-001-001', 'Ahorro', 1000.00, '1234567890'),
+             ('001-001-002', 'Corriente', 500.00, '0987654321')) AS v(numero, tipo, saldo, identificacion)
+JOIN personas p ON p.identificacion = v.identificacion;
 
 COMMIT;
\ No newline at end of file
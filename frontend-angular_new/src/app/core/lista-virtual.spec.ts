@@ -0,0 +1,57 @@
+import { of, throwError } from 'rxjs';
+import { ListaVirtual } from './lista-virtual';
+
+describe('ListaVirtual', () => {
+  const pagina = (desde: number, n: number, siguiente: string | null) => ({
+    items: Array.from({ length: n }, (_, i) => ({ id: desde + i })),
+    siguiente,
+  });
+
+  it('reiniciar() pide la primera página y renderiza solo las filas visibles', () => {
+    const pedir = jest.fn().mockReturnValue(of(pagina(1, 100, '100')));
+    const lista = new ListaVirtual<any>(pedir, 50, 500, 5);
+
+    lista.reiniciar();
+
+    expect(pedir).toHaveBeenCalledWith(null);
+    expect(lista.rows.length).toBe(100);
+    // 500px / 50px = 10 filas visibles + 5 de margen
+    expect(lista.visibles.length).toBe(15);
+    expect(lista.arriba).toBe(0);
+    expect(lista.abajo).toBe(85 * 50);
+  });
+
+  it('desplazar() mueve la ventana y pide la página siguiente con el cursor', () => {
+    const pedir = jest
+      .fn()
+      .mockReturnValueOnce(of(pagina(1, 20, '20')))
+      .mockReturnValueOnce(of(pagina(21, 20, null)));
+    const lista = new ListaVirtual<any>(pedir, 50, 500, 5);
+    lista.reiniciar();
+
+    lista.desplazar(300);
+
+    expect(pedir).toHaveBeenLastCalledWith('20');
+    expect(lista.rows.length).toBe(40);
+    expect(lista.visibles[0]).toEqual({ id: 2 });
+    expect(lista.arriba).toBe(50);
+
+    // Sin "siguiente" no vuelve a pedir
+    lista.desplazar(1500);
+    expect(pedir).toHaveBeenCalledTimes(2);
+  });
+
+  it('un error libera la carga para reintentar', () => {
+    const pedir = jest
+      .fn()
+      .mockReturnValueOnce(throwError(() => new Error('x')))
+      .mockReturnValueOnce(of(pagina(1, 3, null)));
+    const lista = new ListaVirtual<any>(pedir);
+
+    lista.reiniciar();
+    expect(lista.cargando).toBe(false);
+    lista.cargarMas();
+
+    expect(lista.rows.length).toBe(3);
+  });
+});
@@ -0,0 +1,66 @@
+import { Observable } from 'rxjs';
+import { Pagina } from './services/api.service';
+
+/**
+ * Listado paginado en el servidor con scroll virtual: las filas tienen alto fijo,
+ * solo se renderizan las visibles (más un margen) y la página siguiente se pide
+ * al acercarse al final de lo ya cargado.
+ */
+export class ListaVirtual<T> {
+  rows: T[] = [];
+  visibles: T[] = [];
+  arriba = 0; // px de relleno antes de la primera fila renderizada
+  abajo = 0; // px de relleno después de la última
+  cargando = false;
+
+  private siguiente: string | null = null;
+  private fin = false;
+  private scrollTop = 0;
+
+  constructor(
+    private pedir: (cursor: string | null) => Observable<Pagina<T>>,
+    readonly altoFila = 48,
+    readonly altoVista = 480,
+    private margen = 10,
+  ) {}
+
+  // Vuelve a la primera página (después de crear, editar o borrar)
+  reiniciar(): void {
+    this.rows = [];
+    this.siguiente = null;
+    this.fin = false;
+    this.scrollTop = 0;
+    this.recalcular();
+    this.cargarMas();
+  }
+
+  desplazar(scrollTop: number): void {
+    this.scrollTop = scrollTop;
+    this.recalcular();
+    // Falta menos de una vista para el final de lo cargado
+    if (scrollTop + 2 * this.altoVista >= this.rows.length * this.altoFila) this.cargarMas();
+  }
+
+  cargarMas(): void {
+    if (this.cargando || this.fin) return;
+    this.cargando = true;
+    this.pedir(this.siguiente).subscribe({
+      next: (p) => {
+        this.rows.push(...p.items);
+        this.siguiente = p.siguiente;
+        this.fin = !p.siguiente;
+        this.cargando = false;
+        this.recalcular();
+      },
+      error: () => (this.cargando = false),
+    });
+  }
+
+  private recalcular(): void {
+    const inicio = Math.max(0, Math.floor(this.scrollTop / this.altoFila) - this.margen);
+    const fin = Math.min(this.rows.length, Math.ceil((this.scrollTop + this.altoVista) / this.altoFila) + this.margen);
+    this.visibles = this.rows.slice(inicio, fin);
+    this.arriba = inicio * this.altoFila;
+    this.abajo = Math.max(0, this.rows.length - fin) * this.altoFila;
+  }
+}
@@ -24,16 +24,36 @@ describe('ApiService', () => {
   });
 
   describe('Clientes', () => {
-    it('listarClientes() debe hacer GET /api/clientes', () => {
-      const mockClientes = [{ id: 1, nombre: 'Test' }];
+    it('listarClientes() debe hacer GET /api/clientes paginado', () => {
+      const mockPagina = { items: [{ id: 1, nombre: 'Test' }], siguiente: '1' };
 
-      service.listarClientes().subscribe(clientes => {
-        expect(clientes).toEqual(mockClientes);
+      service.listarClientes().subscribe(pagina => {
+        expect(pagina).toEqual(mockPagina);
       });
 
-      const req = httpMock.expectOne('/api/clientes');
+      const req = httpMock.expectOne('/api/clientes?limite=50');
+      expect(req.request.method).toBe('GET');
+      req.flush(mockPagina);
+    });
+
+    it('listarClientes(cursor) debe pasar el cursor de la página siguiente', () => {
+      service.listarClientes('1', 100).subscribe();
+
+      const req = httpMock.expectOne('/api/clientes?limite=100&cursor=1');
+      expect(req.request.method).toBe('GET');
+      req.flush({ items: [], siguiente: null });
+    });
+
+    it('buscarClientes() debe hacer GET /api/clientes/search con q y limite', () => {
+      const mock = [{ id: 3, nombre: 'Jose Lema' }];
+
+      service.buscarClientes('jose').subscribe(r => {
+        expect(r).toEqual(mock);
+      });
+
+      const req = httpMock.expectOne('/api/clientes/search?q=jose&limite=20');
       expect(req.request.method).toBe('GET');
-      req.flush(mockClientes);
+      req.flush(mock);
     });
 
     it('crearCliente() debe hacer POST /api/clientes', () => {
@@ -77,16 +97,16 @@ describe('ApiService', () => {
   });
 
   describe('Cuentas', () => {
-    it('listarCuentas() debe hacer GET /api/cuentas', () => {
-      const mockCuentas = [{ id: 1, numero: '123' }];
+    it('listarCuentas() debe hacer GET /api/cuentas paginado', () => {
+      const mockPagina = { items: [{ id: 1, numero: '123' }], siguiente: null };
 
-      service.listarCuentas().subscribe(cuentas => {
-        expect(cuentas).toEqual(mockCuentas);
+      service.listarCuentas().subscribe(pagina => {
+        expect(pagina).toEqual(mockPagina);
       });
 
-      const req = httpMock.expectOne('/api/cuentas');
+      const req = httpMock.expectOne('/api/cuentas?limite=50');
       expect(req.request.method).toBe('GET');
-      req.flush(mockCuentas);
+      req.flush(mockPagina);
     });
 
     it('crearCuenta() debe hacer POST /api/cuentas', () => {
@@ -167,7 +187,7 @@ describe('ApiService', () => {
 
       const req = httpMock.expectOne('/api/movimientos');
       expect(req.request.method).toBe('GET');
-      req.flush(mockMovimientos);
+      req.flush({ items: mockMovimientos, siguiente: null });
     });
   });
 
@@ -1,6 +1,13 @@
 import { Injectable } from '@angular/core';
 import { HttpClient, HttpParams } from '@angular/common/http';
 import { Observable } from 'rxjs';
+import { map } from 'rxjs/operators';
+
+// Página de un listado por cursor: "siguiente" se pasa como cursor del próximo pedido
+export interface Pagina<T> {
+  items: T[];
+  siguiente: string | null;
+}
 
 @Injectable({ providedIn: 'root' })
 export class ApiService {
@@ -8,13 +15,22 @@ export class ApiService {
   private base = '/api';
 
   // --- Clientes ---
-  listarClientes(): Observable<any[]> { return this.http.get<any[]>(`${this.base}/clientes`); }
+  listarClientes(cursor: string | null = null, limite = 50): Observable<Pagina<any>> {
+    return this.http.get<Pagina<any>>(`${this.base}/clientes`, { params: this.pagina(cursor, limite) });
+  }
+  // Coincidencias por nombre, identificación o clienteId, las más relevantes primero
+  buscarClientes(q: string, limite = 20): Observable<any[]> {
+    const params = new HttpParams().set('q', q).set('limite', String(limite));
+    return this.http.get<any[]>(`${this.base}/clientes/search`, { params });
+  }
   crearCliente(body: any): Observable<any> { return this.http.post(`${this.base}/clientes`, body); }
   actualizarCliente(id: number, body: any): Observable<any> { return this.http.put(`${this.base}/clientes/${id}`, body); }
   eliminarCliente(id: number): Observable<void> { return this.http.delete<void>(`${this.base}/clientes/${id}`); }
 
   // --- Cuentas ---
-  listarCuentas(): Observable<any[]> { return this.http.get<any[]>(`${this.base}/cuentas`); }
+  listarCuentas(cursor: string | null = null, limite = 50): Observable<Pagina<any>> {
+    return this.http.get<Pagina<any>>(`${this.base}/cuentas`, { params: this.pagina(cursor, limite) });
+  }
   crearCuenta(body: any): Observable<any> { return this.http.post(`${this.base}/cuentas`, body); }
   actualizarCuenta(id: number, body: any): Observable<any> { return this.http.put(`${this.base}/cuentas/${id}`, body); }
   eliminarCuenta(id: number): Observable<void> { return this.http.delete<void>(`${this.base}/cuentas/${id}`); }
@@ -45,8 +61,9 @@ export class ApiService {
     return this.http.post<void>(`${this.base}/movimientos/transferencia`, null, { params });
   }
 
+  // Primera página (los más recientes); el backend pagina por cursor en "siguiente"
   listarMovimientos(): Observable<any[]> {
-    return this.http.get<any[]>(`${this.base}/movimientos`);
+    return this.http.get<any>(`${this.base}/movimientos`).pipe(map((p) => p.items));
   }
 
   // --- Reportes ---
@@ -65,4 +82,9 @@ export class ApiService {
       .set('hasta', hasta);
     return this.http.get(`${this.base}/reportes/pdf`, { params, responseType: 'blob' as 'json' }) as Observable<Blob>;
   }
+
+  private pagina(cursor: string | null, limite: number): HttpParams {
+    const params = new HttpParams().set('limite', String(limite));
+    return cursor ? params.set('cursor', cursor) : params;
+  }
 }
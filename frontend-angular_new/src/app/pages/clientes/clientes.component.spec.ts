@@ -1,4 +1,4 @@
-import { ComponentFixture, TestBed } from '@angular/core/testing';
+import { ComponentFixture, TestBed, fakeAsync, tick } from '@angular/core/testing';
 import { NO_ERRORS_SCHEMA } from '@angular/core';
 import { FormsModule } from '@angular/forms';
 import { HttpClientTestingModule } from '@angular/common/http/testing';
@@ -9,6 +9,7 @@ import { ApiService } from 'src/app/core/services/api.service';
 
 type ApiServiceMock = {
   listarClientes: jest.Mock;
+  buscarClientes: jest.Mock;
   crearCliente: jest.Mock;
   actualizarCliente: jest.Mock;
   eliminarCliente: jest.Mock;
@@ -23,6 +24,7 @@ describe('ClientesComponent', () => {
   beforeEach(async () => {
     api = {
       listarClientes: jest.fn(),
+      buscarClientes: jest.fn(),
       crearCliente: jest.fn(),
       actualizarCliente: jest.fn(),
       eliminarCliente: jest.fn(),
@@ -40,15 +42,58 @@ describe('ClientesComponent', () => {
 
   it('debe crearse y cargar clientes en ngOnInit()', () => {
     const mock = [{ id: 1, nombre: 'Ana' }];
-    api.listarClientes.mockReturnValue(of(mock));
+    api.listarClientes.mockReturnValue(of({ items: mock, siguiente: null }));
 
     fixture.detectChanges();
 
     expect(api.listarClientes).toHaveBeenCalledTimes(1);
+    expect(api.listarClientes).toHaveBeenCalledWith(null);
     expect(component.rows).toEqual(mock);
     expect(component.err).toBe('');
   });
 
+  it('buscar() consulta al servidor después de la pausa y muestra las coincidencias', fakeAsync(() => {
+    api.listarClientes.mockReturnValue(of({ items: [], siguiente: null }));
+    const mock = [{ id: 3, nombre: 'Jose Lema' }];
+    api.buscarClientes.mockReturnValue(of(mock));
+    fixture.detectChanges();
+
+    component.buscar('jo');
+    tick(100);
+    component.buscar('jose ');
+    tick(250);
+
+    expect(api.buscarClientes).toHaveBeenCalledTimes(1);
+    expect(api.buscarClientes).toHaveBeenCalledWith('jose');
+    expect(component.resultados).toEqual(mock);
+  }));
+
+  it('buscar() con texto vacío vuelve al listado', fakeAsync(() => {
+    api.listarClientes.mockReturnValue(of({ items: [], siguiente: null }));
+    api.buscarClientes.mockReturnValue(of([{ id: 3 }]));
+    fixture.detectChanges();
+
+    component.buscar('ana');
+    tick(250);
+    component.buscar('  ');
+    tick(250);
+
+    expect(api.buscarClientes).toHaveBeenCalledTimes(1);
+    expect(component.resultados).toBeNull();
+  }));
+
+  it('buscar() setea err cuando la búsqueda falla', fakeAsync(() => {
+    api.listarClientes.mockReturnValue(of({ items: [], siguiente: null }));
+    api.buscarClientes.mockReturnValue(throwError(() => ({ error: { message: 'q no puede estar vacío.' } })));
+    fixture.detectChanges();
+
+    component.buscar('x');
+    tick(250);
+
+    expect(component.err).toBe('q no puede estar vacío.');
+    expect(component.resultados).toEqual([]);
+  }));
+
   it('load() debe setear err cuando la API falla', () => {
     api.listarClientes.mockReturnValue(throwError(() => ({ error: { message: 'Fallo listado' } })));
 
@@ -1,7 +1,10 @@
 import { CommonModule } from '@angular/common';
-import { Component, OnInit } from '@angular/core';
+import { Component, OnDestroy, OnInit } from '@angular/core';
 import { FormsModule } from '@angular/forms';
+import { Subject, Subscription, of } from 'rxjs';
+import { catchError, debounceTime, switchMap, tap } from 'rxjs/operators';
 import { ApiService } from 'src/app/core/services/api.service';
+import { ListaVirtual } from 'src/app/core/lista-virtual';
 
 @Component({
   standalone: true,
@@ -10,9 +13,17 @@ import { ApiService } from 'src/app/core/services/api.service';
   templateUrl: './clientes.component.html',
   styleUrls: ['./clientes.component.css'],
 })
-export class ClientesComponent implements OnInit {
-  rows: any[] = [];
+export class ClientesComponent implements OnInit, OnDestroy {
   err: string = '';
+  // Paginado en el servidor; la tabla renderiza solo las filas visibles
+  lista = new ListaVirtual<any>((cursor) =>
+    this.api.listarClientes(cursor).pipe(
+      tap({
+        next: () => (this.err = ''),
+        error: (error) => (this.err = error.error?.message || 'Error al cargar clientes'),
+      }),
+    ),
+  );
   form: any = {
     nombre: '',
     genero: 'Masculino',
@@ -24,25 +35,52 @@ export class ClientesComponent implements OnInit {
     estado: true,
   };
   editId: number | null = null;
+  // Con texto en el buscador la tabla muestra las coincidencias del servidor
+  busqueda = '';
+  resultados: any[] | null = null;
+  private consultas = new Subject<string>();
+  private sub?: Subscription;
 
   constructor(private api: ApiService) {}
 
   ngOnInit(): void {
+    this.sub = this.consultas
+      .pipe(
+        debounceTime(250),
+        switchMap((q) =>
+          !q.trim()
+            ? of(null)
+            : this.api.buscarClientes(q.trim()).pipe(
+                catchError((error) => {
+                  this.err = error.error?.message || 'Error al buscar clientes';
+                  return of([]);
+                }),
+              ),
+        ),
+      )
+      .subscribe((r) => (this.resultados = r));
     this.load();
   }
 
+  ngOnDestroy(): void {
+    this.sub?.unsubscribe();
+  }
+
+  get rows(): any[] {
+    return this.lista.rows;
+  }
+
   load(): void {
-    this.api.listarClientes().subscribe({
-      next: (data) => {
-        this.rows = data;
-        this.err = '';
-      },
-      error: (error) => {
-        this.err = error.error?.message || 'Error al cargar clientes';
-      },
-    });
+    this.lista.reiniciar();
+    if (this.resultados !== null) this.buscar(this.busqueda);
   }
 
+  buscar(q: string): void {
+    this.consultas.next(q);
+  }
+
+  porId = (_: number, row: any) => row.id;
+
   submit(): void {
     if (this.editId === null) {
       this.api.crearCliente(this.form).subscribe({
@@ -42,8 +42,8 @@ describe('CuentasComponent', () => {
     const mockClientes = [{ id: 1, nombre: 'Carlos' }];
     const mockCuentas = [{ id: 99, numero: 'X123' }];
 
-    api.listarClientes.mockReturnValue(of(mockClientes));
-    api.listarCuentas.mockReturnValue(of(mockCuentas));
+    api.listarClientes.mockReturnValue(of({ items: mockClientes, siguiente: null }));
+    api.listarCuentas.mockReturnValue(of({ items: mockCuentas, siguiente: null }));
 
     fixture.detectChanges();
 
@@ -55,7 +55,7 @@ describe('CuentasComponent', () => {
 
   it('load() debe llenar rows con cuentas', () => {
     const mock = [{ id: 1, numero: '12345' }];
-    api.listarCuentas.mockReturnValue(of(mock));
+    api.listarCuentas.mockReturnValue(of({ items: mock, siguiente: null }));
 
     component.load();
 
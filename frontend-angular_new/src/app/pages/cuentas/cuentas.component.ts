@@ -2,6 +2,7 @@ import { Component, OnInit } from '@angular/core';
 import { CommonModule } from '@angular/common';
 import { FormsModule } from '@angular/forms';
 import { ApiService } from 'src/app/core/services/api.service';
+import { ListaVirtual } from 'src/app/core/lista-virtual';
 
 @Component({
   standalone: true,
@@ -13,7 +14,8 @@ import { ApiService } from 'src/app/core/services/api.service';
 export class CuentasComponent implements OnInit {
   constructor(public api: ApiService) {}
   clientes: any[] = [];
-  rows: any[] = [];
+  // Paginado en el servidor; la tabla renderiza solo las filas visibles
+  lista = new ListaVirtual<any>((cursor) => this.api.listarCuentas(cursor));
   editId: number | null = null;
   err = '';
 
@@ -26,14 +28,20 @@ export class CuentasComponent implements OnInit {
   };
 
   ngOnInit() {
-    this.api.listarClientes().subscribe((c) => (this.clientes = c));
+    this.api.listarClientes(null, 500).subscribe((p) => (this.clientes = p.items));
     this.load();
   }
 
+  get rows(): any[] {
+    return this.lista.rows;
+  }
+
   load() {
-    this.api.listarCuentas().subscribe((c) => (this.rows = c));
+    this.lista.reiniciar();
   }
 
+  porId = (_: number, row: any) => row.id;
+
   submit() {
     const payload = { ...this.form };
     const call = this.editId
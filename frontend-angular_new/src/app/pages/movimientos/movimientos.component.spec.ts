@@ -40,7 +40,7 @@ describe('MovimientosComponent', () => {
     const mockMovimientos = [{ id: 1, monto: 100 }];
     const mockCuentas = [{ id: 1, numero: '123', tipo: 'Ahorro' }];
     api.listarMovimientos.mockReturnValue(of(mockMovimientos));
-    api.listarCuentas.mockReturnValue(of(mockCuentas));
+    api.listarCuentas.mockReturnValue(of({ items: mockCuentas, siguiente: null }));
 
     fixture.detectChanges();
 
@@ -31,7 +31,7 @@ export class MovimientosComponent implements OnInit {
   }
   
   loadCuentas() {
-    this.api.listarCuentas().subscribe((c) => (this.cuentas = c));
+    this.api.listarCuentas(null, 500).subscribe((p) => (this.cuentas = p.items));
   }
   load() {
     this.api.listarMovimientos().subscribe((r) => (this.rows = r));
@@ -34,7 +34,7 @@ describe('ReportesComponent', () => {
 
   it('debe crearse y cargar clientes en ngOnInit()', () => {
     const clientesMock = [{ id: 1, nombre: 'Cliente 1' }];
-    api.listarClientes.mockReturnValue(of(clientesMock));
+    api.listarClientes.mockReturnValue(of({ items: clientesMock, siguiente: null }));
 
     fixture.detectChanges();
 
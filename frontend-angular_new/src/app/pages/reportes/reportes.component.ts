@@ -21,7 +21,7 @@ export class ReportesComponent implements OnInit {
   err = '';
 
   ngOnInit() {
-    this.api.listarClientes().subscribe((c) => (this.clientes = c));
+    this.api.listarClientes(null, 500).subscribe((p) => (this.clientes = p.items));
     const today = new Date().toISOString().slice(0, 10);
     this.desde = today;
     this.hasta = today;